@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import java.util.Random;
+
+import com.lyeeedar.Utils.Bag;
+
+/**
+ * {@link Bag} as it is used each frame: iterating every element by index, and removing elements by identity (as
+ * tiles drop actors that leave them) then adding them back.
+ * @author Philip
+ *
+ */
+public class BagBenchmark extends Benchmark {
+	
+	public static final int ITERATE = 0;
+	public static final int REMOVE = 1;
+	
+	public static final long SEED = 1;
+	public static final int SIZE = 1024;
+	public static final int REMOVALS = 64;
+	
+	final int mode;
+	
+	Bag<Integer> bag;
+	Integer[] removals;
+	
+	public BagBenchmark(int mode)
+	{
+		super((mode == ITERATE) ? "Bag.iterate" : "Bag.remove");
+		this.mode = mode;
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return (mode == ITERATE) ? new String[]{"size="+SIZE} : new String[]{"size="+SIZE, "removals="+REMOVALS};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		Random ran = new Random(SEED);
+		
+		Integer[] values = new Integer[SIZE];
+		bag = new Bag<Integer>(SIZE);
+		for (int i = 0; i < SIZE; i++)
+		{
+			values[i] = Integer.valueOf(ran.nextInt());
+			bag.add(values[i]);
+		}
+		
+		removals = new Integer[REMOVALS];
+		for (int i = 0; i < REMOVALS; i++) removals[i] = values[ran.nextInt(SIZE)];
+	}
+	
+	@Override
+	public int run()
+	{
+		if (mode == ITERATE)
+		{
+			int total = 0;
+			for (int i = 0; i < bag.size; i++) total += bag.get(i);
+			return total;
+		}
+		
+		int removed = 0;
+		for (int i = 0; i < REMOVALS; i++)
+		{
+			if (bag.remove(removals[i]))
+			{
+				removed++;
+				bag.add(removals[i]);
+			}
+		}
+		return removed;
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+/**
+ * One operation timed by {@link BenchmarkRunner}.
+ * <p>
+ * setup is called once before any timing, then run is called over and over. run should return something worked out
+ * from what it did, which the runner adds up so the JIT cannot drop the work. Any randomness comes from seeded Randoms
+ * made in setup so every run times the same work.
+ * @author Philip
+ *
+ */
+public abstract class Benchmark {
+	
+	public final String name;
+	
+	public Benchmark(String name)
+	{
+		this.name = name;
+	}
+	
+	/**
+	 * @return why this benchmark cannot be run with the runner's settings, or null if it can
+	 */
+	public String getSkipReason(BenchmarkRunner runner)
+	{
+		return null;
+	}
+	
+	/**
+	 * @return the settings the benchmark was run with, as name=value pairs
+	 */
+	public String[] getParams()
+	{
+		return new String[0];
+	}
+	
+	public abstract void setup(BenchmarkRunner runner) throws Exception;
+	
+	public abstract int run();
+	
+	public void teardown()
+	{
+		
+	}
+}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Game.HeadlessSimulation;
+
+/**
+ * Runs the benchmarks and writes the results as JSON.
+ * <p>
+ * Each benchmark is set up, run for warmup iterations that are thrown away, then for measurement iterations. An
+ * iteration calls run in growing batches until iterationTime has passed and records the average time per call. The
+ * score is the mean of the iterations and the error is the half width of its 99.9% confidence interval. The JSON is
+ * in the same layout JMH writes, so the same tools can read and compare it. Every benchmark runs in this JVM one after
+ * another, which JMH reports as 0 forks, so a benchmark's score can depend on what the JIT saw in the ones before it.
+ * <p>
+ * Everything runs headless (see {@link GameData#headless}). Benchmarks that build meshes need the gdx natives, and
+ * the MonsterEvolver one needs the game's assets and a monster type, anything that cannot run is skipped.
+ * <p>
+ * Usage: BenchmarkRunner [-warmup n] [-iterations n] [-time ms] [-assets dir] [-monster type] [-out file] [filter...]
+ * where a benchmark is run if its name contains any of the filters, or if there are none.
+ * @author Philip
+ *
+ */
+public class BenchmarkRunner {
+	
+	/**
+	 * Student's t for a 99.9% two sided interval is near this for the usual number of iterations
+	 */
+	public static final double T_999 = 3.29;
+	
+	public int warmupIterations = 5;
+	public int measurementIterations = 10;
+	public long iterationTime = 1000;
+	public File assets;
+	public String monster;
+	public File out = new File("benchmarks.json");
+	public final ArrayList<String> filters = new ArrayList<String>();
+	
+	public boolean nativesLoaded = false;
+	
+	/**
+	 * Added to by the result of every run so none of them can be optimised away
+	 */
+	public long sink = 0;
+	
+	public static ArrayList<Benchmark> getBenchmarks()
+	{
+		ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		
+		benchmarks.add(new PathfindBenchmark());
+		benchmarks.add(new CorridorBenchmark());
+		for (int actors : new int[]{10, 100, 1000})
+		{
+			benchmarks.add(new ChaseBenchmark(ChaseBenchmark.FLOW, actors));
+			benchmarks.add(new ChaseBenchmark(ChaseBenchmark.ASTAR, actors));
+		}
+		benchmarks.add(new ShadowBenchmark());
+		benchmarks.add(new CollisionBenchmark());
+		benchmarks.add(new MovementBenchmark());
+		benchmarks.add(new EvolverBenchmark());
+		benchmarks.add(new MeshBenchmark(MeshBenchmark.MERGE));
+		benchmarks.add(new MeshBenchmark(MeshBenchmark.INSERT_LIGHT));
+		benchmarks.add(new ParticleBenchmark());
+		benchmarks.add(new BagBenchmark(BagBenchmark.ITERATE));
+		benchmarks.add(new BagBenchmark(BagBenchmark.REMOVE));
+		benchmarks.add(new PackerBenchmark());
+		
+		return benchmarks;
+	}
+	
+	public boolean isSelected(Benchmark benchmark)
+	{
+		if (filters.size() == 0) return true;
+		
+		for (String filter : filters)
+		{
+			if (benchmark.name.contains(filter)) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the average nanoseconds per run of each measurement iteration
+	 */
+	public double[] measure(Benchmark benchmark)
+	{
+		for (int i = 0; i < warmupIterations; i++) iterate(benchmark);
+		
+		double[] results = new double[measurementIterations];
+		for (int i = 0; i < measurementIterations; i++) results[i] = iterate(benchmark);
+		
+		return results;
+	}
+	
+	private double iterate(Benchmark benchmark)
+	{
+		final long end = System.nanoTime() + (iterationTime*1000000);
+		
+		long ops = 0;
+		long time = 0;
+		int batch = 1;
+		while (true)
+		{
+			long start = System.nanoTime();
+			for (int i = 0; i < batch; i++) sink += benchmark.run();
+			long now = System.nanoTime();
+			
+			time += now-start;
+			ops += batch;
+			
+			if (now >= end) break;
+			
+			// Grow the batch while it is short so reading the clock costs little next to the work
+			if (now-start < 1000000) batch *= 2;
+		}
+		
+		return (double) time / ops;
+	}
+	
+	public static double mean(double[] values)
+	{
+		double total = 0;
+		for (double v : values) total += v;
+		return total / values.length;
+	}
+	
+	public static double error(double[] values)
+	{
+		if (values.length < 2) return Double.NaN;
+		
+		double mean = mean(values);
+		double squares = 0;
+		for (double v : values) squares += (v-mean)*(v-mean);
+		
+		return T_999 * Math.sqrt(squares / (values.length-1)) / Math.sqrt(values.length);
+	}
+	
+	public void writeJSON(ArrayList<Benchmark> benchmarks, ArrayList<double[]> results) throws IOException
+	{
+		StringBuilder json = new StringBuilder();
+		json.append("[\n");
+		
+		for (int i = 0; i < benchmarks.size(); i++)
+		{
+			Benchmark benchmark = benchmarks.get(i);
+			double[] result = results.get(i);
+			
+			json.append("    {\n");
+			json.append("        \"benchmark\" : \"").append(benchmark.name).append("\",\n");
+			json.append("        \"mode\" : \"avgt\",\n");
+			json.append("        \"threads\" : 1,\n");
+			json.append("        \"forks\" : 0,\n");
+			json.append("        \"warmupIterations\" : ").append(warmupIterations).append(",\n");
+			json.append("        \"warmupTime\" : \"").append(iterationTime).append(" ms\",\n");
+			json.append("        \"measurementIterations\" : ").append(measurementIterations).append(",\n");
+			json.append("        \"measurementTime\" : \"").append(iterationTime).append(" ms\",\n");
+			
+			String[] params = benchmark.getParams();
+			if (params.length > 0)
+			{
+				json.append("        \"params\" : {\n");
+				for (int j = 0; j < params.length; j++)
+				{
+					String[] pair = params[j].split("=", 2);
+					json.append("            \"").append(pair[0]).append("\" : \"").append(pair[1]).append("\"");
+					json.append((j < params.length-1) ? ",\n" : "\n");
+				}
+				json.append("        },\n");
+			}
+			
+			json.append("        \"primaryMetric\" : {\n");
+			json.append("            \"score\" : ").append(toJSON(mean(result))).append(",\n");
+			json.append("            \"scoreError\" : ").append(toJSON(error(result))).append(",\n");
+			json.append("            \"scoreUnit\" : \"ns/op\",\n");
+			json.append("            \"rawData\" : [\n                [\n");
+			for (int j = 0; j < result.length; j++)
+			{
+				json.append("                    ").append(toJSON(result[j]));
+				json.append((j < result.length-1) ? ",\n" : "\n");
+			}
+			json.append("                ]\n            ]\n");
+			json.append("        }\n");
+			json.append((i < benchmarks.size()-1) ? "    },\n" : "    }\n");
+		}
+		
+		json.append("]\n");
+		
+		FileWriter writer = new FileWriter(out);
+		try
+		{
+			writer.write(json.toString());
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+	
+	private static String toJSON(double value)
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value)) return "\"NaN\"";
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+	
+	public void parseArgs(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			
+			if (arg.equals("-warmup")) warmupIterations = Integer.parseInt(args[++i]);
+			else if (arg.equals("-iterations")) measurementIterations = Integer.parseInt(args[++i]);
+			else if (arg.equals("-time")) iterationTime = Long.parseLong(args[++i]);
+			else if (arg.equals("-assets")) assets = new File(args[++i]);
+			else if (arg.equals("-monster")) monster = args[++i];
+			else if (arg.equals("-out")) out = new File(args[++i]);
+			else filters.add(arg);
+		}
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		BenchmarkRunner runner = new BenchmarkRunner();
+		runner.parseArgs(args);
+		
+		GameData.headless = true;
+		if (runner.assets != null) Gdx.files = new HeadlessSimulation.HeadlessFiles(runner.assets);
+		
+		try
+		{
+			GdxNativesLoader.load();
+			runner.nativesLoaded = true;
+		}
+		catch (Throwable t)
+		{
+			System.err.println("Could not load the gdx natives, mesh benchmarks will be skipped: "+t);
+		}
+		
+		// The code under test prints as it goes, keep it out of the results
+		final PrintStream console = System.out;
+		final PrintStream quiet = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {}
+		});
+		
+		ArrayList<Benchmark> ran = new ArrayList<Benchmark>();
+		ArrayList<double[]> results = new ArrayList<double[]>();
+		
+		for (Benchmark benchmark : getBenchmarks())
+		{
+			if (!runner.isSelected(benchmark)) continue;
+			
+			String skip = benchmark.getSkipReason(runner);
+			if (skip != null)
+			{
+				console.println(String.format("%-44s skipped: %s", benchmark.name, skip));
+				continue;
+			}
+			
+			double[] result;
+			System.setOut(quiet);
+			try
+			{
+				benchmark.setup(runner);
+				result = runner.measure(benchmark);
+				benchmark.teardown();
+			}
+			finally
+			{
+				System.setOut(console);
+			}
+			
+			ran.add(benchmark);
+			results.add(result);
+			
+			console.println(String.format("%-44s %14.1f ns/op  +- %.1f", benchmark.name, mean(result), error(result)));
+		}
+		
+		runner.writeJSON(ran, results);
+		console.println("Results written to "+runner.out.getAbsolutePath()+" ("+runner.sink+")");
+	}
+}
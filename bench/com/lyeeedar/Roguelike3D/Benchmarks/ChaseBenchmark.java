@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import java.util.Random;
+
+import com.lyeeedar.Roguelike3D.Game.Level.FlowField;
+import com.lyeeedar.Roguelike3D.Game.Level.Level;
+import com.lyeeedar.Roguelike3D.Game.Level.PathService;
+
+/**
+ * One frame of actors chasing the player on a seeded level, either reading their next step from the level's
+ * {@link FlowField} or each finding a path with {@link PathService}. Every op the player moves one tile along a
+ * random walk (back and forth, so it never jumps) and every actor asks for its step.
+ * <p>
+ * The actors stand on random floor tiles within RANGE of where the walk starts, as a crowd following the player
+ * would. The field is built whatever the number of actors, so the two can be compared where the game would not use
+ * it.
+ * @author Philip
+ *
+ */
+public class ChaseBenchmark extends Benchmark {
+	
+	public static final int FLOW = 0;
+	public static final int ASTAR = 1;
+	
+	public static final int SIZE = 100;
+	public static final long SEED = 1;
+	public static final float WALLS = 0.2f;
+	public static final int RANGE = 20;
+	public static final int WALK = 64;
+	
+	final int mode;
+	final int actors;
+	
+	Level level;
+	FlowField field;
+	PathService paths;
+	
+	int[] tiles;
+	int[] walk;
+	int next = 0;
+	final int[] step = new int[2];
+	
+	public ChaseBenchmark(int mode, int actors)
+	{
+		super(((mode == FLOW) ? "FlowField.chase" : "PathService.chase")+actors);
+		this.mode = mode;
+		this.actors = actors;
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return new String[]{"size="+SIZE, "seed="+SEED, "walls="+WALLS, "actors="+actors, "range="+RANGE};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		level = Fixtures.level(SIZE, SIZE, SEED, WALLS);
+		field = new FlowField(level, 0);
+		paths = new PathService(level);
+		
+		Random ran = new Random(SEED+1);
+		
+		int[] start = Fixtures.floorTiles(level, 1, SEED+2);
+		walk = new int[WALK*2];
+		int x = start[0];
+		int z = start[1];
+		for (int i = 0; i < WALK; i++)
+		{
+			walk[i*2] = x;
+			walk[(i*2)+1] = z;
+			
+			for (int tries = 0; tries < 16; tries++)
+			{
+				int dir = ran.nextInt(4);
+				int nx = x + ((dir == 0) ? -1 : (dir == 1) ? 1 : 0);
+				int nz = z + ((dir == 2) ? -1 : (dir == 3) ? 1 : 0);
+				if (level.checkPassable(nx, nz))
+				{
+					x = nx;
+					z = nz;
+					break;
+				}
+			}
+		}
+		
+		tiles = new int[actors*2];
+		for (int i = 0; i < actors; i++)
+		{
+			do
+			{
+				x = start[0] - RANGE + ran.nextInt((RANGE*2)+1);
+				z = start[1] - RANGE + ran.nextInt((RANGE*2)+1);
+			} while (!level.checkPassable(x, z));
+			
+			tiles[i*2] = x;
+			tiles[(i*2)+1] = z;
+		}
+	}
+	
+	@Override
+	public int run()
+	{
+		// Back and forth along the walk
+		int i = next % ((WALK*2)-2);
+		if (i >= WALK) i = (WALK*2)-2-i;
+		next++;
+		
+		final int px = walk[i*2];
+		final int pz = walk[(i*2)+1];
+		
+		int moving = 0;
+		if (mode == FLOW)
+		{
+			field.update(px, pz);
+			for (int a = 0; a < actors; a++)
+			{
+				if (field.getNextStep(tiles[a*2], tiles[(a*2)+1], step)) moving++;
+			}
+		}
+		else
+		{
+			for (int a = 0; a < actors; a++)
+			{
+				if (paths.getPath(tiles[a*2], tiles[(a*2)+1], px, pz) != null) moving++;
+			}
+		}
+		
+		return moving;
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Game.Level.Level;
+
+/**
+ * {@link Level#collideSphereAll(float, float, float, float, String)} at random points of a seeded level holding
+ * ACTORS enemies.
+ * @author Philip
+ *
+ */
+public class CollisionBenchmark extends Benchmark {
+	
+	public static final int SIZE = 100;
+	public static final long SEED = 1;
+	public static final float WALLS = 0.2f;
+	public static final int ACTORS = 500;
+	public static final int QUERIES = 1024;
+	public static final float RADIUS = 2;
+	
+	Level level;
+	float[] points;
+	int next = 0;
+	
+	public CollisionBenchmark()
+	{
+		super("Level.collideSphereAll");
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return new String[]{"size="+SIZE, "seed="+SEED, "walls="+WALLS, "actors="+ACTORS, "radius="+RADIUS};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		level = Fixtures.level(SIZE, SIZE, SEED, WALLS);
+		Fixtures.enemies(level, ACTORS, SEED+1);
+		
+		// Points near the middle of floor tiles, where the actors stand
+		int[] tiles = Fixtures.floorTiles(level, QUERIES, SEED+2);
+		points = new float[QUERIES*2];
+		for (int i = 0; i < tiles.length; i++) points[i] = (tiles[i]*GameData.BLOCK_SIZE) + ((i % 7)-3);
+	}
+	
+	@Override
+	public int run()
+	{
+		int i = next;
+		next = (next+1) % QUERIES;
+		
+		return level.collideSphereAll(points[i*2], RADIUS, points[(i*2)+1], RADIUS, null) ? 1 : 0;
+	}
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import com.lyeeedar.Roguelike3D.Game.Level.AStarPathfind;
+import com.lyeeedar.Roguelike3D.Game.Level.AbstractTile;
+import com.lyeeedar.Roguelike3D.Game.Level.AbstractTile.TileType;
+import com.lyeeedar.Roguelike3D.Game.Level.DelaunayTriangulation.Pnt;
+import com.lyeeedar.Roguelike3D.Game.Level.DelaunayTriangulation.Triangle;
+import com.lyeeedar.Roguelike3D.Game.Level.DelaunayTriangulation.Triangulation;
+
+/**
+ * Carving a corridor along every edge of the Delaunay triangulation of the rooms of a seeded SIZE x SIZE dungeon, the
+ * way SerkGenerator.connectRooms does with one AStarPathfind. One op carves every edge, so paths per second is
+ * paths * 10^9 / the score.
+ * <p>
+ * Each carve lowers the influence of the tiles it passes through, which changes the paths after it, so the grid is
+ * put back as it was before each op. That costs the same whatever the pathfinding does.
+ * @author Philip
+ *
+ */
+public class CorridorBenchmark extends Benchmark {
+	
+	public static final int SIZE = 200;
+	public static final long SEED = 1;
+	public static final int ROOM_ATTEMPTS = 150;
+	public static final int ROOM_MIN = 5;
+	public static final int ROOM_MAX = 12;
+	public static final int ROOM_PADDING = 2;
+	
+	AbstractTile[][] grid;
+	TileType[] types;
+	int[] influences;
+	
+	AStarPathfind pathfind;
+	int[] edges;
+	
+	public CorridorBenchmark()
+	{
+		super("AStarPathfind.carveDelaunay");
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return new String[]{"size="+SIZE, "seed="+SEED, "paths="+((edges == null) ? 0 : edges.length/4)};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		ArrayList<int[]> centres = new ArrayList<int[]>();
+		grid = Fixtures.dungeon(SIZE, SIZE, SEED, ROOM_ATTEMPTS, ROOM_MIN, ROOM_MAX, ROOM_PADDING, centres);
+		
+		types = new TileType[SIZE*SIZE];
+		influences = new int[SIZE*SIZE];
+		for (int x = 0; x < SIZE; x++)
+		{
+			for (int y = 0; y < SIZE; y++)
+			{
+				types[(x*SIZE)+y] = grid[x][y].tileType;
+				influences[(x*SIZE)+y] = grid[x][y].influence;
+			}
+		}
+		
+		Triangulation dt = new Triangulation(new Triangle(new Pnt(-10000, -10000), new Pnt(10000, -10000), new Pnt(0, 10000)));
+		for (int[] centre : centres) dt.delaunayPlace(new Pnt(centre[0], centre[1]));
+		
+		// Each edge is in two triangles, and any to the starting triangle's corners are not between rooms
+		HashSet<Long> added = new HashSet<Long>();
+		ArrayList<int[]> found = new ArrayList<int[]>();
+		for (Triangle tri : dt)
+		{
+			Pnt[] vertices = tri.toArray(new Pnt[0]);
+			for (int i = 0; i < 3; i++)
+			{
+				Pnt p1 = vertices[i];
+				Pnt p2 = vertices[(i+1) % 3];
+				if (!isRoom(p1) || !isRoom(p2)) continue;
+				
+				int a = ((int) p1.coord(0)*SIZE) + (int) p1.coord(1);
+				int b = ((int) p2.coord(0)*SIZE) + (int) p2.coord(1);
+				if (!added.add(((long) Math.min(a, b) << 32) | Math.max(a, b))) continue;
+				
+				found.add(new int[]{(int) p1.coord(0), (int) p1.coord(1), (int) p2.coord(0), (int) p2.coord(1)});
+			}
+		}
+		
+		edges = new int[found.size()*4];
+		for (int i = 0; i < found.size(); i++) System.arraycopy(found.get(i), 0, edges, i*4, 4);
+		
+		pathfind = new AStarPathfind(grid);
+	}
+	
+	private static boolean isRoom(Pnt p)
+	{
+		return p.coord(0) >= 0 && p.coord(1) >= 0 && p.coord(0) < SIZE && p.coord(1) < SIZE;
+	}
+	
+	@Override
+	public int run()
+	{
+		for (int x = 0; x < SIZE; x++)
+		{
+			for (int y = 0; y < SIZE; y++)
+			{
+				grid[x][y].tileType = types[(x*SIZE)+y];
+				grid[x][y].influence = influences[(x*SIZE)+y];
+			}
+		}
+		
+		int carved = 0;
+		for (int i = 0; i < edges.length; i += 4)
+		{
+			if (!pathfind.findPath(edges[i], edges[i+1], edges[i+2], edges[i+3])) continue;
+			
+			for (int[] pos : pathfind.getPath())
+			{
+				AbstractTile t = grid[pos[0]][pos[1]];
+				if (!t.room) t.tileType = TileType.FLOOR;
+				t.influence = 0;
+				carved++;
+			}
+		}
+		
+		return carved;
+	}
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import com.lyeeedar.Roguelike3D.Game.Level.XML.MonsterEvolver;
+
+/**
+ * A full {@link MonsterEvolver#Evolve_Creature()} run, with a fresh map each time. Reads data/xml/monsters.data so
+ * needs the runner's assets directory and a monster type from it.
+ * @author Philip
+ *
+ */
+public class EvolverBenchmark extends Benchmark {
+	
+	public static final int DEPTH = 1;
+	public static final long SEED = 1;
+	
+	MonsterEvolver evolver;
+	String monster;
+	
+	public EvolverBenchmark()
+	{
+		super("MonsterEvolver.Evolve_Creature");
+	}
+	
+	@Override
+	public String getSkipReason(BenchmarkRunner runner)
+	{
+		if (runner.assets == null || runner.monster == null) return "needs -assets and -monster";
+		return null;
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return new String[]{"monster="+monster, "depth="+DEPTH, "seed="+SEED};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		monster = runner.monster;
+		evolver = new MonsterEvolver(monster, DEPTH, SEED);
+	}
+	
+	@Override
+	public int run()
+	{
+		evolver.createMap();
+		evolver.Evolve_Creature();
+		
+		// The results are kept in the evolver, so the work cannot be dropped
+		return 1;
+	}
+}
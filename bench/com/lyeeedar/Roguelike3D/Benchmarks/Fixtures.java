@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Game.Actor.Enemy;
+import com.lyeeedar.Roguelike3D.Game.Level.AbstractTile;
+import com.lyeeedar.Roguelike3D.Game.Level.AbstractTile.TileType;
+import com.lyeeedar.Roguelike3D.Game.Level.Level;
+
+/**
+ * Levels and actors for the benchmarks. Everything is built from a seed so the same seed always gives the same level.
+ * <p>
+ * A level is walled round its edge, and every other tile is a wall with the given chance.
+ * @author Philip
+ *
+ */
+public class Fixtures {
+	
+	public static final float FLOOR = 0;
+	public static final float ROOF = 5*GameData.BLOCK_SIZE;
+	
+	public static boolean isWall(Random ran, int x, int z, int width, int height, float wallChance)
+	{
+		return x == 0 || z == 0 || x == width-1 || z == height-1 || ran.nextFloat() < wallChance;
+	}
+	
+	/**
+	 * Build a level and make it GameData.level, which a lot of the game reads
+	 */
+	public static Level level(int width, int height, long seed, float wallChance)
+	{
+		Random ran = new Random(seed);
+		
+		Level level = new Level(width, height, true, 1);
+		for (int x = 0; x < width; x++)
+		{
+			for (int z = 0; z < height; z++)
+			{
+				if (isWall(ran, x, z, width, height, wallChance)) level.tiles.set(x, z, '#', FLOOR, ROOF, ROOF);
+				else level.tiles.set(x, z, '.', FLOOR, ROOF, FLOOR);
+			}
+		}
+		level.tilesChanged();
+		
+		GameData.level = level;
+		
+		return level;
+	}
+	
+	/**
+	 * The same layout as {@link #level(int, int, long, float)} gives for the seed, as the generator's AbstractTiles.
+	 * Floor has no influence and walls a random amount on top of the default, as SerkGenerator leaves them
+	 */
+	public static AbstractTile[][] grid(int width, int height, long seed, float wallChance)
+	{
+		Random ran = new Random(seed);
+		Random noise = new Random(~seed);
+		
+		AbstractTile[][] grid = new AbstractTile[width][height];
+		for (int x = 0; x < width; x++)
+		{
+			for (int z = 0; z < height; z++)
+			{
+				AbstractTile tile = new AbstractTile(x, z, isWall(ran, x, z, width, height, wallChance) ? TileType.WALL : TileType.FLOOR);
+				tile.influence = (tile.tileType == TileType.FLOOR) ? 0 : tile.influence + noise.nextInt(50);
+				grid[x][z] = tile;
+			}
+		}
+		
+		return grid;
+	}
+	
+	/**
+	 * A solid grid with rooms placed in it as SerkGenerator places them: up to attempts random rooms between minSize
+	 * and maxSize tiles a side, each kept only if it is padding tiles clear of every other room. Room tiles are floor
+	 * with no influence, the rest are walls with a random amount on top of the default
+	 * @param centres has the {x, y} centre of each room added to it
+	 */
+	public static AbstractTile[][] dungeon(int width, int height, long seed, int attempts, int minSize, int maxSize, int padding, ArrayList<int[]> centres)
+	{
+		Random ran = new Random(seed);
+		
+		AbstractTile[][] grid = new AbstractTile[width][height];
+		for (int x = 0; x < width; x++)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				grid[x][y] = new AbstractTile(x, y, TileType.WALL);
+				grid[x][y].influence += ran.nextInt(50);
+			}
+		}
+		
+		for (int i = 0; i < attempts; i++)
+		{
+			int rwidth = minSize + ran.nextInt(maxSize-minSize+1);
+			int rheight = minSize + ran.nextInt(maxSize-minSize+1);
+			int px = padding + ran.nextInt(width-rwidth-(padding*2));
+			int py = padding + ran.nextInt(height-rheight-(padding*2));
+			
+			boolean clear = true;
+			for (int x = px-padding; x < px+rwidth+padding && clear; x++)
+			{
+				for (int y = py-padding; y < py+rheight+padding; y++)
+				{
+					if (grid[x][y].room)
+					{
+						clear = false;
+						break;
+					}
+				}
+			}
+			if (!clear) continue;
+			
+			for (int x = px; x < px+rwidth; x++)
+			{
+				for (int y = py; y < py+rheight; y++)
+				{
+					grid[x][y].room = true;
+					grid[x][y].influence = 0;
+					grid[x][y].tileType = TileType.FLOOR;
+				}
+			}
+			centres.add(new int[]{px+(rwidth/2), py+(rheight/2)});
+		}
+		
+		return grid;
+	}
+	
+	/**
+	 * @return count random floor tiles of the level as {x, z} pairs, which can repeat
+	 */
+	public static int[] floorTiles(Level level, int count, long seed)
+	{
+		Random ran = new Random(seed);
+		
+		int[] tiles = new int[count*2];
+		for (int i = 0; i < count; i++)
+		{
+			int x, z;
+			do
+			{
+				x = ran.nextInt(level.width);
+				z = ran.nextInt(level.height);
+			} while (!level.checkPassable(x, z));
+			
+			tiles[i*2] = x;
+			tiles[(i*2)+1] = z;
+		}
+		
+		return tiles;
+	}
+	
+	/**
+	 * Create count enemies on random floor tiles and add them to the level. Must be headless
+	 */
+	public static Enemy[] enemies(Level level, int count, long seed)
+	{
+		int[] tiles = floorTiles(level, count, seed);
+		
+		Enemy[] enemies = new Enemy[count];
+		for (int i = 0; i < count; i++)
+		{
+			Enemy enemy = new Enemy(new Color(1, 0, 0, 1), "blank", tiles[i*2]*GameData.BLOCK_SIZE, 0, tiles[(i*2)+1]*GameData.BLOCK_SIZE,
+					1, GL20.GL_TRIANGLES, "cube", "2", "2", "2");
+			enemy.create();
+			enemy.positionYAbsolutely(enemy.radius);
+			
+			level.addGameActor(enemy);
+			enemies[i] = enemy;
+		}
+		
+		return enemies;
+	}
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import java.util.Random;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
+import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager.LightQuality;
+import com.lyeeedar.Roguelike3D.Graphics.Lights.PointLight;
+import com.lyeeedar.Roguelike3D.Graphics.Models.Shapes;
+import com.lyeeedar.Roguelike3D.Graphics.Models.TempMesh;
+
+/**
+ * The two mesh builds done while loading a level: {@link Shapes#merge(TempMesh[])} of a chunk's worth of tile
+ * cuboids, and {@link Shapes#insertLight(Mesh, LightManager, boolean, Matrix4)} baking LIGHTS static lights into the
+ * merged mesh. Meshes are built as vertex arrays when there is no GL context, which needs the gdx natives.
+ * @author Philip
+ *
+ */
+public class MeshBenchmark extends Benchmark {
+	
+	public static final int MERGE = 0;
+	public static final int INSERT_LIGHT = 1;
+	
+	public static final long SEED = 1;
+	public static final int CHUNK = 8;
+	public static final int LIGHTS = 8;
+	
+	final int mode;
+	
+	TempMesh[] tiles;
+	Mesh merged;
+	LightManager lights;
+	final Matrix4 transform = new Matrix4();
+	
+	public MeshBenchmark(int mode)
+	{
+		super((mode == MERGE) ? "Shapes.merge" : "Shapes.insertLight");
+		this.mode = mode;
+	}
+	
+	@Override
+	public String getSkipReason(BenchmarkRunner runner)
+	{
+		if (!runner.nativesLoaded) return "needs the gdx natives";
+		return null;
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return (mode == MERGE) ? new String[]{"tiles="+(CHUNK*CHUNK)} : new String[]{"tiles="+(CHUNK*CHUNK), "lights="+LIGHTS};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		Random ran = new Random(SEED);
+		
+		tiles = new TempMesh[CHUNK*CHUNK];
+		for (int x = 0; x < CHUNK; x++)
+		{
+			for (int z = 0; z < CHUNK; z++)
+			{
+				float height = (ran.nextFloat() < 0.3f) ? Fixtures.ROOF : 1;
+				
+				TempMesh tile = Shapes.genTempCuboid(GameData.BLOCK_SIZE, height, GameData.BLOCK_SIZE);
+				Shapes.translateCubeVertices(tile.vertexNum, tile.vertexSize, tile.vertices, x*GameData.BLOCK_SIZE, 0, z*GameData.BLOCK_SIZE);
+				tiles[(x*CHUNK)+z] = tile;
+			}
+		}
+		
+		if (mode == INSERT_LIGHT)
+		{
+			merged = Shapes.merge(tiles);
+			
+			lights = new LightManager(LIGHTS, LightQuality.FORWARD_VERTEX);
+			lights.setAmbient(0.2f, 0.2f, 0.2f, 0, -1, 0);
+			for (int i = 0; i < LIGHTS; i++)
+			{
+				Vector3 position = new Vector3(ran.nextFloat()*CHUNK*GameData.BLOCK_SIZE, 5, ran.nextFloat()*CHUNK*GameData.BLOCK_SIZE);
+				lights.addStaticLight(new PointLight(position, new Color(ran.nextFloat(), ran.nextFloat(), ran.nextFloat(), 1), 0.07f, 0.5f));
+			}
+		}
+	}
+	
+	@Override
+	public int run()
+	{
+		Mesh mesh = (mode == MERGE) ? Shapes.merge(tiles) : Shapes.insertLight(merged, lights, true, transform);
+		int vertices = mesh.getNumVertices();
+		mesh.dispose();
+		
+		return vertices;
+	}
+	
+	@Override
+	public void teardown()
+	{
+		if (merged != null) merged.dispose();
+		merged = null;
+	}
+}
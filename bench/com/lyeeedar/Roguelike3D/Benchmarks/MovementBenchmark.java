@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import java.util.Random;
+
+import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Game.Actor.Enemy;
+import com.lyeeedar.Roguelike3D.Game.Level.Level;
+
+/**
+ * {@link com.lyeeedar.Roguelike3D.Game.GameObject#applyMovement(float, float)} for ACTORS enemies of a seeded level
+ * in turn, each pushed in a random direction at walking speed so they slide along walls and into each other.
+ * @author Philip
+ *
+ */
+public class MovementBenchmark extends Benchmark {
+	
+	public static final int SIZE = 100;
+	public static final long SEED = 1;
+	public static final float WALLS = 0.2f;
+	public static final int ACTORS = 500;
+	public static final int DIRECTIONS = 1024;
+	public static final float SPEED = 0.1f;
+	public static final float STEP = 1f/60f;
+	
+	Enemy[] enemies;
+	float[] directions;
+	int next = 0;
+	int direction = 0;
+	
+	public MovementBenchmark()
+	{
+		super("GameObject.applyMovement");
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return new String[]{"size="+SIZE, "seed="+SEED, "walls="+WALLS, "actors="+ACTORS};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		Level level = Fixtures.level(SIZE, SIZE, SEED, WALLS);
+		enemies = Fixtures.enemies(level, ACTORS, SEED+1);
+		for (Enemy enemy : enemies) enemy.WEIGHT = 1;
+		
+		Random ran = new Random(SEED+2);
+		directions = new float[DIRECTIONS*2];
+		for (int i = 0; i < DIRECTIONS; i++)
+		{
+			double angle = ran.nextDouble()*Math.PI*2;
+			directions[i*2] = (float) Math.cos(angle)*SPEED;
+			directions[(i*2)+1] = (float) Math.sin(angle)*SPEED;
+		}
+	}
+	
+	@Override
+	public int run()
+	{
+		Enemy enemy = enemies[next];
+		next = (next+1) % ACTORS;
+		
+		int d = direction;
+		direction = (direction+1) % DIRECTIONS;
+		
+		enemy.velocity.set(directions[d*2], 0, directions[(d*2)+1]);
+		enemy.applyMovement(STEP, GameData.gravity*10*enemy.WEIGHT);
+		
+		return (int) enemy.position.x;
+	}
+}
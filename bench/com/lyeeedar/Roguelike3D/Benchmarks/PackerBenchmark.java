@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import java.util.Random;
+
+import com.badlogic.gdx.tools.imagepacker.MaxRectsPacker;
+import com.badlogic.gdx.tools.imagepacker.TexturePacker2.Rect;
+import com.badlogic.gdx.tools.imagepacker.TexturePacker2.Settings;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * {@link MaxRectsPacker#pack(Array)} of RECTS random sized sprites with the default settings. pack changes the
+ * rects it is given, so fresh ones are made each time.
+ * @author Philip
+ *
+ */
+public class PackerBenchmark extends Benchmark {
+	
+	public static final long SEED = 1;
+	public static final int RECTS = 200;
+	public static final int MIN_SIZE = 8;
+	public static final int MAX_SIZE = 64;
+	
+	MaxRectsPacker packer;
+	int[] sizes;
+	
+	public PackerBenchmark()
+	{
+		super("MaxRectsPacker.pack");
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return new String[]{"rects="+RECTS, "sizes="+MIN_SIZE+"-"+MAX_SIZE};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		Random ran = new Random(SEED);
+		
+		sizes = new int[RECTS*2];
+		for (int i = 0; i < sizes.length; i++) sizes[i] = MIN_SIZE + ran.nextInt(MAX_SIZE-MIN_SIZE+1);
+		
+		packer = new MaxRectsPacker(new Settings());
+	}
+	
+	@Override
+	public int run()
+	{
+		Array<Rect> rects = new Array<Rect>(RECTS);
+		for (int i = 0; i < RECTS; i++)
+		{
+			Rect rect = new Rect();
+			rect.width = sizes[i*2];
+			rect.height = sizes[(i*2)+1];
+			rects.add(rect);
+		}
+		
+		return packer.pack(rects).size;
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.lyeeedar.Graphics.ParticleEffects.ParticleEmitter;
+
+/**
+ * {@link ParticleEmitter#update(float, com.badlogic.gdx.graphics.Camera)} of a fire camp flame with enough particles
+ * to keep it busy, which moves the particles and rebuilds every billboard's vertices on the CPU. The emitter is run
+ * for a few seconds first so it is full. Needs the gdx natives for the matrix maths and the vertex array.
+ * @author Philip
+ *
+ */
+public class ParticleBenchmark extends Benchmark {
+	
+	public static final float STEP = 1f/60f;
+	public static final float EMISSION_TIME = 0.002f;
+	public static final long SEED = 1;
+	
+	ParticleEmitter flame;
+	PerspectiveCamera cam;
+	
+	public ParticleBenchmark()
+	{
+		super("ParticleEmitter.update");
+	}
+	
+	@Override
+	public String getSkipReason(BenchmarkRunner runner)
+	{
+		if (!runner.nativesLoaded) return "needs the gdx natives";
+		return null;
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return new String[]{"particles="+((flame == null) ? 0 : flame.maxParticles)};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		// As LevelObject makes a fire camp, but emitting more often
+		flame = new ParticleEmitter(2, 2, EMISSION_TIME, 1.0f, 0.0f, 1.0f, 0, GL20.GL_SRC_ALPHA, GL20.GL_ONE, "f", "name");
+		flame.createBasicEmitter(2, 1, new Color(0.8f, 0.9f, 0.1f, 1.0f), new Color(1.0f, 0.0f, 0.0f, 1.0f), 0, 3.5f, 0);
+		flame.setSpriteTimeline(true, new float[]{0, 0}, new float[]{2, 2});
+		flame.seed = SEED;
+		flame.calculateParticles();
+		flame.create();
+		flame.setPosition(0, 0, 0);
+		
+		cam = new PerspectiveCamera(67, 800, 600);
+		cam.position.set(0, 5, 20);
+		cam.lookAt(0, 0, 0);
+		cam.update();
+		
+		for (float time = 0; time < 4; time += STEP) flame.update(STEP, cam);
+	}
+	
+	@Override
+	public int run()
+	{
+		flame.update(STEP, cam);
+		return flame.getActiveParticles();
+	}
+	
+	@Override
+	public void teardown()
+	{
+		flame.dispose();
+	}
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import com.lyeeedar.Roguelike3D.Game.Level.AStarPathfind;
+import com.lyeeedar.Roguelike3D.Game.Level.Level;
+
+/**
+ * {@link AStarPathfind#findPath(int, int, int, int)} between random floor tiles of a seeded level, reusing one
+ * AStarPathfind as PathService does.
+ * @author Philip
+ *
+ */
+public class PathfindBenchmark extends Benchmark {
+	
+	public static final int SIZE = 100;
+	public static final long SEED = 1;
+	public static final float WALLS = 0.2f;
+	public static final int PAIRS = 256;
+	
+	AStarPathfind pathfind;
+	int[] starts;
+	int[] ends;
+	int next = 0;
+	
+	public PathfindBenchmark()
+	{
+		super("AStarPathfind.findPath");
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return new String[]{"size="+SIZE, "seed="+SEED, "walls="+WALLS, "pairs="+PAIRS};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		Level level = Fixtures.level(SIZE, SIZE, SEED, WALLS);
+		starts = Fixtures.floorTiles(level, PAIRS, SEED+1);
+		ends = Fixtures.floorTiles(level, PAIRS, SEED+2);
+		
+		pathfind = new AStarPathfind(Fixtures.grid(SIZE, SIZE, SEED, WALLS));
+	}
+	
+	@Override
+	public int run()
+	{
+		int i = next;
+		next = (next+1) % PAIRS;
+		
+		return pathfind.findPath(starts[i*2], starts[(i*2)+1], ends[i*2], ends[(i*2)+1]) ? 1 : 0;
+	}
+}
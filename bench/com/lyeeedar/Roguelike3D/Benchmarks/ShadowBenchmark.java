@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Benchmarks;
+
+import com.lyeeedar.Roguelike3D.Game.Shadow;
+import com.lyeeedar.Roguelike3D.Game.Level.Level;
+
+/**
+ * Shadow casting field of view from a different random floor tile of a seeded level each time, so the cached
+ * result is never reused.
+ * @author Philip
+ *
+ */
+public class ShadowBenchmark extends Benchmark {
+	
+	public static final int SIZE = 256;
+	public static final long SEED = 1;
+	public static final float WALLS = 0.2f;
+	public static final int VIEWERS = 256;
+	
+	Level level;
+	Shadow shadow;
+	int[] viewers;
+	int next = 0;
+	
+	public ShadowBenchmark()
+	{
+		super("Shadow.ComputeFieldOfViewWithShadowCasting");
+	}
+	
+	@Override
+	public String[] getParams()
+	{
+		return new String[]{"size="+SIZE, "seed="+SEED, "walls="+WALLS};
+	}
+	
+	@Override
+	public void setup(BenchmarkRunner runner)
+	{
+		level = Fixtures.level(SIZE, SIZE, SEED, WALLS);
+		viewers = Fixtures.floorTiles(level, VIEWERS, SEED+1);
+		
+		shadow = new Shadow();
+	}
+	
+	@Override
+	public int run()
+	{
+		int i = next;
+		next = (next+1) % VIEWERS;
+		
+		// Neighbouring viewers can share a tile, so always invalidate the last result
+		level.tilesChanged();
+		shadow.ComputeFieldOfViewWithShadowCasting(viewers[i*2], viewers[(i*2)+1], level.levelArray);
+		
+		return shadow.getVisibleCount();
+	}
+}
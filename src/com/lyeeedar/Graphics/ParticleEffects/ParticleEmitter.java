@@ -14,7 +14,6 @@ import java.io.Serializable;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
 
 import com.badlogic.gdx.Gdx;
@@ -35,10 +34,12 @@ import com.badlogic.gdx.utils.Json;
 import com.badlogic.gdx.utils.Pools;
 import com.badlogic.gdx.utils.ObjectMap.Entry;
 import com.badlogic.gdx.utils.OrderedMap;
+import com.lyeeedar.Roguelike3D.Game.GameData;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.PointLight;
 import com.lyeeedar.Utils.Bag;
 import com.lyeeedar.Utils.FileUtils;
+import com.lyeeedar.Utils.SplitRandom;
 
 public class ParticleEmitter implements Serializable {
 
@@ -73,6 +74,10 @@ public class ParticleEmitter implements Serializable {
 	public int blendFuncSRC;
 	public int blendFuncDST;
 	public String atlasName;
+	/**
+	 * Seeds where particles are placed, each emitter has its own unless set
+	 */
+	public long seed = SplitRandom.newSeed();
 	// ----- End Emitter parameters ----- //
 
 	// ----- Light ----- //
@@ -100,7 +105,7 @@ public class ParticleEmitter implements Serializable {
 	private transient Vector3 quad;
 	private transient float[] vertices;
 	private transient Mesh mesh;
-	private transient Random ran;
+	private transient SplitRandom ran;
 	private transient Matrix4 tmpMat;
 	private transient Matrix4 tmpRot;
 	private transient Vector3 pos;
@@ -341,12 +346,12 @@ public class ParticleEmitter implements Serializable {
 
 	public void create() {
 
-		if (shader == null)
+		if (shader == null && !GameData.headless)
 		{
 			shader = new ShaderProgram(SHADER_VERTEX, SHADER_FRAGMENT);
 		}
 
-		ran = new Random();
+		ran = new SplitRandom(seed);
 
 		quad = Pools.obtain(Vector3.class).set(0, 0, 0);
 		tmpMat = Pools.obtain(Matrix4.class).idt();
@@ -426,12 +431,6 @@ public class ParticleEmitter implements Serializable {
 	
 	public void reloadTextures()
 	{
-		atlas = FileUtils.loadAtlas(atlasName);
-		Set<Texture> atlasTextures = atlas.getTextures();
-		Iterator<Texture> itr = atlasTextures.iterator();
-
-		atlasTexture = itr.next();
-
 		int maxIndex = 0;
 		for (TimelineValue spriteTL : sprite)
 		{
@@ -445,6 +444,15 @@ public class ParticleEmitter implements Serializable {
 		botLeftTexCoords = new float[maxIndex+1][2];
 		botRightTexCoords = new float[maxIndex+1][2];
 
+		// There is no atlas to read the sprites from, so every sprite is left at 0,0
+		if (GameData.headless) return;
+
+		atlas = FileUtils.loadAtlas(atlasName);
+		Set<Texture> atlasTextures = atlas.getTextures();
+		Iterator<Texture> itr = atlasTextures.iterator();
+
+		atlasTexture = itr.next();
+
 		for (int i = 0; i < maxIndex+1; i++)
 		{
 			AtlasRegion region = atlas.findRegion("sprite"+i);
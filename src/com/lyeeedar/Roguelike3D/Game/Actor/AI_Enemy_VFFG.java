@@ -15,12 +15,10 @@ import java.util.ArrayList;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
-import com.badlogic.gdx.graphics.Camera;
-import com.badlogic.gdx.graphics.PerspectiveCamera;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.Ray;
-import com.badlogic.gdx.utils.Pools;
 import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Game.Level.FlowField;
 import com.lyeeedar.Utils.Bag;
 
 public class AI_Enemy_VFFG extends AI_Package {
@@ -31,11 +29,18 @@ public class AI_Enemy_VFFG extends AI_Package {
 	private static final long serialVersionUID = -1020570810692893435L;
 	public static final float VIEW_NEAR = 0.1f;
 	public static final float VIEW_FAR = 1000f;
+	public static final float VIEW_FOV = 67f;
 	
 	private final ArrayDeque<int[]> moves = new ArrayDeque<int[]>();
 	
 	private int[] tile = new int[2];
 	
+	private final int[] step = new int[2];
+	
+	// The target tile of the last path found by chase, when not using the flow field
+	private transient int pathx = -1;
+	private transient int pathz = -1;
+	
 	private final int violence; private final int flee; private final int feed; private final int guard;
 
 	public AI_Enemy_VFFG(GameActor actor, int violence, int flee, int feed, int guard) {
@@ -48,15 +53,34 @@ public class AI_Enemy_VFFG extends AI_Package {
 	}
 
 	private transient float move = 0;
+	
+	// What think decided to do this tick
+	private transient boolean turning = false;
+	private transient float turn = 0;
+	private transient boolean stepping = false;
+	private transient boolean attacking = false;
+	private transient float attackDist = 0;
+	
+	private transient Vector3 tmp;
+	private transient Vector3 right;
+	
 	@Override
-	public void evaluateAI(float delta) {
-		Vector3 tmp = Pools.obtain(Vector3.class);
+	public void think(float delta) {
+		if (tmp == null)
+		{
+			tmp = new Vector3();
+			right = new Vector3();
+		}
 		
 		int x = (int)((actor.position.x / 10) + 0.5f);
-		int y = (int)((actor.position.y / 10) + 0.5f);
+		int y = (int)((actor.position.z / 10) + 0.5f);
 		
 		move = GameData.calculateSpeed(actor.WEIGHT, actor.STRENGTH);
-		actor.velocity.add(0, -GameData.gravity*move*actor.WEIGHT, 0);
+		
+		chase(GameData.player, x, y);
+		
+		turning = false;
+		stepping = false;
 		
 		if (moves.size() == 0)
 		{
@@ -73,65 +97,137 @@ public class AI_Enemy_VFFG extends AI_Package {
 			tile[1] = temp[1] * 10;
 			
 			double a = angle(actor.rotation, tmp.set(actor.position).sub(tile[0], 0, tile[1]).nor());
-
+			
+			turning = true;
 			if (Math.abs(a) < delta*100)
 			{
-				actor.rotate(0,  1, 0, (float) a);
-				actor.forward_backward(move);
+				turn = (float) a;
+				stepping = true;
 			}
 			else if (a > 0)
 			{
-				actor.rotate(0, 1, 0, -delta*100);
+				turn = -delta*100;
 			}
 			else
 			{
-				actor.rotate(0, 1, 0, delta*100);
+				turn = delta*100;
 			}
 		}
 		
+		attacking = false;
+		
 		Bag<GameActor> actors = getVisibleActors();
 		
-		for (GameActor ga : actors)
+		for (int i = 0; i < actors.size; i++)
 		{
+			GameActor ga = actors.get(i);
 			if (!actor.checkFaction(ga.FACTIONS))
 			{
 				double a = angle(actor.rotation, tmp.set(actor.position).sub(ga.position).nor());
 				float dist = actor.position.dst(ga.position);
-
+				
 				if (Math.abs(a) < 15)
 				{
-					if (actor.L_HAND != null)
-					{
-						actor.L_HAND.released();
-						if (dist <= actor.L_HAND.range)
-						{
-							actor.L_HAND.held();
-						}
-					}
-					
-					if (actor.R_HAND != null)
-					{
-						actor.R_HAND.released();
-						if (dist <= actor.R_HAND.range)
-						{
-							actor.R_HAND.held();
-						}
-					}
-					
+					attacking = true;
+					attackDist = dist;
 					break;
 				}
 			}
 		}
+	}
+	
+	@Override
+	public void evaluateAI(float delta) {
+		actor.velocity.add(0, -GameData.gravity*move*actor.WEIGHT, 0);
+		
+		if (turning) actor.rotate(0, 1, 0, turn);
+		if (stepping) actor.forward_backward(move);
+		
+		if (attacking)
+		{
+			if (actor.L_HAND != null)
+			{
+				actor.L_HAND.released();
+				if (attackDist <= actor.L_HAND.range)
+				{
+					actor.L_HAND.held();
+				}
+			}
+			
+			if (actor.R_HAND != null)
+			{
+				actor.R_HAND.released();
+				if (attackDist <= actor.R_HAND.range)
+				{
+					actor.R_HAND.held();
+				}
+			}
+		}
 		
-		Pools.free(tmp);
 		actor.applyMovement(delta, GameData.gravity*10*(float)actor.WEIGHT);
 	}
 	
+	/**
+	 * Step towards a hostile player within VIEW_FAR, using the level's shared flow field when enough actors are chasing
+	 * for it to be built, and a path from the level's PathService when not
+	 */
+	private void chase(GameActor target, int x, int z)
+	{
+		if (target == null || target == actor || target.FACTIONS == null) return;
+		if (actor.checkFaction(target.FACTIONS)) return;
+		if (actor.position.dst2(target.position) > VIEW_FAR*VIEW_FAR) return;
+		
+		final FlowField field = GameData.level.getFlowField();
+		field.addChaser();
+		
+		if (field.isActive())
+		{
+			pathx = -1;
+			if (field.getNextStep(x, z, step))
+			{
+				moves.clear();
+				moves.add(step);
+			}
+			return;
+		}
+		
+		int tx = (int)((target.position.x / 10) + 0.5f);
+		int tz = (int)((target.position.z / 10) + 0.5f);
+		if (tx == pathx && tz == pathz && moves.size() > 0) return;
+		
+		pathx = tx;
+		pathz = tz;
+		moveTo(tx, tz);
+	}
+	
+	/**
+	 * Replace the queued moves with a path to the given tile
+	 * @return false if the tile cannot be reached
+	 */
+	public boolean moveTo(int x, int z)
+	{
+		int sx = (int)((actor.position.x / 10) + 0.5f);
+		int sz = (int)((actor.position.z / 10) + 0.5f);
+		
+		int[][] path = GameData.level.getPathService().getPath(sx, sz, x, z);
+		
+		moves.clear();
+		if (path == null) return false;
+		
+		for (int i = 1; i < path.length; i++)
+		{
+			moves.add(path[i]);
+		}
+		
+		return true;
+	}
+	
 	private static final Vector3 up = new Vector3(0, 1, 0);
 	public double angle(Vector3 v1, Vector3 v2)
 	{
 		Vector3 referenceForward = v1;
-		Vector3 referenceRight = up.tmp2().crs(referenceForward);
+		if (right == null) right = new Vector3();
+		Vector3 referenceRight = right.set(up).crs(referenceForward);
 		Vector3 newDirection = v2;
 		float angle = (float) Math.toDegrees(Math.acos(v1.dot(v2) / (v1.len()*v2.len())));
 		float sign = (newDirection.dot(referenceRight) > 0.0f) ? 1.0f: -1.0f;
@@ -139,26 +235,17 @@ public class AI_Enemy_VFFG extends AI_Package {
 		return finalAngle;
 	}
 
+	@Override
+	public boolean usesPerception()
+	{
+		return true;
+	}
+
+	/**
+	 * The actors within VIEW_FAR and VIEW_FOV that were in line of sight at the start of this tick. Must not be modified.
+	 */
 	public Bag<GameActor> getVisibleActors()
 	{
-		Camera cam = new PerspectiveCamera();
-		cam.position.set(actor.position);
-		cam.direction.set(actor.rotation);
-		cam.near = VIEW_NEAR;
-		cam.far = VIEW_FAR;
-		cam.update();
-		
-		Bag<GameActor> actors = new Bag<GameActor>();
-		
-//		for (GameActor ga : GameData.level.getActors())
-//		{
-//			if (actor.getPosition().dst2(ga.getPosition()) < VIEW_FAR)
-//			{
-//				Ray ray = new Ray(actor.getPosition(), ga.getPosition().tmp().sub(actor.getPosition()).nor());
-//				if (!GameData.level.checkLevelCollisionRay(ray, ga.getPosition().dst2(actor.getPosition()))) actors.add(ga);
-//			}
-//		}
-		
-		return actors;
+		return GameData.level.getPerception().getVisible(actor);
 	}
 }
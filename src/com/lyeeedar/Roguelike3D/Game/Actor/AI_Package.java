@@ -23,7 +23,28 @@ public abstract class AI_Package implements Serializable {
 		this.actorUID = actor.UID;
 	}
 	
+	/**
+	 * First half of the AI's tick, deciding what to do. This can run at the same time as other actors' think, so it
+	 * may read the level and other actors but must only change this AI's own state. Does nothing by default.
+	 */
+	public void think(float delta)
+	{
+		
+	}
+	
+	/**
+	 * Second half of the AI's tick, run on the update thread one actor at a time, which carries out what think decided
+	 * (moving the actor, using its equipment and so on).
+	 */
 	public abstract void evaluateAI(float delta);
+	
+	/**
+	 * Whether the level should work out what this actor can see each tick, see {@link com.lyeeedar.Roguelike3D.Game.Level.Perception}
+	 */
+	public boolean usesPerception()
+	{
+		return false;
+	}
 
 	public void fixReferences(GameActor actor)
 	{
@@ -134,6 +134,16 @@ public abstract class GameActor extends GameObject{
 		this.Yrotate(90);
 	}
 	
+	/**
+	 * Run the AI's think phase, see {@link AI_Package#think(float)}. Called before update, possibly in parallel with other actors
+	 */
+	public void think(float delta)
+	{
+		if (ai == null) return;
+		if (!alive) return;
+		ai.think(delta);
+	}
+	
 	@Override
 	public void update(float delta, Camera cam)
 	{
@@ -164,7 +174,7 @@ public abstract class GameActor extends GameObject{
 		{
 			for (Map.Entry<Integer, Item> entry : INVENTORY.entrySet())
 			{
-				if (ran.nextInt(101) < entry.getKey())
+				if (getRandom().nextInt(101) < entry.getKey())
 				{
 					System.out.println(entry.getValue());
 				}
@@ -220,6 +230,6 @@ public abstract class GameActor extends GameObject{
 	public void changeTile(Tile src, Tile dst)
 	{
 		src.removeGameActor(UID);
-		dst.actors.add(this);
+		dst.addGameActor(this);
 	}
 }
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game;
+
+/**
+ * Drives a simulation at a fixed tick rate whatever the frame rate.
+ * <p>
+ * Each frame's delta is added to an accumulator and the simulation is ticked once for every whole step in it,
+ * up to maxSteps ticks per frame (after which the backlog is dropped so a slow frame cannot snowball). What is left
+ * over is given by {@link #getAlpha()}, the fraction of the way from the last tick to the next, which rendering
+ * uses to interpolate between the last two simulation states.
+ * <p>
+ * Nothing here touches the graphics, so a Simulation can be run headless by calling {@link #advance(float, Simulation)}
+ * in a loop.
+ * @author Philip
+ *
+ */
+public class FixedTimestep {
+	
+	public static final float DEFAULT_STEP = 1f/60f;
+	public static final int DEFAULT_MAX_STEPS = 5;
+	
+	public interface Simulation
+	{
+		public void tick(float step);
+	}
+	
+	public final float step;
+	public final int maxSteps;
+	
+	private float accumulator = 0;
+	
+	public long ticks = 0;
+	public long dropped = 0;
+	
+	public FixedTimestep()
+	{
+		this(DEFAULT_STEP, DEFAULT_MAX_STEPS);
+	}
+	
+	public FixedTimestep(float step, int maxSteps)
+	{
+		this.step = step;
+		this.maxSteps = maxSteps;
+	}
+	
+	/**
+	 * Add delta to the accumulator and tick the simulation for each whole step in it
+	 * @return the number of ticks run
+	 */
+	public int advance(float delta, Simulation simulation)
+	{
+		accumulator += delta;
+		
+		int steps = 0;
+		while (accumulator >= step)
+		{
+			if (steps == maxSteps)
+			{
+				int behind = (int) (accumulator / step);
+				dropped += behind;
+				accumulator -= behind*step;
+				break;
+			}
+			
+			simulation.tick(step);
+			accumulator -= step;
+			steps++;
+			ticks++;
+		}
+		
+		return steps;
+	}
+	
+	/**
+	 * @return how far between the last tick and the next the current time is, from 0 to 1
+	 */
+	public float getAlpha()
+	{
+		return accumulator / step;
+	}
+	
+	public void reset()
+	{
+		accumulator = 0;
+	}
+}
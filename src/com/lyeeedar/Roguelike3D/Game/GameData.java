@@ -33,6 +33,7 @@ import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager.LightQuality;
 import com.lyeeedar.Roguelike3D.Graphics.Models.SkyBox;
 import com.lyeeedar.Utils.Bag;
+import com.lyeeedar.Utils.SplitRandom;
 
 public class GameData {
 	
@@ -168,10 +169,22 @@ public class GameData {
 	public static HashMap<String, LevelContainer> dungeon;
 	public static String currentLevel;
 	
+	/**
+	 * The seed the dungeon was generated from. Printed on a new game, and can be set with -Droguelike3d.seed=
+	 * to generate the same dungeon again
+	 */
+	public static long seed;
+	
 	public static Roguelike3DGame game;
 	public static int[] resolution = {800, 600};
 	public static ApplicationChanger applicationChanger;
 	public static boolean isAndroid = false;
+	
+	/**
+	 * Running without a GL context (see HeadlessSimulation). Only models and particle effects are skipped: models
+	 * are not loaded, particle effects are left out and nothing is rendered
+	 */
+	public static boolean headless = false;
 	public static final Controls controls = new Controls();
 
 	public static void createApplication() {
@@ -212,9 +225,12 @@ public class GameData {
 	{
 		GameStats.init();
 		
+		seed = Long.getLong("roguelike3d.seed", SplitRandom.newSeed());
+		System.out.println("Dungeon seed: "+seed);
+		
 		DungeonReader dr = new DungeonReader();
 		
-		dungeon = dr.getDungeon();
+		dungeon = dr.getDungeon(seed);
 		
 		currentLevel = "start_town";
 
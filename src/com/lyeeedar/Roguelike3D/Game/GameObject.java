@@ -21,11 +21,13 @@ import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Pools;
 import com.lyeeedar.Graphics.ParticleEffects.ParticleEffect;
 import com.lyeeedar.Graphics.ParticleEffects.ParticleEmitter;
+import com.lyeeedar.Roguelike3D.Game.Level.CollisionQuery;
 import com.lyeeedar.Roguelike3D.Game.Level.Level;
 import com.lyeeedar.Roguelike3D.Game.Level.Tile;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Models.VisibleObject;
 import com.lyeeedar.Roguelike3D.Graphics.Renderers.Renderer;
+import com.lyeeedar.Utils.SplitRandom;
 
 public abstract class GameObject implements Serializable {
 
@@ -36,6 +38,11 @@ public abstract class GameObject implements Serializable {
 	public static final float Y_ROTATE = -360f/500f;
 	public static final int MAX_SPEED = 4;
 	
+	/**
+	 * The most times a movement will slide along the surfaces it hits in one update
+	 */
+	public static final int MAX_SLIDES = 3;
+	
 	public final String UID;
 	
 	public final Vector3 position = new Vector3();
@@ -54,7 +61,33 @@ public abstract class GameObject implements Serializable {
 	public String shortDesc = "";
 	public String longDesc = "";
 	
-	public transient Random ran;
+	/**
+	 * Handle of this object in the level's SpatialHash, 0 if it is not held in one
+	 */
+	public transient int spatialHandle = 0;
+	
+	/**
+	 * Slot+1 of this object in the level's EntityRegistry, 0 if it is not held in one
+	 */
+	public transient int registryIndex = 0;
+	
+	/**
+	 * Time owed to this object while the UpdateScheduler has it asleep, and how much longer it is kept awake for
+	 */
+	public transient float sleepDelta = 0;
+	public transient float wakeTime = 0;
+	
+	/**
+	 * Position at the previous simulation tick, which rendering interpolates from
+	 */
+	public transient float lastX;
+	public transient float lastY;
+	public transient float lastZ;
+	
+	/**
+	 * Made on first use by {@link #getRandom()}
+	 */
+	private transient Random ran;
 	public transient Vector3 offsetPos;
 	public transient Vector3 offsetRot;
 
@@ -84,87 +117,57 @@ public abstract class GameObject implements Serializable {
 		if (velocity.z > MAX_SPEED) velocity.z = MAX_SPEED;
 		
 		Level lvl = GameData.level;
+		CollisionQuery query = CollisionQuery.get();
 		
-		Vector3 tmp = Pools.obtain(Vector3.class);
-		Vector3 v = Pools.obtain(Vector3.class).set(velocity.x, (velocity.y - 0.5f*vertical_acceleration*delta), velocity.z);
-		v.mul(delta*100);
+		float scale = delta*100;
+		float vx = velocity.x*scale;
+		float vy = (velocity.y - 0.5f*vertical_acceleration*delta)*scale;
+		float vz = velocity.z*scale;
 		
-		Tile below = lvl.getTile(position.x+v.x, position.z+v.z);
+		Tile below = lvl.getTile(position.x+vx, position.z+vz);
 		if (below == null) {
 			velocity.x = 0;
 			velocity.z = 0;
 		}
 		
-		// Check for collision
-		if (lvl.collideSphereAll(position.x+v.x, position.y+v.y, position.z+v.z, radius, UID))
+		grounded = false;
+		
+		// Sweep along the movement, then slide the remainder along whatever was hit
+		for (int i = 0; i < MAX_SLIDES; i++)
 		{
-			// Collision! Now time to find which axis the collision was on. (Vertical or Horizontal)
+			float t = lvl.sweepSphere(position.x, position.y, position.z, radius, vx, vy, vz, UID, query);
 			
-			// ----- Check Vertical START ----- //
-			
-			if (lvl.collideSphereActorsAll(position.x, position.y+v.y, position.z, radius, UID) != null || 
-					lvl.collideSphereLevelObjectsAll(position.x, position.y+v.y, position.z, radius) != null)
+			// No collision! So move normally
+			if (t >= 1)
 			{
-				velocity.y = 0;
-				grounded = true;
-			}
-			// below
-			else if (position.y+v.y-radius < below.floor) {
-				
-				velocity.y = 0;
-				grounded = true;
-				
-				tmp.set(position.x, below.floor+radius, position.z);
-				if (!lvl.collideSphereAll(tmp.x, tmp.y, tmp.z, radius, UID))
-				{
-					this.positionAbsolutely(tmp.x, tmp.y, tmp.z);
-				}
+				this.translate(vx, vy, vz);
+				break;
 			}
-			// above
-			else if (lvl.hasRoof && position.y+v.y+radius > below.roof) {
-				velocity.y = 0;
-				grounded = false;
-				
-				tmp.set(position.x, below.roof-radius, position.z);
-				if (!lvl.collideSphereAll(tmp.x, tmp.y, tmp.z, radius, UID))
-				{
-					this.positionAbsolutely(tmp.x, tmp.y, tmp.z);
-				}
-			}
-			// No y collision
-			else
-			{
-				this.translate(0, v.y, 0);
-				grounded = false;
-			}
-
-			// ----- Check Vertical END ----- //
 			
+			// Stop just short of the contact
+			float len = (float) Math.sqrt((vx*vx)+(vy*vy)+(vz*vz));
+			float move = Math.max(0, t - (Level.SWEEP_SKIN/len));
+			this.translate(vx*move, vy*move, vz*move);
 			
-			// ----- Check Horizontal START ----- //
+			float nx = query.normalX, ny = query.normalY, nz = query.normalZ;
 			
-			if (lvl.collideSphereAll(position.x+v.x, position.y, position.z+v.z, radius, UID)) {
-
-				if (lvl.collideSphereAll(position.x+v.x, position.y, position.z, radius, UID)) {
-					velocity.x = 0;
-					v.x = 0;
-				}
-
-				if (lvl.collideSphereAll(position.x, position.y, position.z+v.z, radius, UID)) {
-					velocity.z = 0;
-					v.z = 0;
-				}
+			if (ny > 0.7f) grounded = true;
+			
+			// Remove the part of the velocity going into the surface
+			float dot = (velocity.x*nx)+(velocity.y*ny)+(velocity.z*nz);
+			if (dot < 0)
+			{
+				velocity.x -= nx*dot;
+				velocity.y -= ny*dot;
+				velocity.z -= nz*dot;
 			}
 			
-			this.translate(v.x, 0, v.z);
+			// Slide the rest of the movement along the surface
+			vx *= 1-t; vy *= 1-t; vz *= 1-t;
+			dot = (vx*nx)+(vy*ny)+(vz*nz);
+			vx -= nx*dot; vy -= ny*dot; vz -= nz*dot;
 			
-			// ----- Check Horizontal END ----- //
-		}
-		// No collision! So move normally
-		else
-		{
-			this.translate(v.x, v.y, v.z);
-			grounded = false;
+			if ((vx*vx)+(vy*vy)+(vz*vz) < Level.SWEEP_SKIN*Level.SWEEP_SKIN) break;
 		}
 		
 		if (grounded)
@@ -172,9 +175,6 @@ public abstract class GameObject implements Serializable {
 			velocity.x = 0;
 			velocity.z = 0;
 		}
-		
-		Pools.free(v);
-		Pools.free(tmp);
 	}
 	
 	public abstract void changeTile(Tile src, Tile dst);
@@ -227,6 +227,7 @@ public abstract class GameObject implements Serializable {
 		{
 			changeTile(start, end);
 		}
+		GameData.level.objectMoved(this);
 		
 		if (vo.attributes != null) vo.attributes.position.setToTranslation(position);
 		if (particleEffect != null) particleEffect.setPosition(vo.attributes.getSortCenter());
@@ -237,6 +238,29 @@ public abstract class GameObject implements Serializable {
 		positionAbsolutely(position.x, y, position.z);
 	}
 	
+	/**
+	 * Remember the current position as the previous simulation state, called before each tick
+	 */
+	public void storeLastPosition()
+	{
+		lastX = position.x;
+		lastY = position.y;
+		lastZ = position.z;
+	}
+	
+	/**
+	 * Place the model alpha of the way from the previous simulation position to the current one
+	 */
+	public void interpolate(float alpha)
+	{
+		if (vo.attributes == null) return;
+		
+		vo.attributes.position.setToTranslation(
+				lastX+((position.x-lastX)*alpha),
+				lastY+((position.y-lastY)*alpha),
+				lastZ+((position.z-lastZ)*alpha));
+	}
+	
 	public void left_right(float mag)
 	{
 		velocity.x += (float)Math.sin(rotation.z) * mag;
@@ -286,7 +310,6 @@ public abstract class GameObject implements Serializable {
 	
 	public void create()
 	{
-		ran = new Random();
 		offsetPos = Pools.obtain(Vector3.class).set(0, 0, 0);
 		offsetRot = Pools.obtain(Vector3.class).set(0, 0, 0);
 		
@@ -327,6 +350,16 @@ public abstract class GameObject implements Serializable {
 	
 	// ----- Getters ----- //
 	
+	/**
+	 * The object's own generator, split from the current level's the first time it is asked for (see
+	 * {@link Level#nextObjectRandom()}), so rolls are reproducible from the dungeon seed
+	 */
+	public Random getRandom()
+	{
+		if (ran == null) ran = (GameData.level != null) ? GameData.level.nextObjectRandom() : new SplitRandom();
+		return ran;
+	}
+	
 	public Matrix4 getTransform()
 	{
 		return vo.attributes.position;
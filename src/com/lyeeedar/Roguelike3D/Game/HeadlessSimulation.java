@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import com.badlogic.gdx.Files;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.lyeeedar.Roguelike3D.Game.Actor.Player;
+import com.lyeeedar.Roguelike3D.Game.Level.EntityRegistry;
+import com.lyeeedar.Roguelike3D.Game.Level.Level;
+import com.lyeeedar.Roguelike3D.Game.Level.LevelContainer;
+import com.lyeeedar.Roguelike3D.Game.Level.UpdateScheduler;
+import com.lyeeedar.Roguelike3D.Game.Level.XML.BiomeReader;
+import com.lyeeedar.Roguelike3D.Game.Level.XML.RoomReader;
+import com.lyeeedar.Roguelike3D.Game.Spell.Spell;
+import com.lyeeedar.Utils.SplitRandom;
+
+/**
+ * Runs a level without a GL context, to measure the simulation on its own.
+ * <p>
+ * The level is generated from a BiomeReader and RoomReader as LevelLoadingScreen does (evolving its monsters and
+ * spawning them), then ticked at {@link FixedTimestep#DEFAULT_STEP} as InGameScreen does. Files are read from the given
+ * assets directory and everything that needs GL is stubbed out through {@link GameData#headless}. The player has no AI,
+ * so instead it is moved to a random floor tile every RELOCATE_TIME seconds to keep the flow field and sleeping busy.
+ * <p>
+ * At the end the ticks per second, allocation rate and the time spent in each part of the tick are printed.
+ * <p>
+ * Everything random comes from the seed, so a run with the same seed generates the same level and moves the player
+ * the same way.
+ * <p>
+ * Usage: HeadlessSimulation assets biome depth ticks [warmup ticks] [seed]
+ * @author Philip
+ *
+ */
+public class HeadlessSimulation implements FixedTimestep.Simulation {
+	
+	public static final String LEVEL_NAME = "headless";
+	public static final float RELOCATE_TIME = 5;
+	
+	final Level level;
+	final Player player;
+	final UpdateScheduler scheduler;
+	final SplitRandom ran;
+	
+	float relocate = RELOCATE_TIME;
+	
+	/**
+	 * Nanoseconds spent in each part of the tick, summed since the last reset
+	 */
+	long flowFieldTime = 0;
+	long perceiveTime = 0;
+	long levelObjectTime = 0;
+	long thinkTime = 0;
+	long commitTime = 0;
+	long spellTime = 0;
+	
+	public HeadlessSimulation(Level level, Player player, long seed)
+	{
+		this.ran = new SplitRandom(seed).split(LEVEL_NAME);
+		this.level = level;
+		this.player = player;
+		this.scheduler = level.getScheduler();
+	}
+	
+	@Override
+	public void tick(float step)
+	{
+		level.storeLastPositions();
+		
+		relocate -= step;
+		if (relocate <= 0)
+		{
+			relocate += RELOCATE_TIME;
+			relocatePlayer();
+		}
+		
+		long time = System.nanoTime();
+		level.update(step, null);
+		long updateTime = System.nanoTime()-time;
+		
+		// The scheduler times its own phases, what is left of Level.update is the flow field
+		perceiveTime += scheduler.perceiveTime;
+		levelObjectTime += scheduler.levelObjectTime;
+		thinkTime += scheduler.thinkTime;
+		commitTime += scheduler.commitTime;
+		flowFieldTime += updateTime - (scheduler.perceiveTime+scheduler.levelObjectTime+scheduler.thinkTime+scheduler.commitTime);
+		
+		time = System.nanoTime();
+		Iterator<Spell> spells = GameData.spells.iterator();
+		while (spells.hasNext())
+		{
+			Spell s = spells.next();
+			boolean dispose = s.update(step, null);
+			
+			if (dispose) spells.remove();
+		}
+		spellTime += System.nanoTime()-time;
+	}
+	
+	private void relocatePlayer()
+	{
+		for (int i = 0; i < 100; i++)
+		{
+			int x = ran.nextInt(level.width);
+			int z = ran.nextInt(level.height);
+			
+			if (!level.checkPassable(x, z)) continue;
+			
+			player.positionAbsolutely(x*GameData.BLOCK_SIZE, player.position.y, z*GameData.BLOCK_SIZE);
+			return;
+		}
+	}
+	
+	public void resetTimes()
+	{
+		flowFieldTime = 0;
+		perceiveTime = 0;
+		levelObjectTime = 0;
+		thinkTime = 0;
+		commitTime = 0;
+		spellTime = 0;
+	}
+	
+	// ----- Setup ----- //
+	
+	/**
+	 * Generate the level and place the player in it, as LevelLoadingScreen does minus the graphics
+	 */
+	public static Level generate(String biomeName, int depth, long seed)
+	{
+		GameStats.init();
+		
+		GameData.seed = seed;
+		LevelContainer lc = new LevelContainer(LEVEL_NAME, biomeName, depth, new String[0], new String[0], seed);
+		GameData.dungeon = new HashMap<String, LevelContainer>();
+		GameData.dungeon.put(LEVEL_NAME, lc);
+		GameData.currentLevel = LEVEL_NAME;
+		GameData.prevLevel = LEVEL_NAME;
+		
+		BiomeReader biome = new BiomeReader(biomeName);
+		RoomReader rReader = new RoomReader(biomeName, depth);
+		
+		Level level = null;
+		while (level == null) level = lc.getLevel(biome, rReader);
+		GameData.level = level;
+		
+		level.create();
+		level.fixReferences();
+		
+		Player player = level.getPlayer();
+		if (player == null)
+		{
+			player = new Player(new Color(0, 0.6f, 0, 1.0f), "blank", 0, 0, 0, 0.5f, GL20.GL_TRIANGLES, "file", "model@");
+			player.create();
+			player.visible = false;
+			
+			level.addGameActor(player);
+		}
+		
+		// Nothing is controlling it
+		player.ai = null;
+		
+		GameStats.setPlayerStats(player);
+		GameData.player = player;
+		
+		level.positionPlayer(player, GameData.prevLevel, GameData.currentLevel);
+		level.evaluateUniqueBehaviour(GameData.lightManager);
+		level.storeLastPositions();
+		
+		return level;
+	}
+	
+	// ----- Measurement ----- //
+	
+	/**
+	 * @return the bytes allocated so far by every live thread, or -1 if the JVM cannot say
+	 */
+	public static long getAllocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		
+		long total = 0;
+		for (long bytes : ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(bean.getAllThreadIds()))
+		{
+			if (bytes > 0) total += bytes;
+		}
+		return total;
+	}
+	
+	public static long getGCCount()
+	{
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(gc.getCollectionCount(), 0);
+		return total;
+	}
+	
+	public static long getGCTime()
+	{
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(gc.getCollectionTime(), 0);
+		return total;
+	}
+	
+	private void printTime(String name, long time, long total, int ticks)
+	{
+		System.out.println(String.format("  %-14s %8.4f ms/tick %6.1f%%", name, (time/1000000.0)/ticks, (total == 0) ? 0 : (time*100.0)/total));
+	}
+	
+	public void printReport(int ticks, long time, long allocated, long gcCount, long gcTime)
+	{
+		double seconds = time/1000000000.0;
+		long total = flowFieldTime+perceiveTime+levelObjectTime+thinkTime+commitTime+spellTime;
+		
+		System.out.println(String.format("Ran %d ticks of %.2f ms in %.3f s", ticks, FixedTimestep.DEFAULT_STEP*1000, seconds));
+		System.out.println(String.format("Ticks/sec: %.1f (%.1fx real time)", ticks/seconds, (ticks*FixedTimestep.DEFAULT_STEP)/seconds));
+		if (allocated >= 0)
+		{
+			System.out.println(String.format("Allocated: %.2f MB, %.2f MB/s, %d bytes/tick", allocated/1048576.0, (allocated/1048576.0)/seconds, allocated/ticks));
+		}
+		System.out.println(String.format("GC: %d collections, %d ms", gcCount, gcTime));
+		System.out.println("Per subsystem:");
+		printTime("flow field", flowFieldTime, total, ticks);
+		printTime("perception", perceiveTime, total, ticks);
+		printTime("level objects", levelObjectTime, total, ticks);
+		printTime("think", thinkTime, total, ticks);
+		printTime("commit", commitTime, total, ticks);
+		printTime("spells", spellTime, total, ticks);
+		System.out.println(String.format("Last tick: %d active, %d drowsy, %d asleep, %d updated", scheduler.active, scheduler.drowsy, scheduler.asleep, scheduler.updated));
+	}
+	
+	public static void main(String[] args)
+	{
+		if (args.length < 4)
+		{
+			System.err.println("Usage: HeadlessSimulation assets biome depth ticks [warmup ticks] [seed]");
+			return;
+		}
+		
+		final File assets = new File(args[0]);
+		final String biomeName = args[1];
+		final int depth = Integer.parseInt(args[2]);
+		final int ticks = Integer.parseInt(args[3]);
+		final int warmup = (args.length > 4) ? Integer.parseInt(args[4]) : ticks/10;
+		final long seed = (args.length > 5) ? Long.parseLong(args[5]) : SplitRandom.newSeed();
+		
+		GameData.headless = true;
+		if (Gdx.files == null) Gdx.files = new HeadlessFiles(assets);
+		
+		long time = System.nanoTime();
+		Level level = generate(biomeName, depth, seed);
+		time = System.nanoTime()-time;
+		
+		EntityRegistry entities = level.getEntities();
+		System.out.println(String.format("Generated %s (%dx%d) from seed %d in %.3f s with %d actors and %d level objects",
+				biomeName, level.width, level.height, seed, time/1000000000.0, entities.getActorCount(), entities.getLevelObjectCount()));
+				
+		HeadlessSimulation simulation = new HeadlessSimulation(level, GameData.player, seed);
+		
+		for (int i = 0; i < warmup; i++) simulation.tick(FixedTimestep.DEFAULT_STEP);
+		simulation.resetTimes();
+		
+		long allocated = getAllocatedBytes();
+		long gcCount = getGCCount();
+		long gcTime = getGCTime();
+		time = System.nanoTime();
+		
+		for (int i = 0; i < ticks; i++) simulation.tick(FixedTimestep.DEFAULT_STEP);
+		
+		time = System.nanoTime()-time;
+		if (allocated >= 0) allocated = getAllocatedBytes()-allocated;
+		gcCount = getGCCount()-gcCount;
+		gcTime = getGCTime()-gcTime;
+		
+		simulation.printReport(ticks, time, allocated, gcCount, gcTime);
+	}
+	
+	/**
+	 * Resolves internal, classpath and local files against the assets directory, the rest as the desktop backend would
+	 */
+	public static class HeadlessFiles implements Files
+	{
+		final File root;
+		
+		public HeadlessFiles(File root)
+		{
+			this.root = root;
+		}
+		
+		@Override
+		public FileHandle getFileHandle(String path, FileType type)
+		{
+			switch (type)
+			{
+			case External: return new FileHandle(new File(getExternalStoragePath(), path));
+			case Absolute: return new FileHandle(new File(path));
+			default: return new FileHandle(new File(root, path));
+			}
+		}
+		
+		@Override
+		public FileHandle classpath(String path)
+		{
+			return getFileHandle(path, FileType.Classpath);
+		}
+		
+		@Override
+		public FileHandle internal(String path)
+		{
+			return getFileHandle(path, FileType.Internal);
+		}
+		
+		@Override
+		public FileHandle external(String path)
+		{
+			return getFileHandle(path, FileType.External);
+		}
+		
+		@Override
+		public FileHandle absolute(String path)
+		{
+			return getFileHandle(path, FileType.Absolute);
+		}
+		
+		@Override
+		public FileHandle local(String path)
+		{
+			return getFileHandle(path, FileType.Local);
+		}
+		
+		@Override
+		public String getExternalStoragePath()
+		{
+			return System.getProperty("user.home");
+		}
+		
+		@Override
+		public boolean isExternalStorageAvailable()
+		{
+			return true;
+		}
+		
+		@Override
+		public String getLocalStoragePath()
+		{
+			return root.getAbsolutePath();
+		}
+		
+		@Override
+		public boolean isLocalStorageAvailable()
+		{
+			return true;
+		}
+	}
+}
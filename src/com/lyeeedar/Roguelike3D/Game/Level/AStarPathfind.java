@@ -4,218 +4,170 @@
  * are made available under the terms of the GNU Public License v3.0
  * which accompanies this distribution, and is available at
  * http://www.gnu.org/licenses/gpl.html
- * 
+ *
  * Contributors:
  *     Philip Collin - initial API and implementation
  ******************************************************************************/
 package com.lyeeedar.Roguelike3D.Game.Level;
 
-import java.util.ArrayList;
-import java.util.Random;
+import com.lyeeedar.Utils.IndexedIntHeap;
 
+/**
+ * A* over an AbstractTile grid. Nodes are packed as (x*height)+y and all search state
+ * lives in flat int arrays sized to the grid, so one instance can be reused for every
+ * path carved on a level via {@link #findPath(int, int, int, int)}.
+ * The open list is an indexed binary heap supporting decrease-key.
+ * @author Philip
+ *
+ */
 public class AStarPathfind
 {
-	Random ran = new Random();
-	AbstractTile[][] grid;
+	final AbstractTile[][] grid;
+	final int width;
+	final int height;
+
 	int startx;
 	int starty;
 	int endx;
 	int endy;
-	int currentx;
-	int currenty;
-	Node[][] nodes;
-	
-	ArrayList<Node> openList = new ArrayList<Node>();
-	ArrayList<Node> closedList = new ArrayList<Node>();
 
-	public AStarPathfind(AbstractTile[][] grid, int startx, int starty, int endx, int endy)
+	/**
+	 * Distance in steps from the start node
+	 */
+	final int[] distance;
+	final int[] parent;
+
+	/**
+	 * Open list, keyed on heuristic*2 + distance + influence
+	 */
+	final IndexedIntHeap open;
+
+	/**
+	 * Search ids, used so the arrays never need clearing between searches
+	 */
+	final int[] opened;
+	final int[] closed;
+	int search = 0;
+
+	boolean found = false;
+
+	public AStarPathfind(AbstractTile[][] grid)
 	{
 		this.grid = grid;
+		this.width = grid.length;
+		this.height = grid[0].length;
+
+		int size = width*height;
+
+		distance = new int[size];
+		parent = new int[size];
+		opened = new int[size];
+		closed = new int[size];
+		open = new IndexedIntHeap(size);
+	}
+
+	public AStarPathfind(AbstractTile[][] grid, int startx, int starty, int endx, int endy)
+	{
+		this(grid);
+
+		findPath(startx, starty, endx, endy);
+	}
+
+	/**
+	 * Run a search, after which {@link #getPath()} returns the result
+	 * @return true if the end was reachable
+	 */
+	public boolean findPath(int startx, int starty, int endx, int endy)
+	{
 		this.startx = startx;
 		this.starty = starty;
-		this.currentx = startx;
-		this.currenty = starty;
 		this.endx = endx;
 		this.endy = endy;
-		
-		nodes = new Node[grid.length][grid.length];
-		
-		nodes[startx][starty] = new Node(startx, starty, 0, 0, 0);
-		openList.add(nodes[startx][starty]);
-		
-		while(currentx != endx || currenty != endy)
+
+		search++;
+		open.clear();
+		found = false;
+
+		int start = pack(startx, starty);
+		int end = pack(endx, endy);
+
+		opened[start] = search;
+		distance[start] = 0;
+		parent[start] = -1;
+		open.add(start, 0);
+
+		while (!open.isEmpty())
 		{
-			path();
+			int current = open.pop();
+			closed[current] = search;
+
+			if (current == end)
+			{
+				found = true;
+				break;
+			}
+
+			int cx = current / height;
+			int cy = current % height;
+			int d = distance[current]+1;
+
+			// The same bounds the ArrayList search had
+			if (cx-2 > 0) addNode(current, cx-1, cy, d);
+			if (cx+1 < width) addNode(current, cx+1, cy, d);
+			if (cy-2 > 0) addNode(current, cx, cy-1, d);
+			if (cy+1 < height) addNode(current, cx, cy+1, d);
 		}
-			
-		fillArray();
+
+		return found;
 	}
-	
+
+	/**
+	 * The path from start to end inclusive, as an array of {x, y} pairs. Null if no path exists.
+	 */
 	public int[][] getPath()
 	{
-		int length = nodes[endx][endy].distance+1;
+		if (!found) return null;
+
+		int end = pack(endx, endy);
+		int length = distance[end]+1;
 		int[][] path = new int[length][2];
-		
-		path[length-1][0] = endx;
-		path[length-1][1] = endy;
-
-		int cx = endx;
-		int cy = endy;
-		
-		for (int i = length-1; i > 0; i--)
+
+		int n = end;
+		for (int i = length-1; i >= 0; i--)
 		{
-			if (cx-1 > 0 && nodes[cx-1][cy] != null && nodes[cx-1][cy].distance <= i)
-			{
-				cx--;
-			}
-			else if (cx+1 < grid.length && nodes[cx+1][cy] != null && nodes[cx+1][cy].distance <= i)
-			{
-				cx++;
-			}
-			else if (cy-1 > 0 && nodes[cx][cy-1] != null && nodes[cx][cy-1].distance <= i)
-			{
-				cy--;
-			}
-			else if (cy+1 < grid.length && nodes[cx][cy+1] != null && nodes[cx][cy+1].distance <= i)
-			{
-				cy++;
-			}
-			
-			path[i-1][0] = cx;
-			path[i-1][1] = cy;
+			path[i][0] = n / height;
+			path[i][1] = n % height;
+			n = parent[n];
 		}
-		
+
 		return path;
 	}
-	
-	public void fillArray()
-	{
-		for (Node n : closedList)
-		{
-			nodes[n.x][n.y] = n;
-		}
-	}
-	
-	private void path()
-	{
-		Node current = findBestNode();
-		currentx = current.x;
-		currenty = current.y;
 
-		if (currentx-2 > 0)
-		{
-			int tempx = currentx-1;
-			int tempy = currenty;
-			int heuristic = Math.abs(tempx-endx)+Math.abs(tempy-endy);
-			Node tempn = new Node(tempx, tempy, heuristic, current.distance+1, grid[tempx][tempy].influence);
-			addNodeToOpenList(tempn);
-		}
-		if (currentx+1 < grid.length)
-		{
-			int tempx = currentx+1;
-			int tempy = currenty;
-			int heuristic = Math.abs(tempx-endx)+Math.abs(tempy-endy);
-			Node tempn = new Node(tempx, tempy, heuristic, current.distance+1, grid[tempx][tempy].influence);
-			addNodeToOpenList(tempn);
-		}
-		if (currenty-2 > 0)
-		{
-			int tempx = currentx;
-			int tempy = currenty-1;
-			int heuristic = Math.abs(tempx-endx)+Math.abs(tempy-endy);
-			Node tempn = new Node(tempx, tempy, heuristic, current.distance+1, grid[tempx][tempy].influence);
-			addNodeToOpenList(tempn);
-		}
-		if (currenty+1 < grid.length)
-		{
-			int tempx = currentx;
-			int tempy = currenty+1;
-			int heuristic = Math.abs(tempx-endx)+Math.abs(tempy-endy);
-			Node tempn = new Node(tempx, tempy, heuristic, current.distance+1, grid[tempx][tempy].influence);
-			addNodeToOpenList(tempn);
-		}
-	}
-	
-	public boolean isNodeInClosedList(Node n)
+	private void addNode(int current, int x, int y, int d)
 	{
-		for (Node nn : closedList)
-		{
-			if (nn.x == n.x && nn.y == n.y) return true;
-		}
-		return false;
-	}
-	
-	public void addNodeToOpenList(Node n)
-	{
-		if (isNodeInClosedList(n)) return;
-		
-		if (openList.size() == 0)
-		{
-			openList.add(n);
-			return;
-		}
-		Node less = openList.get(0);
-		
-		for (int i = 0; i < openList.size(); i++)
-		{
-			if (n.cost < less.cost)
-			{
-				openList.add(i, n);
-				return;
-			}
-		}
-		openList.add(n);
-	}
-	
-	public void removeNodeFromOpenList(Node n)
-	{
-		int i = 0;
-		for (Node nn : openList)
+		int n = pack(x, y);
+		if (closed[n] == search) return;
+
+		int heuristic = Math.abs(x-endx)+Math.abs(y-endy);
+		int cost = (heuristic*2) + d + grid[x][y].influence;
+
+		if (opened[n] != search)
 		{
-			if (nn.x == n.x && nn.y == n.y)
-			{
-				openList.remove(i);
-				return;
-			}
-			i++;
+			opened[n] = search;
+			distance[n] = d;
+			parent[n] = current;
+			open.add(n, cost);
 		}
-	}
-	
-	public Node findBestNode()
-	{
-		if (openList.size() == 0)
+		else if (d < distance[n])
 		{
-			System.err.println("No nodes in list!");
-			for (Node n : closedList)
-			{	
-				System.err.printf(" %d %d ", n.x, n.y);
-			}
-			System.err.printf(" \n ");
+			distance[n] = d;
+			parent[n] = current;
+			open.decreaseKey(n, cost);
 		}
-		Node best = openList.get(0);
-		openList.remove(0);
-		closedList.add(best);
-		return best;
 	}
-	
-	class Node
+
+	private int pack(int x, int y)
 	{
-		int x;
-		int y;
-		int cost;
-		int heuristic;
-		int distance;
-		int influence;
-
-		public Node(int x, int y, int heuristic, int distance, int influence)
-		{
-			this.influence = influence;
-			this.x = x;
-			this.y = y;
-			this.heuristic = heuristic;
-			this.distance = distance;
-			this.cost = (heuristic*2) + distance + influence;
-		}
+		return (x*height)+y;
 	}
-
 }
@@ -27,12 +27,12 @@ public class AbstractRoom {
 	
 	public HashMap<String, String> meta = new HashMap<String, String>();
 	
-	public AbstractRoom(int width, int height, boolean rotate, boolean flippable)
+	public AbstractRoom(int width, int height, boolean rotate, boolean flippable, Random ran)
 	{
 		
 		if (width == height)
 		{
-			if (new Random().nextInt(100) < 50) rotate = true;
+			if (ran.nextInt(100) < 50) rotate = true;
 		}
 		
 		this.rotate = rotate;
@@ -51,7 +51,7 @@ public class AbstractRoom {
 		
 		objects = new HashMap<Character, AbstractObject>();
 		
-		if (flippable && new Random().nextInt(100) < 50) flip = true;
+		if (flippable && ran.nextInt(100) < 50) flip = true;
 	}
 	
 	public void addMeta(String name, String contents)
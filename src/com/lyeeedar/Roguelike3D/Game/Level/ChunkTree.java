@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+/**
+ * A bounding volume hierarchy over the level's chunks, so culling them costs a test per node the frustum crosses rather
+ * than one per chunk.
+ * <p>
+ * Each node holds the box round everything under it. Nodes are split at the median of their chunks' centres along the
+ * longest side until there are LEAF_SIZE or fewer left. The chunks under a node are next to each other in items, so a
+ * node that is entirely in the frustum adds all of them without testing its children, and one that is entirely out
+ * culls all of them. With no roof in the way most of an outdoor level is one or the other.
+ * <p>
+ * After {@link #cull(Frustum)} the first visibleCount entries of visible are the indices of the boxes to draw, and
+ * drawn, culled and tested are the number of chunks drawn and culled and boxes tested that frame.
+ * @author Philip
+ *
+ */
+public class ChunkTree {
+	
+	public static final int LEAF_SIZE = 4;
+	
+	private static final int OUTSIDE = 0;
+	private static final int INTERSECTING = 1;
+	private static final int INSIDE = 2;
+	
+	final BoundingBox[] boxes;
+	
+	/**
+	 * The index of every box, ordered so the ones under each node are next to each other
+	 */
+	final int[] items;
+	
+	int nodeCount = 0;
+	final float[] bounds;
+	final int[] firsts;
+	final int[] counts;
+	/**
+	 * The second child of each node, or -1 for a leaf. The first child is always the next node
+	 */
+	final int[] rights;
+	
+	public final int[] visible;
+	public int visibleCount = 0;
+	
+	public int drawn = 0;
+	public int culled = 0;
+	public int tested = 0;
+	
+	public ChunkTree(BoundingBox[] boxes)
+	{
+		this.boxes = boxes;
+		
+		items = new int[boxes.length];
+		for (int i = 0; i < items.length; i++) items[i] = i;
+		
+		final int maxNodes = Math.max(1, (2*boxes.length)-1);
+		bounds = new float[maxNodes*6];
+		firsts = new int[maxNodes];
+		counts = new int[maxNodes];
+		rights = new int[maxNodes];
+		
+		visible = new int[boxes.length];
+		
+		build(0, items.length);
+	}
+	
+	private int build(int first, int count)
+	{
+		final int node = nodeCount++;
+		firsts[node] = first;
+		counts[node] = count;
+		rights[node] = -1;
+		
+		float minx = Float.MAX_VALUE, miny = Float.MAX_VALUE, minz = Float.MAX_VALUE;
+		float maxx = -Float.MAX_VALUE, maxy = -Float.MAX_VALUE, maxz = -Float.MAX_VALUE;
+		for (int i = first; i < first+count; i++)
+		{
+			final BoundingBox box = boxes[items[i]];
+			minx = Math.min(minx, box.min.x); miny = Math.min(miny, box.min.y); minz = Math.min(minz, box.min.z);
+			maxx = Math.max(maxx, box.max.x); maxy = Math.max(maxy, box.max.y); maxz = Math.max(maxz, box.max.z);
+		}
+		bounds[(node*6)+0] = minx; bounds[(node*6)+1] = miny; bounds[(node*6)+2] = minz;
+		bounds[(node*6)+3] = maxx; bounds[(node*6)+4] = maxy; bounds[(node*6)+5] = maxz;
+		
+		if (count <= LEAF_SIZE) return node;
+		
+		final float dx = maxx-minx, dy = maxy-miny, dz = maxz-minz;
+		final int axis = (dx >= dy && dx >= dz) ? 0 : (dy >= dz) ? 1 : 2;
+		
+		Integer[] sorted = new Integer[count];
+		for (int i = 0; i < count; i++) sorted[i] = items[first+i];
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Float.compare(getCentre(boxes[a], axis), getCentre(boxes[b], axis));
+			}
+		});
+		for (int i = 0; i < count; i++) items[first+i] = sorted[i];
+		
+		final int half = count/2;
+		build(first, half);
+		rights[node] = build(first+half, count-half);
+		
+		return node;
+	}
+	
+	private static float getCentre(BoundingBox box, int axis)
+	{
+		if (axis == 0) return box.min.x + box.max.x;
+		else if (axis == 1) return box.min.y + box.max.y;
+		return box.min.z + box.max.z;
+	}
+	
+	/**
+	 * Find the boxes in the frustum, see the class comment for where they are put
+	 */
+	public void cull(Frustum frustum)
+	{
+		visibleCount = 0;
+		drawn = 0;
+		culled = 0;
+		tested = 0;
+		
+		if (boxes.length > 0) cull(0, frustum.planes);
+	}
+	
+	private void cull(int node, Plane[] planes)
+	{
+		final int side = classify(node, planes);
+		
+		if (side == OUTSIDE)
+		{
+			culled += counts[node];
+		}
+		else if (side == INSIDE || rights[node] == -1)
+		{
+			if (side == INSIDE || counts[node] == 1)
+			{
+				add(node);
+				return;
+			}
+			
+			// A leaf the frustum crosses, so test each of its boxes
+			for (int i = firsts[node]; i < firsts[node]+counts[node]; i++)
+			{
+				tested++;
+				final BoundingBox box = boxes[items[i]];
+				if (classify(box.min.x, box.min.y, box.min.z, box.max.x, box.max.y, box.max.z, planes) == OUTSIDE)
+				{
+					culled++;
+				}
+				else
+				{
+					visible[visibleCount++] = items[i];
+					drawn++;
+				}
+			}
+		}
+		else
+		{
+			cull(node+1, planes);
+			cull(rights[node], planes);
+		}
+	}
+	
+	private void add(int node)
+	{
+		for (int i = firsts[node]; i < firsts[node]+counts[node]; i++)
+		{
+			visible[visibleCount++] = items[i];
+		}
+		drawn += counts[node];
+	}
+	
+	private int classify(int node, Plane[] planes)
+	{
+		tested++;
+		final int i = node*6;
+		return classify(bounds[i], bounds[i+1], bounds[i+2], bounds[i+3], bounds[i+4], bounds[i+5], planes);
+	}
+	
+	/**
+	 * Test the box against each plane with the corner furthest along the plane's normal (if that is behind the plane
+	 * so is the box) and the nearest (if that is behind the plane the box crosses it). Frustum planes face inwards
+	 */
+	private static int classify(float minx, float miny, float minz, float maxx, float maxy, float maxz, Plane[] planes)
+	{
+		int side = INSIDE;
+		
+		for (Plane plane : planes)
+		{
+			final float nx = plane.normal.x, ny = plane.normal.y, nz = plane.normal.z;
+			
+			final float far = (nx*((nx >= 0) ? maxx : minx)) + (ny*((ny >= 0) ? maxy : miny)) + (nz*((nz >= 0) ? maxz : minz)) + plane.d;
+			if (far < 0) return OUTSIDE;
+			
+			final float near = (nx*((nx >= 0) ? minx : maxx)) + (ny*((ny >= 0) ? miny : maxy)) + (nz*((nz >= 0) ? minz : maxz)) + plane.d;
+			if (near < 0) side = INTERSECTING;
+		}
+		
+		return side;
+	}
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ *
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import com.lyeeedar.Roguelike3D.Game.Actor.GameActor;
+import com.lyeeedar.Roguelike3D.Game.LevelObjects.LevelObject;
+import com.lyeeedar.Utils.Bag;
+
+/**
+ * Caller-owned scratch space and results for the collision queries on {@link Level}.
+ * Each thread (or each caller that needs to nest queries) should own its own instance,
+ * then any number of queries can run at once without allocating, so long as nothing
+ * is moved, added or removed from the level at the same time.
+ * <p>
+ * After a query the result fields describe what was hit.
+ * @author Philip
+ *
+ */
+public class CollisionQuery {
+	
+	private static final ThreadLocal<CollisionQuery> queries = new ThreadLocal<CollisionQuery>() {
+		@Override
+		protected CollisionQuery initialValue()
+		{
+			return new CollisionQuery();
+		}
+	};
+	
+	/**
+	 * The query used by the Level methods that do not take one, one per thread
+	 */
+	public static CollisionQuery get()
+	{
+		return queries.get();
+	}
+	
+	final Bag<GameActor> actors = new Bag<GameActor>();
+	final Bag<LevelObject> levelObjects = new Bag<LevelObject>();
+	final Tile[][] block = new Tile[3][3];
+	final float[] hitDist = new float[1];
+	
+	/**
+	 * True if the last query hit a solid tile, the floor, the roof or left the level
+	 */
+	public boolean hitLevel;
+	
+	/**
+	 * The tile position of the level hit, -1 if it was outside the level
+	 */
+	public int tileX;
+	public int tileZ;
+	
+	/**
+	 * The actor hit by the last query, or null
+	 */
+	public GameActor actor;
+	
+	/**
+	 * The level object hit by the last query, or null
+	 */
+	public LevelObject levelObject;
+	
+	/**
+	 * For sweeps, the fraction of the movement that can be made before the first contact (1 if nothing was hit)
+	 */
+	public float time;
+	
+	/**
+	 * For sweeps, the surface normal at the first contact
+	 */
+	public float normalX;
+	public float normalY;
+	public float normalZ;
+	
+	public void reset()
+	{
+		hitLevel = false;
+		tileX = -1;
+		tileZ = -1;
+		actor = null;
+		levelObject = null;
+		time = 1;
+		normalX = 0;
+		normalY = 0;
+		normalZ = 0;
+	}
+	
+	/**
+	 * Record a contact if it is earlier than the current one
+	 * @return true if it was recorded
+	 */
+	boolean contact(float t, float nx, float ny, float nz)
+	{
+		if (t >= time) return false;
+		
+		time = t;
+		normalX = nx;
+		normalY = ny;
+		normalZ = nz;
+		
+		hitLevel = false;
+		tileX = -1;
+		tileZ = -1;
+		actor = null;
+		levelObject = null;
+		
+		return true;
+	}
+	
+	public boolean hit()
+	{
+		return hitLevel || actor != null || levelObject != null;
+	}
+}
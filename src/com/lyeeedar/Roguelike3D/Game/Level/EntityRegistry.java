@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import java.util.HashMap;
+
+import com.lyeeedar.Roguelike3D.Game.GameObject;
+import com.lyeeedar.Roguelike3D.Game.Actor.GameActor;
+import com.lyeeedar.Roguelike3D.Game.Actor.Player;
+import com.lyeeedar.Roguelike3D.Game.LevelObjects.LevelObject;
+
+/**
+ * Every live GameActor and LevelObject in a level, so per frame work only touches the objects that exist
+ * rather than every tile.
+ * <p>
+ * Objects are kept in dense arrays in the order they were added. Removing an object leaves a null in its slot
+ * (so removing while iterating is safe) and the holes are closed up by {@link #compact()}. Each object knows its
+ * slot through {@link GameObject#registryIndex}, objects can be found by UID and the player is kept to hand.
+ * @author Philip
+ *
+ */
+public class EntityRegistry {
+	
+	private GameActor[] actors = new GameActor[32];
+	private int actorCount = 0;
+	
+	private LevelObject[] levelObjects = new LevelObject[32];
+	private int levelObjectCount = 0;
+	
+	private int holes = 0;
+	
+	private final HashMap<String, GameObject> byUID = new HashMap<String, GameObject>();
+	
+	private Player player;
+	
+	public void add(GameActor ga)
+	{
+		if (contains(actors, actorCount, ga)) return;
+		
+		if (actorCount == actors.length)
+		{
+			GameActor[] nactors = new GameActor[actors.length*2];
+			System.arraycopy(actors, 0, nactors, 0, actorCount);
+			actors = nactors;
+		}
+		
+		actors[actorCount++] = ga;
+		ga.registryIndex = actorCount;
+		byUID.put(ga.UID, ga);
+		
+		if (ga instanceof Player) player = (Player) ga;
+	}
+	
+	public void add(LevelObject lo)
+	{
+		if (contains(levelObjects, levelObjectCount, lo)) return;
+		
+		if (levelObjectCount == levelObjects.length)
+		{
+			LevelObject[] nlevelObjects = new LevelObject[levelObjects.length*2];
+			System.arraycopy(levelObjects, 0, nlevelObjects, 0, levelObjectCount);
+			levelObjects = nlevelObjects;
+		}
+		
+		levelObjects[levelObjectCount++] = lo;
+		lo.registryIndex = levelObjectCount;
+		byUID.put(lo.UID, lo);
+	}
+	
+	public void remove(GameActor ga)
+	{
+		if (!contains(actors, actorCount, ga)) return;
+		
+		actors[ga.registryIndex-1] = null;
+		ga.registryIndex = 0;
+		byUID.remove(ga.UID);
+		holes++;
+		
+		if (ga == player) player = null;
+	}
+	
+	public void remove(LevelObject lo)
+	{
+		if (!contains(levelObjects, levelObjectCount, lo)) return;
+		
+		levelObjects[lo.registryIndex-1] = null;
+		lo.registryIndex = 0;
+		byUID.remove(lo.UID);
+		holes++;
+	}
+	
+	private boolean contains(GameObject[] objects, int count, GameObject go)
+	{
+		int i = go.registryIndex-1;
+		return i >= 0 && i < count && objects[i] == go;
+	}
+	
+	/**
+	 * Close up the slots left by removed objects. Must not be called while iterating
+	 */
+	public void compact()
+	{
+		if (holes == 0) return;
+		
+		int n = 0;
+		for (int i = 0; i < actorCount; i++)
+		{
+			GameActor ga = actors[i];
+			if (ga == null) continue;
+			actors[n++] = ga;
+			ga.registryIndex = n;
+		}
+		for (int i = n; i < actorCount; i++) actors[i] = null;
+		actorCount = n;
+		
+		n = 0;
+		for (int i = 0; i < levelObjectCount; i++)
+		{
+			LevelObject lo = levelObjects[i];
+			if (lo == null) continue;
+			levelObjects[n++] = lo;
+			lo.registryIndex = n;
+		}
+		for (int i = n; i < levelObjectCount; i++) levelObjects[i] = null;
+		levelObjectCount = n;
+		
+		holes = 0;
+	}
+	
+	public int getActorCount()
+	{
+		return actorCount;
+	}
+	
+	/**
+	 * @return the actor in the given slot, or null if it has been removed since the last {@link #compact()}
+	 */
+	public GameActor getActor(int i)
+	{
+		return actors[i];
+	}
+	
+	public int getLevelObjectCount()
+	{
+		return levelObjectCount;
+	}
+	
+	/**
+	 * @return the level object in the given slot, or null if it has been removed since the last {@link #compact()}
+	 */
+	public LevelObject getLevelObject(int i)
+	{
+		return levelObjects[i];
+	}
+	
+	public GameObject get(String UID)
+	{
+		return byUID.get(UID);
+	}
+	
+	public Player getPlayer()
+	{
+		return player;
+	}
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Dijkstra map over the levelArray: the walking distance of every tile from a single target tile,
+ * out to MAX_DISTANCE steps. Any number of actors chasing the same target can read their next step
+ * from it in constant time instead of running their own searches.
+ * <p>
+ * The field is only searched as far out as the actors reading it need. A rebuild, when the target changes tile or
+ * {@link Level#tilesChanged()} is called, stops at the radius: the furthest distance read since the last rebuild,
+ * plus RADIUS_MARGIN. A read of a tile past the radius marks the field short, and the next update carries on the
+ * search from where it stopped out to twice the radius, rather than starting again. So a few actors near the
+ * target cost a few tiles each move, and the whole MAX_DISTANCE is only searched when something out there asks.
+ * <p>
+ * Even so a handful of actors find their own paths for less than a search of the tiles round them (see
+ * ChaseBenchmark), so the field is only built while at least minChasers actors called {@link #addChaser()} last
+ * tick. Chasers should find their own way when {@link #isActive()} is false.
+ * <p>
+ * update must be called on one thread while nothing reads the field. Reads can come from any number of threads.
+ * @author Philip
+ *
+ */
+public class FlowField {
+
+	public static final int MAX_DISTANCE = 100;
+	public static final int MIN_RADIUS = 8;
+	public static final int RADIUS_MARGIN = 4;
+	public static final int MIN_CHASERS = 12;
+
+	final Level level;
+	final int width;
+	final int height;
+
+	final int[] distance;
+	final int[] queue;
+
+	/**
+	 * Build ids, so tiles outside the last build read as unreached without clearing the array
+	 */
+	final int[] stamp;
+	int build = 0;
+
+	int targetx = -1;
+	int targetz = -1;
+	int version;
+
+	/**
+	 * The search is complete out to radius steps. queue[head] to queue[tail-1] are the tiles at radius it stopped at
+	 */
+	int radius = MIN_RADIUS;
+	int head;
+	int tail;
+
+	/**
+	 * Set by reads that needed more of the field than was there
+	 */
+	volatile boolean isShort = false;
+	final AtomicInteger furthest = new AtomicInteger();
+
+	final int minChasers;
+	final AtomicInteger chasing = new AtomicInteger();
+	int chasers = 0;
+
+	/**
+	 * Tiles searched by updates, for profiling
+	 */
+	public int searched = 0;
+
+	public FlowField(Level level)
+	{
+		this(level, MIN_CHASERS);
+	}
+
+	public FlowField(Level level, int minChasers)
+	{
+		this.level = level;
+		this.minChasers = minChasers;
+		this.width = level.width;
+		this.height = level.height;
+
+		distance = new int[width*height];
+		queue = new int[width*height];
+		stamp = new int[width*height];
+	}
+
+	public boolean update(float x, float z)
+	{
+		return update((int)((x/10f)+0.5f), (int)((z/10f)+0.5f));
+	}
+
+	/**
+	 * Point the field at a new target tile, and search further out if the last reads needed it
+	 * @return true if the field changed
+	 */
+	public boolean update(int tx, int tz)
+	{
+		chasers = chasing.getAndSet(0);
+		if (chasers < minChasers)
+		{
+			if (targetx == -1 && targetz == -1) return false;
+
+			// Forget the target so the field is built from scratch when it is next needed
+			targetx = -1;
+			targetz = -1;
+			build++;
+			head = 0;
+			tail = 0;
+
+			return true;
+		}
+
+		if (tx == targetx && tz == targetz && version == level.getTileVersion())
+		{
+			if (!isShort || head == tail || radius == MAX_DISTANCE) return false;
+
+			isShort = false;
+			radius = Math.min(radius*2, MAX_DISTANCE);
+			search();
+
+			return true;
+		}
+
+		targetx = tx;
+		targetz = tz;
+		version = level.getTileVersion();
+
+		radius = Math.min(Math.max(MIN_RADIUS, furthest.get()+RADIUS_MARGIN), MAX_DISTANCE);
+		isShort = false;
+		furthest.set(0);
+
+		build++;
+		head = 0;
+		tail = 0;
+
+		if (level.checkBounds(tx, tz)) return true;
+
+		int start = pack(tx, tz);
+		stamp[start] = build;
+		distance[start] = 0;
+		queue[tail++] = start;
+
+		search();
+
+		return true;
+	}
+
+	/**
+	 * Carry on the breadth first search from the queue until every tile out to radius is done
+	 */
+	private void search()
+	{
+		while (head < tail)
+		{
+			int current = queue[head];
+			int d = distance[current]+1;
+			if (d > radius) break;
+			head++;
+
+			int cx = current / height;
+			int cz = current % height;
+
+			visit(cx-1, cz, d);
+			visit(cx+1, cz, d);
+			visit(cx, cz-1, d);
+			visit(cx, cz+1, d);
+		}
+	}
+
+	private void visit(int x, int z, int d)
+	{
+		if (level.checkBounds(x, z)) return;
+
+		int n = pack(x, z);
+		if (stamp[n] == build) return;
+		if (!level.checkPassable(x, z)) return;
+
+		stamp[n] = build;
+		distance[n] = d;
+		queue[tail++] = n;
+		searched++;
+	}
+
+	/**
+	 * @return the number of steps from the given tile to the target, or -1 if it is out of range or unreachable
+	 */
+	public int getDistance(int x, int z)
+	{
+		if (level.checkBounds(x, z)) return -1;
+
+		int n = pack(x, z);
+		if (stamp[n] != build) return -1;
+
+		return distance[n];
+	}
+
+	/**
+	 * Find the neighbouring tile that is closest to the target. Asking from a tile the field has not reached yet makes
+	 * the next update search further
+	 * @param out receives the {x, z} of the step
+	 * @return false if the given tile is the target or no neighbour leads towards it
+	 */
+	public boolean getNextStep(int x, int z, int[] out)
+	{
+		int best = getDistance(x, z);
+		if (best == 0) return false;
+		if (best == -1)
+		{
+			if (!isShort) isShort = true;
+			best = Integer.MAX_VALUE;
+		}
+		else
+		{
+			reached(best);
+		}
+
+		boolean found = false;
+
+		int d = getDistance(x-1, z);
+		if (d != -1 && d < best) { best = d; out[0] = x-1; out[1] = z; found = true; }
+
+		d = getDistance(x+1, z);
+		if (d != -1 && d < best) { best = d; out[0] = x+1; out[1] = z; found = true; }
+
+		d = getDistance(x, z-1);
+		if (d != -1 && d < best) { best = d; out[0] = x; out[1] = z-1; found = true; }
+
+		d = getDistance(x, z+1);
+		if (d != -1 && d < best) { best = d; out[0] = x; out[1] = z+1; found = true; }
+
+		return found;
+	}
+
+	/**
+	 * Count an actor that wants to chase the target this tick
+	 */
+	public void addChaser()
+	{
+		chasing.incrementAndGet();
+	}
+
+	/**
+	 * @return true if enough actors were chasing last tick for the field to be built
+	 */
+	public boolean isActive()
+	{
+		return chasers >= minChasers;
+	}
+
+	/**
+	 * Remember the furthest distance read, which the next rebuild searches to
+	 */
+	private void reached(int d)
+	{
+		int current = furthest.get();
+		while (d > current && !furthest.compareAndSet(current, d)) current = furthest.get();
+	}
+
+	public int getTargetX()
+	{
+		return targetx;
+	}
+
+	public int getTargetZ()
+	{
+		return targetz;
+	}
+
+	private int pack(int x, int z)
+	{
+		return (x*height)+z;
+	}
+}
@@ -17,36 +17,44 @@ import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.Ray;
-import com.badlogic.gdx.utils.Pools;
 import com.lyeeedar.Graphics.ParticleEffects.ParticleEmitter;
 import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Game.GameObject;
 import com.lyeeedar.Roguelike3D.Game.Actor.GameActor;
 import com.lyeeedar.Roguelike3D.Game.Actor.Player;
 import com.lyeeedar.Roguelike3D.Game.Level.MapGenerator.GeneratorType;
 import com.lyeeedar.Roguelike3D.Game.Level.XML.BiomeReader;
 import com.lyeeedar.Roguelike3D.Game.Level.XML.MonsterEvolver;
 import com.lyeeedar.Roguelike3D.Game.Level.XML.RoomReader;
+import com.lyeeedar.Roguelike3D.Game.LevelObjects.Door;
 import com.lyeeedar.Roguelike3D.Game.LevelObjects.LevelObject;
+import com.lyeeedar.Roguelike3D.Game.LevelObjects.PlayerPlacer;
+import com.lyeeedar.Roguelike3D.Game.LevelObjects.Spawner;
+import com.lyeeedar.Roguelike3D.Game.LevelObjects.Stair;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Renderers.Renderer;
 import com.lyeeedar.Utils.Bag;
+import com.lyeeedar.Utils.SplitRandom;
 
 
 public class Level implements Serializable {
 	
 	private static final long serialVersionUID = 7198101723293369502L;
 	
-	private static final int VIEW_STEP = 10;
+	/**
+	 * Edge length of a SpatialHash cell in world units
+	 */
+	public static final float SPATIAL_CELL_SIZE = GameData.BLOCK_SIZE;
 
 	public static final String MONSTER_TYPE = "monster_type";
 	
-	public final Tile[][] levelArray;
-	private int bx; private int bz;
-	private int tx; private int tz;
-	private float radius2;
-	
-	private final Tile[][] block = new Tile[3][3];
+	/**
+	 * Name of the split of the level's generator that each object's own generator is split from
+	 */
+	public static final String OBJECTS = "objects";
 	
+	public final TileStore tiles;
+	public final Tile[][] levelArray;
 	public final HashMap<Character, String> shortDescs = new HashMap<Character, String>();
 	public final HashMap<Character, String> longDescs = new HashMap<Character, String>();
 	
@@ -55,6 +63,20 @@ public class Level implements Serializable {
 	public final Bag<Character> solids = new Bag<Character>();
 	
 	private transient final Bag<DungeonRoom> rooms;
+	
+	private transient int tileVersion = 0;
+	private transient PathService pathService;
+	private transient FlowField flowField;
+	private transient Perception perception;
+	private transient TileOcclusion occlusion;
+	
+	private transient EntityRegistry entities;
+	private transient UpdateScheduler scheduler;
+	private transient SpatialHash<GameActor> actorHash;
+	private transient SpatialHash<LevelObject> levelObjectHash;
+
+	private SplitRandom objectRandom;
+	private int objectCount = 0;
 
 	public final int width;
 	public final int height;
@@ -62,13 +84,14 @@ public class Level implements Serializable {
 	public final int depth;
 	public final GeneratorType gtype;
 	
-	public Level(int width, int height, GeneratorType gtype, BiomeReader biome, boolean hasRoof, int depth, int up, int down)
+	public Level(int width, int height, GeneratorType gtype, BiomeReader biome, boolean hasRoof, int depth, int up, int down, SplitRandom ran)
 	{
 		this.depth = depth;
 		this.hasRoof = hasRoof;
 		this.gtype = gtype;
 		this.width = width;
 		this.height = height;
+		this.objectRandom = ran.split(OBJECTS);
 		
 		solids.add('#');
 		solids.add(' ');
@@ -87,8 +110,9 @@ public class Level implements Serializable {
 		shortDescs.put('R', biome.getShortDescription('R'));
 		longDescs.put('R', biome.getLongDescription('R'));
 		
-		MapGenerator generator = new MapGenerator(width, height, solids, opaques, colours, gtype, biome, up, down);
-		levelArray = generator.getLevel();
+		MapGenerator generator = new MapGenerator(width, height, solids, opaques, colours, gtype, biome, up, down, ran);
+		tiles = generator.getTileStore();
+		levelArray = tiles.getTiles();
 		rooms = generator.getRooms();
 		
 		for (AbstractObject ao : generator.getObjects())
@@ -102,6 +126,29 @@ public class Level implements Serializable {
 		}
 	}
 	
+	/**
+	 * A level of the given size with no rooms or objects and every tile blank, to be laid out through {@link #tiles}.
+	 * For tools and benchmarks that build their own levels rather than generating them from a biome
+	 */
+	public Level(int width, int height, boolean hasRoof, int depth)
+	{
+		this.depth = depth;
+		this.hasRoof = hasRoof;
+		this.gtype = GeneratorType.STATIC;
+		this.width = width;
+		this.height = height;
+		
+		solids.add('#');
+		solids.add(' ');
+		
+		opaques.add('#');
+		opaques.add(' ');
+		
+		tiles = new TileStore(width, height, solids, opaques);
+		levelArray = tiles.getTiles();
+		rooms = new Bag<DungeonRoom>();
+	}
+	
 	public boolean fillRoom(RoomReader rReader, LevelContainer lc)
 	{
 		if (rooms.size == 0)
@@ -110,7 +157,7 @@ public class Level implements Serializable {
 		}
 		
 		DungeonRoom room = rooms.remove(0);
-		AbstractRoom aroom = rReader.getRoom(room.roomtype, room.width, room.height, (gtype != GeneratorType.STATIC));
+		AbstractRoom aroom = rReader.getRoom(room.roomtype, room.width, room.height, (gtype != GeneratorType.STATIC), lc.getRoomRandom());
 		
 		if (aroom == null) {
 			System.err.println("Failed to place "+room.roomtype);
@@ -133,13 +180,13 @@ public class Level implements Serializable {
 			{
 				if (aroom.contents[i][j] == '#')
 				{
-					levelArray[room.x+i][room.y+j].character = '#';
-					levelArray[room.x+i][room.y+j].height = levelArray[room.x+i][room.y+j].roof;
+					levelArray[room.x+i][room.y+j].setCharacter('#');
+					levelArray[room.x+i][room.y+j].setHeight(levelArray[room.x+i][room.y+j].getRoof());
 				}
 				else
 				{
-					levelArray[room.x+i][room.y+j].character = '.';
-					levelArray[room.x+i][room.y+j].height = levelArray[room.x+i][room.y+j].floor;
+					levelArray[room.x+i][room.y+j].setCharacter('.');
+					levelArray[room.x+i][room.y+j].setHeight(levelArray[room.x+i][room.y+j].getFloor());
 					
 					AbstractObject ao = aroom.objects.get(aroom.contents[i][j]);
 					
@@ -151,7 +198,7 @@ public class Level implements Serializable {
 					
 					ao.x = room.x+i;
 					ao.z = room.y+j;
-					ao.y = levelArray[room.x+i][room.y+j].floor;
+					ao.y = levelArray[room.x+i][room.y+j].getFloor();
 					
 					abstractObjects.add(ao);
 					
@@ -176,6 +223,8 @@ public class Level implements Serializable {
 			}
 		}
 		
+		tilesChanged();
+		
 		return false;
 	}
 	
@@ -186,7 +235,10 @@ public class Level implements Serializable {
 		Tile tile = getTile(lo.position.x, lo.position.z);
 		if (tile == null) return;
 		
-		tile.levelObjects.add(lo);
+		tile.addLevelObject(lo);
+		getEntities().add(lo);
+		getLevelObjectHash().add(lo);
+		tilesChanged();
 	}
 	
 	public void addGameActor(GameActor ga)
@@ -194,196 +246,299 @@ public class Level implements Serializable {
 		Tile tile = getTile(ga.position.x, ga.position.z);
 		if (tile == null) return;
 		
-		tile.actors.add(ga);
+		tile.addGameActor(ga);
+		getEntities().add(ga);
+		getActorHash().add(ga);
 	}
 	
 	public void removeLevelObject(LevelObject lo)
 	{
+		getEntities().remove(lo);
+		
 		Tile tile = getTile(lo.position.x, lo.position.z);
 		if (tile == null) return;
 		
 		tile.removeLevelObject(lo.UID);
+		getLevelObjectHash().remove(lo);
+		tilesChanged();
 	}
 	
 	public void removeGameActor(GameActor ga)
 	{
+		getEntities().remove(ga);
+		
 		Tile tile = getTile(ga.position.x, ga.position.z);
 		if (tile == null) return;
 		
 		tile.removeGameActor(ga.UID);
+		getActorHash().remove(ga);
 	}
 	
-	// ----- 3D Game Actions (Creation, Destruction, Rendering etc) ----- //
-	
-	public void update(float delta, Camera cam)
+	/**
+	 * @return every GameActor and LevelObject in the level, built from the tiles if needed (such as after loading)
+	 */
+	public EntityRegistry getEntities()
 	{
-		for (Tile[] tt : levelArray)
+		if (entities == null)
 		{
-			for (Tile t : tt)
+			entities = new EntityRegistry();
+			for (Tile[] tt : levelArray)
 			{
-				t.update(delta, cam);
+				for (Tile t : tt)
+				{
+					Bag<GameActor> actors = t.getActors();
+					for (int i = 0; i < actors.size; i++) entities.add(actors.get(i));
+					Bag<LevelObject> levelObjects = t.getLevelObjects();
+					for (int i = 0; i < levelObjects.size; i++) entities.add(levelObjects.get(i));
+				}
 			}
 		}
+		return entities;
 	}
 	
-	public void render(Renderer renderer, Camera cam, ArrayList<ParticleEmitter> visibleEmitters)
+	public UpdateScheduler getScheduler()
 	{
-		for (Tile[] tt : levelArray)
-		{
-			for (Tile t : tt)
-			{
-				t.render(renderer, cam, visibleEmitters);
-			}
-		}
+		if (scheduler == null) scheduler = new UpdateScheduler(this);
+		return scheduler;
 	}
 	
-	public Player getPlayer()
+	/**
+	 * Keeps the spatial hashes up to date, called whenever a GameObject is positioned
+	 */
+	public void objectMoved(GameObject go)
+	{
+		if (go.spatialHandle == 0) return;
+		
+		if (go instanceof GameActor && actorHash != null) actorHash.update((GameActor) go);
+		else if (go instanceof LevelObject && levelObjectHash != null) levelObjectHash.update((LevelObject) go);
+	}
+	
+	public SpatialHash<GameActor> getActorHash()
+	{
+		if (actorHash == null) buildSpatialHashes();
+		return actorHash;
+	}
+	
+	public SpatialHash<LevelObject> getLevelObjectHash()
+	{
+		if (levelObjectHash == null) buildSpatialHashes();
+		return levelObjectHash;
+	}
+	
+	/**
+	 * (Re)build the spatial hashes from the entities in the level. Needed after loading and after create(),
+	 * as object radii are not known until then.
+	 */
+	public void buildSpatialHashes()
+	{
+		if (actorHash != null) actorHash.clear();
+		if (levelObjectHash != null) levelObjectHash.clear();
+		
+		actorHash = new SpatialHash<GameActor>(width*GameData.BLOCK_SIZE, height*GameData.BLOCK_SIZE, SPATIAL_CELL_SIZE);
+		levelObjectHash = new SpatialHash<LevelObject>(width*GameData.BLOCK_SIZE, height*GameData.BLOCK_SIZE, SPATIAL_CELL_SIZE);
+		
+		EntityRegistry entities = getEntities();
+		entities.compact();
+		for (int i = 0; i < entities.getActorCount(); i++) actorHash.add(entities.getActor(i));
+		for (int i = 0; i < entities.getLevelObjectCount(); i++) levelObjectHash.add(entities.getLevelObject(i));
+	}
+	
+	// ----- 3D Game Actions (Creation, Destruction, Rendering etc) ----- //
+	
+	public void update(float delta, Camera cam)
+	{
+		if (GameData.player != null) getFlowField().update(GameData.player.position.x, GameData.player.position.z);
+		getScheduler().update(delta, cam);
+	}
+	
+	/**
+	 * Store the position of every entity as the previous simulation state, called before each tick
+	 */
+	public void storeLastPositions()
+	{
+		final EntityRegistry entities = getEntities();
+		entities.compact();
+		
+		for (int i = 0; i < entities.getActorCount(); i++) entities.getActor(i).storeLastPosition();
+		for (int i = 0; i < entities.getLevelObjectCount(); i++) entities.getLevelObject(i).storeLastPosition();
+	}
+	
+	/**
+	 * Place every entity's model alpha of the way between the last two simulation states
+	 */
+	public void interpolate(float alpha)
+	{
+		final EntityRegistry entities = getEntities();
+		entities.compact();
+		
+		for (int i = 0; i < entities.getActorCount(); i++) entities.getActor(i).interpolate(alpha);
+		for (int i = 0; i < entities.getLevelObjectCount(); i++) entities.getLevelObject(i).interpolate(alpha);
+	}
+	
+	/**
+	 * Draw the level objects and actors (and find their visible emitters), skipping any behind walls. The occlusion
+	 * must have been updated for the camera this frame
+	 */
+	public void render(Renderer renderer, Camera cam, ArrayList<ParticleEmitter> visibleEmitters)
 	{
-		Player player = null;
+		final EntityRegistry entities = getEntities();
+		entities.compact();
 		
-		for (Tile[] tt : levelArray)
+		final TileOcclusion occlusion = getOcclusion();
+		
+		for (int i = 0; i < entities.getLevelObjectCount(); i++)
 		{
-			for (Tile t : tt)
-			{
-				player = t.getPlayer();
-				if (player != null) return player;
-			}
+			final LevelObject lo = entities.getLevelObject(i);
+			if (occlusion.isVisible(lo.position, lo.radius)) lo.render(renderer, visibleEmitters, cam);
 		}
 		
-		return null;
+		for (int i = 0; i < entities.getActorCount(); i++)
+		{
+			final GameActor ga = entities.getActor(i);
+			if (occlusion.isVisible(ga.position, ga.radius)) ga.render(renderer, visibleEmitters, cam);
+		}
+	}
+	
+	public Player getPlayer()
+	{
+		return getEntities().getPlayer();
 	}
 	
 	public void getLights(LightManager lightManager)
 	{
-		for (Tile[] tt : levelArray)
-		{
-			for (Tile t : tt)
-			{
-				t.getLights(lightManager);
-			}
-		}
+		final EntityRegistry entities = getEntities();
+		entities.compact();
+		
+		for (int i = 0; i < entities.getActorCount(); i++) entities.getActor(i).getLight(lightManager);
+		for (int i = 0; i < entities.getLevelObjectCount(); i++) entities.getLevelObject(i).getLight(lightManager);
 	}
 	
 	public void positionPlayer(Player player, String prevLevel, String currentLevel)
 	{
-		for (Tile[] tt : levelArray)
+		final EntityRegistry entities = getEntities();
+		entities.compact();
+		
+		for (int i = 0; i < entities.getLevelObjectCount(); i++)
 		{
-			for (Tile t : tt)
+			LevelObject lo = entities.getLevelObject(i);
+			if (lo instanceof PlayerPlacer)
 			{
-				if (t.positionPlayer(player, prevLevel, currentLevel)) return;
+				System.out.println("Player placed at Player Placer");
+				if (prevLevel.equals(currentLevel))
+				{
+					player.positionAbsolutely(lo.position.x, lo.position.y+player.radius+1, lo.position.z);
+					return;
+				}
+			}
+			else if (lo instanceof Stair)
+			{
+				System.out.println("Player placed at Stair");
+				Stair s = (Stair) lo;
+				
+				if (s.level_UID.equals(prevLevel))
+				{
+					player.positionAbsolutely(s.position.x, s.position.y+s.position.y+s.radius+player.radius+1, 0);
+					return;
+				}
 			}
 		}
 	}
 	
 	public void evaluateUniqueBehaviour(LightManager lightManager)
 	{
-		for (Tile[] tt : levelArray)
+		final EntityRegistry entities = getEntities();
+		entities.compact();
+		
+		// Spawners add actors as they go, which are appended to the registry
+		for (int i = 0; i < entities.getLevelObjectCount(); i++)
 		{
-			for (Tile t : tt)
+			LevelObject lo = entities.getLevelObject(i);
+			if (lo instanceof Spawner)
+			{
+				Spawner s = (Spawner) lo;
+				
+				s.spawn(this, lightManager);
+			}
+			else if (lo instanceof Door)
 			{
-				t.evaluateUniqueBehaviour(this, lightManager);
+				Door d = (Door) lo;
+				
+				d.orientate(this);
 			}
 		}
 	}
 	
 	public void fixReferences()
 	{
-		for (Tile[] tt : levelArray)
-		{
-			for (Tile t : tt)
-			{
-				t.fixReferences();
-			}
-		}
+		final EntityRegistry entities = getEntities();
+		entities.compact();
+		
+		for (int i = 0; i < entities.getActorCount(); i++) entities.getActor(i).fixReferences();
+		for (int i = 0; i < entities.getLevelObjectCount(); i++) entities.getLevelObject(i).fixReferences();
 	}
 	
 	public void create()
 	{
-		for (Tile[] tt : levelArray)
-		{
-			for (Tile t : tt)
-			{
-				t.create();
-			}
-		}
+		final EntityRegistry entities = getEntities();
+		entities.compact();
+		
+		for (int i = 0; i < entities.getActorCount(); i++) entities.getActor(i).create();
+		for (int i = 0; i < entities.getLevelObjectCount(); i++) entities.getLevelObject(i).create();
+		
+		buildSpatialHashes();
 	}
 	
 	public void bakeLights(LightManager lightManager)
 	{
-		for (Tile[] tt : levelArray)
+		final EntityRegistry entities = getEntities();
+		entities.compact();
+		
+		for (int i = 0; i < entities.getActorCount(); i++)
 		{
-			for (Tile t : tt)
-			{
-				t.bakeLights(lightManager);
-			}
+			GameActor ga = entities.getActor(i);
+			ga.bakeLights(lightManager, false);
+			if (ga.L_HAND != null) ga.L_HAND.model.bakeLight(lightManager, false);
+			if (ga.R_HAND != null) ga.R_HAND.model.bakeLight(lightManager, false);
+		}
+		for (int i = 0; i < entities.getLevelObjectCount(); i++)
+		{
+			entities.getLevelObject(i).bakeLights(lightManager, true);
 		}
 	}
 	
 	public void dispose()
 	{
-		for (Tile[] tt : levelArray)
-		{
-			for (Tile t : tt)
-			{
-				t.dispose();
-			}
-		}
+		final EntityRegistry entities = getEntities();
+		entities.compact();
+		
+		for (int i = 0; i < entities.getActorCount(); i++) entities.getActor(i).dispose();
+		for (int i = 0; i < entities.getLevelObjectCount(); i++) entities.getLevelObject(i).dispose();
 	}
 	
+	/**
+	 * Describe the first part of the level hit by the ray
+	 * @param view the squared length of the ray
+	 * @return the squared distance to whatever was described, or view if nothing was hit
+	 */
 	public float getDescription(Ray ray, float view, StringBuilder sB, boolean longDesc)
 	{
-		Vector3 pos = Pools.obtain(Vector3.class).set(ray.origin);
-		Vector3 step = Pools.obtain(Vector3.class).set(ray.direction).mul(VIEW_STEP);
+		CollisionQuery query = CollisionQuery.get();
+		float dist = collideRayLevel(ray.origin.x, ray.origin.y, ray.origin.z, ray.direction.x, ray.direction.y, ray.direction.z, 
+				(float) Math.sqrt(view), query);
 		
-		float dist = 0;
+		if (!query.hitLevel) return view;
 		
-		for (int i = 0; i < view; i += VIEW_STEP)
+		sB.delete(0, sB.length());
+		
+		char c = (query.normalY < 0) ? 'R' : levelArray[query.tileX][query.tileZ].getCharacter();
+		if (longDesc)
 		{
-			dist += VIEW_STEP;
-			
-			if (dist*dist > view) break;
-			
-			pos.add(step);
-			
-			Tile t = getTile(pos.x, pos.z);
-			if (t == null) { dist=view; break; }
-			
-			if (pos.y < t.height)
-			{
-				sB.delete(0, sB.length());
-				if (longDesc)
-				{
-					sB.append(longDescs.get(t.character));
-				}
-				else
-				{
-					sB.append(shortDescs.get(t.character));
-				}
-				break;
-			}
-			else if (pos.y > t.roof)
-			{
-				if (hasRoof) {
-					sB.delete(0, sB.length());
-					if (longDesc)
-					{
-						sB.append(longDescs.get('R'));
-					}
-					else
-					{
-						sB.append(shortDescs.get('R'));
-					}
-				}
-				else
-				{
-					
-				}
-				break;
-			}
+			sB.append(longDescs.get(c));
+		}
+		else
+		{
+			sB.append(shortDescs.get(c));
 		}
-		
-		Pools.free(pos);
-		Pools.free(step);
 		
 		return dist*dist;
 	}
@@ -439,131 +594,273 @@ public class Level implements Serializable {
 //		return chosen;
 //	}
 	
+	/**
+	 * @param view the squared length of the ray
+	 */
 	public boolean collideRayLevel(Ray ray, float view)
 	{
-		Vector3 pos = Pools.obtain(Vector3.class).set(ray.origin);
-		Vector3 step = Pools.obtain(Vector3.class).set(ray.direction).mul(VIEW_STEP);
+		CollisionQuery query = CollisionQuery.get();
+		collideRayLevel(ray.origin.x, ray.origin.y, ray.origin.z, ray.direction.x, ray.direction.y, ray.direction.z, 
+				(float) Math.sqrt(view), query);
+		
+		return query.hitLevel;
+	}
+	
+	/**
+	 * Walk a ray through every tile it crosses, in order (Amanatides & Woo), testing the walls, floor and roof of each
+	 * analytically. Leaving the level ends the ray without a hit. The roof only counts if the level has one.
+	 * <p>
+	 * On a hit query.hitLevel is set, along with the tile, the normal (pointing down for the roof) and
+	 * query.time as the fraction of maxDist.
+	 * @param dx,dy,dz the ray direction, which must be normalised
+	 * @return the distance to the hit, or maxDist if nothing was hit
+	 */
+	public float collideRayLevel(float ox, float oy, float oz, float dx, float dy, float dz, float maxDist, CollisionQuery query)
+	{
+		query.reset();
+		
+		if (maxDist <= 0) return maxDist;
 		
-		float dist = 0;
-		boolean collide = false;
+		int tx = getTileX(ox);
+		int tz = getTileZ(oz);
 		
-		for (int i = 0; i < view; i += VIEW_STEP)
+		final int stepX = (dx > 0) ? 1 : -1;
+		final int stepZ = (dz > 0) ? 1 : -1;
+		
+		final float half = GameData.BLOCK_SIZE / 2f;
+		
+		float tMaxX = (dx != 0) ? (((tx*GameData.BLOCK_SIZE)+(stepX*half))-ox)/dx : Float.MAX_VALUE;
+		float tMaxZ = (dz != 0) ? (((tz*GameData.BLOCK_SIZE)+(stepZ*half))-oz)/dz : Float.MAX_VALUE;
+		final float tDeltaX = (dx != 0) ? Math.abs(GameData.BLOCK_SIZE/dx) : Float.MAX_VALUE;
+		final float tDeltaZ = (dz != 0) ? Math.abs(GameData.BLOCK_SIZE/dz) : Float.MAX_VALUE;
+		
+		float t0 = 0;
+		float nx = 0, nz = 0;
+		
+		while (true)
 		{
-			dist += VIEW_STEP;
+			if (checkBounds(tx, tz)) return maxDist;
 			
-			if (dist*dist > view) break;
+			Tile tile = levelArray[tx][tz];
+			float t1 = Math.min(Math.min(tMaxX, tMaxZ), maxDist);
+			float y0 = oy+(dy*t0);
 			
-			pos.add(step);
-
-			Tile t = getTile(pos.x, pos.z);
-			if (t == null) { dist=view; break; }
+			float t = -1;
+			float ny = 0;
 			
-			if (pos.y < t.height)
+			// Walls and floor, the ray either enters below the top of the tile or comes down onto it
+			if (y0 < tile.getHeight())
 			{
-				collide = true;
-				break;
+				t = t0;
 			}
-			else if (hasRoof && pos.y > t.roof)
+			else if (dy < 0)
 			{
-				collide = true;
-				break;
+				float tf = (tile.getHeight()-oy)/dy;
+				if (tf <= t1)
+				{
+					t = tf;
+					ny = 1;
+				}
+			}
+			
+			// Roof
+			if (hasRoof && t < 0)
+			{
+				if (y0 > tile.getRoof())
+				{
+					t = t0;
+					ny = -1;
+				}
+				else if (dy > 0)
+				{
+					float tr = (tile.getRoof()-oy)/dy;
+					if (tr <= t1)
+					{
+						t = tr;
+						ny = -1;
+					}
+				}
+			}
+			
+			if (t >= 0)
+			{
+				if (ny != 0) query.contact(t/maxDist, 0, ny, 0);
+				else query.contact(t/maxDist, nx, 0, nz);
+				
+				query.hitLevel = true;
+				query.tileX = tx;
+				query.tileZ = tz;
+				return t;
+			}
+			
+			if (t1 >= maxDist) return maxDist;
+			
+			if (tMaxX < tMaxZ)
+			{
+				t0 = tMaxX;
+				tMaxX += tDeltaX;
+				tx += stepX;
+				nx = -stepX; nz = 0;
+			}
+			else
+			{
+				t0 = tMaxZ;
+				tMaxZ += tDeltaZ;
+				tz += stepZ;
+				nx = 0; nz = -stepZ;
 			}
 		}
-		
-		Pools.free(pos);
-		Pools.free(step);
-		return collide;
 	}
 	
-	public boolean collideSphereAll(float x, float y, float z, float radius, String UID)
+	/**
+	 * As {@link #collideRayLevel(float, float, float, float, float, float, float, CollisionQuery)}, but also finds the
+	 * first solid actor or level object (other than ignore) hit before the level. query.actor or query.levelObject is
+	 * set if one was.
+	 * @return the distance to the hit, or maxDist if nothing was hit
+	 */
+	public float collideRayAll(float ox, float oy, float oz, float dx, float dy, float dz, float maxDist, GameObject ignore, CollisionQuery query)
 	{
-		Tile tile = null;
-		tile = getTile(x+radius, z);
-		if (tile != null && checkSolid(tile)) return true;
+		float dist = collideRayLevel(ox, oy, oz, dx, dy, dz, maxDist, query);
+		final float[] hitDist = query.hitDist;
 		
-		tile = getTile(x-radius, z);
-		if (tile != null && checkSolid(tile)) return true;
+		LevelObject lo = getLevelObjectHash().raycast(ox, oy, oz, dx, dy, dz, dist, ignore, hitDist);
+		if (lo != null && hitDist[0] < dist)
+		{
+			dist = hitDist[0];
+			query.contact(dist/maxDist, -dx, -dy, -dz);
+			query.levelObject = lo;
+		}
 		
-		tile = getTile(x, z+radius);
-		if (tile != null && checkSolid(tile)) return true;
+		GameActor ga = getActorHash().raycast(ox, oy, oz, dx, dy, dz, dist, ignore, hitDist);
+		if (ga != null && hitDist[0] < dist)
+		{
+			dist = hitDist[0];
+			query.contact(dist/maxDist, -dx, -dy, -dz);
+			query.actor = ga;
+		}
 		
-		tile = getTile(x, z-radius);
-		if (tile != null && checkSolid(tile)) return true;
+		return dist;
+	}
+	
+	public boolean collideSphereAll(float x, float y, float z, float radius, String UID)
+	{
+		return collideSphereAll(x, y, z, radius, UID, CollisionQuery.get());
+	}
+	
+	/**
+	 * Collide a sphere against the level, level objects and actors, stopping at the first hit.
+	 * The result is written into query.
+	 * @return true if anything was hit
+	 */
+	public boolean collideSphereAll(float x, float y, float z, float radius, String UID, CollisionQuery query)
+	{
+		query.reset();
 		
-		tile = getTile(x+radius, z+radius);
-		if (tile != null && checkSolid(tile)) return true;
+		if (collideSphereLevel(x, y, z, radius, query)) return true;
 		
-		tile = getTile(x+radius, z-radius);
-		if (tile != null && checkSolid(tile)) return true;
+		if (collideSphereLevelObjectsAll(x, y, z, radius, query) != null) return true;
+		if (collideSphereActorsAll(x, y, z, radius, UID, query) != null) return true;
 		
-		tile = getTile(x-radius, z+radius);
-		if (tile != null && checkSolid(tile)) return true;
+		return false;
+	}
+	
+	/**
+	 * Collide a sphere against the solid tiles, floor and roof of the level. Sets query.hitLevel and the tile position on a hit.
+	 */
+	public boolean collideSphereLevel(float x, float y, float z, float radius, CollisionQuery query)
+	{
+		query.hitLevel = true;
+		
+		if (collideTileSolid(x+radius, z, query)) return true;
+		if (collideTileSolid(x-radius, z, query)) return true;
+		if (collideTileSolid(x, z+radius, query)) return true;
+		if (collideTileSolid(x, z-radius, query)) return true;
+		if (collideTileSolid(x+radius, z+radius, query)) return true;
+		if (collideTileSolid(x+radius, z-radius, query)) return true;
+		if (collideTileSolid(x-radius, z+radius, query)) return true;
+		if (collideTileSolid(x-radius, z-radius, query)) return true;
+		
+		int tx = getTileX(x);
+		int tz = getTileZ(z);
+		query.tileX = tx;
+		query.tileZ = tz;
+		
+		if (checkBounds(tx, tz))
+		{
+			query.tileX = -1;
+			query.tileZ = -1;
+			return true;
+		}
 		
-		tile = getTile(x-radius, z-radius);
-		if (tile != null && checkSolid(tile)) return true;
-
-		tile = getTile(x, z);
-		if (tile != null && checkSolid(tile)) return true;
-		if (tile == null) return true;
+		Tile tile = levelArray[tx][tz];
+		if (checkSolid(tile)) return true;
 		
-		if (y-radius < tile.height)
+		if (y-radius < tile.getHeight())
 		{
 			return true;
 		}
-		else if (hasRoof && y+radius > tile.roof)
+		else if (hasRoof && y+radius > tile.getRoof())
 		{
 			return true;
 		}
 		
-		if (collideSphereLevelObjectsAll(x, y, z, radius) != null) return true;
-		if (collideSphereActorsAll(x, y, z, radius, UID) != null) return true;
+		query.hitLevel = false;
+		query.tileX = -1;
+		query.tileZ = -1;
 		
 		return false;
 	}
 	
-	public LevelObject collideSphereLevelObjectsAll(float x, float y, float z, float radius)
+	private boolean collideTileSolid(float x, float z, CollisionQuery query)
 	{
-		tx = (int)((x/10f)+0.5f);
-		tz = (int)((z/10f)+0.5f);
-		radius2 = radius * radius;
-		final Tile[][] block = getBlock(tx, tz);
-		
-		LevelObject lo = null;
+		int tx = getTileX(x);
+		int tz = getTileZ(z);
 		
-		lo = collideSphereLevelObjectsTile(block[0][0], x, y, z, radius2);
-		if (lo != null) return lo;
+		if (checkBounds(tx, tz) || !checkSolid(levelArray[tx][tz])) return false;
 		
-		lo = collideSphereLevelObjectsTile(block[1][0], x, y, z, radius2);
-		if (lo != null) return lo;
-		
-		lo = collideSphereLevelObjectsTile(block[2][0], x, y, z, radius2);
-		if (lo != null) return lo;
-		
-		lo = collideSphereLevelObjectsTile(block[0][1], x, y, z, radius2);
-		if (lo != null) return lo;
-		
-		lo = collideSphereLevelObjectsTile(block[1][1], x, y, z, radius2);
-		if (lo != null) return lo;
-		
-		lo = collideSphereLevelObjectsTile(block[2][1], x, y, z, radius2);
-		if (lo != null) return lo;
-		
-		lo = collideSphereLevelObjectsTile(block[0][2], x, y, z, radius2);
-		if (lo != null) return lo;
+		query.tileX = tx;
+		query.tileZ = tz;
+		return true;
+	}
+	
+	public LevelObject collideSphereLevelObjectsAll(float x, float y, float z, float radius)
+	{
+		return collideSphereLevelObjectsAll(x, y, z, radius, CollisionQuery.get());
+	}
+	
+	/**
+	 * @return the first solid LevelObject touching the sphere, which is also written to query.levelObject
+	 */
+	public LevelObject collideSphereLevelObjectsAll(float x, float y, float z, float radius, CollisionQuery query)
+	{
+		final float radius2 = radius * radius;
 		
-		lo = collideSphereLevelObjectsTile(block[1][2], x, y, z, radius2);
-		if (lo != null) return lo;
+		final Bag<LevelObject> candidates = query.levelObjects;
+		getLevelObjectHash().querySphere(x, y, z, radius, candidates);
 		
-		lo = collideSphereLevelObjectsTile(block[2][2], x, y, z, radius2);
-		if (lo != null) return lo;
+		LevelObject found = null;
+		for (int i = 0; i < candidates.size; i++)
+		{
+			LevelObject lo = candidates.get(i);
+			if (!lo.solid) continue;
+			if (lo.position.dst2(x, y, z) <= radius2+(lo.radius*lo.radius))
+			{
+				found = lo;
+				break;
+			}
+		}
+		candidates.clear();
 		
-		return null;
+		query.levelObject = found;
+		return found;
 	}
 	
 	public LevelObject collideSphereLevelObjectsTile(Tile tile, float x, float y, float z, float radius2)
 	{
-		for (LevelObject lo : tile.levelObjects)
+		final Bag<LevelObject> levelObjects = tile.getLevelObjects();
+		for (int i = 0; i < levelObjects.size; i++)
 		{
+			LevelObject lo = levelObjects.get(i);
 			if (!lo.solid) continue;
 			if (lo.position.dst2(x, y, z) <= radius2+(lo.radius*lo.radius)) return lo;
 		}	
@@ -572,85 +869,79 @@ public class Level implements Serializable {
 	
 	public GameActor collideSphereActorsAll(float x, float y, float z, float radius, String UID)
 	{
-		tx = (int)((x/10f)+0.5f);
-		tz = (int)((z/10f)+0.5f);
-		radius2 = radius * radius;
-		final Tile[][] block = getBlock(tx, tz);
-		
-		GameActor ga = null;
-		
-		ga = collideSphereActorsTile(block[0][0], x, y, z, radius2, UID);
-		if (ga != null) return ga;
-		
-		ga = collideSphereActorsTile(block[1][0], x, y, z, radius2, UID);
-		if (ga != null) return ga;
-		
-		ga = collideSphereActorsTile(block[2][0], x, y, z, radius2, UID);
-		if (ga != null) return ga;
-		
-		ga = collideSphereActorsTile(block[0][1], x, y, z, radius2, UID);
-		if (ga != null) return ga;
-		
-		ga = collideSphereActorsTile(block[1][1], x, y, z, radius2, UID);
-		if (ga != null) return ga;
-		
-		ga = collideSphereActorsTile(block[2][1], x, y, z, radius2, UID);
-		if (ga != null) return ga;
-		
-		ga = collideSphereActorsTile(block[0][2], x, y, z, radius2, UID);
-		if (ga != null) return ga;
+		return collideSphereActorsAll(x, y, z, radius, UID, CollisionQuery.get());
+	}
+	
+	/**
+	 * @return the first solid GameActor (other than the one with the given UID) touching the sphere, which is also written to query.actor
+	 */
+	public GameActor collideSphereActorsAll(float x, float y, float z, float radius, String UID, CollisionQuery query)
+	{
+		final float radius2 = radius * radius;
 		
-		ga = collideSphereActorsTile(block[1][2], x, y, z, radius2, UID);
-		if (ga != null) return ga;
+		final Bag<GameActor> candidates = query.actors;
+		getActorHash().querySphere(x, y, z, radius, candidates);
 		
-		ga = collideSphereActorsTile(block[2][2], x, y, z, radius2, UID);
-		if (ga != null) return ga;
+		GameActor found = null;
+		for (int i = 0; i < candidates.size; i++)
+		{
+			GameActor ga = candidates.get(i);
+			if (!ga.solid) continue;
+			if (UID != null)
+			{
+				if (ga.UID.equals(UID)) continue;
+			}
+			
+			if (ga.position.dst2(x, y, z) <= radius2+(ga.radius*ga.radius))
+			{
+				found = ga;
+				break;
+			}
+		}
+		candidates.clear();
 		
-		return null;
+		query.actor = found;
+		return found;
 	}
 	
 	public GameActor collideBoxActorsAll(float x, float y, float z, Vector3 box, String UID)
 	{
-		tx = (int)((x/10f)+0.5f);
-		tz = (int)((z/10f)+0.5f);
-		final Tile[][] block = getBlock(tx, tz);
-		
-		GameActor ga = null;
-		
-		ga = collideBoxActorsTile(block[0][0], x, y, z, box, UID);
-		if (ga != null) return ga;
-		
-		ga = collideBoxActorsTile(block[1][0], x, y, z, box, UID);
-		if (ga != null) return ga;
-		
-		ga = collideBoxActorsTile(block[2][0], x, y, z, box, UID);
-		if (ga != null) return ga;
-		
-		ga = collideBoxActorsTile(block[0][1], x, y, z, box, UID);
-		if (ga != null) return ga;
-		
-		ga = collideBoxActorsTile(block[1][1], x, y, z, box, UID);
-		if (ga != null) return ga;
-		
-		ga = collideBoxActorsTile(block[2][1], x, y, z, box, UID);
-		if (ga != null) return ga;
-		
-		ga = collideBoxActorsTile(block[0][2], x, y, z, box, UID);
-		if (ga != null) return ga;
-		
-		ga = collideBoxActorsTile(block[1][2], x, y, z, box, UID);
-		if (ga != null) return ga;
+		return collideBoxActorsAll(x, y, z, box, UID, CollisionQuery.get());
+	}
+	
+	/**
+	 * @return the first solid GameActor (other than the one with the given UID) touching the box, which is also written to query.actor
+	 */
+	public GameActor collideBoxActorsAll(float x, float y, float z, Vector3 box, String UID, CollisionQuery query)
+	{
+		final Bag<GameActor> candidates = query.actors;
+		getActorHash().queryBox(x, y, z, box.x, box.y, box.z, candidates);
 		
-		ga = collideBoxActorsTile(block[2][2], x, y, z, box, UID);
-		if (ga != null) return ga;
+		GameActor found = null;
+		for (int i = 0; i < candidates.size; i++)
+		{
+			GameActor ga = candidates.get(i);
+			if (!ga.solid) continue;
+			if (UID != null)
+			{
+				if (ga.UID.equals(UID)) continue;
+			}
+			
+			found = ga;
+			break;
+		}
+		candidates.clear();
 		
-		return null;
+		query.actor = found;
+		return found;
 	}
 	
 	public GameActor collideSphereActorsTile(Tile tile, float x, float y, float z, float radius2, String UID)
 	{
-		for (GameActor ga : tile.actors)
+		final Bag<GameActor> actors = tile.getActors();
+		for (int i = 0; i < actors.size; i++)
 		{
+			GameActor ga = actors.get(i);
 			if (!ga.solid) continue;
 			if (UID != null)
 			{
@@ -665,8 +956,10 @@ public class Level implements Serializable {
 	
 	public GameActor collideBoxActorsTile(Tile tile, float x, float y, float z, Vector3 box, String UID)
 	{
-		for (GameActor ga : tile.actors)
+		final Bag<GameActor> actors = tile.getActors();
+		for (int i = 0; i < actors.size; i++)
 		{
+			GameActor ga = actors.get(i);
 			if (!ga.solid) continue;
 			if (UID != null)
 			{
@@ -681,56 +974,365 @@ public class Level implements Serializable {
 	
 	public Tile[][] getBlock(int tx, int tz)
 	{
-		Tile t = null;
-		
-		bx = tx-1; bz = tz+1;
-		if (checkBounds(bx, bz)) t = null;
-		else t = levelArray[bx][bz];
-		block[0][0] = t;
-		
-		bx = tx; bz = tz+1;
-		if (checkBounds(bx, bz)) t = null;
-		else t = levelArray[bx][bz];
-		block[1][0] = t;
-		
-		bx = tx+1; bz = tz+1;
-		if (checkBounds(bx, bz)) t = null;
-		else t = levelArray[bx][bz];
-		block[2][0] = t;
-		
-		bx = tx-1; bz = tz;
-		if (checkBounds(bx, bz)) t = null;
-		else t = levelArray[bx][bz];
-		block[0][1] = t;
-		
-		bx = tx; bz = tz;
-		if (checkBounds(bx, bz)) t = null;
-		else t = levelArray[bx][bz];
-		block[1][1] = t;
-		
-		bx = tx+1; bz = tz;
-		if (checkBounds(bx, bz)) t = null;
-		else t = levelArray[bx][bz];
-		block[2][1] = t;
-		
-		bx = tx-1; bz = tz-1;
-		if (checkBounds(bx, bz)) t = null;
-		else t = levelArray[bx][bz];
-		block[0][2] = t;
-		
-		bx = tx; bz = tz-1;
-		if (checkBounds(bx, bz)) t = null;
-		else t = levelArray[bx][bz];
-		block[1][2] = t;
-		
-		bx = tx+1; bz = tz-1;
-		if (checkBounds(bx, bz)) t = null;
-		else t = levelArray[bx][bz];
-		block[2][2] = t;
+		return getBlock(tx, tz, CollisionQuery.get().block);
+	}
+	
+	/**
+	 * Fill block with the 3x3 tiles around (tx, tz), out of bounds tiles are null
+	 * @return block
+	 */
+	public Tile[][] getBlock(int tx, int tz, Tile[][] block)
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			for (int j = 0; j < 3; j++)
+			{
+				int bx = tx-1+i;
+				int bz = tz+1-j;
+				
+				if (checkBounds(bx, bz)) block[i][j] = null;
+				else block[i][j] = levelArray[bx][bz];
+			}
+		}
 		
 		return block;
 	}
 	
+	// ----- Swept collision ----- //
+	
+	/**
+	 * Distance kept between a swept sphere and whatever it hits, so the next sweep does not start inside it
+	 */
+	public static final float SWEEP_SKIN = 0.01f;
+	
+	/**
+	 * Sweep a sphere from (x, y, z) along (dx, dy, dz) in a single pass against the solid tiles, the floor and roof of the
+	 * tiles crossed, and the solid level objects and actors (other than the one with the given UID).
+	 * <p>
+	 * Solid tiles are tested against the sphere's square footprint and the floor and roof against its centre, and objects use
+	 * the combined radius sqrt(r*r + R*R), the same shapes as {@link #collideSphereAll(float, float, float, float, String)}.
+	 * Contacts the sphere is already resting on only count if it is moving into them, so it can always move away.
+	 * <p>
+	 * The time of impact, normal and what was hit are written into query.
+	 * @return the fraction of the movement that can be made before the first contact, 1 if nothing is hit
+	 */
+	public float sweepSphere(float x, float y, float z, float radius, float dx, float dy, float dz, String UID, CollisionQuery query)
+	{
+		query.reset();
+		
+		if (dx == 0 && dy == 0 && dz == 0) return 1;
+		
+		sweepWalls(x, z, radius, dx, dz, query);
+		sweepFloorRoof(x, y, z, radius, dx, dy, dz, query);
+		sweepLevelObjects(x, y, z, radius, dx, dy, dz, query);
+		sweepActors(x, y, z, radius, dx, dy, dz, UID, query);
+		
+		return query.time;
+	}
+	
+	private void sweepWalls(float x, float z, float radius, float dx, float dz, CollisionQuery query)
+	{
+		final float half = GameData.BLOCK_SIZE / 2f;
+		final float reach = half + radius;
+		
+		int x1 = Math.max(-1, getTileX(Math.min(x, x+dx)-radius));
+		int x2 = Math.min(width, getTileX(Math.max(x, x+dx)+radius));
+		int z1 = Math.max(-1, getTileZ(Math.min(z, z+dz)-radius));
+		int z2 = Math.min(height, getTileZ(Math.max(z, z+dz)+radius));
+		
+		for (int tx = x1; tx <= x2; tx++)
+		{
+			for (int tz = z1; tz <= z2; tz++)
+			{
+				if (!checkBounds(tx, tz) && !checkSolid(levelArray[tx][tz])) continue;
+				
+				float cx = tx*GameData.BLOCK_SIZE;
+				float cz = tz*GameData.BLOCK_SIZE;
+				
+				float lx = x-cx;
+				float lz = z-cz;
+				
+				// Already touching or inside the expanded tile, only a contact if moving further in
+				if (Math.abs(lx) <= reach && Math.abs(lz) <= reach)
+				{
+					float depthX = reach-Math.abs(lx);
+					float depthZ = reach-Math.abs(lz);
+					
+					float nx = 0, nz = 0;
+					if (depthX < depthZ) nx = Math.signum(lx);
+					else nz = Math.signum(lz);
+					
+					if (Math.min(depthX, depthZ) <= SWEEP_SKIN*2 && (dx*nx)+(dz*nz) < 0 && query.contact(0, nx, 0, nz))
+					{
+						query.hitLevel = true;
+						query.tileX = tx;
+						query.tileZ = tz;
+					}
+					continue;
+				}
+				
+				float tEnter = 0, tExit = 1;
+				float nx = 0, nz = 0;
+				
+				if (dx == 0)
+				{
+					if (Math.abs(lx) > reach) continue;
+				}
+				else
+				{
+					float t1 = (-reach-lx)/dx;
+					float t2 = (reach-lx)/dx;
+					float n = -1;
+					if (t1 > t2) { float t = t1; t1 = t2; t2 = t; n = 1; }
+					if (t1 > tEnter) { tEnter = t1; nx = n; nz = 0; }
+					if (t2 < tExit) tExit = t2;
+				}
+				
+				if (dz == 0)
+				{
+					if (Math.abs(lz) > reach) continue;
+				}
+				else
+				{
+					float t1 = (-reach-lz)/dz;
+					float t2 = (reach-lz)/dz;
+					float n = -1;
+					if (t1 > t2) { float t = t1; t1 = t2; t2 = t; n = 1; }
+					if (t1 > tEnter) { tEnter = t1; nx = 0; nz = n; }
+					if (t2 < tExit) tExit = t2;
+				}
+				
+				if (tEnter > tExit) continue;
+				
+				if (query.contact(tEnter, nx, 0, nz))
+				{
+					query.hitLevel = true;
+					query.tileX = tx;
+					query.tileZ = tz;
+				}
+			}
+		}
+	}
+	
+	private void sweepFloorRoof(float x, float y, float z, float radius, float dx, float dy, float dz, CollisionQuery query)
+	{
+		int tx = getTileX(x);
+		int tz = getTileZ(z);
+		
+		final int stepX = (dx > 0) ? 1 : -1;
+		final int stepZ = (dz > 0) ? 1 : -1;
+		
+		final float half = GameData.BLOCK_SIZE / 2f;
+		
+		float tMaxX = (dx != 0) ? (((tx*GameData.BLOCK_SIZE)+(stepX*half))-x)/dx : Float.MAX_VALUE;
+		float tMaxZ = (dz != 0) ? (((tz*GameData.BLOCK_SIZE)+(stepZ*half))-z)/dz : Float.MAX_VALUE;
+		final float tDeltaX = (dx != 0) ? Math.abs(GameData.BLOCK_SIZE/dx) : Float.MAX_VALUE;
+		final float tDeltaZ = (dz != 0) ? Math.abs(GameData.BLOCK_SIZE/dz) : Float.MAX_VALUE;
+		
+		float t0 = 0;
+		float nx = 0, nz = 0;
+		
+		while (t0 < query.time)
+		{
+			// Leaving the level or entering a wall is left to sweepWalls
+			if (checkBounds(tx, tz)) return;
+			Tile tile = levelArray[tx][tz];
+			if (checkSolid(tile)) return;
+			
+			float t1 = Math.min(Math.min(tMaxX, tMaxZ), 1);
+			
+			float floor = tile.getHeight()+radius;
+			float roof = tile.getRoof()-radius;
+			float y0 = y+(dy*t0);
+			
+			if (y0 < floor-SWEEP_SKIN)
+			{
+				// Stepping into a tile whose floor is above us acts as a wall, below the floor at the start only stops us sinking
+				if (t0 > 0 && query.contact(t0, nx, 0, nz)) hitTile(query, tx, tz);
+				else if (t0 == 0 && dy < 0 && query.contact(0, 0, 1, 0)) hitTile(query, tx, tz);
+			}
+			else if (dy < 0)
+			{
+				float t = (floor-y)/dy;
+				if (t <= t1 && query.contact(Math.max(t, t0), 0, 1, 0)) hitTile(query, tx, tz);
+			}
+			
+			if (hasRoof)
+			{
+				if (y0 > roof+SWEEP_SKIN)
+				{
+					if (t0 > 0 && query.contact(t0, nx, 0, nz)) hitTile(query, tx, tz);
+					else if (t0 == 0 && dy > 0 && query.contact(0, 0, -1, 0)) hitTile(query, tx, tz);
+				}
+				else if (dy > 0)
+				{
+					float t = (roof-y)/dy;
+					if (t <= t1 && query.contact(Math.max(t, t0), 0, -1, 0)) hitTile(query, tx, tz);
+				}
+			}
+			
+			if (t1 >= 1) return;
+			
+			if (tMaxX < tMaxZ)
+			{
+				t0 = tMaxX;
+				tMaxX += tDeltaX;
+				tx += stepX;
+				nx = -stepX; nz = 0;
+			}
+			else
+			{
+				t0 = tMaxZ;
+				tMaxZ += tDeltaZ;
+				tz += stepZ;
+				nx = 0; nz = -stepZ;
+			}
+		}
+	}
+	
+	private void hitTile(CollisionQuery query, int tx, int tz)
+	{
+		query.hitLevel = true;
+		query.tileX = tx;
+		query.tileZ = tz;
+	}
+	
+	private void sweepLevelObjects(float x, float y, float z, float radius, float dx, float dy, float dz, CollisionQuery query)
+	{
+		float len = (float) Math.sqrt((dx*dx)+(dy*dy)+(dz*dz));
+		
+		final Bag<LevelObject> candidates = query.levelObjects;
+		getLevelObjectHash().querySphere(x+(dx/2), y+(dy/2), z+(dz/2), radius+(len/2), candidates);
+		
+		for (int i = 0; i < candidates.size; i++)
+		{
+			LevelObject lo = candidates.get(i);
+			if (!lo.solid) continue;
+			
+			if (sweepObject(x, y, z, radius, dx, dy, dz, lo, query)) query.levelObject = lo;
+		}
+		candidates.clear();
+	}
+	
+	private void sweepActors(float x, float y, float z, float radius, float dx, float dy, float dz, String UID, CollisionQuery query)
+	{
+		float len = (float) Math.sqrt((dx*dx)+(dy*dy)+(dz*dz));
+		
+		final Bag<GameActor> candidates = query.actors;
+		getActorHash().querySphere(x+(dx/2), y+(dy/2), z+(dz/2), radius+(len/2), candidates);
+		
+		for (int i = 0; i < candidates.size; i++)
+		{
+			GameActor ga = candidates.get(i);
+			if (!ga.solid) continue;
+			if (UID != null)
+			{
+				if (ga.UID.equals(UID)) continue;
+			}
+			
+			if (sweepObject(x, y, z, radius, dx, dy, dz, ga, query)) query.actor = ga;
+		}
+		candidates.clear();
+	}
+	
+	private boolean sweepObject(float x, float y, float z, float radius, float dx, float dy, float dz, GameObject go, CollisionQuery query)
+	{
+		float r2 = (radius*radius)+(go.radius*go.radius);
+		
+		float lx = x-go.position.x, ly = y-go.position.y, lz = z-go.position.z;
+		float a = (dx*dx)+(dy*dy)+(dz*dz);
+		float b = (lx*dx)+(ly*dy)+(lz*dz);
+		float c = (lx*lx)+(ly*ly)+(lz*lz)-r2;
+		
+		// Moving away (or past) never hits
+		if (b >= 0) return false;
+		
+		float t;
+		if (c <= 0)
+		{
+			t = 0;
+		}
+		else
+		{
+			float disc = (b*b)-(a*c);
+			if (disc < 0) return false;
+			t = (-b-(float)Math.sqrt(disc))/a;
+			if (t > 1) return false;
+		}
+		
+		float nx = lx+(dx*t), ny = ly+(dy*t), nz = lz+(dz*t);
+		float nl = (float) Math.sqrt((nx*nx)+(ny*ny)+(nz*nz));
+		if (nl == 0) { nx = -dx; ny = -dy; nz = -dz; nl = (float) Math.sqrt(a); }
+		
+		return query.contact(t, nx/nl, ny/nl, nz/nl);
+	}
+	
+	// ----- Pathfinding ----- //
+	
+	public PathService getPathService()
+	{
+		if (pathService == null) pathService = new PathService(this);
+		return pathService;
+	}
+	
+	/**
+	 * The distance field towards the player, shared by every chasing actor
+	 */
+	public FlowField getFlowField()
+	{
+		if (flowField == null) flowField = new FlowField(this);
+		return flowField;
+	}
+	
+	public Perception getPerception()
+	{
+		if (perception == null) perception = new Perception(this);
+		return perception;
+	}
+	
+	/**
+	 * Create the lazily made queries that actors read while thinking, which can be on many threads at once, so none of
+	 * them is first made there. Called by the scheduler before each tick
+	 */
+	public void prepareShared()
+	{
+		getActorHash();
+		getLevelObjectHash();
+		getPathService();
+		getFlowField();
+		getPerception();
+	}
+	
+	/**
+	 * @return a generator for one object, split from the level's by how many were asked for before it, so a level
+	 * made from a seed gives the same one to each object as long as they ask in the same order
+	 */
+	public synchronized SplitRandom nextObjectRandom()
+	{
+		if (objectRandom == null) objectRandom = new SplitRandom();
+		return objectRandom.split(objectCount++);
+	}
+	
+	public TileOcclusion getOcclusion()
+	{
+		if (occlusion == null) occlusion = new TileOcclusion(this);
+		return occlusion;
+	}
+	
+	/**
+	 * Must be called whenever a tile changes character or a solid LevelObject is added, removed or opened,
+	 * so that cached paths are dropped.
+	 */
+	public void tilesChanged()
+	{
+		tileVersion++;
+	}
+	
+	public int getTileVersion()
+	{
+		return tileVersion;
+	}
+	
 	// ----- Check mappings ----- //
 	
 	public boolean checkBounds(int x, int z)
@@ -741,24 +1343,50 @@ public class Level implements Serializable {
 	
 	public Tile getTile(float x, float z)
 	{
-		tx = (int)((x/10f)+0.5f);
-		tz = (int)((z/10f)+0.5f);
+		int tx = getTileX(x);
+		int tz = getTileZ(z);
 		
 		if (checkBounds(tx, tz)) return null;
 		
 		return levelArray[tx][tz];
 	}
 	
+	public static int getTileX(float x)
+	{
+		return (int)((x/10f)+0.5f);
+	}
+	
+	public static int getTileZ(float z)
+	{
+		return (int)((z/10f)+0.5f);
+	}
+	
 	public boolean checkSolid(Tile tile)
 	{
-		for (Character c : solids) if (tile.character == c) return true;
-		return false;
+		return TileStore.get(tile.store.solid, tile.index);
+	}
+	
+	/**
+	 * A tile can be walked through if it is in bounds, not solid and holds no solid LevelObject
+	 */
+	public boolean checkPassable(int x, int z)
+	{
+		if (checkBounds(x, z)) return false;
+		
+		if (tiles.isSolid(x, z)) return false;
+		
+		final Bag<LevelObject> levelObjects = levelArray[x][z].getLevelObjects();
+		for (int i = 0; i < levelObjects.size; i++)
+		{
+			if (levelObjects.get(i).solid) return false;
+		}
+		
+		return true;
 	}
 	
 	public boolean checkOpaque(Tile tile)
 	{
-		for (Character c : solids) if (tile.character == c) return true;
-		return false;
+		return TileStore.get(tile.store.opaque, tile.index);
 	}
 }
 
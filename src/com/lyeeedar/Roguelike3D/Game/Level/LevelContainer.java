@@ -13,14 +13,15 @@ package com.lyeeedar.Roguelike3D.Game.Level;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Random;
 
 import com.lyeeedar.Graphics.ParticleEffects.ParticleEmitter;
 import com.lyeeedar.Roguelike3D.Game.GameData;
 import com.lyeeedar.Roguelike3D.Game.Level.XML.BiomeReader;
+import com.lyeeedar.Roguelike3D.Game.Level.XML.EvolverCache;
 import com.lyeeedar.Roguelike3D.Game.Level.XML.MonsterEvolver;
 import com.lyeeedar.Roguelike3D.Game.Level.XML.RoomReader;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
+import com.lyeeedar.Utils.SplitRandom;
 
 public class LevelContainer implements Serializable {
 	
@@ -29,7 +30,18 @@ public class LevelContainer implements Serializable {
 	 */
 	private static final long serialVersionUID = 1485045667222532500L;
 
-	public final Random ran = new Random();
+	/**
+	 * Names of the generators split from ran for each part of making the level
+	 */
+	public static final String GENERATOR = "generator";
+	public static final String ROOMS = "rooms";
+	public static final String MONSTERS = "monsters";
+	
+	/**
+	 * Split from the dungeon seed by the level name, everything random about the level is split from this
+	 */
+	public final SplitRandom ran;
+	private SplitRandom roomRan;
 	
 	public final String UID;
 	public final String name;
@@ -48,7 +60,8 @@ public class LevelContainer implements Serializable {
 	
 	public String skybox;
 
-	public LevelContainer(String name, String biome, int depth, String[] up, String[] down) {
+	public LevelContainer(String name, String biome, int depth, String[] up, String[] down, long seed) {
+		this.ran = new SplitRandom(seed);
 		this.biome = biome;
 		this.depth = depth;
 		this.name = name;
@@ -74,14 +87,26 @@ public class LevelContainer implements Serializable {
 		if (loadingStage == 0)
 		{
 			skybox = biome.getSkybox();
-			level = new Level(biome.getWidth(), biome.getHeight(), biome.getGenerator(), biome, (skybox == null), depth, up_levels.length, down_levels.length);
+			level = new Level(biome.getWidth(), biome.getHeight(), biome.getGenerator(), biome, (skybox == null), depth, up_levels.length, down_levels.length, ran.split(GENERATOR));
+			roomRan = ran.split(ROOMS);
+			
+			// The first evolver of each type the rooms could want, ready by the time the rooms are filled
+			for (String type : rReader.getMonsterTypes())
+			{
+				EvolverCache.warm(type, depth, getMonsterSeed(type, 0));
+			}
+			
 			loadingStage++;
 		}
 		else if (loadingStage == 1)
 		{
 			boolean done = level.fillRoom(rReader, this);
 			
-			if (done) loadingStage++;
+			if (done)
+			{
+				EvolverCache.clearWarmed();
+				loadingStage++;
+			}
 		}
 		else if (loadingStage == 2)
 		{
@@ -91,6 +116,14 @@ public class LevelContainer implements Serializable {
 		return null;
 	}
 	
+	/**
+	 * The generator for choosing and laying out rooms, used by {@link Level#fillRoom(RoomReader, LevelContainer)}
+	 */
+	public SplitRandom getRoomRandom()
+	{
+		return roomRan;
+	}
+	
 	public MonsterEvolver getMonsterEvolver(String type, String UID)
 	{
 		ArrayList<MonsterEvolver> m = monsters.get(type);
@@ -109,9 +142,7 @@ public class LevelContainer implements Serializable {
 		{
 			ArrayList<MonsterEvolver> monsterType = new ArrayList<MonsterEvolver>();
 			
-			MonsterEvolver evolver = new MonsterEvolver(type, depth);
-			evolver.createMap();
-			evolver.Evolve_Creature();
+			MonsterEvolver evolver = EvolverCache.get(type, depth, getMonsterSeed(type, 0));
 			monsterType.add(evolver);
 			
 			monsters.put(type, monsterType);
@@ -129,15 +160,21 @@ public class LevelContainer implements Serializable {
 		}
 		else
 		{
-			MonsterEvolver evolver = new MonsterEvolver(type, depth);
-			evolver.createMap();
-			evolver.Evolve_Creature();
+			MonsterEvolver evolver = EvolverCache.get(type, depth, getMonsterSeed(type, monsterType.size()));
 			monsterType.add(evolver);
 			
 			return evolver;
 		}
 	}
 	
+	/**
+	 * @return the seed for the index'th evolver of the monster type, which is the same whenever it is made
+	 */
+	public long getMonsterSeed(String type, int index)
+	{
+		return ran.split(MONSTERS).split(type).split(index).seed;
+	}
+	
 	int upIndex = 0;
 	public String getUpLevel()
 	{
@@ -13,16 +13,20 @@ package com.lyeeedar.Roguelike3D.Game.Level;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
-import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
 import com.lyeeedar.Roguelike3D.Game.GameData;
 import com.lyeeedar.Roguelike3D.Game.Level.XML.BiomeReader;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
@@ -30,6 +34,7 @@ import com.lyeeedar.Roguelike3D.Graphics.Models.Shapes;
 import com.lyeeedar.Roguelike3D.Graphics.Models.TempMesh;
 import com.lyeeedar.Roguelike3D.Graphics.Models.TempVO;
 import com.lyeeedar.Roguelike3D.Graphics.Models.VisibleObject;
+import com.lyeeedar.Roguelike3D.Graphics.Renderers.Renderer;
 
 public class LevelGraphics {
 	
@@ -37,6 +42,14 @@ public class LevelGraphics {
 	public static final int CHUNK_HEIGHT = 10;
 	
 	public ArrayList<VisibleObject> graphics = new ArrayList<VisibleObject>();
+	/**
+	 * The box round each of graphics, for the tree to cull them with
+	 */
+	ArrayList<BoundingBox> bounds = new ArrayList<BoundingBox>();
+	/**
+	 * Built over bounds the first time the level is drawn after graphics changes
+	 */
+	public ChunkTree tree;
 	
 	Tile[][] levelArray;
 	HashMap<Character, Color> colours;
@@ -48,13 +61,25 @@ public class LevelGraphics {
 	TempVO[][] tempVOs;
 	TempVO[][] tempRoofs;
 	
+	/**
+	 * The merged meshes of each column of chunks, waiting to be uploaded
+	 */
+	ArrayList<TempVO>[] builtChunks;
+	
 	int wBlocks;
 	int hBlocks;
 	
 	public Texture map;
 	
+	/**
+	 * Read from the biome up front, as the xml cannot be read from the threads building the tiles
+	 */
+	final String wallTexture;
+	final String floorTexture;
+	
 	public final boolean drawRoofs;
 	
+	@SuppressWarnings("unchecked")
 	public LevelGraphics(Tile[][] levelArray, HashMap<Character, Color> colours, BiomeReader biome, boolean drawRoofs)
 	{
 		this.drawRoofs = drawRoofs;
@@ -62,6 +87,9 @@ public class LevelGraphics {
 		this.colours = colours;
 		this.biome = biome;
 		
+		wallTexture = getTexture('#', biome);
+		floorTexture = getTexture('.', biome);
+		
 		width = levelArray.length;
 		height = levelArray[0].length;
 		
@@ -71,6 +99,8 @@ public class LevelGraphics {
 		wBlocks = (width/CHUNK_WIDTH)+1;
 		hBlocks = (height/CHUNK_HEIGHT)+1;
 		
+		builtChunks = new ArrayList[wBlocks];
+		
 		createMap(levelArray);
 	}
 	
@@ -87,7 +117,7 @@ public class LevelGraphics {
 		{
 			for (int y = 0; y < height; y++)
 			{
-				char c = levelArray[x][y].character;
+				char c = levelArray[x][y].getCharacter();
 				if (c == ' ') continue;
 				font.setColor(colours.get(c));
 				font.draw(sB, ""+c, x*STEP, y*STEP);
@@ -105,24 +135,34 @@ public class LevelGraphics {
 	{
 		if (tileX == width) return true;
 		
+		buildTileColumn(tileX);
+		
+		tileX++;
+		
+		return false;
+	}
+	
+	/**
+	 * Build the vertices of every tile in column x. This does not touch GL and every column is separate, so any
+	 * number of columns can be built at once on any thread
+	 */
+	public void buildTileColumn(int x)
+	{
 		for (int z = 0; z < height; z++)
 		{
-			Tile t = levelArray[tileX][z];
-			if (t.character == ' ') continue;
+			Tile t = levelArray[x][z];
+			char c = t.getCharacter();
+			if (c == ' ') continue;
 
-			TempVO vo = new TempVO(Shapes.genTempCuboid(GameData.BLOCK_SIZE, t.height, GameData.BLOCK_SIZE), GL20.GL_TRIANGLES, colours.get(t.character), getTexture(t.character, biome), tileX*10, t.height/2, z*10);
-			tempVOs[tileX][z] = vo;
+			TempVO vo = new TempVO(Shapes.genTempCuboid(GameData.BLOCK_SIZE, t.getHeight(), GameData.BLOCK_SIZE), GL20.GL_TRIANGLES, colours.get(c), getTexture(c), x*10, t.getHeight()/2, z*10);
+			tempVOs[x][z] = vo;
 			
-			if (drawRoofs && t.height < t.roof)
+			if (drawRoofs && t.getHeight() < t.getRoof())
 			{
-				TempVO voRf = new TempVO(Shapes.genTempCuboid(GameData.BLOCK_SIZE, 1, GameData.BLOCK_SIZE), GL20.GL_TRIANGLES, colours.get('#'), getTexture('#', biome), tileX*10, t.roof, z*10);
-				tempRoofs[tileX][z] = voRf;
+				TempVO voRf = new TempVO(Shapes.genTempCuboid(GameData.BLOCK_SIZE, 1, GameData.BLOCK_SIZE), GL20.GL_TRIANGLES, colours.get('#'), wallTexture, x*10, t.getRoof(), z*10);
+				tempRoofs[x][z] = voRf;
 			}
 		}
-		
-		tileX++;
-		
-		return false;
 	}
 	
 	int chunkX = 0;
@@ -130,11 +170,28 @@ public class LevelGraphics {
 	{
 		if (chunkX == wBlocks) return true;
 		
+		buildChunkColumn(chunkX, null);
+		uploadChunkColumn(chunkX);
+		
+		chunkX++;
+		
+		return false;
+	}
+	
+	/**
+	 * Merge the tiles of chunk column x into a mesh per tile character of each chunk, baking the lights into them if
+	 * lights is not null. The tile columns it covers must have been built. Like buildTileColumn this does not touch GL
+	 * and every column is separate. The meshes are kept until {@link #uploadChunkColumn(int)}
+	 */
+	public void buildChunkColumn(int x, LightManager lights)
+	{
+		ArrayList<TempVO> built = new ArrayList<TempVO>();
+		
 		for (int y = 0; y < hBlocks; y++)
 		{
 			Chunk chunk = new Chunk();
 			
-			int startx = chunkX*CHUNK_WIDTH;
+			int startx = x*CHUNK_WIDTH;
 			int starty = y*CHUNK_HEIGHT;
 			
 			for (int ix = 0; ix < CHUNK_WIDTH; ix++)
@@ -143,25 +200,111 @@ public class LevelGraphics {
 				for (int iy = 0; iy < CHUNK_HEIGHT; iy++)
 				{
 					if (starty+iy == height) break;
-					chunk.addVO(tempVOs[startx+ix][starty+iy], levelArray[startx+ix][starty+iy].character);
+					chunk.addVO(tempVOs[startx+ix][starty+iy], levelArray[startx+ix][starty+iy].getCharacter());
 					if (drawRoofs) chunk.addVO(tempRoofs[startx+ix][starty+iy], '#');
 				}
 			}
 			
-			if (!chunk.isEmpty()) {
-				
-				ArrayList<VisibleObject> chunkGraphics = chunk.merge();
-				
-				for (VisibleObject vo : chunkGraphics)
+			if (!chunk.isEmpty()) built.addAll(chunk.build(lights));
+		}
+		
+		builtChunks[x] = built;
+	}
+	
+	/**
+	 * Upload the meshes built for chunk column x and add them to graphics. Must be called on the render thread
+	 */
+	public void uploadChunkColumn(int x)
+	{
+		for (TempVO built : builtChunks[x])
+		{
+			VisibleObject vo = new VisibleObject(Shapes.toMesh(built.mesh), built.colour, built.textureName, built.primitive_type, 1.0f);
+			vo.attributes.getTransform().setToTranslation(built.x, built.y, built.z);
+			vo.attributes.radius *= 4;
+			graphics.add(vo);
+			bounds.add(built.bounds);
+		}
+		tree = null;
+		
+		builtChunks[x] = null;
+	}
+	
+	/**
+	 * Build every tile column on the executor, a task for each
+	 */
+	public ArrayList<Future<?>> buildTiles(ExecutorService executor)
+	{
+		ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+		
+		for (int x = 0; x < width; x++)
+		{
+			final int column = x;
+			tasks.add(executor.submit(new Runnable() {
+				@Override
+				public void run()
 				{
-					graphics.add(vo);
+					buildTileColumn(column);
 				}
-			}
+			}));
 		}
 		
-		chunkX++;
+		tileX = width;
 		
-		return false;
+		return tasks;
+	}
+	
+	/**
+	 * Build every chunk column on the executor, a task for each. Every tile column must have been built first
+	 */
+	public ArrayList<Future<?>> buildChunks(ExecutorService executor, final LightManager lights)
+	{
+		ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+		
+		for (int x = 0; x < wBlocks; x++)
+		{
+			final int column = x;
+			tasks.add(executor.submit(new Runnable() {
+				@Override
+				public void run()
+				{
+					buildChunkColumn(column, lights);
+				}
+			}));
+		}
+		
+		return tasks;
+	}
+	
+	/**
+	 * Upload every chunk column built by {@link #buildChunks(ExecutorService, LightManager)}, in order so the level
+	 * looks the same whichever order they were built in
+	 */
+	public void uploadChunks()
+	{
+		for (; chunkX < wBlocks; chunkX++)
+		{
+			uploadChunkColumn(chunkX);
+		}
+	}
+	
+	/**
+	 * Draw the chunks the camera can see, culling them with the tree rather than one at a time, then skipping any the
+	 * occlusion says are behind walls. The occlusion must have been updated for the camera this frame
+	 */
+	public void render(Renderer renderer, Camera cam, TileOcclusion occlusion)
+	{
+		if (tree == null) tree = new ChunkTree(bounds.toArray(new BoundingBox[bounds.size()]));
+		
+		tree.cull(cam.frustum);
+		
+		for (int i = 0; i < tree.visibleCount; i++)
+		{
+			final int chunk = tree.visible[i];
+			if (!occlusion.isVisible(bounds.get(chunk))) continue;
+			
+			VisibleObject vo = graphics.get(chunk);
+			renderer.drawVisible(vo.model, vo.attributes);
+		}
 	}
 	
 	public void bakeLights(LightManager lights, boolean bakeStatics)
@@ -172,6 +315,14 @@ public class LevelGraphics {
 		}
 	}
 	
+	private String getTexture(char c)
+	{
+		if (c == '#') return wallTexture;
+		else if (c == '.') return floorTexture;
+		
+		return null;
+	}
+	
 	public String getTexture(char c, BiomeReader biome)
 	{
 		String text = null;
@@ -229,9 +380,13 @@ class Chunk
 	}
 	
 	final Vector3 tempVec = new Vector3();
-	public ArrayList<VisibleObject> merge()
+	
+	/**
+	 * Merge the tiles of each character into one mesh placed at the first of them, lit by lights if it is not null
+	 */
+	public ArrayList<TempVO> build(LightManager lights)
 	{
-		ArrayList<VisibleObject> vos = new ArrayList<VisibleObject>();
+		ArrayList<TempVO> vos = new ArrayList<TempVO>();
 		
 		for (Map.Entry<Character, ArrayList<TempVO>> entry : block.entrySet())
 		{
@@ -254,12 +409,16 @@ class Chunk
 				i++;
 			}
 			
-			Mesh merged = Shapes.merge(meshes);
+			TempMesh merged = Shapes.mergeVertices(meshes);
 			
-			VisibleObject vo = new VisibleObject(merged, base.colour, base.textureName, base.primitive_type, 1.0f);
-			vo.attributes.getTransform().setToTranslation(baseVec);
-			vo.attributes.radius *= 4;
-			vos.add(vo);
+			if (lights != null)
+			{
+				merged = Shapes.insertLight(merged, lights, true, new Matrix4().setToTranslation(baseVec));
+			}
+			
+			TempVO built = new TempVO(merged, base.primitive_type, base.colour, base.textureName, baseVec.x, baseVec.y, baseVec.z);
+			built.bounds = Shapes.calculateBounds(merged, baseVec.x, baseVec.y, baseVec.z);
+			vos.add(built);
 		}
 		
 		return vos;
@@ -11,6 +11,7 @@
 package com.lyeeedar.Roguelike3D.Game.Level;
 
 import java.util.HashMap;
+import java.util.Random;
 
 import com.badlogic.gdx.graphics.Color;
 import com.lyeeedar.Roguelike3D.Game.Level.AbstractObject.ObjectType;
@@ -25,6 +26,7 @@ public class MapGenerator {
 		STATIC
 	}
 
+	private TileStore store;
 	private Tile[][] levelArray;
 	Bag<Character> solids;
 	Bag<Character> opaques;
@@ -37,7 +39,7 @@ public class MapGenerator {
 	public MapGenerator(int width, int height,
 			Bag<Character> solids, Bag<Character> opaques, HashMap<Character, Color> colours,
 			GeneratorType gtype, BiomeReader biome,
-			int up, int down)
+			int up, int down, Random ran)
 	{
 		this.ceiling = biome.getRoof();
 		
@@ -48,17 +50,18 @@ public class MapGenerator {
 		objects = new Bag<AbstractObject>();
 
 		AbstractTile[][] tiles = new AbstractTile[width][height];
-		levelArray = new Tile[width][height];
+		store = new TileStore(width, height, solids, opaques);
+		levelArray = store.getTiles();
 		for (int x = 0; x < width; x++)
 		{
 			for (int y = 0; y < height; y++)
 			{
 				tiles[x][y] = new AbstractTile(x, y, TileType.WALL);
-				levelArray[x][y] = new Tile('#', 0, ceiling, ceiling);
+				store.set(x, y, '#', 0, ceiling, ceiling);
 			}
 		}
 		
-		AbstractGenerator generator = getGenerator(gtype, tiles, biome, up, down);
+		AbstractGenerator generator = getGenerator(gtype, tiles, biome, up, down, ran);
 		rooms = generator.generate(biome);
 		
 		for (int x = 0; x < width; x++)
@@ -71,12 +74,12 @@ public class MapGenerator {
 				}
 				else if (tiles[x][y].tileType == TileType.DOOR)
 				{
-					levelArray[x][y] = new Tile('.', 0, ceiling, 0);
+					store.set(x, y, '.', 0, ceiling, 0);
 					objects.add(new AbstractObject('+', ObjectType.DOOR_UNLOCKED, true, biome.getShortDescription('+'), biome.getLongDescription('+'), (float)x, 0.0f, (float)y));
 				}
 				else
 				{
-					levelArray[x][y] = new Tile('.', 0, ceiling, 0);
+					store.set(x, y, '.', 0, ceiling, 0);
 				}
 			}
 		}
@@ -89,15 +92,15 @@ public class MapGenerator {
 		return objects;
 	}
 	
-	private AbstractGenerator getGenerator(GeneratorType gtype, AbstractTile[][] tiles, BiomeReader biome, int up, int down)
+	private AbstractGenerator getGenerator(GeneratorType gtype, AbstractTile[][] tiles, BiomeReader biome, int up, int down, Random ran)
 	{
 		if (gtype == GeneratorType.SERK)
 		{
-			return new SerkGenerator(tiles, biome, up, down);
+			return new SerkGenerator(tiles, biome, up, down, ran);
 		}
 		else if (gtype == GeneratorType.STATIC)
 		{
-			return new StaticGenerator(tiles, biome);
+			return new StaticGenerator(tiles, biome, ran);
 		}
 		return null;
 	}
@@ -107,6 +110,11 @@ public class MapGenerator {
 		return levelArray;
 	}
 	
+	public TileStore getTileStore()
+	{
+		return store;
+	}
+	
 	public Bag<DungeonRoom> getRooms()
 	{
 		return rooms;
@@ -114,8 +122,8 @@ public class MapGenerator {
 
 	public void updateTile(Tile t, int height, char c)
 	{
-		t.height = height;
-		t.character = c;
+		t.setHeight(height);
+		t.setCharacter(c);
 	}
 
 	public void clearWalls()
@@ -136,7 +144,7 @@ public class MapGenerator {
 						&& chWl(x+1, y-1) && chWl(x+1, y+1)
 						&& chWl(x+1, y) && chWl(x, y+1))
 				{
-					levelArray[x][y].character = ' ';
+					levelArray[x][y].setCharacter(' ');
 				}
 			}
 		}
@@ -148,8 +156,8 @@ public class MapGenerator {
 				y < 0 || y > levelArray[0].length-1)
 			return true;
 
-		if (levelArray[x][y].character == '#' ||
-				levelArray[x][y].character == ' ')
+		char c = levelArray[x][y].getCharacter();
+		if (c == '#' || c == ' ')
 			return true;
 		else
 			return false;
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ *
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import com.lyeeedar.Utils.IndexedIntHeap;
+
+/**
+ * Runtime A* over the live levelArray of a Level, walking only tiles that pass {@link Level#checkPassable(int, int)}.
+ * <p>
+ * Search state is pooled per thread, and the last CACHE_SIZE (start, goal) results are kept in
+ * an LRU cache that is dropped whenever {@link Level#tilesChanged()} is called. Paths returned
+ * from the cache are shared, so callers must not modify them.
+ * @author Philip
+ *
+ */
+public class PathService {
+
+	public static final int CACHE_SIZE = 64;
+
+	private static final int[][] NO_PATH = new int[0][];
+
+	final Level level;
+	final int width;
+	final int height;
+
+	private final ThreadLocal<SearchState> states = new ThreadLocal<SearchState>() {
+		@Override
+		protected SearchState initialValue()
+		{
+			return new SearchState(width*height);
+		}
+	};
+
+	private final long[] cacheKeys = new long[CACHE_SIZE];
+	private final int[][][] cachePaths = new int[CACHE_SIZE][][];
+	private final long[] cacheUsed = new long[CACHE_SIZE];
+	private long cacheClock = 0;
+	private int cacheVersion;
+
+	public int hits = 0;
+	public int misses = 0;
+
+	public PathService(Level level)
+	{
+		this.level = level;
+		this.width = level.width;
+		this.height = level.height;
+		this.cacheVersion = level.getTileVersion();
+	}
+
+	/**
+	 * Find a path between two tiles.
+	 * @return the path from start to goal inclusive as {x, z} pairs, or null if the goal cannot be reached
+	 */
+	public int[][] getPath(int sx, int sz, int ex, int ez)
+	{
+		if (level.checkBounds(sx, sz) || level.checkBounds(ex, ez)) return null;
+
+		long key = ((long)pack(sx, sz) << 32) | pack(ex, ez);
+
+		int[][] path = getCached(key);
+		if (path == null)
+		{
+			path = states.get().search(sx, sz, ex, ez);
+			putCached(key, path);
+		}
+
+		return (path == NO_PATH) ? null : path;
+	}
+
+	private int pack(int x, int z)
+	{
+		return (x*height)+z;
+	}
+
+	// ----- Cache ----- //
+
+	private synchronized int[][] getCached(long key)
+	{
+		int version = level.getTileVersion();
+		if (version != cacheVersion)
+		{
+			for (int i = 0; i < CACHE_SIZE; i++) cachePaths[i] = null;
+			cacheVersion = version;
+		}
+
+		for (int i = 0; i < CACHE_SIZE; i++)
+		{
+			if (cachePaths[i] != null && cacheKeys[i] == key)
+			{
+				cacheUsed[i] = ++cacheClock;
+				hits++;
+				return cachePaths[i];
+			}
+		}
+
+		misses++;
+		return null;
+	}
+
+	private synchronized void putCached(long key, int[][] path)
+	{
+		int oldest = 0;
+		for (int i = 0; i < CACHE_SIZE; i++)
+		{
+			if (cachePaths[i] == null)
+			{
+				oldest = i;
+				break;
+			}
+			if (cacheUsed[i] < cacheUsed[oldest]) oldest = i;
+		}
+
+		cacheKeys[oldest] = key;
+		cachePaths[oldest] = path;
+		cacheUsed[oldest] = ++cacheClock;
+	}
+
+	// ----- Search ----- //
+
+	private class SearchState
+	{
+		final int[] distance;
+		final int[] parent;
+		final int[] opened;
+		final int[] closed;
+		final IndexedIntHeap open;
+		int search = 0;
+
+		int ex;
+		int ez;
+
+		SearchState(int size)
+		{
+			distance = new int[size];
+			parent = new int[size];
+			opened = new int[size];
+			closed = new int[size];
+			open = new IndexedIntHeap(size);
+		}
+
+		int[][] search(int sx, int sz, int ex, int ez)
+		{
+			if (!level.checkPassable(ex, ez)) return NO_PATH;
+
+			this.ex = ex;
+			this.ez = ez;
+
+			search++;
+			open.clear();
+
+			int start = pack(sx, sz);
+			int end = pack(ex, ez);
+
+			opened[start] = search;
+			distance[start] = 0;
+			parent[start] = -1;
+			open.add(start, 0);
+
+			while (!open.isEmpty())
+			{
+				int current = open.pop();
+				closed[current] = search;
+
+				if (current == end) return buildPath(end);
+
+				int cx = current / height;
+				int cz = current % height;
+				int d = distance[current]+1;
+
+				addNode(current, cx-1, cz, d);
+				addNode(current, cx+1, cz, d);
+				addNode(current, cx, cz-1, d);
+				addNode(current, cx, cz+1, d);
+			}
+
+			return NO_PATH;
+		}
+
+		void addNode(int current, int x, int z, int d)
+		{
+			if (!level.checkPassable(x, z)) return;
+
+			int n = pack(x, z);
+			if (closed[n] == search) return;
+
+			int cost = d + Math.abs(x-ex) + Math.abs(z-ez);
+
+			if (opened[n] != search)
+			{
+				opened[n] = search;
+				distance[n] = d;
+				parent[n] = current;
+				open.add(n, cost);
+			}
+			else if (d < distance[n])
+			{
+				distance[n] = d;
+				parent[n] = current;
+				open.decreaseKey(n, cost);
+			}
+		}
+
+		int[][] buildPath(int end)
+		{
+			int length = distance[end]+1;
+			int[][] path = new int[length][2];
+
+			int n = end;
+			for (int i = length-1; i >= 0; i--)
+			{
+				path[i][0] = n / height;
+				path[i][1] = n % height;
+				n = parent[n];
+			}
+
+			return path;
+		}
+	}
+}
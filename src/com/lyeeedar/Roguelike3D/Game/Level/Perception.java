@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ *
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import com.lyeeedar.Roguelike3D.Game.Actor.AI_Enemy_VFFG;
+import com.lyeeedar.Roguelike3D.Game.Actor.GameActor;
+import com.lyeeedar.Utils.Bag;
+
+/**
+ * Works out once per tick which actors every perceiving actor (see {@link com.lyeeedar.Roguelike3D.Game.Actor.AI_Package#usesPerception()})
+ * can see, so the AI does not each cast its own rays.
+ * <p>
+ * For each observer the actors within VIEW_FAR are taken from the level's actor SpatialHash, culled to the
+ * VIEW_FOV cone around its facing (in the x/z plane), then checked for line of sight by walking the tile grid.
+ * The visible sets are kept per actor hash handle and reused every tick, so nothing is allocated once they have grown.
+ * <p>
+ * {@link #update()} does everything on the calling thread. To spread the work over several threads call
+ * {@link #prepare()}, then {@link #update(int, int, CollisionQuery)} with disjoint handle ranges below
+ * {@link #getHandleLimit()} and a CollisionQuery per thread. Nothing may move while it runs.
+ * @author Philip
+ *
+ */
+public class Perception {
+	
+	public static final float VIEW_FAR = AI_Enemy_VFFG.VIEW_FAR;
+	public static final float VIEW_FOV = AI_Enemy_VFFG.VIEW_FOV;
+	
+	private static final Bag<GameActor> NONE = new Bag<GameActor>(0);
+	
+	final Level level;
+	
+	private final float cosHalfFov = (float) Math.cos(Math.toRadians(VIEW_FOV/2));
+	
+	@SuppressWarnings("unchecked")
+	private Bag<GameActor>[] visible = new Bag[32];
+	private int handleLimit = 1;
+	
+	public int pairs = 0;
+	public int rays = 0;
+	
+	public Perception(Level level)
+	{
+		this.level = level;
+	}
+	
+	/**
+	 * @return the actors the given actor could see at the last update, which must not be modified
+	 */
+	public Bag<GameActor> getVisible(GameActor ga)
+	{
+		int h = ga.spatialHandle;
+		if (h <= 0 || h >= handleLimit || visible[h] == null) return NONE;
+		return visible[h];
+	}
+	
+	public int getHandleLimit()
+	{
+		return handleLimit;
+	}
+	
+	public void update()
+	{
+		prepare();
+		update(1, handleLimit, CollisionQuery.get());
+	}
+	
+	/**
+	 * Clear last tick's results and size the storage for this one. Must be called on one thread before {@link #update(int, int, CollisionQuery)}
+	 */
+	@SuppressWarnings("unchecked")
+	public void prepare()
+	{
+		SpatialHash<GameActor> hash = level.getActorHash();
+		handleLimit = hash.getHandleLimit();
+		
+		if (visible.length < handleLimit)
+		{
+			Bag<GameActor>[] nvisible = new Bag[Math.max(handleLimit, visible.length*2)];
+			System.arraycopy(visible, 0, nvisible, 0, visible.length);
+			visible = nvisible;
+		}
+		
+		for (int h = 1; h < handleLimit; h++)
+		{
+			if (visible[h] != null) visible[h].clear();
+			
+			GameActor ga = hash.get(h);
+			if (ga != null && ga.ai != null && ga.ai.usesPerception() && visible[h] == null) visible[h] = new Bag<GameActor>();
+		}
+		
+		pairs = 0;
+		rays = 0;
+	}
+	
+	/**
+	 * Fill in the visible sets of the observers with handles in [from, to)
+	 */
+	public void update(int from, int to, CollisionQuery query)
+	{
+		SpatialHash<GameActor> hash = level.getActorHash();
+		final Bag<GameActor> candidates = query.actors;
+		
+		int pairs = 0;
+		int rays = 0;
+		
+		for (int h = from; h < to; h++)
+		{
+			GameActor observer = hash.get(h);
+			if (observer == null || observer.ai == null || !observer.ai.usesPerception()) continue;
+			
+			final Bag<GameActor> seen = visible[h];
+			
+			float ox = observer.position.x, oy = observer.position.y, oz = observer.position.z;
+			// Facing as the AI measures it, with rotation pointing from the target back to the actor
+			float fx = -observer.rotation.x, fz = -observer.rotation.z;
+			float fl = (float) Math.sqrt((fx*fx)+(fz*fz));
+			
+			hash.querySphere(ox, oy, oz, VIEW_FAR, candidates);
+			pairs += candidates.size;
+			
+			for (int i = 0; i < candidates.size; i++)
+			{
+				GameActor target = candidates.get(i);
+				if (target == observer) continue;
+				
+				float dx = target.position.x-ox, dy = target.position.y-oy, dz = target.position.z-oz;
+				float dist2 = (dx*dx)+(dy*dy)+(dz*dz);
+				if (dist2 > VIEW_FAR*VIEW_FAR) continue;
+				if (dist2 == 0)
+				{
+					seen.add(target);
+					continue;
+				}
+				
+				// View cone in the x/z plane, anything straight above or below is seen
+				float hl = (float) Math.sqrt((dx*dx)+(dz*dz));
+				if (fl > 0 && hl > 0 && (fx*dx)+(fz*dz) < cosHalfFov*fl*hl) continue;
+				
+				float dist = (float) Math.sqrt(dist2);
+				rays++;
+				level.collideRayLevel(ox, oy, oz, dx/dist, dy/dist, dz/dist, dist, query);
+				if (!query.hitLevel) seen.add(target);
+			}
+			candidates.clear();
+		}
+		
+		synchronized (this)
+		{
+			this.pairs += pairs;
+			this.rays += rays;
+		}
+	}
+}
@@ -14,7 +14,12 @@ import java.util.Random;
 
 public class PerlinNoise {
 
-	Random ran = new Random();
+	final Random ran;
+
+	public PerlinNoise(Random ran)
+	{
+		this.ran = ran;
+	}
 
 	public double SmoothNoise(int x, int y) {
 		double corners = ( ran.nextDouble()+ran.nextDouble()+ran.nextDouble()+ran.nextDouble() ) / 16;
@@ -45,7 +45,7 @@ public class SerkGenerator implements AbstractGenerator{
 
 	final Bag<DungeonRoom> rooms = new Bag<DungeonRoom>();
 	final AbstractTile[][] tiles;
-	final Random ran = new Random();
+	final Random ran;
 	
 	final int width;
 	final int height;
@@ -53,9 +53,10 @@ public class SerkGenerator implements AbstractGenerator{
 	final int up;
 	final int down;
 	
-	public SerkGenerator(AbstractTile[][] tiles, BiomeReader biome, int up, int down)
+	public SerkGenerator(AbstractTile[][] tiles, BiomeReader biome, int up, int down, Random ran)
 	{
 		this.tiles = tiles;
+		this.ran = ran;
 		this.width = tiles.length;
 		this.height = tiles[0].length;
 		
@@ -139,9 +140,10 @@ public class SerkGenerator implements AbstractGenerator{
 			calculatePaths(paths, tri);
 		}
 
+		AStarPathfind pathFind = new AStarPathfind(tiles);
 		for (Pnt[] p : paths)
 		{
-			AStarPathfind pathFind = new AStarPathfind(tiles, (int)p[0].coord(0), (int)p[0].coord(1), (int)p[1].coord(0), (int)p[1].coord(1));
+			if (!pathFind.findPath((int)p[0].coord(0), (int)p[0].coord(1), (int)p[1].coord(0), (int)p[1].coord(1))) continue;
 			carveCorridor(pathFind.getPath());
 		}
 	}
@@ -286,7 +288,7 @@ public class SerkGenerator implements AbstractGenerator{
 
 	protected void setInfluence()
 	{
-		PerlinNoise noise = new PerlinNoise();
+		PerlinNoise noise = new PerlinNoise(ran);
 		for (int x = 0; x < width; x++)
 		{
 			for (int y = 0; y < height; y++)
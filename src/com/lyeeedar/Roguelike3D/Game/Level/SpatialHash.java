@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Game.GameObject;
+import com.lyeeedar.Utils.Bag;
+
+/**
+ * A uniform grid over the level (in the x/z plane) holding GameObjects by their bounding sphere.
+ * Each object is binned into every cell its sphere overlaps, so objects bigger than a cell are never missed.
+ * <p>
+ * Objects are referred to by an int handle (stored in GameObject.spatialHandle, 0 means not held) that
+ * indexes flat arrays of the object and the cell range it was binned into. Cells hold int arrays of handles.
+ * Anything outside the level is clamped into the edge cells.
+ * <p>
+ * Queries return every object whose sphere actually meets the query shape. They keep no state of their own
+ * (an object spanning several cells is only reported from the first cell of the query it is binned in), so they are
+ * re-entrant and can run from several threads at once, so long as nothing is added, removed or moved meanwhile.
+ * @author Philip
+ *
+ */
+public class SpatialHash<T extends GameObject> {
+	
+	public final float cellSize;
+	public final int cellsX;
+	public final int cellsZ;
+	
+	private final int[][] cells;
+	private final int[] cellSizes;
+	
+	private Object[] objects = new Object[32];
+	private int[] minCX = new int[32];
+	private int[] minCZ = new int[32];
+	private int[] maxCX = new int[32];
+	private int[] maxCZ = new int[32];
+	
+	private int[] free = new int[32];
+	private int freeSize = 0;
+	private int next = 1;
+	
+	public int size = 0;
+	
+	/**
+	 * @param width the width of the level in world units
+	 * @param height the height of the level in world units
+	 * @param cellSize the edge length of a cell in world units
+	 */
+	public SpatialHash(float width, float height, float cellSize)
+	{
+		this.cellSize = cellSize;
+		this.cellsX = Math.max(1, (int)Math.ceil(width / cellSize));
+		this.cellsZ = Math.max(1, (int)Math.ceil(height / cellSize));
+		
+		cells = new int[cellsX*cellsZ][];
+		cellSizes = new int[cellsX*cellsZ];
+	}
+	
+	// ----- Add, Remove and Update ----- //
+	
+	public void add(T o)
+	{
+		if (contains(o))
+		{
+			update(o);
+			return;
+		}
+		
+		int h;
+		if (freeSize > 0) h = free[--freeSize];
+		else
+		{
+			h = next++;
+			if (h >= objects.length) grow();
+		}
+		
+		objects[h] = o;
+		o.spatialHandle = h;
+		size++;
+		
+		bin(h, o);
+	}
+	
+	public void remove(T o)
+	{
+		if (!contains(o)) return;
+		
+		int h = o.spatialHandle;
+		unbin(h);
+		
+		objects[h] = null;
+		o.spatialHandle = 0;
+		size--;
+		
+		if (freeSize == free.length)
+		{
+			int[] nfree = new int[free.length*2];
+			System.arraycopy(free, 0, nfree, 0, freeSize);
+			free = nfree;
+		}
+		free[freeSize++] = h;
+	}
+	
+	/**
+	 * Re-bin an object after it has moved or changed radius. Does nothing if the object is not held.
+	 */
+	public void update(T o)
+	{
+		if (!contains(o)) return;
+		
+		int h = o.spatialHandle;
+		
+		if (cellX(o.position.x-o.radius) == minCX[h] && cellX(o.position.x+o.radius) == maxCX[h] &&
+				cellZ(o.position.z-o.radius) == minCZ[h] && cellZ(o.position.z+o.radius) == maxCZ[h]) return;
+				
+		unbin(h);
+		bin(h, o);
+	}
+	
+	/**
+	 * @return the object with the given handle, or null if the handle is free
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int handle)
+	{
+		return (T) objects[handle];
+	}
+	
+	/**
+	 * All handles in use are below this, so objects can be iterated with get(1) to get(getHandleLimit()-1)
+	 */
+	public int getHandleLimit()
+	{
+		return next;
+	}
+	
+	public boolean contains(GameObject o)
+	{
+		int h = o.spatialHandle;
+		return h > 0 && h < next && objects[h] == o;
+	}
+	
+	public void clear()
+	{
+		for (int h = 1; h < next; h++)
+		{
+			if (objects[h] != null) ((GameObject) objects[h]).spatialHandle = 0;
+			objects[h] = null;
+		}
+		for (int i = 0; i < cellSizes.length; i++) cellSizes[i] = 0;
+		
+		next = 1;
+		freeSize = 0;
+		size = 0;
+	}
+	
+	// ----- Queries ----- //
+	
+	/**
+	 * Adds to out every object whose bounding sphere intersects the given sphere
+	 * @return the number of objects added
+	 */
+	@SuppressWarnings("unchecked")
+	public int querySphere(float x, float y, float z, float radius, Bag<T> out)
+	{
+		int found = 0;
+		
+		int x1 = cellX(x-radius), x2 = cellX(x+radius);
+		int z1 = cellZ(z-radius), z2 = cellZ(z+radius);
+		
+		for (int cx = x1; cx <= x2; cx++)
+		{
+			for (int cz = z1; cz <= z2; cz++)
+			{
+				int c = (cx*cellsZ)+cz;
+				int[] cell = cells[c];
+				for (int i = 0; i < cellSizes[c]; i++)
+				{
+					int h = cell[i];
+					if (!firstCell(h, cx, cz, x1, z1)) continue;
+					
+					T o = (T) objects[h];
+					float r = radius+o.radius;
+					if (o.position.dst2(x, y, z) <= r*r)
+					{
+						out.add(o);
+						found++;
+					}
+				}
+			}
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * Adds to out every object whose bounding sphere intersects the given box
+	 * @param x,y,z the minimum corner of the box
+	 * @param w,h,d the size of the box
+	 * @return the number of objects added
+	 */
+	@SuppressWarnings("unchecked")
+	public int queryBox(float x, float y, float z, float w, float h, float d, Bag<T> out)
+	{
+		int found = 0;
+		
+		int x1 = cellX(x), x2 = cellX(x+w);
+		int z1 = cellZ(z), z2 = cellZ(z+d);
+		
+		for (int cx = x1; cx <= x2; cx++)
+		{
+			for (int cz = z1; cz <= z2; cz++)
+			{
+				int c = (cx*cellsZ)+cz;
+				int[] cell = cells[c];
+				for (int i = 0; i < cellSizes[c]; i++)
+				{
+					int hd = cell[i];
+					if (!firstCell(hd, cx, cz, x1, z1)) continue;
+					
+					T o = (T) objects[hd];
+					if (GameData.SphereBoxIntersection(o.position.x, o.position.y, o.position.z, o.radius, x, y, z, w, h, d))
+					{
+						out.add(o);
+						found++;
+					}
+				}
+			}
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * Find the first solid object whose bounding sphere is hit by a ray, walking the cells the ray crosses in order.
+	 * @param dx,dy,dz the ray direction, which must be normalised
+	 * @param dist the maximum length of the ray
+	 * @param ignore an object to skip (usually the caster), can be null
+	 * @param hitDist if not null, receives the distance to the hit in [0]
+	 * @return the nearest object hit, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public T raycast(float ox, float oy, float oz, float dx, float dy, float dz, float dist, GameObject ignore, float[] hitDist)
+	{
+		int cx = cellX(ox);
+		int cz = cellZ(oz);
+		
+		int stepX = (dx > 0) ? 1 : -1;
+		int stepZ = (dz > 0) ? 1 : -1;
+		
+		float tDeltaX = (dx != 0) ? Math.abs(cellSize / dx) : Float.MAX_VALUE;
+		float tDeltaZ = (dz != 0) ? Math.abs(cellSize / dz) : Float.MAX_VALUE;
+		
+		float boundX = (stepX > 0) ? (cx+1)*cellSize : cx*cellSize;
+		float boundZ = (stepZ > 0) ? (cz+1)*cellSize : cz*cellSize;
+		
+		float tMaxX = (dx != 0) ? (boundX - ox) / dx : Float.MAX_VALUE;
+		float tMaxZ = (dz != 0) ? (boundZ - oz) / dz : Float.MAX_VALUE;
+		
+		T best = null;
+		float bestT = dist;
+		
+		while (true)
+		{
+			int c = (cx*cellsZ)+cz;
+			int[] cell = cells[c];
+			for (int i = 0; i < cellSizes[c]; i++)
+			{
+				// Objects in several cells may be tested more than once, which cannot change the nearest hit
+				T o = (T) objects[cell[i]];
+				if (o == ignore || !o.solid) continue;
+				
+				float t = intersectRaySphere(ox, oy, oz, dx, dy, dz, o.position.x, o.position.y, o.position.z, o.radius);
+				if (t >= 0 && t <= bestT)
+				{
+					bestT = t;
+					best = o;
+				}
+			}
+			
+			float tExit = Math.min(tMaxX, tMaxZ);
+			if (tExit > bestT) break;
+			
+			// Cells at the edge of the grid hold everything beyond it, so stop stepping there
+			if (tMaxX < tMaxZ)
+			{
+				cx += stepX;
+				if (cx < 0 || cx >= cellsX) break;
+				tMaxX += tDeltaX;
+			}
+			else
+			{
+				cz += stepZ;
+				if (cz < 0 || cz >= cellsZ) break;
+				tMaxZ += tDeltaZ;
+			}
+		}
+		
+		if (best != null && hitDist != null) hitDist[0] = bestT;
+		
+		return best;
+	}
+	
+	/**
+	 * @return the distance along the ray to the sphere (0 if the origin is inside it), or -1 for a miss
+	 */
+	public static float intersectRaySphere(float ox, float oy, float oz, float dx, float dy, float dz, float sx, float sy, float sz, float r)
+	{
+		float lx = ox-sx, ly = oy-sy, lz = oz-sz;
+		float c = (lx*lx)+(ly*ly)+(lz*lz)-(r*r);
+		if (c <= 0) return 0;
+		
+		float b = (lx*dx)+(ly*dy)+(lz*dz);
+		if (b > 0) return -1;
+		
+		float disc = (b*b)-c;
+		if (disc < 0) return -1;
+		
+		return -b-(float)Math.sqrt(disc);
+	}
+	
+	// ----- Internals ----- //
+	
+	private int cellX(float x)
+	{
+		int c = (int)Math.floor(x / cellSize);
+		if (c < 0) return 0;
+		if (c >= cellsX) return cellsX-1;
+		return c;
+	}
+	
+	private int cellZ(float z)
+	{
+		int c = (int)Math.floor(z / cellSize);
+		if (c < 0) return 0;
+		if (c >= cellsZ) return cellsZ-1;
+		return c;
+	}
+	
+	/**
+	 * True if (cx, cz) is the first cell of a query starting at (x1, z1) that object h is binned into
+	 */
+	private boolean firstCell(int h, int cx, int cz, int x1, int z1)
+	{
+		return cx == Math.max(minCX[h], x1) && cz == Math.max(minCZ[h], z1);
+	}
+	
+	private void bin(int h, GameObject o)
+	{
+		minCX[h] = cellX(o.position.x-o.radius);
+		maxCX[h] = cellX(o.position.x+o.radius);
+		minCZ[h] = cellZ(o.position.z-o.radius);
+		maxCZ[h] = cellZ(o.position.z+o.radius);
+		
+		for (int cx = minCX[h]; cx <= maxCX[h]; cx++)
+		{
+			for (int cz = minCZ[h]; cz <= maxCZ[h]; cz++)
+			{
+				int c = (cx*cellsZ)+cz;
+				int[] cell = cells[c];
+				if (cell == null)
+				{
+					cell = new int[4];
+					cells[c] = cell;
+				}
+				else if (cellSizes[c] == cell.length)
+				{
+					int[] ncell = new int[cell.length*2];
+					System.arraycopy(cell, 0, ncell, 0, cell.length);
+					cell = ncell;
+					cells[c] = cell;
+				}
+				cell[cellSizes[c]++] = h;
+			}
+		}
+	}
+	
+	private void unbin(int h)
+	{
+		for (int cx = minCX[h]; cx <= maxCX[h]; cx++)
+		{
+			for (int cz = minCZ[h]; cz <= maxCZ[h]; cz++)
+			{
+				int c = (cx*cellsZ)+cz;
+				int[] cell = cells[c];
+				for (int i = 0; i < cellSizes[c]; i++)
+				{
+					if (cell[i] == h)
+					{
+						cell[i] = cell[--cellSizes[c]];
+						break;
+					}
+				}
+			}
+		}
+	}
+	
+	private void grow()
+	{
+		int len = objects.length*2;
+		
+		Object[] nobjects = new Object[len];
+		System.arraycopy(objects, 0, nobjects, 0, objects.length);
+		objects = nobjects;
+		
+		minCX = grow(minCX, len);
+		minCZ = grow(minCZ, len);
+		maxCX = grow(maxCX, len);
+		maxCZ = grow(maxCZ, len);
+	}
+	
+	private static int[] grow(int[] array, int len)
+	{
+		int[] narray = new int[len];
+		System.arraycopy(array, 0, narray, 0, array.length);
+		return narray;
+	}
+}
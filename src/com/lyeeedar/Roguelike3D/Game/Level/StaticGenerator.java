@@ -21,13 +21,14 @@ import com.lyeeedar.Utils.Bag;
 public class StaticGenerator implements AbstractGenerator {
 	
 	final AbstractTile[][] tiles;
-	final Random ran = new Random();
+	final Random ran;
 	
 	final int width;
 	final int height;
 
-	public StaticGenerator(AbstractTile[][] tiles, BiomeReader biome) {
+	public StaticGenerator(AbstractTile[][] tiles, BiomeReader biome, Random ran) {
 		this.tiles = tiles;
+		this.ran = ran;
 		this.width = tiles.length;
 		this.height = tiles[0].length;
 	}
@@ -11,215 +11,139 @@
 package com.lyeeedar.Roguelike3D.Game.Level;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 
-import com.badlogic.gdx.graphics.Camera;
-import com.lyeeedar.Graphics.ParticleEffects.ParticleEmitter;
-import com.lyeeedar.Roguelike3D.Game.GameObject;
 import com.lyeeedar.Roguelike3D.Game.Actor.GameActor;
-import com.lyeeedar.Roguelike3D.Game.Actor.Player;
-import com.lyeeedar.Roguelike3D.Game.LevelObjects.Door;
 import com.lyeeedar.Roguelike3D.Game.LevelObjects.LevelObject;
-import com.lyeeedar.Roguelike3D.Game.LevelObjects.PlayerPlacer;
-import com.lyeeedar.Roguelike3D.Game.LevelObjects.Spawner;
-import com.lyeeedar.Roguelike3D.Game.LevelObjects.Stair;
 import com.lyeeedar.Roguelike3D.Game.LevelObjects.Static;
-import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
-import com.lyeeedar.Roguelike3D.Graphics.Renderers.Renderer;
 import com.lyeeedar.Utils.Bag;
 
+/**
+ * A view onto one tile of a {@link TileStore}. The data lives in the store, so a Tile is only a reference and an index.
+ * The actors and level objects held by a tile are only a spatial index, the level updates and renders them
+ * through its {@link EntityRegistry}.
+ * @author Philip
+ *
+ */
 public class Tile implements Serializable {
-	private static final long serialVersionUID = -2774877067050458423L;
-
-	public char character;
+	private static final long serialVersionUID = -2774877067050458424L;
+	
+	private static final Bag<GameActor> NO_ACTORS = new Bag<GameActor>(0);
+	private static final Bag<LevelObject> NO_LEVEL_OBJECTS = new Bag<LevelObject>(0);
+	
+	public final TileStore store;
+	public final int index;
+	
+	Tile (TileStore store, int index)
+	{
+		this.store = store;
+		this.index = index;
+	}
+	
+	public char getCharacter()
+	{
+		return store.character[index];
+	}
+	
+	public void setCharacter(char c)
+	{
+		store.setCharacter(index, c);
+	}
 	
 	/**
 	 * The floor of the tile
 	 */
-	public float floor;
+	public float getFloor()
+	{
+		return store.floor[index];
+	}
 	
 	/**
 	 * The roof of the tile (the very top)
 	 */
-	public float roof;
+	public float getRoof()
+	{
+		return store.roof[index];
+	}
 	
 	/**
 	 * The height of the tile (if this = roof then it a full height wall)
 	 */
-	public float height;
-	public boolean visible = false;
-	public boolean seen = false;
-	
-	public Bag<GameActor> actors = new Bag<GameActor>();
-	public Bag<LevelObject> levelObjects = new Bag<LevelObject>();
-	
-	private transient int arrayLen;
-	
-	public Tile (char character, float floor, float roof, float height)
+	public float getHeight()
 	{
-		this.character = character;
-		this.floor = floor;
-		this.roof = roof;
-		this.height = height;
+		return store.tileHeight[index];
 	}
 	
-	public void update(float delta, Camera cam)
+	public void setHeight(float height)
 	{
-		for (LevelObject lo : levelObjects)
-		{
-			lo.update(delta, cam);
-		}
-		
-		for (GameActor ga : actors)
-		{
-			ga.update(delta, cam);
-		}
+		store.tileHeight[index] = height;
 	}
 	
-	public void render(Renderer renderer, Camera cam, ArrayList<ParticleEmitter> visibleEmitters)
+	public boolean isVisible()
 	{
-		for (LevelObject lo : levelObjects)
-		{	
-			lo.render(renderer, visibleEmitters, cam);
-		}
-		
-		for (GameActor ga : actors)
-		{
-			ga.render(renderer, visibleEmitters, cam);
-		}
+		return TileStore.get(store.visible, index);
 	}
 	
-	public Player getPlayer()
+	public void setVisible(boolean visible)
 	{
-		for (GameActor ga : actors)
-		{
-			if (ga instanceof Player)
-			{
-				return (Player) ga;
-			}
-		}
-		return null;
-	}
-	
-	public boolean isSolid()
-	{
-		for (LevelObject lo : levelObjects)
-		{
-			if (lo instanceof Static)
-			{
-				return true;
-			}
-		}
-			
-		return false;
+		TileStore.set(store.visible, index, visible);
 	}
 	
-	public void getLights(LightManager lightManager)
+	public boolean isSeen()
 	{
-		for (GameObject go : actors) go.getLight(lightManager);
-		for (GameObject go : levelObjects) go.getLight(lightManager);
+		return TileStore.get(store.seen, index);
 	}
 	
-	public boolean positionPlayer(Player player, String prevLevel, String currentLevel)
+	public void setSeen(boolean seen)
 	{
-		for (LevelObject lo : levelObjects) {
-			if (lo instanceof PlayerPlacer)
-			{
-				System.out.println("Player placed at Player Placer");
-				if (prevLevel.equals(currentLevel))
-				{
-					player.positionAbsolutely(lo.position.x, lo.position.y+player.radius+1, lo.position.z);
-					return true;
-				}
-			}
-			else if (lo instanceof Stair)
-			{
-				System.out.println("Player placed at Stair");
-				Stair s = (Stair) lo;
-				
-				if (s.level_UID.equals(prevLevel))
-				{
-					player.positionAbsolutely(s.position.x, s.position.y+s.position.y+s.radius+player.radius+1, 0);
-					return true;
-				}
-			}
-		}
-		
-		return false;
+		TileStore.set(store.seen, index, seen);
 	}
 	
-	public void evaluateUniqueBehaviour(Level level, LightManager lightManager)
+	/**
+	 * @return the actors on this tile. Use {@link #addGameActor(GameActor)} and {@link #removeGameActor(String)} to change them
+	 */
+	public Bag<GameActor> getActors()
 	{
-		for (LevelObject lo : levelObjects) {
-			if (lo instanceof Spawner)
-			{
-				Spawner s = (Spawner) lo;
-				
-				s.spawn(level, lightManager);
-			}
-			else if (lo instanceof Door)
-			{
-				Door d = (Door) lo;
-				
-				d.orientate(level);
-			}
-		}
+		Bag<GameActor> actors = store.getActors(index);
+		return (actors == null) ? NO_ACTORS : actors;
 	}
 	
-	public void bakeLights(LightManager lightManager)
+	/**
+	 * @return the level objects on this tile. Use {@link #addLevelObject(LevelObject)} and {@link #removeLevelObject(String)} to change them
+	 */
+	public Bag<LevelObject> getLevelObjects()
 	{
-		for (GameActor ga : actors)
-		{
-			ga.bakeLights(lightManager, false);
-			if (ga.L_HAND != null) ga.L_HAND.model.bakeLight(lightManager, false);
-			if (ga.R_HAND != null) ga.R_HAND.model.bakeLight(lightManager, false);
-		}
-		for (LevelObject lo : levelObjects)
-		{
-			lo.bakeLights(lightManager, true);
-		}
+		Bag<LevelObject> levelObjects = store.getLevelObjects(index);
+		return (levelObjects == null) ? NO_LEVEL_OBJECTS : levelObjects;
 	}
 	
-	public void create()
+	public void addGameActor(GameActor ga)
 	{
-		for (GameActor ga : actors)
-		{
-			ga.create();
-		}
-		for (LevelObject lo : levelObjects)
-		{
-			lo.create();
-		}
+		store.addGameActor(index, ga);
 	}
 	
-	public void dispose()
+	public void addLevelObject(LevelObject lo)
 	{
-		for (GameActor ga : actors)
-		{
-			ga.dispose();
-		}
-		for (LevelObject lo : levelObjects)
-		{
-			lo.dispose();
-		}
+		store.addLevelObject(index, lo);
 	}
 	
-	public void fixReferences()
+	public boolean isSolid()
 	{
-		for (GameActor ga : actors)
+		final Bag<LevelObject> levelObjects = getLevelObjects();
+		for (int i = 0; i < levelObjects.size; i++)
 		{
-			ga.fixReferences();
-		}
-		for (LevelObject lo : levelObjects)
-		{
-			lo.fixReferences();
+			if (levelObjects.get(i) instanceof Static)
+			{
+				return true;
+			}
 		}
+		
+		return false;
 	}
 	
 	public void removeLevelObject(String UID)
 	{
-		arrayLen = levelObjects.size;
-		for (int i = 0; i < arrayLen; i++)
+		final Bag<LevelObject> levelObjects = getLevelObjects();
+		for (int i = 0; i < levelObjects.size; i++)
 		{
 			if (UID.equals(levelObjects.get(i).UID)) {
 				levelObjects.remove(i);
@@ -230,8 +154,8 @@ public class Tile implements Serializable {
 	
 	public void removeGameActor(String UID)
 	{
-		arrayLen = actors.size;
-		for (int i = 0; i < arrayLen; i++)
+		final Bag<GameActor> actors = getActors();
+		for (int i = 0; i < actors.size; i++)
 		{
 			if (UID.equals(actors.get(i).UID)) {
 				actors.remove(i);
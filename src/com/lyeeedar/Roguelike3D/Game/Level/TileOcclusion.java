@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Game.Shadow;
+
+/**
+ * Culls what the camera cannot see past the level's walls, using the tile grid as the occluders.
+ * <p>
+ * Each frame the tiles the camera can see are found by shadow casting out to the camera's far plane, where only
+ * opaque tiles that reach the roof block sight (anything lower can be seen over). The camera can be anywhere in its
+ * tile, so one cast from the tile's centre is not enough. Instead the camera is taken to be somewhere in the square
+ * between the centres of the 2x2 tiles around it (its own and the ones on the sides it is nearest), and a tile is in
+ * view if it can be seen from any of them (a neighbour that is a wall is cast from too, as the camera can be up
+ * against it). Shadow casting only lights a tile when enough of it can be seen, so anything with a tile in view within
+ * a margin of it is drawn. The margin is a tile, and a tile more for every MARGIN_DISTANCE tiles it is from the
+ * camera, as narrow sight lines are missed more the longer they are.
+ * <p>
+ * Each of the four casts is kept until the tile it is cast from or the tiles change. The casts are chosen by the
+ * parity of their tile, so when the camera moves a tile the two that are cast from tiles still around it are kept.
+ * <p>
+ * If the camera is inside a wall, above the roof or off the level everything is drawn. drawn and culled count the
+ * tests that passed and failed since the last {@link #update(Camera)}.
+ * @author Philip
+ *
+ */
+public class TileOcclusion {
+	
+	final Level level;
+	
+	/**
+	 * Tiles from the camera for each tile added to the margin
+	 */
+	public static final int MARGIN_DISTANCE = 8;
+	
+	public boolean enabled = true;
+	
+	private boolean all = true;
+	private int camx;
+	private int camz;
+	
+	/**
+	 * Indexed by (x & 1) + ((z & 1) << 1) of the tile each is cast from, so the 2x2 tiles always use one each
+	 */
+	private final Cast[] casts = new Cast[4];
+	
+	public int drawn = 0;
+	public int culled = 0;
+	
+	public TileOcclusion(Level level)
+	{
+		this.level = level;
+		
+		for (int i = 0; i < casts.length; i++) casts[i] = new Cast();
+	}
+	
+	/**
+	 * Find the tiles the camera can see. Must be called each frame before anything is tested
+	 */
+	public void update(Camera cam)
+	{
+		drawn = 0;
+		culled = 0;
+		
+		final int x = getTile(cam.position.x);
+		final int z = getTile(cam.position.z);
+		
+		all = !enabled || !inLevel(x, z);
+		if (!all)
+		{
+			final Tile tile = level.levelArray[x][z];
+			all = isOpaque(tile) || cam.position.y >= tile.getRoof();
+		}
+		if (all) return;
+		
+		camx = x;
+		camz = z;
+		
+		final int range = (int) Math.ceil(cam.far / GameData.BLOCK_SIZE) + 1;
+		
+		// The neighbours on the sides of the tile the camera is nearest
+		final int nx = ((cam.position.x / GameData.BLOCK_SIZE) >= x) ? x+1 : x-1;
+		final int nz = ((cam.position.z / GameData.BLOCK_SIZE) >= z) ? z+1 : z-1;
+		
+		cast(x, z, range);
+		cast(nx, z, range);
+		cast(x, nz, range);
+		cast(nx, nz, range);
+	}
+	
+	private void cast(int x, int z, int range)
+	{
+		final Cast cast = casts[(x & 1) + ((z & 1) << 1)];
+		
+		cast.active = inLevel(x, z);
+		if (!cast.active) return;
+		
+		cast.origin = level.levelArray[x][z];
+		cast.setRange(range);
+		cast.ComputeFieldOfViewWithShadowCasting(x, z, level.levelArray);
+	}
+	
+	private boolean inLevel(int x, int z)
+	{
+		return x >= 0 && z >= 0 && x < level.width && z < level.height;
+	}
+	
+	public static int getTile(float position)
+	{
+		return (int) Math.floor((position / GameData.BLOCK_SIZE) + 0.5f);
+	}
+	
+	/**
+	 * @return true if the tile can be seen from any of the tiles around the camera
+	 */
+	public boolean isVisible(int x, int z)
+	{
+		for (Cast cast : casts)
+		{
+			if (cast.active && cast.isVisible(x, z)) return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return true if any tile under the area from minx, minz to maxx, maxz (in world space) can be seen
+	 */
+	public boolean isVisible(float minx, float minz, float maxx, float maxz)
+	{
+		if (all)
+		{
+			drawn++;
+			return true;
+		}
+		
+		int startx = getTile(minx);
+		int startz = getTile(minz);
+		int endx = getTile(maxx);
+		int endz = getTile(maxz);
+		
+		final int distance = Math.max(Math.max(startx-camx, camx-endx), Math.max(startz-camz, camz-endz));
+		final int margin = 1 + (Math.max(distance, 0) / MARGIN_DISTANCE);
+		startx -= margin;
+		startz -= margin;
+		endx += margin;
+		endz += margin;
+		
+		for (int x = startx; x <= endx; x++)
+		{
+			for (int z = startz; z <= endz; z++)
+			{
+				if (isVisible(x, z))
+				{
+					drawn++;
+					return true;
+				}
+			}
+		}
+		
+		culled++;
+		return false;
+	}
+	
+	public boolean isVisible(BoundingBox box)
+	{
+		return isVisible(box.min.x, box.min.z, box.max.x, box.max.z);
+	}
+	
+	public boolean isVisible(Vector3 position, float radius)
+	{
+		return isVisible(position.x-radius, position.z-radius, position.x+radius, position.z+radius);
+	}
+	
+	/**
+	 * Only walls that reach the roof block sight
+	 */
+	protected boolean isOpaque(Tile t)
+	{
+		return level.checkOpaque(t) && t.getHeight() >= t.getRoof();
+	}
+	
+	/**
+	 * One of the casts, which leaves the tiles' own visible flags alone as they are for the player's field of view
+	 */
+	private class Cast extends Shadow {
+		
+		boolean active = false;
+		
+		/**
+		 * The tile cast from, which never blocks sight. The camera can be up against a wall next to its tile, so a
+		 * neighbour that is a wall is cast from as well
+		 */
+		Tile origin;
+		
+		void setRange(int range)
+		{
+			if (range == viewRange) return;
+			
+			viewRange = range;
+			invalidate();
+		}
+		
+		@Override
+		protected boolean isOpaque(Tile t)
+		{
+			return t != origin && TileOcclusion.this.isOpaque(t);
+		}
+		
+		@Override
+		protected void setVisible(Tile t, boolean visible)
+		{
+		}
+	}
+}
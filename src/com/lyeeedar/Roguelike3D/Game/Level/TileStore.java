@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import java.io.Serializable;
+
+import com.lyeeedar.Roguelike3D.Game.Actor.GameActor;
+import com.lyeeedar.Roguelike3D.Game.LevelObjects.LevelObject;
+import com.lyeeedar.Utils.Bag;
+
+/**
+ * The data for every tile in a level, held as one primitive array per field indexed by (x*height)+z.
+ * <p>
+ * The visible, seen, solid and opaque flags are bitsets. Solid and opaque follow the character of the tile
+ * and are updated whenever it is set. Actors and LevelObjects are kept in a side table that only has an
+ * entry for tiles that have ever held something, as most tiles never do.
+ * <p>
+ * {@link Tile} is a view onto one index of the store, see {@link #getTiles()}.
+ * @author Philip
+ *
+ */
+public class TileStore implements Serializable {
+	
+	private static final long serialVersionUID = 5119043853924734411L;
+	
+	public final int width;
+	public final int height;
+	
+	final char[] character;
+	final float[] floor;
+	final float[] roof;
+	final float[] tileHeight;
+	
+	final long[] visible;
+	final long[] seen;
+	final long[] solid;
+	final long[] opaque;
+	
+	/**
+	 * Which characters are solid or opaque, one bit per char
+	 */
+	private final long[] solidChars = new long[1024];
+	private final long[] opaqueChars = new long[1024];
+	
+	/**
+	 * Index+1 into actors and levelObjects for each tile, 0 if the tile has never held anything
+	 */
+	private final int[] contents;
+	private Bag<GameActor>[] actors;
+	private Bag<LevelObject>[] levelObjects;
+	private int contentsSize = 0;
+	
+	private final Tile[][] tiles;
+	
+	@SuppressWarnings("unchecked")
+	public TileStore(int width, int height, Bag<Character> solids, Bag<Character> opaques)
+	{
+		this.width = width;
+		this.height = height;
+		
+		int size = width*height;
+		int words = (size+63) >> 6;
+		
+		character = new char[size];
+		floor = new float[size];
+		roof = new float[size];
+		tileHeight = new float[size];
+		
+		visible = new long[words];
+		seen = new long[words];
+		solid = new long[words];
+		opaque = new long[words];
+		
+		for (int i = 0; i < solids.size; i++) set(solidChars, solids.get(i), true);
+		for (int i = 0; i < opaques.size; i++) set(opaqueChars, opaques.get(i), true);
+		
+		contents = new int[size];
+		actors = new Bag[16];
+		levelObjects = new Bag[16];
+		
+		tiles = new Tile[width][height];
+		for (int x = 0; x < width; x++)
+		{
+			for (int z = 0; z < height; z++)
+			{
+				tiles[x][z] = new Tile(this, index(x, z));
+			}
+		}
+	}
+	
+	/**
+	 * @return the Tile views of every tile, as [x][z]
+	 */
+	public Tile[][] getTiles()
+	{
+		return tiles;
+	}
+	
+	public int index(int x, int z)
+	{
+		return (x*height)+z;
+	}
+	
+	public void set(int x, int z, char c, float floor, float roof, float height)
+	{
+		int i = index(x, z);
+		setCharacter(i, c);
+		this.floor[i] = floor;
+		this.roof[i] = roof;
+		this.tileHeight[i] = height;
+	}
+	
+	public void setCharacter(int i, char c)
+	{
+		character[i] = c;
+		set(solid, i, get(solidChars, c));
+		set(opaque, i, get(opaqueChars, c));
+	}
+	
+	public boolean isSolid(int x, int z)
+	{
+		return get(solid, index(x, z));
+	}
+	
+	public boolean isOpaque(int x, int z)
+	{
+		return get(opaque, index(x, z));
+	}
+	
+	// ----- Contents ----- //
+	
+	Bag<GameActor> getActors(int i)
+	{
+		int c = contents[i];
+		return (c == 0) ? null : actors[c-1];
+	}
+	
+	Bag<LevelObject> getLevelObjects(int i)
+	{
+		int c = contents[i];
+		return (c == 0) ? null : levelObjects[c-1];
+	}
+	
+	@SuppressWarnings("unchecked")
+	int getContents(int i)
+	{
+		int c = contents[i];
+		if (c != 0) return c-1;
+		
+		if (contentsSize == actors.length)
+		{
+			Bag<GameActor>[] nactors = new Bag[actors.length*2];
+			System.arraycopy(actors, 0, nactors, 0, contentsSize);
+			actors = nactors;
+			
+			Bag<LevelObject>[] nlevelObjects = new Bag[levelObjects.length*2];
+			System.arraycopy(levelObjects, 0, nlevelObjects, 0, contentsSize);
+			levelObjects = nlevelObjects;
+		}
+		
+		actors[contentsSize] = new Bag<GameActor>(4);
+		levelObjects[contentsSize] = new Bag<LevelObject>(4);
+		contents[i] = ++contentsSize;
+		
+		return contentsSize-1;
+	}
+	
+	void addGameActor(int i, GameActor ga)
+	{
+		int c = getContents(i);
+		actors[c].add(ga);
+	}
+	
+	void addLevelObject(int i, LevelObject lo)
+	{
+		int c = getContents(i);
+		levelObjects[c].add(lo);
+	}
+	
+	// ----- Bits ----- //
+	
+	static boolean get(long[] bits, int i)
+	{
+		return (bits[i >> 6] & (1L << i)) != 0;
+	}
+	
+	static void set(long[] bits, int i, boolean value)
+	{
+		if (value) bits[i >> 6] |= (1L << i);
+		else bits[i >> 6] &= ~(1L << i);
+	}
+}
@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.lyeeedar.Roguelike3D.Game.GameData;
+import com.lyeeedar.Roguelike3D.Game.GameObject;
+import com.lyeeedar.Roguelike3D.Game.Actor.GameActor;
+import com.lyeeedar.Roguelike3D.Game.Actor.Player;
+import com.lyeeedar.Roguelike3D.Game.LevelObjects.LevelObject;
+import com.lyeeedar.Utils.Bag;
+
+/**
+ * Decides which entities in the level are updated each frame, putting those far from the player to sleep.
+ * <p>
+ * Entities within activeRadius of the player are ACTIVE and update every frame. Those within sleepRadius are DROWSY
+ * and update every drowsyInterval frames, the rest are ASLEEP and update every asleepInterval frames (or never if it
+ * is 0). The frames an entity skips are added up and passed in as the delta when it next updates, up to MAX_DELTA.
+ * <p>
+ * Each tick runs in two phases. First perception and every due actor's {@link GameActor#think(float)} run, in parallel if
+ * enabled, while nothing moves. Then the actors are updated one at a time in registry order, which applies what they
+ * decided.
+ * <p>
+ * Anything can be woken with {@link #wake(GameObject)} or {@link #wakeAround(float, float, float, float)}, which keeps
+ * it ACTIVE for wakeTime seconds. Doors wake everything around them when activated, and perceiving actors wake when
+ * they gain sight of the player.
+ * @author Philip
+ *
+ */
+public class UpdateScheduler {
+	
+	public static final int ACTIVE = 0;
+	public static final int DROWSY = 1;
+	public static final int ASLEEP = 2;
+	
+	/**
+	 * The most time a sleeping entity will be given in one update
+	 */
+	public static final float MAX_DELTA = 0.5f;
+	
+	public float activeRadius = 20*GameData.BLOCK_SIZE;
+	public float sleepRadius = 50*GameData.BLOCK_SIZE;
+	public int drowsyInterval = 4;
+	public int asleepInterval = 30;
+	public float wakeTime = 5;
+	
+	/**
+	 * Run perception and the actors' think on a ForkJoinPool. The result is identical either way
+	 */
+	public boolean parallel = Runtime.getRuntime().availableProcessors() > 1;
+	
+	/**
+	 * Most actors handled by one task
+	 */
+	public static final int GRAIN = 16;
+	
+	private static final int PERCEIVE = 0;
+	private static final int THINK = 1;
+	
+	private static ForkJoinPool pool;
+	
+	/**
+	 * Number of entities in each tier, and how many were updated, at the last update
+	 */
+	public int active = 0;
+	public int drowsy = 0;
+	public int asleep = 0;
+	public int updated = 0;
+	
+	/**
+	 * Nanoseconds spent in perception, the level objects, picking and thinking for the actors and committing them
+	 * at the last update
+	 */
+	public long perceiveTime = 0;
+	public long levelObjectTime = 0;
+	public long thinkTime = 0;
+	public long commitTime = 0;
+	
+	final Level level;
+	
+	private int frame = 0;
+	
+	private GameActor[] due = new GameActor[32];
+	private float[] dueDelta = new float[32];
+	private int dueCount = 0;
+	
+	public UpdateScheduler(Level level)
+	{
+		this.level = level;
+	}
+	
+	public void update(float delta, Camera cam)
+	{
+		frame++;
+		active = 0;
+		drowsy = 0;
+		asleep = 0;
+		updated = 0;
+		
+		final EntityRegistry entities = level.getEntities();
+		entities.compact();
+		
+		final Player player = entities.getPlayer();
+		
+		level.prepareShared();
+		
+		long time = System.nanoTime();
+		perceive();
+		perceiveTime = System.nanoTime()-time;
+		
+		time = System.nanoTime();
+		
+		// Objects may be removed (but not compacted) while updating, so the slots can be null
+		for (int i = 0; i < entities.getLevelObjectCount(); i++)
+		{
+			LevelObject lo = entities.getLevelObject(i);
+			if (lo != null && schedule(lo, getTier(lo, player), delta)) lo.update(takeDelta(lo, delta), cam);
+		}
+		
+		levelObjectTime = System.nanoTime()-time;
+		time = System.nanoTime();
+		
+		// Pick the actors to update before any of them move
+		dueCount = 0;
+		for (int i = 0; i < entities.getActorCount(); i++)
+		{
+			GameActor ga = entities.getActor(i);
+			if (ga == null) continue;
+			
+			int tier = getTier(ga, player);
+			if (tier != ACTIVE && canSee(ga, player))
+			{
+				wake(ga);
+				tier = ACTIVE;
+			}
+			
+			if (schedule(ga, tier, delta)) addDue(ga, takeDelta(ga, delta));
+		}
+		
+		think();
+		
+		thinkTime = System.nanoTime()-time;
+		time = System.nanoTime();
+		
+		// Commit in registry order on this thread, so the result is the same however think was run
+		for (int i = 0; i < dueCount; i++)
+		{
+			due[i].update(dueDelta[i], cam);
+			due[i] = null;
+		}
+		
+		commitTime = System.nanoTime()-time;
+	}
+	
+	private void addDue(GameActor ga, float delta)
+	{
+		if (dueCount == due.length)
+		{
+			GameActor[] ndue = new GameActor[due.length*2];
+			System.arraycopy(due, 0, ndue, 0, dueCount);
+			due = ndue;
+			
+			float[] ndueDelta = new float[dueDelta.length*2];
+			System.arraycopy(dueDelta, 0, ndueDelta, 0, dueCount);
+			dueDelta = ndueDelta;
+		}
+		
+		due[dueCount] = ga;
+		dueDelta[dueCount] = delta;
+		dueCount++;
+	}
+	
+	// ----- Think phase ----- //
+	
+	private void perceive()
+	{
+		Perception perception = level.getPerception();
+		perception.prepare();
+		
+		int limit = perception.getHandleLimit();
+		if (parallel && limit > GRAIN) getPool().invoke(new PhaseTask(PERCEIVE, 1, limit));
+		else perception.update(1, limit, CollisionQuery.get());
+	}
+	
+	private void think()
+	{
+		if (parallel && dueCount > GRAIN) getPool().invoke(new PhaseTask(THINK, 0, dueCount));
+		else runPhase(THINK, 0, dueCount);
+	}
+	
+	private void runPhase(int phase, int from, int to)
+	{
+		if (phase == PERCEIVE)
+		{
+			level.getPerception().update(from, to, CollisionQuery.get());
+		}
+		else
+		{
+			for (int i = from; i < to; i++) due[i].think(dueDelta[i]);
+		}
+	}
+	
+	private static synchronized ForkJoinPool getPool()
+	{
+		if (pool == null) pool = new ForkJoinPool();
+		return pool;
+	}
+	
+	/**
+	 * Splits a range of the phase in half until it is no bigger than GRAIN
+	 */
+	@SuppressWarnings("serial")
+	private final class PhaseTask extends RecursiveAction
+	{
+		final int phase;
+		final int from;
+		final int to;
+		
+		PhaseTask(int phase, int from, int to)
+		{
+			this.phase = phase;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (to-from <= GRAIN)
+			{
+				runPhase(phase, from, to);
+				return;
+			}
+			
+			int mid = (from+to) >>> 1;
+			invokeAll(new PhaseTask(phase, from, mid), new PhaseTask(phase, mid, to));
+		}
+	}
+	
+	private boolean canSee(GameActor ga, Player player)
+	{
+		if (player == null || ga.ai == null || !ga.ai.usesPerception()) return false;
+		
+		final Bag<GameActor> visible = level.getPerception().getVisible(ga);
+		for (int i = 0; i < visible.size; i++) if (visible.get(i) == player) return true;
+		return false;
+	}
+	
+	/**
+	 * @return the tier the object is in, everything is ACTIVE when there is no player
+	 */
+	public int getTier(GameObject go, Player player)
+	{
+		if (player == null || go == player || go.wakeTime > 0) return ACTIVE;
+		
+		float dist2 = go.position.dst2(player.position);
+		if (dist2 <= activeRadius*activeRadius) return ACTIVE;
+		if (dist2 <= sleepRadius*sleepRadius) return DROWSY;
+		return ASLEEP;
+	}
+	
+	/**
+	 * Count the object into its tier and add delta to the time it is owed
+	 * @return true if it should be updated this frame
+	 */
+	private boolean schedule(GameObject go, int tier, float delta)
+	{
+		go.sleepDelta += delta;
+		
+		int interval;
+		if (tier == ACTIVE)
+		{
+			active++;
+			if (go.wakeTime > 0) go.wakeTime -= delta;
+			interval = 1;
+		}
+		else if (tier == DROWSY)
+		{
+			drowsy++;
+			interval = drowsyInterval;
+		}
+		else
+		{
+			asleep++;
+			interval = asleepInterval;
+		}
+		
+		if (interval <= 0) return false;
+		
+		// Spread the sleeping entities over the frames rather than waking them all at once
+		if (interval > 1 && (frame+go.registryIndex) % interval != 0) return false;
+		
+		updated++;
+		return true;
+	}
+	
+	/**
+	 * @return the time owed to the object, capped at MAX_DELTA if it has been asleep
+	 */
+	private float takeDelta(GameObject go, float delta)
+	{
+		float owed = go.sleepDelta;
+		go.sleepDelta = 0;
+		return (owed > delta) ? Math.min(owed, Math.max(delta, MAX_DELTA)) : owed;
+	}
+	
+	public void wake(GameObject go)
+	{
+		go.wakeTime = wakeTime;
+	}
+	
+	/**
+	 * Wake every actor and level object within radius of the point
+	 */
+	public void wakeAround(float x, float y, float z, float radius)
+	{
+		CollisionQuery query = CollisionQuery.get();
+		
+		final Bag<GameActor> actors = query.actors;
+		level.getActorHash().querySphere(x, y, z, radius, actors);
+		for (int i = 0; i < actors.size; i++) wake(actors.get(i));
+		actors.clear();
+		
+		final Bag<LevelObject> levelObjects = query.levelObjects;
+		level.getLevelObjectHash().querySphere(x, y, z, radius, levelObjects);
+		for (int i = 0; i < levelObjects.size; i++) wake(levelObjects.get(i));
+		levelObjects.clear();
+	}
+}
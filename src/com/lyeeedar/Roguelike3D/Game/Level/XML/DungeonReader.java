@@ -16,6 +16,7 @@ import java.util.HashMap;
 import org.w3c.dom.Node;
 
 import com.lyeeedar.Roguelike3D.Game.Level.LevelContainer;
+import com.lyeeedar.Utils.SplitRandom;
 
 public class DungeonReader extends XMLReader {
 
@@ -40,8 +41,12 @@ public class DungeonReader extends XMLReader {
 		dungeonNode = getNode(DUNGEON, root_node.getChildNodes());
 	}
 
-	public HashMap<String, LevelContainer> getDungeon()
+	/**
+	 * Each level's seed is split from the dungeon seed by its name, so a level is the same whatever order they are read in
+	 */
+	public HashMap<String, LevelContainer> getDungeon(long seed)
 	{
+		SplitRandom ran = new SplitRandom(seed);
 		HashMap<String, LevelContainer> dungeon = new HashMap<String, LevelContainer>();
 		
 		for (int i = 0; i < dungeonNode.getChildNodes().getLength(); i++)
@@ -79,7 +84,7 @@ public class DungeonReader extends XMLReader {
 			String[] down = new String[downList.size()];
 			downList.toArray(down);
 			
-			LevelContainer lc = new LevelContainer(name, biome, depth, up, down);
+			LevelContainer lc = new LevelContainer(name, biome, depth, up, down, ran.split(name).seed);
 			
 			dungeon.put(name, lc);
 		}
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level.XML;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+
+/**
+ * An on disk cache of evolved creatures, so a monster type is only evolved once for each depth and seed.
+ * <p>
+ * Evolving only depends on the monster type, the depth, the seed and monsters.data, so those make the key. That holds
+ * because every choice MonsterEvolver makes comes from a Random split from the seed, whether or not its trials run in
+ * parallel, so a file written on one machine has what any other would evolve (MonsterEvolverTest checks this).
+ * <p>
+ * Each evolver is a file in CACHE_DIR holding a header with the key followed by its EVOLVED_CREATURES, serialised and
+ * deflated. A file is only used if its header matches the key it was asked for, so editing monsters.data or changing
+ * VERSION just leaves the old files unused.
+ * <p>
+ * Evolvers can be warmed on a background thread before they are needed, {@link #get(String, int, long)} then waits for
+ * the one being warmed rather than evolving it again.
+ * @author Philip
+ *
+ */
+public class EvolverCache {
+	
+	public static final String DATA_FILE = "data/xml/monsters.data";
+	public static final String CACHE_DIR = "cache/evolver/";
+	public static final String EXTENSION = ".evo";
+	
+	public static final int MAGIC = 0x45564f4c;
+	/**
+	 * Change this whenever the Creature_Evolver classes or the way they are evolved change, so files written by older
+	 * builds are not read
+	 */
+	public static final int VERSION = 2;
+	
+	/**
+	 * When false nothing is read or written and every evolver is evolved
+	 */
+	public static boolean enabled = true;
+	
+	/**
+	 * Counted from both the warming thread and the GL thread
+	 */
+	public static final AtomicInteger hits = new AtomicInteger();
+	public static final AtomicInteger misses = new AtomicInteger();
+	
+	private static long dataHash;
+	private static boolean hashed = false;
+	
+	private static final HashMap<String, Future<MonsterEvolver>> warming = new HashMap<String, Future<MonsterEvolver>>();
+	private static ExecutorService warmer;
+	
+	/**
+	 * @return the CRC32 of monsters.data, worked out the first time it is asked for
+	 */
+	public static synchronized long getDataHash()
+	{
+		if (!hashed)
+		{
+			CRC32 crc = new CRC32();
+			crc.update(Gdx.files.internal(DATA_FILE).readBytes());
+			dataHash = crc.getValue();
+			hashed = true;
+		}
+		
+		return dataHash;
+	}
+	
+	public static String getKey(String type, int depth, long seed)
+	{
+		return type+"_"+depth+"_"+Long.toHexString(seed)+"_"+Long.toHexString(getDataHash());
+	}
+	
+	public static FileHandle getFile(String type, int depth, long seed)
+	{
+		return Gdx.files.local(CACHE_DIR+getKey(type, depth, seed)+EXTENSION);
+	}
+	
+	/**
+	 * @return the evolver for the key. Waits for it if it is being warmed, otherwise loads it from the cache or evolves
+	 * it (and stores it) if it is not there
+	 */
+	public static MonsterEvolver get(String type, int depth, long seed)
+	{
+		if (!enabled) return evolve(type, depth, seed);
+		
+		Future<MonsterEvolver> future;
+		synchronized (warming)
+		{
+			future = warming.remove(getKey(type, depth, seed));
+		}
+		
+		// If it has not started yet it is quicker to do it here than to wait for everything queued in front of it
+		if (future != null && !future.cancel(false))
+		{
+			try {
+				MonsterEvolver evolver = future.get();
+				if (evolver != null) return evolver;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		return loadOrEvolve(type, depth, seed);
+	}
+	
+	/**
+	 * Start loading or evolving the evolver for the key on the background thread, if it is not already
+	 */
+	public static void warm(final String type, final int depth, final long seed)
+	{
+		if (!enabled) return;
+		
+		String key = getKey(type, depth, seed);
+		synchronized (warming)
+		{
+			if (warming.containsKey(key)) return;
+			
+			warming.put(key, getWarmer().submit(new Callable<MonsterEvolver>() {
+				@Override
+				public MonsterEvolver call()
+				{
+					return loadOrEvolve(type, depth, seed);
+				}
+			}));
+		}
+	}
+	
+	/**
+	 * Drop every evolver that was warmed but never asked for, and cancel any that have not started
+	 */
+	public static void clearWarmed()
+	{
+		synchronized (warming)
+		{
+			for (Future<MonsterEvolver> future : warming.values()) future.cancel(false);
+			warming.clear();
+		}
+	}
+	
+	private static MonsterEvolver loadOrEvolve(String type, int depth, long seed)
+	{
+		MonsterEvolver evolver = load(type, depth, seed);
+		
+		if (evolver != null)
+		{
+			hits.incrementAndGet();
+			return evolver;
+		}
+		
+		misses.incrementAndGet();
+		return evolve(type, depth, seed);
+	}
+	
+	/**
+	 * Evolve the evolver for the key from monsters.data and store it in the cache
+	 */
+	public static MonsterEvolver evolve(String type, int depth, long seed)
+	{
+		MonsterEvolver evolver = new MonsterEvolver(type, depth, seed);
+		evolver.createMap();
+		evolver.Evolve_Creature();
+		
+		if (enabled) store(evolver);
+		
+		return evolver;
+	}
+	
+	/**
+	 * @return the cached evolver for the key, or null if there is not one or it cannot be read
+	 */
+	public static MonsterEvolver load(String type, int depth, long seed)
+	{
+		FileHandle file = getFile(type, depth, seed);
+		
+		if (!file.exists()) return null;
+		
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new InflaterInputStream(new BufferedInputStream(file.read())));
+			
+			if (in.readInt() != MAGIC) return null;
+			if (in.readInt() != VERSION) return null;
+			if (!in.readUTF().equals(type)) return null;
+			if (in.readInt() != depth) return null;
+			if (in.readLong() != seed) return null;
+			if (in.readLong() != getDataHash()) return null;
+			
+			String monster = in.readUTF();
+			Creature_Evolver[] evolved = (Creature_Evolver[]) in.readObject();
+			
+			return new MonsterEvolver(type, depth, seed, monster, evolved);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		} catch (ClassCastException e) {
+			e.printStackTrace();
+		} finally {
+			close(in);
+		}
+		
+		// Anything that could not be read will be evolved and written again
+		file.delete();
+		return null;
+	}
+	
+	public static void store(MonsterEvolver evolver)
+	{
+		FileHandle file = getFile(evolver.type, evolver.depth, evolver.seed);
+		
+		ObjectOutputStream out = null;
+		try {
+			out = new ObjectOutputStream(new DeflaterOutputStream(new BufferedOutputStream(file.write(false))));
+			
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(evolver.type);
+			out.writeInt(evolver.depth);
+			out.writeLong(evolver.seed);
+			out.writeLong(getDataHash());
+			out.writeUTF(evolver.monster);
+			out.writeObject(evolver.EVOLVED_CREATURES);
+		} catch (IOException e) {
+			e.printStackTrace();
+			close(out);
+			out = null;
+			file.delete();
+		} finally {
+			close(out);
+		}
+	}
+	
+	private static void close(Closeable stream)
+	{
+		if (stream == null) return;
+		
+		try {
+			stream.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private static synchronized ExecutorService getWarmer()
+	{
+		if (warmer == null)
+		{
+			warmer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "EvolverCache warmer");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		}
+		
+		return warmer;
+	}
+}
@@ -10,12 +10,17 @@
  ******************************************************************************/
 package com.lyeeedar.Roguelike3D.Game.Level.XML;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Random;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -34,6 +39,7 @@ import com.lyeeedar.Roguelike3D.Game.Item.Component.Component_Type;
 import com.lyeeedar.Roguelike3D.Game.Item.Equipment_HAND;
 import com.lyeeedar.Roguelike3D.Game.Item.Equipment_HAND.WeaponType;
 import com.lyeeedar.Roguelike3D.Game.Level.Level;
+import com.lyeeedar.Utils.SplitRandom;
 
 /**
  * Class Used to evolve monsters to attempt to provide variety.
@@ -55,6 +61,18 @@ public class MonsterEvolver extends XMLReader {
 
 	public transient static final int EVOLVER_CREATURE_TURNS = 10;
 
+	/**
+	 * Trials simulated at once when running in parallel
+	 */
+	public transient static final int EVOLVER_TRIALS = 4;
+
+	/**
+	 * Simulate each difficulty's trials on a ForkJoinPool
+	 */
+	public static boolean parallel = Runtime.getRuntime().availableProcessors() > 1;
+
+	private static ForkJoinPool pool;
+
 	public transient static final String DATA = "DATA";
 
 	public transient static final String MONSTERS = "monsters";
@@ -136,7 +154,12 @@ public class MonsterEvolver extends XMLReader {
 	public transient static final String FACTION = "faction";
 	public transient static final String ICON = "icon";
 	
-	final transient Random ran = new Random();
+	/**
+	 * Picks the monster while reading. Evolving only draws from each trial's own Random (split from the seed, see
+	 * {@link #Evolve_Creature()}), so the same seed always evolves the same creatures however the trials are run
+	 */
+	final transient Random ran;
+	public final long seed;
 
 	final String monster;
 	final transient Node selected_monster;
@@ -147,12 +170,17 @@ public class MonsterEvolver extends XMLReader {
 	public final String UID;
 	
 	public final String type;
+	
+	public final int depth;
 
-	public MonsterEvolver(String monster_type, int depth) {
+	public MonsterEvolver(String monster_type, int depth, long seed) {
 
-		super("data/xml/monsters.data");
+		super(EvolverCache.DATA_FILE);
 		
 		this.type = monster_type;
+		this.depth = depth;
+		this.seed = seed;
+		this.ran = new SplitRandom(seed);
 		
 		UID = this.toString()+this.hashCode()+System.currentTimeMillis()+System.nanoTime();
 		
@@ -366,6 +394,26 @@ public class MonsterEvolver extends XMLReader {
 		}
 	}
 	
+	/**
+	 * An evolver whose creatures have already been evolved, as loaded by {@link EvolverCache}. Nothing is read from
+	 * the xml, so it can make monsters but cannot be evolved again
+	 */
+	MonsterEvolver(String monster_type, int depth, long seed, String monster, Creature_Evolver[] evolved)
+	{
+		super();
+		
+		this.type = monster_type;
+		this.depth = depth;
+		this.seed = seed;
+		this.ran = null;
+		this.monster = monster;
+		this.selected_monster = null;
+		this.attribute_root = null;
+		this.EVOLVED_CREATURES = evolved;
+		
+		UID = this.toString()+this.hashCode()+System.currentTimeMillis()+System.nanoTime();
+	}
+	
 	private ArrayList<Component> getDrops(Node dropList)
 	{
 		ArrayList<Component> drops = new ArrayList<Component>();
@@ -501,93 +549,67 @@ public class MonsterEvolver extends XMLReader {
 		return ga;
 	}
 	
-	transient EvolverTile[][] grid = new EvolverTile[EVOLVER_WIDTH][EVOLVER_HEIGHT];
+	transient EvolverTile[][][] grids;
 	public void createMap()
 	{
-		for (int x = 0; x < EVOLVER_WIDTH; x++)
+		grids = new EvolverTile[EVOLVER_TRIALS][EVOLVER_WIDTH][EVOLVER_HEIGHT];
+		for (int t = 0; t < EVOLVER_TRIALS; t++)
 		{
-			for (int y = 0; y < EVOLVER_HEIGHT; y++)
+			for (int x = 0; x < EVOLVER_WIDTH; x++)
 			{
-				grid[x][y] = new EvolverTile(x, y);
+				for (int y = 0; y < EVOLVER_HEIGHT; y++)
+				{
+					grids[t][x][y] = new EvolverTile(x, y);
+				}
 			}
 		}
 	}
 
 	public Creature_Evolver[] EVOLVED_CREATURES = new Creature_Evolver[10];
 
+	/**
+	 * Evolve a creature for each difficulty, each from the one before.
+	 * <p>
+	 * Every difficulty runs trials until one has a creature survive, and takes the fittest from the first that does.
+	 * Each trial is a separate population on its own grid with its own Random split from the seed by difficulty and
+	 * trial number. In parallel the next EVOLVER_TRIALS trials are simulated at once on a ForkJoinPool, and the ones
+	 * after the first success are thrown away. Every choice a trial makes, including its creatures' attributes, comes
+	 * from its own Random, so the same seed evolves the same creatures either way. Making the creatures reads the xml
+	 * so is done in order on this thread.
+	 */
 	public void Evolve_Creature()
 	{
+		if (grids == null) createMap();
+
+		final SplitRandom trialRan = new SplitRandom(seed);
+		final int batchSize = (parallel) ? EVOLVER_TRIALS : 1;
+		final EvolverTrial[] trials = new EvolverTrial[batchSize];
+
 		for (int j = 0; j < 10; j++) {
 
 			Creature_Evolver best = null;
-			while (true)
+			int batch = 0;
+			while (best == null)
 			{
-
-				for (int ii = 0; ii < EVOLVER_CREATURE_TURNS; ii++)
+				for (int t = 0; t < batchSize; t++)
 				{
-					for (int x = 0; x < EVOLVER_WIDTH; x++)	
-					{
-						for (int y = 0; y < EVOLVER_HEIGHT; y++)
-						{
-							grid[x][y].food = false;
-							grid[x][y].creature = null;
-						}
-					}
+					trials[t] = new EvolverTrial(grids[t], trialRan.split(j).split((batch*batchSize)+t));
+					populate(trials[t], j);
 				}
 
-				for (int i = 0; i < 25; i++)
-				{
-					grid[ran.nextInt(EVOLVER_WIDTH)][ran.nextInt(EVOLVER_HEIGHT)].food = true;
-				}
+				if (batchSize > 1) getPool().invoke(new TrialTask(trials, 0, batchSize));
+				else trials[0].run();
 
-				for (int ii = 0; ii < EVOLVER_CREATURE_NUM; ii++)
+				for (EvolverTrial trial : trials)
 				{
-					int x = ran.nextInt(EVOLVER_WIDTH);
-					int y = ran.nextInt(EVOLVER_HEIGHT);
-					if (j == 0)
-						grid[x][y].creature = createCreature(j);
-					else
-						grid[x][y].creature = recreateCreature(j);
-
-					grid[x][y].creature.x = x;
-					grid[x][y].creature.y = y;
-				}
-
-				ArrayList<Creature_Evolver> creatures = new ArrayList<Creature_Evolver>();
-				for (int ii = 0; ii < EVOLVER_CREATURE_TURNS; ii++)
-				{
-					for (int x = 0; x < EVOLVER_WIDTH; x++)
-					{
-						for (int y = 0; y < EVOLVER_HEIGHT; y++)
-						{
-							if (grid[x][y].creature != null)
-							{
-								creatures.add(grid[x][y].creature);
-							}
-						}
-					}
-
-					for (Creature_Evolver c_e : creatures)
+					if (trial.best != null)
 					{
-						c_e.update(grid);
+						best = trial.best;
+						break;
 					}
 				}
 
-				int best_points = 0;
-
-				for (int x = 0; x < EVOLVER_WIDTH; x++)
-				{
-					for (int y = 0; y < EVOLVER_HEIGHT; y++)
-					{
-						if (grid[x][y].creature != null && grid[x][y].creature.points >= best_points)
-						{
-							best = grid[x][y].creature;
-							best_points = best.points;
-						}
-					}
-				}
-				
-				if (best != null) break;
+				batch++;
 			}
 
 			EVOLVED_CREATURES[j] = best;
@@ -596,45 +618,118 @@ public class MonsterEvolver extends XMLReader {
 
 		}
 	}
+
+	/**
+	 * Scatter food and a new population of creatures over the trial's grid
+	 */
+	private void populate(EvolverTrial trial, int difficulty)
+	{
+		final EvolverTile[][] grid = trial.grid;
+		final Random ran = trial.ran;
+
+		for (int x = 0; x < EVOLVER_WIDTH; x++)
+		{
+			for (int y = 0; y < EVOLVER_HEIGHT; y++)
+			{
+				grid[x][y].food = false;
+				grid[x][y].creature = null;
+			}
+		}
+
+		for (int i = 0; i < 25; i++)
+		{
+			grid[ran.nextInt(EVOLVER_WIDTH)][ran.nextInt(EVOLVER_HEIGHT)].food = true;
+		}
+
+		for (int ii = 0; ii < EVOLVER_CREATURE_NUM; ii++)
+		{
+			int x = ran.nextInt(EVOLVER_WIDTH);
+			int y = ran.nextInt(EVOLVER_HEIGHT);
+			if (difficulty == 0)
+				grid[x][y].creature = createCreature(difficulty, ran);
+			else
+				grid[x][y].creature = recreateCreature(difficulty, ran);
+
+			grid[x][y].creature.x = x;
+			grid[x][y].creature.y = y;
+		}
+	}
+
+	private static synchronized ForkJoinPool getPool()
+	{
+		if (pool == null) pool = new ForkJoinPool();
+		return pool;
+	}
+
+	/**
+	 * Splits the trials in half until there is one to run
+	 */
+	@SuppressWarnings("serial")
+	private static final class TrialTask extends RecursiveAction
+	{
+		final EvolverTrial[] trials;
+		final int from;
+		final int to;
+
+		TrialTask(EvolverTrial[] trials, int from, int to)
+		{
+			this.trials = trials;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to-from <= 1)
+			{
+				for (int i = from; i < to; i++) trials[i].run();
+				return;
+			}
+
+			int mid = (from+to) >>> 1;
+			invokeAll(new TrialTask(trials, from, mid), new TrialTask(trials, mid, to));
+		}
+	}
 	
-	private Creature_Evolver createCreature(int difficulty)
+	private Creature_Evolver createCreature(int difficulty, Random trialRan)
 	{
 		Node abs = getNode(ABSTRACT, selected_monster.getChildNodes());
 		Node abstractList = getNode(DIFFICULTY+difficulty, abs.getChildNodes());
 		AbstractCreature_Evolver creature = creatures.get(getNodeValue(CREATURE, abstractList.getChildNodes()));
 		int calorie_usage = Integer.parseInt(getNodeValue(CALORIE_USAGE, abstractList.getChildNodes()));
 
-		Creature_Evolver c_e = new Creature_Evolver(creature, calorie_usage, 0, 0);
+		Creature_Evolver c_e = new Creature_Evolver(creature, calorie_usage, 0, 0, trialRan);
 		c_e.addAttributes(
-				getMind(creature),
-				getSkin(creature),
-				getBones(creature),
-				getMuscles(creature),
-				getAttackRight(creature),
-				getAttackLeft(creature));
+				getMind(creature, trialRan),
+				getSkin(creature, trialRan),
+				getBones(creature, trialRan),
+				getMuscles(creature, trialRan),
+				getAttackRight(creature, trialRan),
+				getAttackLeft(creature, trialRan));
 		
 		while (c_e.calorie_usage_base < c_e.calorie_usage)
 		{
-			c_e = new Creature_Evolver(creature, calorie_usage, 0, 0);
+			c_e = new Creature_Evolver(creature, calorie_usage, 0, 0, trialRan);
 			c_e.addAttributes(
-					getMind(creature),
-					getSkin(creature),
-					getBones(creature),
-					getMuscles(creature),
-					getAttackRight(creature),
-					getAttackLeft(creature));		
+					getMind(creature, trialRan),
+					getSkin(creature, trialRan),
+					getBones(creature, trialRan),
+					getMuscles(creature, trialRan),
+					getAttackRight(creature, trialRan),
+					getAttackLeft(creature, trialRan));		
 		}
 
 		return c_e;
 	}
 	
-	private Creature_Evolver recreateCreature(int difficulty)
+	private Creature_Evolver recreateCreature(int difficulty, Random trialRan)
 	{
 		Node abstractList = getNode(DIFFICULTY+difficulty, getNode(ABSTRACT, selected_monster.getChildNodes()).getChildNodes());
 		AbstractCreature_Evolver creature = creatures.get(getNodeValue(CREATURE, abstractList.getChildNodes()));
 		int calorie_usage = Integer.parseInt(getNodeValue(CALORIE_USAGE, abstractList.getChildNodes()));
 
-		Creature_Evolver c_e = new Creature_Evolver(creature, calorie_usage, 0, 0);
+		Creature_Evolver c_e = new Creature_Evolver(creature, calorie_usage, 0, 0, trialRan);
 		EVOLVED_CREATURES[difficulty-1].nextEvolution(c_e, this);
 		
 		while (c_e.calorie_usage_base < c_e.calorie_usage)
@@ -645,7 +740,7 @@ public class MonsterEvolver extends XMLReader {
 		return c_e;
 	}
 
-	public Mind_Evolver getMind(AbstractCreature_Evolver creature)
+	public Mind_Evolver getMind(AbstractCreature_Evolver creature, Random ran)
 	{
 		Node mind = getNode(creature.mind_type, getNode(MIND, attribute_root.getChildNodes()).getChildNodes());
 
@@ -663,12 +758,12 @@ public class MonsterEvolver extends XMLReader {
 
 		Mind_Evolver m_e = new Mind_Evolver(selected.getNodeName());
 
-		m_e.addAI(getNodeValue(AI, selected.getChildNodes()));
+		m_e.addAI(getNodeValue(AI, selected.getChildNodes()), ran);
 
 		return m_e;
 	}
 
-	public Skin_Evolver getSkin(AbstractCreature_Evolver creature)
+	public Skin_Evolver getSkin(AbstractCreature_Evolver creature, Random ran)
 	{
 		Node skin = getNode(creature.skin_type, getNode(SKIN, attribute_root.getChildNodes()).getChildNodes());
 		ArrayList<Node> valid = new ArrayList<Node>();
@@ -715,7 +810,7 @@ public class MonsterEvolver extends XMLReader {
 		return s_e;
 	}
 
-	public Bones_Evolver getBones(AbstractCreature_Evolver creature)
+	public Bones_Evolver getBones(AbstractCreature_Evolver creature, Random ran)
 	{
 		Node bones = getNode(creature.bones_type, getNode(BONES, attribute_root.getChildNodes()).getChildNodes());
 
@@ -749,7 +844,7 @@ public class MonsterEvolver extends XMLReader {
 		return b_e;
 	}
 
-	public Muscles_Evolver getMuscles(AbstractCreature_Evolver creature)
+	public Muscles_Evolver getMuscles(AbstractCreature_Evolver creature, Random ran)
 	{
 		Node muscles = getNode(creature.muscles_type, getNode(MUSCLES, attribute_root.getChildNodes()).getChildNodes());
 
@@ -776,7 +871,7 @@ public class MonsterEvolver extends XMLReader {
 		return m_e;
 	}
 
-	public Attack_Evolver getAttackLeft(AbstractCreature_Evolver creature)
+	public Attack_Evolver getAttackLeft(AbstractCreature_Evolver creature, Random ran)
 	{
 		Node attack = null;
 
@@ -829,7 +924,7 @@ public class MonsterEvolver extends XMLReader {
 		return a_e;
 	}
 	
-	public Attack_Evolver getAttackRight(AbstractCreature_Evolver creature)
+	public Attack_Evolver getAttackRight(AbstractCreature_Evolver creature, Random ran)
 	{
 		Node attack = null;
 
@@ -883,6 +978,63 @@ public class MonsterEvolver extends XMLReader {
 	}
 }
 
+/**
+ * One population of creatures on its own grid, which can be simulated on any thread
+ */
+class EvolverTrial
+{
+	final EvolverTile[][] grid;
+	final Random ran;
+
+	/**
+	 * The creature with the most points at the end of the run, or null if none survived
+	 */
+	Creature_Evolver best = null;
+
+	public EvolverTrial(EvolverTile[][] grid, Random ran)
+	{
+		this.grid = grid;
+		this.ran = ran;
+	}
+
+	public void run()
+	{
+		ArrayList<Creature_Evolver> creatures = new ArrayList<Creature_Evolver>();
+		for (int ii = 0; ii < MonsterEvolver.EVOLVER_CREATURE_TURNS; ii++)
+		{
+			for (int x = 0; x < grid.length; x++)
+			{
+				for (int y = 0; y < grid[0].length; y++)
+				{
+					if (grid[x][y].creature != null)
+					{
+						creatures.add(grid[x][y].creature);
+					}
+				}
+			}
+
+			for (Creature_Evolver c_e : creatures)
+			{
+				c_e.update(grid);
+			}
+		}
+
+		int best_points = 0;
+
+		for (int x = 0; x < grid.length; x++)
+		{
+			for (int y = 0; y < grid[0].length; y++)
+			{
+				if (grid[x][y].creature != null && grid[x][y].creature.points >= best_points)
+				{
+					best = grid[x][y].creature;
+					best_points = best.points;
+				}
+			}
+		}
+	}
+}
+
 class EvolverTile
 {
 	int x;
@@ -908,7 +1060,11 @@ class Creature_Evolver implements Serializable
 	public transient static final int FEED_DURATION = 5;
 	public transient static final int FOOD_CALORIES = 200;
 
-	public transient final Random ran = new Random();
+	/**
+	 * Its trial's Random, which its attributes, evolutions and combats draw from. Null once loaded as it is only
+	 * needed while evolving
+	 */
+	public transient final Random ran;
 
 	public int consumed_calories = 100;
 	public int points = 0;
@@ -944,8 +1100,9 @@ class Creature_Evolver implements Serializable
 	public transient int x;
 	public transient int y;
 
-	public Creature_Evolver(AbstractCreature_Evolver creature, int calorie_usage, int x, int y)
+	public Creature_Evolver(AbstractCreature_Evolver creature, int calorie_usage, int x, int y, Random ran)
 	{
+		this.ran = ran;
 		this.x = x;
 		this.y = y;
 		this.calorie_usage_base = calorie_usage+creature.base_calories;
@@ -1193,7 +1350,7 @@ class Creature_Evolver implements Serializable
 
 	public Creature_Evolver cpy()
 	{
-		Creature_Evolver c_e = new Creature_Evolver(creature, calorie_usage_base-creature.base_calories, 0, 0);
+		Creature_Evolver c_e = new Creature_Evolver(creature, calorie_usage_base-creature.base_calories, 0, 0, ran);
 		c_e.addAttributes(mind, skin, bones, muscles, attack_right, attack_left);
 		
 		return c_e;
@@ -1212,30 +1369,34 @@ class Creature_Evolver implements Serializable
 		Attack_Evolver nLeft_Attack = attack_left;
 		Attack_Evolver nRight_Attack = attack_right;
 		
+		// Drawn from the new creature's trial, as the evolver's own Random is shared by every trial
+		final Random ran = c_e.ran;
+		
 		for (int i = 0; i < 2; i++)
 		{
 		int change = ran.nextInt(4);
 		
 		if (change == 0)
 		{
-			nSkin = evolver.getSkin(c_e.creature);
+			nSkin = evolver.getSkin(c_e.creature, ran);
 		}
 		else if (change == 1)
 		{
-			nBones = evolver.getBones(c_e.creature);
+			nBones = evolver.getBones(c_e.creature, ran);
 		}
 		else if (change == 2)
 		{
-			nMuscles = evolver.getMuscles(c_e.creature);
+			nMuscles = evolver.getMuscles(c_e.creature, ran);
 		}
 		else
 		{
-			nLeft_Attack = evolver.getAttackLeft(c_e.creature);
-			nRight_Attack = evolver.getAttackRight(c_e.creature);
+			nLeft_Attack = evolver.getAttackLeft(c_e.creature, ran);
+			nRight_Attack = evolver.getAttackRight(c_e.creature, ran);
 		}
 		}
 		
-		c_e.addAttributes(mind, nSkin, nBones, nMuscles, nRight_Attack, nLeft_Attack);
+		// The AI keeps state as it runs, so each creature needs its own
+		c_e.addAttributes(mind.copy(), nSkin, nBones, nMuscles, nRight_Attack, nLeft_Attack);
 	}
 
 	@Override
@@ -1275,7 +1436,7 @@ class AbstractCreature_Evolver implements Serializable
 		this.name = name;
 	}
 
-	transient NodeList description; String model_type; String model_name; float model_scale; String texture; Color colour;
+	transient NodeList description; String model_type; String model_name; float model_scale; String texture; transient Color colour;
 	public void addVisual(NodeList description, String model_type, String model_name, String model_scale, String texture, String r, String g, String b)
 	{
 		this.description = description;
@@ -1367,6 +1528,26 @@ class AbstractCreature_Evolver implements Serializable
 		this.attack_left_type = type;
 		this.attLDrops = drops;
 	}
+	
+	/**
+	 * Color is not Serializable so is written as its components
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		out.defaultWriteObject();
+		
+		out.writeFloat(colour.r);
+		out.writeFloat(colour.g);
+		out.writeFloat(colour.b);
+		out.writeFloat(colour.a);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		
+		colour = new Color(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+	}
 }
 
 class Mind_Evolver implements Serializable
@@ -1394,15 +1575,23 @@ class Mind_Evolver implements Serializable
 	AI_Evolver ai_type;
 	AI_Evolver_Package ai;
 
-	public void addAI(String ai)
+	public void addAI(String ai, Random ran)
 	{
-		Random ran = new Random();
 		if (ai.equalsIgnoreCase("VFFG"))
 		{
 			this.ai_type = AI_Evolver.VFFG;
 			this.ai = new AI_Evolver_VFFG(ran.nextInt(101), ran.nextInt(101), ran.nextInt(101), ran.nextInt(101));
 		}
 	}
+
+	public Mind_Evolver copy()
+	{
+		Mind_Evolver m_e = new Mind_Evolver(name);
+		m_e.ai_type = ai_type;
+		if (ai != null) m_e.ai = ai.copy();
+
+		return m_e;
+	}
 }
 
 class Skin_Evolver implements Serializable
@@ -1596,6 +1785,11 @@ abstract class AI_Evolver_Package implements Serializable
 	public abstract int evaluateCombatAttack();
 	public abstract int evaluateCombatFlee();
 	public abstract String getToString();
+
+	/**
+	 * @return a copy with the same personality and where it last wanted to go
+	 */
+	public abstract AI_Evolver_Package copy();
 	
 	public abstract AI_Package getAI(GameActor actor);
 
@@ -1775,6 +1969,19 @@ class AI_Evolver_VFFG extends AI_Evolver_Package
 		this.guard = guard;
 	}
 
+	@Override
+	public AI_Evolver_Package copy()
+	{
+		AI_Evolver_VFFG ai = new AI_Evolver_VFFG(violence, flee, feed, guard);
+		if (target != null)
+		{
+			ai.target[0] = target[0];
+			ai.target[1] = target[1];
+		}
+
+		return ai;
+	}
+
 	public String getToString()
 	{
 		return 
@@ -1908,7 +2115,7 @@ class AI_Evolver_VFFG extends AI_Evolver_Package
 class Evolver_Combat
 {
 	public static final int COMBAT_STEPS = 15;
-	final Random ran = new Random();
+	final Random ran;
 	public static final float STAGE_LENGTH = 25;
 	public static final float TIME_STEP = 0.5f;
 
@@ -1922,6 +2129,7 @@ class Evolver_Combat
 	{
 		this.c1 = c1;
 		this.c2 = c2;
+		this.ran = c1.ran;
 	}
 
 	public boolean didC1WIN()
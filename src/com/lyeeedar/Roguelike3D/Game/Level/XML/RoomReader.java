@@ -11,6 +11,7 @@
 package com.lyeeedar.Roguelike3D.Game.Level.XML;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Random;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -21,6 +22,7 @@ import com.badlogic.gdx.graphics.Color;
 import com.lyeeedar.Roguelike3D.Game.Level.AbstractObject;
 import com.lyeeedar.Roguelike3D.Game.Level.AbstractRoom;
 import com.lyeeedar.Roguelike3D.Game.Level.DungeonRoom.RoomType;
+import com.lyeeedar.Roguelike3D.Game.Level.Level;
 
 public class RoomReader extends XMLReader {
 	
@@ -75,7 +77,7 @@ public class RoomReader extends XMLReader {
 		this.biome = getNode(ROOM_DEFINITIONS, root_node.getChildNodes());
 	}
 	
-	public AbstractRoom getRoom(RoomType rtype, int width, int height, boolean flippable)
+	public AbstractRoom getRoom(RoomType rtype, int width, int height, boolean flippable, Random ran)
 	{
 		Node roomType = getRoomNode(rtype);
 
@@ -138,7 +140,6 @@ public class RoomReader extends XMLReader {
 		}
 		
 		int pos = 0;
-		Random ran = new Random();
 		while (true)
 		{
 			if (pos == valid.size())
@@ -166,8 +167,8 @@ public class RoomReader extends XMLReader {
 		int rwidth = Integer.parseInt(getNodeValue(HEIGHT, chosen.getChildNodes()));
 		
 		AbstractRoom room = null; 
-		if (rwidth <= width && rheight <= height) room = new AbstractRoom(rwidth, rheight, false, flippable);
-		else room = new AbstractRoom(rwidth, rheight, true, flippable);
+		if (rwidth <= width && rheight <= height) room = new AbstractRoom(rwidth, rheight, false, flippable, ran);
+		else room = new AbstractRoom(rwidth, rheight, true, flippable, ran);
 		
 		Node roomGraphics = getNode(ROOM, chosen.getChildNodes());
 		int roomIndex = 0;
@@ -326,6 +327,38 @@ public class RoomReader extends XMLReader {
 		return room;
 	}
 
+	/**
+	 * @return every monster type a room in this biome can hold, from the monster_type meta data of the rooms
+	 */
+	public HashSet<String> getMonsterTypes()
+	{
+		HashSet<String> types = new HashSet<String>();
+		
+		for (RoomType rtype : RoomType.values())
+		{
+			Node roomType = getRoomNode(rtype);
+			if (roomType == null) continue;
+			
+			for (int i = 0; i < roomType.getChildNodes().getLength(); i++)
+			{
+				Node meta = getNode(META, roomType.getChildNodes().item(i).getChildNodes());
+				if (meta == null) continue;
+				
+				for (int j = 0; j < meta.getChildNodes().getLength(); j++)
+				{
+					Node n = meta.getChildNodes().item(j);
+					
+					if (!n.getNodeName().equalsIgnoreCase(DATA)) continue;
+					if (!getNodeValue(NAME, n.getChildNodes()).equalsIgnoreCase(Level.MONSTER_TYPE)) continue;
+					
+					types.add(getNodeValue(CONTENTS, n.getChildNodes()));
+				}
+			}
+		}
+		
+		return types;
+	}
+
 	private Node getRoomNode(RoomType rtype)
 	{
 		String rname = null;
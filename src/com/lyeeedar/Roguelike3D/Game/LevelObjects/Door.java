@@ -20,6 +20,7 @@ import com.lyeeedar.Roguelike3D.Game.GameData;
 import com.lyeeedar.Roguelike3D.Game.Level.AbstractObject;
 import com.lyeeedar.Roguelike3D.Game.Level.Level;
 import com.lyeeedar.Roguelike3D.Game.Level.Tile;
+import com.lyeeedar.Roguelike3D.Game.Level.UpdateScheduler;
 import com.lyeeedar.Roguelike3D.Graphics.Models.VisibleObject;
 import com.lyeeedar.Roguelike3D.Graphics.Renderers.Renderer;
 
@@ -78,6 +79,7 @@ public class Door extends LevelObject {
 		{
 			System.err.println("door fail");
 			solid = false;
+			level.tilesChanged();
 			visible = false;
 			return;
 		}
@@ -107,6 +109,9 @@ public class Door extends LevelObject {
 		
 		System.out.println("door activate");
 		
+		UpdateScheduler scheduler = GameData.level.getScheduler();
+		scheduler.wakeAround(position.x, position.y, position.z, scheduler.activeRadius);
+		
 		if (solid && !moving)
 		{
 
@@ -155,6 +160,7 @@ public class Door extends LevelObject {
 				{
 					angle = 90;
 					solid = false;
+					GameData.level.tilesChanged();
 					open = true;
 					moving = false;
 				}
@@ -168,7 +174,11 @@ public class Door extends LevelObject {
 			}
 			else
 			{
-				solid = true;
+				if (!solid)
+				{
+					solid = true;
+					GameData.level.tilesChanged();
+				}
 				angle -= delta*100;
 				
 				if (angle < 0)
@@ -52,7 +52,7 @@ public abstract class LevelObject extends GameObject{
 	public void changeTile(Tile src, Tile dst)
 	{
 		src.removeLevelObject(UID);
-		dst.levelObjects.add(this);
+		dst.addLevelObject(this);
 	}
 
 	public static LevelObject checkObject(AbstractObject ao, float x, float y, float z, Level level, MonsterEvolver evolver)
@@ -92,6 +92,8 @@ public abstract class LevelObject extends GameObject{
 			lo.shortDesc = ao.shortDesc;
 			lo.longDesc = ao.longDesc;
 			
+			if (GameData.headless) return lo;
+			
 			ParticleEffect effect = new ParticleEffect(15);
 			ParticleEmitter flame = new ParticleEmitter(2, 2, 0.01f, 1.0f, 0.0f, 1.0f, 0, GL20.GL_SRC_ALPHA, GL20.GL_ONE, "f", "name");
 			flame.createBasicEmitter(2, 1, new Color(0.8f, 0.9f, 0.1f, 1.0f), new Color(1.0f, 0.0f, 0.0f, 1.0f), 0, 3.5f, 0);
@@ -100,8 +102,8 @@ public abstract class LevelObject extends GameObject{
 			flame.calculateParticles();
 			effect.addEmitter(flame, 
 					2, 0f, 2);
-			effect.create();
 			
+			// Levels are filled off the render thread, the effect is created with the object in Level.create
 			lo.addParticleEffect(effect);
 		}
 		else if (ao.type == ObjectType.FIRE_TORCH)
@@ -9,79 +9,227 @@
  *     Philip Collin - initial API and implementation
  ******************************************************************************/
 package com.lyeeedar.Roguelike3D.Game;
-import java.util.ArrayDeque;
 
 import com.lyeeedar.Roguelike3D.Game.Level.Tile;
 
+/**
+ * Recursive shadow casting field of view.
+ * <p>
+ * The visible tiles are kept in a bitset (and mirrored into the level's TileStore), along with a list of the tiles
+ * lit last time so only those need clearing. Pending columns live in flat int arrays that are reused between
+ * calls. If the viewer has not changed tile and the level's tile version (bumped whenever opacity can change)
+ * is the same, the last result is kept.
+ * <p>
+ * Subclasses can change what blocks sight with {@link #isOpaque(Tile)} and what happens to the tiles that are lit
+ * with {@link #setVisible(Tile, boolean)}.
+ * @author Philip
+ *
+ */
 public class Shadow
 {
-	private static final int viewRange = 20;
+	public static final int VIEW_RANGE = 20;
 
+	private static final int COLUMN_SIZE = 6;
+
+	protected int viewRange;
+	
 	private int startX;
 	private int startY;
 
+	private Tile[][] level;
+	private int width;
+	private int height;
+	private int version;
+
+	private long[] visibleBits = new long[0];
+	private int[] lit = new int[64];
+	private int litSize = 0;
+
+	/**
+	 * Pending columns, each as {x, topX, topY, bottomX, bottomY, octant}
+	 */
+	private int[] columns = new int[COLUMN_SIZE*32];
+	private int columnCount = 0;
+
+	public int computed = 0;
+	public int skipped = 0;
+
 	public Shadow()
 	{
-
+		this(VIEW_RANGE);
+	}
+	
+	public Shadow(int viewRange)
+	{
+		this.viewRange = viewRange;
+	}
+	
+	/**
+	 * Forget the last result, so the next call works it out again whatever has changed
+	 */
+	public void invalidate()
+	{
+		level = null;
+	}
+	
+	/**
+	 * @return true if the tile blocks sight. By default this is the level's opaque tiles
+	 */
+	protected boolean isOpaque(Tile t)
+	{
+		return GameData.level.checkOpaque(t);
+	}
+	
+	/**
+	 * Called for each tile as it comes into or goes out of view. By default this sets the tile's visible flag, and
+	 * marks it as seen if it is not opaque
+	 */
+	protected void setVisible(Tile t, boolean visible)
+	{
+		t.setVisible(visible);
+		if (visible && !isOpaque(t)) t.setSeen(true);
 	}
 
 	// Takes a circle in the form of a center point and radius, and a function that
 	// can tell whether a given cell is opaque. Calls the setFoV action on
-	// every cell that is both within the radius and visible from the center. 
+	// every cell that is both within the radius and visible from the center.
 
 	public void ComputeFieldOfViewWithShadowCasting(
 			int x, int y, Tile[][] level)
 	{
-		this.startX = x;
-		this.startY = y;
+		int version = GameData.level.getTileVersion();
+
+		if (level == this.level && x == startX && y == startY && version == this.version)
+		{
+			skipped++;
+			return;
+		}
 
-		for (int i = 0; i < level.length; i ++)
+		if (level != this.level)
 		{
-			for (int j = 0; j < level[0].length; j++)
+			this.level = level;
+			this.width = level.length;
+			this.height = level[0].length;
+			this.visibleBits = new long[((width*height)+63) >> 6];
+			this.litSize = 0;
+
+			for (int i = 0; i < width; i++)
 			{
-				level[i][j].visible = false;
+				for (int j = 0; j < height; j++)
+				{
+					setVisible(level[i][j], false);
+				}
 			}
 		}
-		
+		else
+		{
+			clearLit();
+		}
+
+		this.startX = x;
+		this.startY = y;
+		this.version = version;
+		computed++;
+
 		for (int octant = 0; octant < 8; ++octant)
 		{
-			ComputeFieldOfViewInOctantZero(level, octant);
+			ComputeFieldOfViewInOctantZero(octant);
+		}
+	}
+
+	public boolean isVisible(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= width || y >= height) return false;
+		int i = (x*height)+y;
+		return (visibleBits[i >> 6] & (1L << i)) != 0;
+	}
+
+	public int getVisibleCount()
+	{
+		return litSize;
+	}
+
+	private void clearLit()
+	{
+		for (int n = 0; n < litSize; n++)
+		{
+			int i = lit[n];
+			visibleBits[i >> 6] &= ~(1L << i);
+			setVisible(level[i / height][i % height], false);
+		}
+		litSize = 0;
+	}
+
+	private void light(int x, int y)
+	{
+		int i = (x*height)+y;
+		long bit = 1L << i;
+		if ((visibleBits[i >> 6] & bit) != 0) return;
+
+		visibleBits[i >> 6] |= bit;
+
+		if (litSize == lit.length)
+		{
+			int[] nlit = new int[lit.length*2];
+			System.arraycopy(lit, 0, nlit, 0, litSize);
+			lit = nlit;
 		}
+		lit[litSize++] = i;
+
+		setVisible(level[x][y], true);
 	}
 
-	private void ComputeFieldOfViewInOctantZero(Tile[][] level, int octant)
+	private void ComputeFieldOfViewInOctantZero(int octant)
 	{
-		ArrayDeque<Column> queue = new ArrayDeque<Column>();
-		queue.addFirst(new Column(0, new int[]{1, 0}, new int[]{1, 1}, octant));
-		while (queue.size() != 0)
+		columnCount = 0;
+		pushColumn(0, 1, 1, 1, 0, octant);
+
+		while (columnCount != 0)
 		{
-			Column current = queue.pollLast();
-			if (current.getX() > viewRange)
+			columnCount--;
+			int c = columnCount*COLUMN_SIZE;
+			int x = columns[c];
+			if (x > viewRange)
 			{
 				continue;
 			}
 
 			ComputeFoVForColumnPortion(
-					current.getX(),
-					current.getTopVector(),
-					current.getBottomVector(),
-					queue,
-					current.getOctant(),
-					level);
+					x,
+					columns[c+1], columns[c+2],
+					columns[c+3], columns[c+4],
+					columns[c+5]);
 		}
 	}
 
+	private void pushColumn(int x, int topX, int topY, int bottomX, int bottomY, int octant)
+	{
+		if ((columnCount+1)*COLUMN_SIZE > columns.length)
+		{
+			int[] ncolumns = new int[columns.length*2];
+			System.arraycopy(columns, 0, ncolumns, 0, columns.length);
+			columns = ncolumns;
+		}
+
+		int c = columnCount*COLUMN_SIZE;
+		columns[c] = x;
+		columns[c+1] = topX;
+		columns[c+2] = topY;
+		columns[c+3] = bottomX;
+		columns[c+4] = bottomY;
+		columns[c+5] = octant;
+		columnCount++;
+	}
+
 	// This method has two main purposes: (1) it marks points inside the
-	// portion that are within the radius as in the field of view, and 
-	// (2) it computes which portions of the following column are in the 
-	// field of view, and puts them on a work queue for later processing. 
+	// portion that are within the radius as in the field of view, and
+	// (2) it computes which portions of the following column are in the
+	// field of view, and puts them on a work queue for later processing.
 	private void ComputeFoVForColumnPortion(
 			int x,
-			int[] topVector,
-			int[] bottomVector,
-			ArrayDeque<Column> queue,
-			int octant,
-			Tile[][] level)
+			int topX, int topYv,
+			int bottomX, int bottomYv,
+			int octant)
 	{
 		// Search for transitions from opaque to transparent or
 		// transparent to opaque and use those to determine what
@@ -96,10 +244,10 @@ public class Shadow
 		}
 		else
 		{
-			int quotient = (2 * x + 1) * topVector[1] / (2 * topVector[0]);
-			int remainder = (2 * x + 1) * topVector[1] % (2 * topVector[0]);
+			int quotient = (2 * x + 1) * topYv / (2 * topX);
+			int remainder = (2 * x + 1) * topYv % (2 * topX);
 
-			if (remainder > topVector[0])
+			if (remainder > topX)
 				topY = quotient + 1;
 			else
 				topY = quotient;
@@ -116,83 +264,77 @@ public class Shadow
 		}
 		else
 		{
-			int quotient = (2 * x - 1) * bottomVector[1] / (2 * bottomVector[0]);
-			int remainder = (2 * x - 1) * bottomVector[1] % (2 * bottomVector[0]);
+			int quotient = (2 * x - 1) * bottomYv / (2 * bottomX);
+			int remainder = (2 * x - 1) * bottomYv % (2 * bottomX);
 
-			if (remainder >= bottomVector[0])
+			if (remainder >= bottomX)
 				bottomY = quotient + 1;
 			else
 				bottomY = quotient;
 		}
 
-		// A more sophisticated algorithm would say that a cell is visible if there is 
+		// A more sophisticated algorithm would say that a cell is visible if there is
 		// *any* straight line segment that passes through *any* portion of the origin cell
 		// and any portion of the target cell, passing through only transparent cells
 		// along the way. This is the "Permissive Field Of View" algorithm, and it
 		// is much harder to implement.
-		Boolean wasLastCellOpaque = null;
+
+		// 0 = no cell yet, 1 = transparent, 2 = opaque
+		int lastCell = 0;
 		for (int y = topY; y >= bottomY; --y)
 		{
 			boolean inRadius = IsInRadius(x, y);
-			if (inRadius)
+
+			int tx = TranslateOctantX(x, y, octant);
+			int ty = TranslateOctantY(x, y, octant);
+			boolean inBounds = tx >= 0 && ty >= 0 && tx < width && ty < height;
+
+			if (inRadius && inBounds)
 			{
 				// The current cell is in the field of view.
-				int[] temp = TranslateOctant(new int[]{x,y}, octant);
-				
-				if ((temp[0] < 0) || (temp[1] < 0) || (temp[0] > level.length) || temp[1] > level[0].length)
-				{
-					continue;
-				}
-				
-				level[temp[0]][temp[1]].visible = true;
-	
-				
-				if ((!level[temp[0]][temp[1]].seen) && (!(GameData.level.checkOpaque(level[temp[0]][temp[1]]))))
-				 level[temp[0]][temp[1]].seen = true;
+				light(tx, ty);
 			}
 
 			// A cell that was too far away to be seen is effectively
 			// an opaque cell; nothing "above" it is going to be visible
-			// in the next column, so we might as well treat it as 
+			// in the next column, so we might as well treat it as
 			// an opaque cell and not scan the cells that are also too
 			// far away in the next column.
 
-			boolean currentIsOpaque = !inRadius || isOpaque(x, y, octant);
-			if (wasLastCellOpaque != null)
+			boolean currentIsOpaque = !inRadius || !inBounds || isOpaque(level[tx][ty]);
+			if (lastCell != 0)
 			{
 				if (currentIsOpaque)
 				{
 					// We've found a boundary from transparent to opaque. Make a note
 					// of it and revisit it later.
-					if (!wasLastCellOpaque.booleanValue())
+					if (lastCell == 1)
 					{
-						// The new bottom vector touches the upper left corner of 
+						// The new bottom vector touches the upper left corner of
 						// opaque cell that is below the transparent cell.
-						queue.addFirst(new Column(
-								x + 1,
-								new int[]{x * 2 - 1, y * 2 + 1},
-								topVector, octant));
+						pushColumn(x + 1, topX, topYv, x * 2 - 1, y * 2 + 1, octant);
 					}
 				}
-				else if (wasLastCellOpaque.booleanValue())
+				else if (lastCell == 2)
 				{
 					// We've found a boundary from opaque to transparent. Adjust the
 					// top vector so that when we find the next boundary or do
 					// the bottom cell, we have the right top vector.
 					//
-					// The new top vector touches the lower right corner of the 
+					// The new top vector touches the lower right corner of the
 					// opaque cell that is above the transparent cell, which is
 					// the upper right corner of the current transparent cell.
-					topVector = new int[]{x * 2 + 1, y * 2 + 1};
+					topX = x * 2 + 1;
+					topYv = y * 2 + 1;
 				}
 			}
-			wasLastCellOpaque = currentIsOpaque;
+			lastCell = currentIsOpaque ? 2 : 1;
 		}
 
-		// Make a note of the lowest opaque-->transparent transition, if there is one. 
-		if (wasLastCellOpaque != null && !wasLastCellOpaque.booleanValue())
+		// Make a note of the lowest opaque-->transparent transition, if there is one.
+		if (lastCell == 1)
 		{
-			queue.addFirst(new Column(x + 1, bottomVector, topVector, octant));
+			pushColumn(x + 1, topX, topYv, bottomX, bottomYv, octant);
 		}
 	}
 
@@ -213,105 +355,34 @@ public class Shadow
 	//                 4/|\7
 	//                 /5|6\
 	//
-	// 
+	//
 
-	private int[] TranslateOctant(int[] thepos, int octant)
+	private int TranslateOctantX(int x, int y, int octant)
 	{
-		int[] pos = {thepos[0], thepos[1]};
-
-		if (octant == 1)
-		{
-			int temp = pos[0];
-			pos[0] = pos[1];
-			pos[1] = temp;
-		}
-		else if (octant == 2)
-		{
-			int temp = pos[0];
-			pos[0] = pos[1]*-1;
-			pos[1] = temp;
-		}
-		else if (octant == 3)
-		{	
-			pos[0] = pos[0]*-1;
-		}
-		else if (octant == 4)
-		{
-			int temp = pos[0]*-1;
-			pos[0] = pos[1]*-1;
-			pos[1] = temp;
-		}
-		else if (octant == 5)
-		{	
-			pos[1] = pos[1]*-1;
-			pos[0] = pos[0]*-1;
-		}
-		else if (octant == 6)
-		{
-			int temp = pos[1];
-			pos[1] = pos[0]*-1;
-			pos[0] = temp;
-		}
-		else if (octant == 7)
+		switch (octant)
 		{
-			pos[1] = pos[1]*-1;
+		case 1: return startX + y;
+		case 2: return startX - y;
+		case 3: return startX - x;
+		case 4: return startX - y;
+		case 5: return startX - x;
+		case 6: return startX + y;
+		default: return startX + x;
 		}
-		
-		pos[0] = (pos[0])+startX;
-		pos[1] = (pos[1])+startY;
-
-		return pos;
 	}
 
-	private boolean isOpaque(int x, int y, int octant)
+	private int TranslateOctantY(int x, int y, int octant)
 	{
-		int[] pos = TranslateOctant(new int[]{x,y}, octant);
-		return GameData.level.checkOpaque(GameData.level.getTile(pos[0], pos[1]));
-	}
-}
-
-class Column
-{
-	private int X;
-	private int[] BottomVector;
-	private int[] TopVector;
-	private int octant;
-
-	public Column(int x, int[] bottom, int[] top, int octant)
-	{
-		this.setOctant(octant);
-		this.X = x;
-		this.BottomVector = bottom;
-		this.TopVector = top;
-	}
-	public int getX()
-	{
-		return X;
-	}
-	public void setX(int X)
-	{
-		this.X = X;
-	}
-	public int[] getBottomVector()
-	{
-		return BottomVector;
-	}
-	public void setBottomVector(int[] v)
-	{
-		BottomVector = v;
-	}
-	public int[] getTopVector()
-	{
-		return TopVector;
-	}
-	public void setTopVector(int[] v)
-	{
-		TopVector = v;
-	}
-	public int getOctant() {
-		return octant;
+		switch (octant)
+		{
+		case 1: return startY + x;
+		case 2: return startY + x;
+		case 3: return startY + y;
+		case 4: return startY - x;
+		case 5: return startY - y;
+		case 6: return startY - x;
+		case 7: return startY - y;
+		default: return startY + y;
+		}
 	}
-	public void setOctant(int octant) {
-		this.octant = octant;
-	} 
 }
@@ -11,10 +11,9 @@
 package com.lyeeedar.Roguelike3D.Graphics.Materials;
 
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.GL10;
-import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.Pool;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
+import com.lyeeedar.Roguelike3D.Graphics.Renderers.RenderState;
 
 public class ColorAttribute extends MaterialAttribute {
 
@@ -30,16 +29,16 @@ public class ColorAttribute extends MaterialAttribute {
 	/** Creates a {@link MaterialAttribute} that is a pure {@link Color}.
 	 * 
 	 * @param color The {@link Colour} that you wish the attribute to represent.
-	 * @param name The name of the uniform in the {@link ShaderProgram} that will have its value set to this color. (A 'name' does
-	 *           not matter for a game that uses {@link GL10}). */
+	 * @param name The name of the uniform in the {@link com.badlogic.gdx.graphics.glutils.ShaderProgram} that will have its value set to this color. (A 'name' does
+	 *           not matter for a game that uses {@link com.badlogic.gdx.graphics.GL10}). */
 	public ColorAttribute (Color color, String name) {
 		super(name);
 		this.color = color.cpy();
 	}
 
 	@Override
-	public void bind (ShaderProgram program, LightManager lights) {
-		program.setUniformf(name, color.r, color.g, color.b);
+	public void bind (RenderState state, LightManager lights) {
+		state.setUniformf(name, color.r, color.g, color.b);
 	}
 
 	@Override
@@ -13,9 +13,9 @@ package com.lyeeedar.Roguelike3D.Graphics.Materials;
 import java.io.Serializable;
 
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager.LightQuality;
+import com.lyeeedar.Roguelike3D.Graphics.Renderers.RenderState;
 
 public class Material implements Serializable {
 
@@ -25,6 +25,9 @@ public class Material implements Serializable {
 	public ColorAttribute colourAttribute;
 	public TextureAttribute textureAttribute;
 	public TextureAttribute normalmapAttribute;
+	
+	private static int nextID = 1;
+	private transient int id = 0;
 
 	public Material (String name) {
 		this.name = name;
@@ -41,29 +44,54 @@ public class Material implements Serializable {
 		normalmapAttribute = new TextureAttribute(textureName+".map", 0, TextureAttribute.normalmapTexture);
 	}
 
-	public TextureAttribute bind (ShaderProgram program, LightManager lights, TextureAttribute lastTexture) {
+	/**
+	 * Set the material's uniforms and textures. Anything the state already has is skipped, so drawing materials with
+	 * the same texture one after another only binds it once
+	 */
+	public void bind (RenderState state, LightManager lights) {
 		if (colourAttribute != null)
 		{
-			colourAttribute.bind(program, lights);
+			colourAttribute.bind(state, lights);
 		}
-		
-		if (lastTexture != null && textureAttribute != null && lastTexture.textureName.equals(textureAttribute.textureName)) return lastTexture;
 
-		if (lights.quality != LightQuality.FORWARD_VERTEX && normalmapAttribute != null)
+		// A normal map on the same unit as the texture would only be replaced by it
+		if (lights.quality != LightQuality.FORWARD_VERTEX && normalmapAttribute != null
+				&& (textureAttribute == null || textureAttribute.texture == null || textureAttribute.unit != normalmapAttribute.unit))
 		{
-			normalmapAttribute.bind(program, lights);
+			normalmapAttribute.bind(state, lights);
 		}
 		if (textureAttribute != null)
 		{
-			textureAttribute.bind(program, lights);
+			textureAttribute.bind(state, lights);
 		}
-		
-		return textureAttribute;
 	}
 
 	public String getName () {
 		return name;
 	}
+	
+	/**
+	 * @return a small number unique to this material (until there have been 65535 of them), given out the first time
+	 * it is asked for. Used to sort draws by
+	 */
+	public int getID () {
+		if (id == 0) id = nextID++;
+		return id;
+	}
+	
+	/**
+	 * @return which shader the material is drawn with, 1 if it has a normal map and 0 if not
+	 */
+	public int getShaderID () {
+		return (normalmapAttribute != null && normalmapAttribute.texture != null) ? 1 : 0;
+	}
+	
+	/**
+	 * @return the ID of the texture the material binds, or 0 if it has none
+	 */
+	public int getTextureID () {
+		return (textureAttribute != null) ? textureAttribute.getTextureID() : 0;
+	}
 
 	@Override
 	public int hashCode () {
@@ -12,8 +12,8 @@ package com.lyeeedar.Roguelike3D.Graphics.Materials;
 
 import java.io.Serializable;
 
-import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
+import com.lyeeedar.Roguelike3D.Graphics.Renderers.RenderState;
 
 public abstract class MaterialAttribute implements Serializable {
 
@@ -31,7 +31,7 @@ public abstract class MaterialAttribute implements Serializable {
 		isPooled = false;
 	}
 
-	public abstract void bind (ShaderProgram program, LightManager lights);
+	public abstract void bind (RenderState state, LightManager lights);
 
 	public abstract MaterialAttribute copy ();
 
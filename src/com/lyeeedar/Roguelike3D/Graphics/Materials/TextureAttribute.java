@@ -10,16 +10,18 @@
  ******************************************************************************/
 package com.lyeeedar.Roguelike3D.Graphics.Materials;
 
+import java.util.HashMap;
+
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.Texture.TextureWrap;
-import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.Pool;
 import com.lyeeedar.Roguelike3D.Game.GameData;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager.LightQuality;
+import com.lyeeedar.Roguelike3D.Graphics.Renderers.RenderState;
 import com.lyeeedar.Utils.FileUtils;
 
 public class TextureAttribute extends MaterialAttribute {
@@ -38,6 +40,29 @@ public class TextureAttribute extends MaterialAttribute {
 	public TextureWrap vWrap;
 	
 	public String textureName;
+	
+	private static final HashMap<String, Integer> textureIDs = new HashMap<String, Integer>();
+	private transient int textureID = 0;
+	
+	/**
+	 * @return a small number for the texture, the same for every attribute with the same textureName (as those share a
+	 * Texture), given out the first time it is asked for. Used to sort draws by
+	 */
+	public int getTextureID()
+	{
+		if (textureID == 0)
+		{
+			Integer id = textureIDs.get(textureName);
+			if (id == null)
+			{
+				id = textureIDs.size()+1;
+				textureIDs.put(textureName, id);
+			}
+			textureID = id;
+		}
+		
+		return textureID;
+	}
 
 	@Override
 	public int hashCode()
@@ -77,10 +102,10 @@ public class TextureAttribute extends MaterialAttribute {
 	}
 
 	@Override
-	public void bind (ShaderProgram program, LightManager lights) {
+	public void bind (RenderState state, LightManager lights) {
 		if (texture == null) return;
-		texture.bind(unit);
-		program.setUniformi(diffuseTexture, unit);
+		state.bindTexture(unit, texture);
+		state.setUniformi(diffuseTexture, unit);
 	}
 
 	@Override
@@ -93,6 +118,7 @@ public class TextureAttribute extends MaterialAttribute {
 		TextureAttribute texAttr = (TextureAttribute)attr;
 		name = texAttr.name;
 		texture = texAttr.texture;
+		textureID = texAttr.textureID;
 		unit = texAttr.unit;
 		magFilter = texAttr.magFilter;
 		minFilter = texAttr.minFilter;
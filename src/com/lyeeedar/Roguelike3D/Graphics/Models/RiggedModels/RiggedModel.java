@@ -9,6 +9,7 @@ import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.math.Matrix4;
 import com.lyeeedar.Graphics.ParticleEffects.ParticleEffect;
 import com.lyeeedar.Graphics.ParticleEffects.ParticleEmitter;
+import com.lyeeedar.Roguelike3D.Game.GameData;
 import com.lyeeedar.Roguelike3D.Game.Actor.GameActor;
 import com.lyeeedar.Roguelike3D.Game.Level.Level;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
@@ -62,9 +63,13 @@ public class RiggedModel implements Serializable {
 	
 	public void create()
 	{
-		for (Material m : materials)
+		// Headless the materials are never bound, so their textures are not loaded
+		if (!GameData.headless)
 		{
-			m.create();
+			for (Material m : materials)
+			{
+				m.create();
+			}
 		}
 		
 		rootNode.create();
@@ -85,9 +90,12 @@ public class RiggedModel implements Serializable {
 		System.out.println("dispose");
 		
 		rootNode.dispose();
-		for (Material m : materials)
+		if (!GameData.headless)
 		{
-			m.dispose();
+			for (Material m : materials)
+			{
+				m.dispose();
+			}
 		}
 	}
 	
@@ -4,10 +4,13 @@ import java.io.Serializable;
 
 import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.lyeeedar.Roguelike3D.Game.GameData;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Models.Shapes;
+import com.lyeeedar.Roguelike3D.Graphics.Models.VisibleObject;
+import com.lyeeedar.Roguelike3D.Graphics.Renderers.InstanceBatcher;
 import com.lyeeedar.Utils.FileUtils;
 
 public class RiggedSubMesh implements Serializable {
@@ -38,6 +41,12 @@ public class RiggedSubMesh implements Serializable {
 		
 		created = true;
 		
+		if (GameData.headless)
+		{
+			createHeadless();
+			return;
+		}
+		
 		if (meshValues[0].equalsIgnoreCase("cube"))
 		{
 			if (meshValues.length == 4)
@@ -71,6 +80,40 @@ public class RiggedSubMesh implements Serializable {
 		box.max.mul(scale);
 	}
 	
+	/**
+	 * Give the submesh the bounds its mesh would have (or VisibleObject.HEADLESS_SIZE for a file) without making the
+	 * mesh, so the node it is in still has a radius to collide with
+	 */
+	private void createHeadless()
+	{
+		float x = VisibleObject.HEADLESS_SIZE, y = VisibleObject.HEADLESS_SIZE, z = VisibleObject.HEADLESS_SIZE;
+		float ox = 0, oy = 0, oz = 0;
+		
+		if (meshValues[0].equalsIgnoreCase("cube"))
+		{
+			x = Float.parseFloat(meshValues[1]);
+			y = Float.parseFloat(meshValues[2]);
+			z = Float.parseFloat(meshValues[3]);
+			
+			if (meshValues.length > 4)
+			{
+				ox = Float.parseFloat(meshValues[4]);
+				oy = Float.parseFloat(meshValues[5]);
+				oz = Float.parseFloat(meshValues[6]);
+			}
+		}
+		else if (meshValues.length > 2)
+		{
+			ox = Float.parseFloat(meshValues[2]);
+			oy = Float.parseFloat(meshValues[3]);
+			oz = Float.parseFloat(meshValues[4]);
+		}
+		
+		box = new BoundingBox(new Vector3(ox-(x/2), oy-(y/2), oz-(z/2)), new Vector3(ox+(x/2), oy+(y/2), oz+(z/2)));
+		box.min.mul(scale);
+		box.max.mul(scale);
+	}
+	
 	public Mesh getMesh()
 	{
 		return mesh;
@@ -78,8 +121,9 @@ public class RiggedSubMesh implements Serializable {
 	
 	public void dispose()
 	{
-		if (!meshValues[0].equals("file") && created)
+		if (!meshValues[0].equals("file") && created && mesh != null)
 		{
+			InstanceBatcher.evict(mesh);
 			mesh.dispose();
 			created = false;
 		}
@@ -87,10 +131,13 @@ public class RiggedSubMesh implements Serializable {
 	
 	public void bakeLight(LightManager lights, boolean bakeStatics, Matrix4 mat)
 	{
+		if (mesh == null) return;
+		
 		Mesh newMesh = Shapes.insertLight(mesh, lights, bakeStatics, mat);
 		
 		if (!meshValues[0].equals("file"))
 		{
+			InstanceBatcher.evict(mesh);
 			mesh.dispose();
 		}
 		
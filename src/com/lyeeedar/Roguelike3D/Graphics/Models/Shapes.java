@@ -19,6 +19,7 @@ import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 
 public class Shapes {
@@ -463,6 +464,14 @@ public class Shapes {
 	}
 
 	public static Mesh merge(final TempMesh[] tmpMeshes) {
+		
+		return toMesh(mergeVertices(tmpMeshes));
+	}
+	
+	/**
+	 * Merge the meshes into one without touching GL, so it can be done off the render thread
+	 */
+	public static TempMesh mergeVertices(final TempMesh[] tmpMeshes) {
 
 		final int vertCount = tmpMeshes[0].vertexNum * tmpMeshes.length;
 		final int idxCount = tmpMeshes[0].indiceNum * tmpMeshes.length;
@@ -497,19 +506,82 @@ public class Shapes {
 			ioffset += isize;
 		}
 
-		final Mesh result = new Mesh(true, vertCount, idxCount, tmpMeshes[0].attributes);
-		result.setVertices(vertices);
-		result.setIndices(indices);
+		return new TempMesh(vertices, indices, idxCount, vertexSize, vertCount, tmpMeshes[0].attributes);
+	}
+	
+	/**
+	 * Upload the vertices to a new Mesh. Must be called on the render thread
+	 */
+	public static Mesh toMesh(TempMesh tmpMesh)
+	{
+		final Mesh result = new Mesh(true, tmpMesh.vertexNum, tmpMesh.indiceNum, tmpMesh.attributes);
+		result.setVertices(tmpMesh.vertices);
+		result.setIndices(tmpMesh.indices);
 
 		return result;
 	}
 	
-	public static Mesh insertLight(Mesh mesh, LightManager lights, boolean bakeStatics, Matrix4 model_matrix)
+	/**
+	 * Read the vertices back out of a Mesh
+	 */
+	public static TempMesh toTempMesh(Mesh mesh)
 	{
 		VertexAttributes attributes = mesh.getVertexAttributes();
 		final int vertCount = mesh.getNumVertices();
 		final int vertexSize = attributes.vertexSize / 4;
 		
+		VertexAttribute[] attributeArray = new VertexAttribute[attributes.size()];
+		for (int i = 0; i < attributes.size(); i++)
+		{
+			attributeArray[i] = attributes.get(i);
+		}
+		
+		float[] verts = new float[vertexSize * vertCount]; 
+		mesh.getVertices(verts);
+		short[] indices = new short[mesh.getNumIndices()];
+		mesh.getIndices(indices);
+		
+		return new TempMesh(verts, indices, indices.length, vertexSize, vertCount, attributeArray);
+	}
+	
+	/**
+	 * @return the box round the positions of the mesh's vertices, moved by x, y, z. Does not touch GL
+	 */
+	public static BoundingBox calculateBounds(TempMesh mesh, float x, float y, float z)
+	{
+		final int positionOffset = new VertexAttributes(mesh.attributes).getOffset(Usage.Position);
+		
+		final Vector3 min = new Vector3(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+		final Vector3 max = new Vector3(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+		
+		for (int i = 0; i < mesh.vertexNum; i++)
+		{
+			final int v = (i*mesh.vertexSize)+positionOffset;
+			min.set(Math.min(min.x, mesh.vertices[v]), Math.min(min.y, mesh.vertices[v+1]), Math.min(min.z, mesh.vertices[v+2]));
+			max.set(Math.max(max.x, mesh.vertices[v]), Math.max(max.y, mesh.vertices[v+1]), Math.max(max.z, mesh.vertices[v+2]));
+		}
+		
+		min.add(x, y, z);
+		max.add(x, y, z);
+		
+		return new BoundingBox(min, max);
+	}
+	
+	public static Mesh insertLight(Mesh mesh, LightManager lights, boolean bakeStatics, Matrix4 model_matrix)
+	{
+		return toMesh(insertLight(toTempMesh(mesh), lights, bakeStatics, model_matrix));
+	}
+	
+	/**
+	 * Add the light at each vertex as a_baked_light without touching GL, so it can be done off the render thread.
+	 * LightManager only reads its lights here, so any number of meshes can be lit at once
+	 */
+	public static TempMesh insertLight(TempMesh mesh, LightManager lights, boolean bakeStatics, Matrix4 model_matrix)
+	{
+		VertexAttributes attributes = new VertexAttributes(mesh.attributes);
+		final int vertCount = mesh.vertexNum;
+		final int vertexSize = mesh.vertexSize;
+		
 		VertexAttribute[] newAttributes = new VertexAttribute[attributes.size()+1];
 		for (int i = 0; i < attributes.size(); i++)
 		{
@@ -519,10 +591,8 @@ public class Shapes {
 		
 		final int newVertexSize = vertexSize + 3;
 		
-		float[] verts = new float[vertexSize * vertCount]; 
-		mesh.getVertices(verts);
-		short[] indices = new short[mesh.getNumIndices()];
-		mesh.getIndices(indices);
+		float[] verts = mesh.vertices;
+		short[] indices = mesh.indices;
 		float[] newVerts = new float[newVertexSize * vertCount];
 		
 		int positionOffset = attributes.getOffset(Usage.Position);
@@ -553,11 +623,54 @@ public class Shapes {
 			newVerts[ (i*newVertexSize) + j + 2 ] = light_colour.b;
 		}
 		
-		Mesh newMesh = new Mesh(true, mesh.getNumVertices(), mesh.getNumIndices(), newAttributes);
-		newMesh.setVertices(newVerts);
-		newMesh.setIndices(indices);
+		return new TempMesh(newVerts, indices, mesh.indiceNum, newVertexSize, vertCount, newAttributes);
+	}
+	
+	/**
+	 * Repeat the mesh copies times without touching GL, adding the number of each copy as a_instance so a shader can
+	 * look up that copy's transform in an array of uniforms. The indices of each copy follow the last, so drawing the
+	 * first n copies is drawing the first n*indiceNum indices (or n*vertexNum vertices if it is not indexed)
+	 */
+	public static TempMesh replicate(TempMesh mesh, int copies)
+	{
+		VertexAttribute[] newAttributes = new VertexAttribute[mesh.attributes.length+1];
+		for (int i = 0; i < mesh.attributes.length; i++)
+		{
+			newAttributes[i] = mesh.attributes[i];
+		}
+		newAttributes[mesh.attributes.length] = new VertexAttribute(Usage.Generic, 1, "a_instance");
 		
-		return newMesh;
+		final int vertexSize = mesh.vertexSize;
+		final int newVertexSize = vertexSize + 1;
+		final int vertCount = mesh.vertexNum * copies;
+		final int idxCount = mesh.indiceNum * copies;
+		
+		if (idxCount > 0 && vertCount > Short.MAX_VALUE) throw new IllegalArgumentException("Too many vertices to index: "+vertCount);
+		
+		float[] newVerts = new float[newVertexSize * vertCount];
+		short[] newIndices = new short[idxCount];
+		
+		for (int copy = 0; copy < copies; copy++)
+		{
+			for (int i = 0; i < mesh.vertexNum; i++)
+			{
+				final int dst = ((copy*mesh.vertexNum) + i) * newVertexSize;
+				
+				int j = 0;
+				for (; j < vertexSize; j++)
+				{
+					newVerts[dst + j] = mesh.vertices[(i*vertexSize) + j];
+				}
+				newVerts[dst + j] = copy;
+			}
+			
+			for (int i = 0; i < mesh.indiceNum; i++)
+			{
+				newIndices[(copy*mesh.indiceNum) + i] = (short) (mesh.indices[i] + (copy*mesh.vertexNum));
+			}
+		}
+		
+		return new TempMesh(newVerts, newIndices, idxCount, newVertexSize, vertCount, newAttributes);
 	}
 	
 	public static Mesh insertTangents(Mesh mesh)
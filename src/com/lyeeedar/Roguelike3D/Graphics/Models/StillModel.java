@@ -12,6 +12,7 @@ package com.lyeeedar.Roguelike3D.Graphics.Models;
 
 import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.math.collision.BoundingBox;
+import com.lyeeedar.Roguelike3D.Graphics.Renderers.InstanceBatcher;
 
 public class StillModel {
 	final public StillSubMesh[] subMeshes;
@@ -39,6 +40,7 @@ public class StillModel {
 
 	public void dispose () {
 		for (int i = 0; i < subMeshes.length; i++) {
+			InstanceBatcher.evict(subMeshes[i].mesh);
 			subMeshes[i].mesh.dispose();
 		}
 	}
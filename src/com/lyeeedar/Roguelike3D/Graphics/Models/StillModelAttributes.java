@@ -75,7 +75,7 @@ public class StillModelAttributes implements StillModelInstance {
 	
 	public void dispose()
 	{
-		material.dispose();
+		if (material != null) material.dispose();
 	}
 	
 	public Matrix4 getComposedMatrix()
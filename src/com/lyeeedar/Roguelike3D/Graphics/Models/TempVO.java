@@ -11,11 +11,16 @@
 package com.lyeeedar.Roguelike3D.Graphics.Models;
 
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.collision.BoundingBox;
 
 public class TempVO {
 
 	public TempMesh mesh; public int primitive_type; public Color colour; public String textureName;
 	public float x; public float y; public float z;
+	/**
+	 * The box round the mesh where it is placed, if it has been worked out
+	 */
+	public BoundingBox bounds;
 	
 	public TempVO(TempMesh mesh, int primitive_type, Color colour, String textureName, float x, float y, float z)
 	{
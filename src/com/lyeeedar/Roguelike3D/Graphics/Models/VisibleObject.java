@@ -15,7 +15,9 @@ import java.io.Serializable;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
+import com.lyeeedar.Roguelike3D.Game.GameData;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Materials.Material;
 import com.lyeeedar.Roguelike3D.Graphics.Renderers.Renderer;
@@ -39,6 +41,11 @@ public class VisibleObject implements Serializable {
 	
 	public boolean disposed = true;
 	
+	/**
+	 * Size of the box given to models loaded from file when running headless, as their meshes are never read
+	 */
+	public static final float HEADLESS_SIZE = GameData.BLOCK_SIZE/2f;
+	
 	public VisibleObject(int primitive_type, Color colour, String textureName, float scale, String... modelData)
 	{
 		this.texture = textureName;
@@ -63,6 +70,12 @@ public class VisibleObject implements Serializable {
 	{
 		if (model != null && attributes != null) return;
 		
+		if (GameData.headless)
+		{
+			createHeadless();
+			return;
+		}
+		
 		Mesh mesh = getMesh();
 		
 		loadGraphics(mesh);
@@ -89,6 +102,24 @@ public class VisibleObject implements Serializable {
 		disposed = false;
 	}
 	
+	/**
+	 * Give the object attributes (and so a position, rotation and bounds) without a model or material
+	 */
+	private void createHeadless()
+	{
+		if (attributes != null) return;
+		
+		Vector3 box = new Vector3(HEADLESS_SIZE, HEADLESS_SIZE, HEADLESS_SIZE);
+		if (modelData[0].equalsIgnoreCase("cube"))
+		{
+			box.set(Float.parseFloat(modelData[1]), Float.parseFloat(modelData[2]), Float.parseFloat(modelData[3]));
+		}
+		
+		attributes = new StillModelAttributes(null, (box.x > box.z) ? box.x : box.z, scale, box);
+		
+		disposed = false;
+	}
+	
 	private Mesh getMesh()
 	{
 		if (modelData[0].equalsIgnoreCase("file"))
@@ -115,10 +146,10 @@ public class VisibleObject implements Serializable {
 
 	public void dispose()
 	{
-		if (!modelData[0].equals("file"))
+		if (model != null && !modelData[0].equals("file"))
 			model.dispose();
 		model = null;
-		attributes.dispose();
+		if (attributes != null) attributes.dispose();
 		attributes = null;
 		
 		disposed = true;
@@ -126,6 +157,8 @@ public class VisibleObject implements Serializable {
 	
 	public void bakeLights(LightManager lights, boolean bakeStatics)
 	{
+		if (model == null) return;
+		
 		int primitive_type = model.subMeshes[0].primitiveType;
 		
 		Mesh oldMesh = model.subMeshes[0].mesh;
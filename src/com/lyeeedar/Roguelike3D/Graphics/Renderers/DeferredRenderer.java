@@ -15,7 +15,6 @@ import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.PointLight;
 import com.lyeeedar.Roguelike3D.Graphics.Materials.Material;
 import com.lyeeedar.Roguelike3D.Graphics.Materials.TextureAttribute;
-import com.lyeeedar.Roguelike3D.Graphics.Renderers.Renderer.DrawableManager.Drawable;
 
 public class DeferredRenderer extends Renderer {
 	
@@ -51,16 +50,18 @@ public class DeferredRenderer extends Renderer {
 		Gdx.graphics.getGL20().glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
 		Gdx.graphics.getGL20().glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
 		
-		drawableManager.drawables.sort(sorter);
-		for (int i = drawableManager.drawables.size; --i >= 0;) {
+		renderState.reset();
+		
+		drawableManager.sort();
+		for (int i = 0; i < drawableManager.size; i++) {
 
-			final Drawable drawable = drawableManager.drawables.get(i);
+			final int drawable = drawableManager.order[i];
 
-			final Matrix4 modelMatrix = drawable.model_matrix;
+			final Matrix4 modelMatrix = drawableManager.transforms[drawable];
 			normalMatrix.set(modelMatrix);
 
-			final Mesh mesh = drawable.mesh;
-			final Material material = drawable.material;
+			final Mesh mesh = drawableManager.meshes[drawable];
+			final Material material = drawableManager.materials[drawable];
 			
 			if (material.normalmapAttribute.texture != null)
 			{
@@ -71,15 +72,15 @@ public class DeferredRenderer extends Renderer {
 				changeShader(normalShader);
 			}
 			
-			currentShader.setUniformMatrix("u_model_matrix", modelMatrix);
-			currentShader.setUniformMatrix("u_normal_matrix", normalMatrix);
+			renderState.setUniformMatrix("u_model_matrix", modelMatrix);
+			renderState.setUniformMatrix("u_normal_matrix", normalMatrix);
 
-			material.normalmapAttribute.bind(currentShader, lightManager);
+			material.normalmapAttribute.bind(renderState, lightManager);
 			
-			mesh.render(currentShader, drawable.primitiveType);
+			mesh.render(currentShader, drawableManager.primitiveTypes[drawable]);
 			
 		}
-		currentShader.end();
+		renderState.endProgram();
 		normalBuffer.end();
 		currentShader = null;
 		
@@ -94,19 +95,19 @@ public class DeferredRenderer extends Renderer {
 		{
 			Gdx.graphics.getGL20().glClearColor(lightManager.getAmbient().r/5f, lightManager.getAmbient().g/5f, lightManager.getAmbient().b/5f, 0.0f);
 			Gdx.graphics.getGL20().glClear(GL20.GL_COLOR_BUFFER_BIT);
-			Gdx.graphics.getGL20().glEnable(GL20.GL_BLEND);
-			Gdx.graphics.getGL20().glBlendFunc(GL20.GL_ONE, GL20.GL_ONE);
-			Gdx.graphics.getGL20().glDisable(GL20.GL_CULL_FACE);
-			Gdx.graphics.getGL20().glDisable(GL20.GL_DEPTH_TEST);
+			renderState.enable(GL20.GL_BLEND);
+			renderState.blendFunc(GL20.GL_ONE, GL20.GL_ONE);
+			renderState.disable(GL20.GL_CULL_FACE);
+			renderState.disable(GL20.GL_DEPTH_TEST);
 			
 			changeShader(lightShader);
-			normalBuffer.getColorBufferTexture().bind(0);
-			currentShader.setUniformi("u_normals", 0);
-			currentShader.setUniformf("u_screen", resolution[0], resolution[1]);
-			currentShader.setUniformf("u_cam", cam.position);
+			renderState.bindTexture(0, normalBuffer.getColorBufferTexture());
+			renderState.setUniformi("u_normals", 0);
+			renderState.setUniformf("u_screen", resolution[0], resolution[1]);
+			renderState.setUniformf("u_cam", cam.position);
 			
 			view.set(cam.view).inv();
-			currentShader.setUniformMatrix("u_inv_v", view);
+			renderState.setUniformMatrix("u_inv_v", view);
 			
 			for (PointLight p : lightManager.staticPointLights)
 			{
@@ -123,47 +124,47 @@ public class DeferredRenderer extends Renderer {
 				p.area.render(currentShader, GL20.GL_TRIANGLES);
 			}
 			
-			currentShader.end();
+			renderState.endProgram();
 		}
 		lightBuffer.end();
 		currentShader = null;
 		
-		Gdx.graphics.getGL20().glDisable(GL20.GL_BLEND);
-		Gdx.graphics.getGL20().glEnable(GL20.GL_CULL_FACE);
-		Gdx.graphics.getGL20().glCullFace(GL20.GL_BACK);
+		renderState.disable(GL20.GL_BLEND);
+		renderState.enable(GL20.GL_CULL_FACE);
+		renderState.cullFace(GL20.GL_BACK);
 		
-		Gdx.graphics.getGL20().glEnable(GL20.GL_DEPTH_TEST);
-		Gdx.graphics.getGL20().glDepthMask(true);
+		renderState.enable(GL20.GL_DEPTH_TEST);
+		renderState.depthMask(true);
 		
 		changeShader(finalShader);
 		
-		lightBuffer.getColorBufferTexture().bind(1);
-		currentShader.setUniformi("u_light_texture", 1);
+		renderState.bindTexture(1, lightBuffer.getColorBufferTexture());
+		renderState.setUniformi("u_light_texture", 1);
 		
-		currentShader.setUniformf("u_screen", resolution[0], resolution[1]);
+		renderState.setUniformf("u_screen", resolution[0], resolution[1]);
 		
-		for (int i = drawableManager.drawables.size; --i >= 0;) {
+		for (int i = 0; i < drawableManager.size; i++) {
 
-			final Drawable drawable = drawableManager.drawables.get(i);
+			final int drawable = drawableManager.order[i];
 
-			final Matrix4 modelMatrix = drawable.model_matrix;
+			final Matrix4 modelMatrix = drawableManager.transforms[drawable];
 
-			final Mesh mesh = drawable.mesh;
-			final Material material = drawable.material;
+			final Mesh mesh = drawableManager.meshes[drawable];
+			final Material material = drawableManager.materials[drawable];
 
-			currentShader.setUniformMatrix("u_model_matrix", modelMatrix);
+			renderState.setUniformMatrix("u_model_matrix", modelMatrix);
 			
-			material.colourAttribute.bind(currentShader, lightManager);
-			material.textureAttribute.bind(currentShader, lightManager);
+			material.colourAttribute.bind(renderState, lightManager);
+			material.textureAttribute.bind(renderState, lightManager);
 			
-			mesh.render(currentShader, drawable.primitiveType);
+			mesh.render(currentShader, drawableManager.primitiveTypes[drawable]);
 		}
 		
-		currentShader.end();
+		renderState.endProgram();
 		currentShader = null;
 		
-		Gdx.graphics.getGL20().glDisable(GL20.GL_CULL_FACE);
-		Gdx.graphics.getGL20().glDisable(GL20.GL_DEPTH_TEST);
+		renderState.disable(GL20.GL_CULL_FACE);
+		renderState.disable(GL20.GL_DEPTH_TEST);
 		
 		//sB.enableBlending();
 		//sB.setBlendFunction(GL20.GL_ZERO, GL20.GL_ONE_MINUS_SRC_COLOR);
@@ -190,18 +191,21 @@ public class DeferredRenderer extends Renderer {
 		}
 	}
 	
+	/**
+	 * Use the shader and give it the camera. The state remembers each shader's uniforms, so switching back to a shader
+	 * only uploads the ones that have changed since it was last used
+	 */
 	private void changeShader(ShaderProgram newShader)
 	{
-		if (currentShader != null && currentShader.equals(newShader)) return;
-		if (currentShader != null) currentShader.end();
+		if (currentShader == newShader) return;
 		
 		currentShader = newShader;
 		
-		currentShader.begin();
-		currentShader.setUniformMatrix("u_pv", cam.combined);
-		currentShader.setUniformMatrix("u_v", cam.view);
-		currentShader.setUniformf("u_cam", cam.position);
-		currentShader.setUniformf("u_linearDepth", cam.far-cam.near);
+		renderState.useProgram(currentShader);
+		renderState.setUniformMatrix("u_pv", cam.combined);
+		renderState.setUniformMatrix("u_v", cam.view);
+		renderState.setUniformf("u_cam", cam.position);
+		renderState.setUniformf("u_linearDepth", cam.far-cam.near);
 	}
 
 	@Override
@@ -210,6 +214,7 @@ public class DeferredRenderer extends Renderer {
 
 	@Override
 	public void createShader(LightManager lights) {
+		renderState.invalidate();
 		if (normalShader == null) normalShader = ShaderFactory.createShader("deferred_normals");
 		if (normalmapShader == null) normalmapShader = ShaderFactory.createShader("deferred_normals", TextureAttribute.normalmapTexture+"Flag");
 		if (lightShader == null) lightShader = ShaderFactory.createShader("deferred_lighting");
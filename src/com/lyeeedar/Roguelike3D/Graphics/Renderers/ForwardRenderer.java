@@ -20,13 +20,15 @@ import com.lyeeedar.Roguelike3D.Graphics.Materials.ColorAttribute;
 import com.lyeeedar.Roguelike3D.Graphics.Materials.Material;
 import com.lyeeedar.Roguelike3D.Graphics.Materials.MaterialAttribute;
 import com.lyeeedar.Roguelike3D.Graphics.Materials.TextureAttribute;
-import com.lyeeedar.Roguelike3D.Graphics.Renderers.Renderer.DrawableManager.Drawable;
 
 public class ForwardRenderer extends Renderer {
 
 	static final int SIZE = 256;
 
 	public static ShaderProgram shader;
+	public static ShaderProgram instancedShader;
+	
+	final InstanceBatcher batcher = new InstanceBatcher();
 
 	public ForwardRenderer () {
 		
@@ -35,11 +37,21 @@ public class ForwardRenderer extends Renderer {
 	@Override
 	public void createShader(LightManager lights)
 	{
+		renderState.invalidate();
 		shader = ShaderFactory.createShader("forward_frag", "LIGHTS_NUM "+lights.maxLightsPerModel, ColorAttribute.colour+"Flag", TextureAttribute.diffuseTexture+"Flag");
+		if (instancing) instancedShader = ShaderFactory.createShader("forward_frag", "LIGHTS_NUM "+lights.maxLightsPerModel, ColorAttribute.colour+"Flag", TextureAttribute.diffuseTexture+"Flag",
+				"INSTANCED", "MAX_INSTANCES "+InstanceBatcher.MAX_INSTANCES);
+		
+		if (instancing && !InstanceBatcher.canInstance(instancedShader))
+		{
+			System.err.println("forward_frag has no INSTANCED path ("+InstanceBatcher.MODEL_MATRICES+", "+InstanceBatcher.COLOURS+" and "+InstanceBatcher.INSTANCE+"), drawing without instancing");
+			
+			instancedShader.dispose();
+			instancedShader = null;
+			instancing = false;
+		}
 	}
 
-	private TextureAttribute lastTexture;
-
 	final Matrix3 normalMatrix = new Matrix3();
 	@Override
 	protected void flush (LightManager lightManager) {
@@ -51,38 +63,84 @@ public class ForwardRenderer extends Renderer {
 		else
 			lightManager.calculateDynamicLights(0, 0, 0);
 		
-		shader.begin();
-		shader.setUniformMatrix("u_pv", cam.combined);
-		lightManager.applyDynamicLights(shader);
+		final ShaderProgram program = instancing ? instancedShader : shader;
+		
+		renderState.reset();
+		renderState.useProgram(program);
+		renderState.setUniformMatrix("u_pv", cam.combined);
+		lightManager.applyDynamicLights(program);
 
-		drawableManager.drawables.sort(sorter);
-		for (int i = drawableManager.drawables.size; --i >= 0;) {
+		drawableManager.sort();
+		if (instancing) drawInstanced(lightManager);
+		else for (int i = 0; i < drawableManager.size; i++) {
 
-			final Drawable drawable = drawableManager.drawables.get(i);
+			final int drawable = drawableManager.order[i];
 
-			final Matrix4 modelMatrix = drawable.model_matrix;
+			final Matrix4 modelMatrix = drawableManager.transforms[drawable];
 			normalMatrix.set(modelMatrix);
 
-			final Mesh mesh = drawable.mesh;
-			final Material material = drawable.material;
+			final Mesh mesh = drawableManager.meshes[drawable];
+			final Material material = drawableManager.materials[drawable];
 
-			shader.setUniformMatrix("u_model_matrix", modelMatrix);
-			if (lightManager.maxLightsPerModel > 0) shader.setUniformMatrix("u_normal_matrix", normalMatrix);
+			renderState.setUniformMatrix("u_model_matrix", modelMatrix);
+			if (lightManager.maxLightsPerModel > 0) renderState.setUniformMatrix("u_normal_matrix", normalMatrix);
 
-			lastTexture = material.bind(shader, lightManager, lastTexture);
+			material.bind(renderState, lightManager);
 
-			mesh.render(shader, drawable.primitiveType);
+			mesh.render(shader, drawableManager.primitiveTypes[drawable]);
 		}
 
-		shader.end();
-		lastTexture = null;
+		renderState.endProgram();
 
 	}
+	
+	/**
+	 * Draw each group of draws that share a mesh, shader and texture with one call, giving the shader their model
+	 * matrices and colours as arrays (the normal matrix is taken from the model matrix in the shader)
+	 */
+	private void drawInstanced (LightManager lightManager) {
+		
+		batcher.group(drawableManager.keys, drawableManager.order, drawableManager.meshes, drawableManager.primitiveTypes, drawableManager.size);
+		
+		for (int group = 0; group < batcher.groupCount; group++) {
+			
+			final int first = drawableManager.order[batcher.groupStarts[group]];
+			final int size = batcher.groupSizes[group];
+			
+			final Mesh mesh = drawableManager.meshes[first];
+			final int primitiveType = drawableManager.primitiveTypes[first];
+			
+			batcher.pack(drawableManager.transforms, drawableManager.materials, drawableManager.order, group);
+			drawableManager.materials[first].bind(renderState, lightManager);
+			
+			if (InstanceBatcher.canReplicate(mesh))
+			{
+				renderState.setUniformMatrix4fv(InstanceBatcher.MODEL_MATRICES, batcher.matrices, 0, size);
+				renderState.setUniform4fv(InstanceBatcher.COLOURS, batcher.colours, 0, size);
+				
+				batcher.getReplicated(mesh).render(instancedShader, primitiveType, 0, InstanceBatcher.getCount(mesh, size));
+			}
+			else
+			{
+				for (int i = 0; i < size; i++)
+				{
+					renderState.setUniformMatrix4fv(InstanceBatcher.MODEL_MATRICES, batcher.matrices, i, 1);
+					renderState.setUniform4fv(InstanceBatcher.COLOURS, batcher.colours, i, 1);
+					
+					mesh.render(instancedShader, primitiveType);
+				}
+			}
+		}
+	}
 
 	@Override
 	protected void disposeSuper () {
 		shader.dispose();
 		shader = null;
+		
+		if (instancedShader != null) instancedShader.dispose();
+		instancedShader = null;
+		batcher.dispose();
 	}
 
 	@Override
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Graphics.Renderers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.lyeeedar.Roguelike3D.Graphics.Materials.Material;
+import com.lyeeedar.Roguelike3D.Graphics.Models.Shapes;
+
+/**
+ * Groups the sorted draws of a frame that share a mesh, shader and texture so each group can be drawn with one call,
+ * and packs the model matrix and colour of each draw in a group into arrays to upload as uniforms.
+ * <p>
+ * GL20 has no instanced draws, so a group is drawn with a copy of the mesh repeated MAX_INSTANCES times (see
+ * {@link Shapes#replicate}), where each vertex has the number of its copy as a_instance to index u_model_matrices and
+ * u_colours with. Drawing the first n copies draws n instances. The shader has to be built with the INSTANCED flag,
+ * and {@link #canInstance(ShaderProgram)} says whether it was.
+ * <p>
+ * The copies are kept until their mesh is disposed (which must call {@link #evict(Mesh)}) or the batcher is.
+ * <p>
+ * Grouping relies on the draws being sorted with the mesh in place of the material in their keys, so every draw of a
+ * group is next to the others. Grouping and packing do not touch GL.
+ * @author Philip
+ *
+ */
+public class InstanceBatcher {
+	
+	/**
+	 * Each instance takes 5 vec4 uniforms, so this leaves room for the rest of the shader's in the 128 GLES 2 promises
+	 */
+	public static final int MAX_INSTANCES = 16;
+	
+	public static final String MODEL_MATRICES = "u_model_matrices";
+	public static final String COLOURS = "u_colours";
+	public static final String INSTANCE = "a_instance";
+	
+	private static final Set<InstanceBatcher> batchers = Collections.newSetFromMap(new WeakHashMap<InstanceBatcher, Boolean>());
+	
+	public int groupCount = 0;
+	public int[] groupStarts = new int[0];
+	public int[] groupSizes = new int[0];
+	
+	public final float[] matrices = new float[MAX_INSTANCES*16];
+	public final float[] colours = new float[MAX_INSTANCES*4];
+	
+	private final IdentityHashMap<Mesh, Mesh> replicated = new IdentityHashMap<Mesh, Mesh>();
+	
+	public InstanceBatcher()
+	{
+		synchronized (batchers)
+		{
+			batchers.add(this);
+		}
+	}
+	
+	/**
+	 * @return true if the shader compiled with the uniforms and attribute instancing needs. A shader without the
+	 * INSTANCED path (or whose INSTANCED path does not use them) cannot draw instances
+	 */
+	public static boolean canInstance(ShaderProgram shader)
+	{
+		return shader.isCompiled()
+				&& shader.fetchUniformLocation(MODEL_MATRICES, false) != -1
+				&& shader.fetchUniformLocation(COLOURS, false) != -1
+				&& shader.getAttributeLocation(INSTANCE) != -1;
+	}
+	
+	/**
+	 * Split the first size sorted draws into groups of up to MAX_INSTANCES that have the same key above the material
+	 * (pass, shader, texture and mesh), the same mesh and the same primitive type. Group i is the draws at
+	 * order[groupStarts[i]] to order[groupStarts[i]+groupSizes[i]-1]
+	 */
+	public void group(long[] keys, int[] order, Mesh[] meshes, int[] primitiveTypes, int size)
+	{
+		groupCount = 0;
+		
+		int start = 0;
+		while (start < size)
+		{
+			final int first = order[start];
+			final long key = keys[start] >>> Renderer.DrawableManager.MATERIAL_SHIFT;
+			
+			int end = start+1;
+			while (end < size && end-start < MAX_INSTANCES)
+			{
+				final int drawable = order[end];
+				if ((keys[end] >>> Renderer.DrawableManager.MATERIAL_SHIFT) != key
+						|| meshes[drawable] != meshes[first]
+						|| primitiveTypes[drawable] != primitiveTypes[first]) break;
+				end++;
+			}
+			
+			if (groupCount == groupStarts.length)
+			{
+				final int capacity = Math.max(16, groupCount*2);
+				groupStarts = Arrays.copyOf(groupStarts, capacity);
+				groupSizes = Arrays.copyOf(groupSizes, capacity);
+			}
+			groupStarts[groupCount] = start;
+			groupSizes[groupCount] = end-start;
+			groupCount++;
+			
+			start = end;
+		}
+	}
+	
+	/**
+	 * Copy the model matrix and colour (white if the material has none) of each draw in the group into matrices and
+	 * colours
+	 */
+	public void pack(Matrix4[] transforms, Material[] materials, int[] order, int group)
+	{
+		final int start = groupStarts[group];
+		final int size = groupSizes[group];
+		
+		for (int i = 0; i < size; i++)
+		{
+			final int drawable = order[start+i];
+			
+			System.arraycopy(transforms[drawable].val, 0, matrices, i*16, 16);
+			
+			final Material material = materials[drawable];
+			final Color colour = (material.colourAttribute != null) ? material.colourAttribute.color : Color.WHITE;
+			colours[(i*4)+0] = colour.r;
+			colours[(i*4)+1] = colour.g;
+			colours[(i*4)+2] = colour.b;
+			colours[(i*4)+3] = colour.a;
+		}
+	}
+	
+	/**
+	 * @return true if the mesh is small enough to index MAX_INSTANCES copies of it with shorts. A mesh that is not is
+	 * drawn once per instance instead, where its missing a_instance reads as 0
+	 */
+	public static boolean canReplicate(Mesh mesh)
+	{
+		return mesh.getNumIndices() == 0 || mesh.getNumVertices()*MAX_INSTANCES <= Short.MAX_VALUE;
+	}
+	
+	/**
+	 * @return the mesh repeated MAX_INSTANCES times, made the first time it is asked for. Must be called on the render
+	 * thread
+	 */
+	public Mesh getReplicated(Mesh mesh)
+	{
+		Mesh copies = replicated.get(mesh);
+		if (copies == null)
+		{
+			copies = Shapes.toMesh(Shapes.replicate(Shapes.toTempMesh(mesh), MAX_INSTANCES));
+			replicated.put(mesh, copies);
+		}
+		
+		return copies;
+	}
+	
+	/**
+	 * @return how many indices (or vertices, if it is not indexed) of the replicated copy of the mesh draw count
+	 * instances of it
+	 */
+	public static int getCount(Mesh mesh, int count)
+	{
+		return ((mesh.getNumIndices() > 0) ? mesh.getNumIndices() : mesh.getNumVertices()) * count;
+	}
+	
+	public void dispose()
+	{
+		for (Mesh mesh : replicated.values()) mesh.dispose();
+		replicated.clear();
+	}
+	
+	/**
+	 * Dispose of every batcher's copy of the mesh, for when the mesh is disposed. Must be called on the render thread
+	 */
+	public static void evict(Mesh mesh)
+	{
+		synchronized (batchers)
+		{
+			for (InstanceBatcher batcher : batchers)
+			{
+				final Mesh copies = batcher.replicated.remove(mesh);
+				if (copies != null) copies.dispose();
+			}
+		}
+	}
+}
@@ -0,0 +1,448 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Graphics.Renderers;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix3;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.BufferUtils;
+
+/**
+ * Tracks the GL state the renderers set (the program in use, the texture bound to each unit, the value of each
+ * uniform of each program and the enabled caps, blend function, cull face and depth mask) and skips any call that
+ * would set something to what it already is.
+ * <p>
+ * Uniform values belong to the program, so they are remembered for each program and kept when the program changes.
+ * Switching back to a program then only uploads the uniforms that have changed since it was last used. A uniform set
+ * through a RenderState must only ever be set through it, or the remembered value will be wrong.
+ * <p>
+ * Anything else that touches GL (SpriteBatch, FrameBuffer, Texture.bind, other renderers) leaves the rest of the state
+ * unknown, so {@link #reset()} should be called before using it each frame. {@link #invalidate()} also forgets the
+ * programs, and must be called whenever they are rebuilt or disposed and when the GL context is restored.
+ * <p>
+ * Every call goes through the GL20 it is given, so it can be run against a fake GL that records the calls. The one
+ * exception is the first time a program is used, which goes through ShaderProgram.begin() (so a managed program lost
+ * with the context is compiled again) and then asks the GL for the program's handle, as ShaderProgram does not give it
+ * out. issued and skipped count the calls made and avoided.
+ * @author Philip
+ *
+ */
+public class RenderState {
+	
+	public static final int MAX_TEXTURE_UNITS = 32;
+	
+	/**
+	 * The caps that are tracked, anything else passed to enable or disable is always issued
+	 */
+	public static final int[] CAPS = {GL20.GL_BLEND, GL20.GL_CULL_FACE, GL20.GL_DEPTH_TEST, GL20.GL_SCISSOR_TEST, GL20.GL_STENCIL_TEST, GL20.GL_POLYGON_OFFSET_FILL};
+	
+	private static final byte UNKNOWN = 0;
+	private static final byte DISABLED = 1;
+	private static final byte ENABLED = 2;
+	
+	public final GL20 gl;
+	
+	public int issued = 0;
+	public int skipped = 0;
+	
+	private ShaderProgram program;
+	private Program current;
+	private final WeakHashMap<ShaderProgram, Program> programs = new WeakHashMap<ShaderProgram, Program>();
+	
+	private int activeUnit;
+	private final int[] textures = new int[MAX_TEXTURE_UNITS];
+	
+	private final byte[] caps = new byte[CAPS.length];
+	private int blendSrc;
+	private int blendDst;
+	private int cullFace;
+	private byte depthMask;
+	
+	private final int[] bits = new int[16];
+	private final IntBuffer ints = BufferUtils.newIntBuffer(16);
+	private final FloatBuffer matrix = BufferUtils.newFloatBuffer(16);
+	private FloatBuffer array = BufferUtils.newFloatBuffer(16);
+	
+	public RenderState(GL20 gl)
+	{
+		this.gl = gl;
+		reset();
+	}
+	
+	/**
+	 * Forget everything but the uniforms, so the next call to set anything is always issued
+	 */
+	public void reset()
+	{
+		program = null;
+		current = null;
+		activeUnit = -1;
+		for (int i = 0; i < textures.length; i++) textures[i] = -1;
+		for (int i = 0; i < caps.length; i++) caps[i] = UNKNOWN;
+		blendSrc = -1;
+		blendDst = -1;
+		cullFace = -1;
+		depthMask = UNKNOWN;
+	}
+	
+	/**
+	 * Forget everything, including every program and its uniforms
+	 */
+	public void invalidate()
+	{
+		reset();
+		programs.clear();
+	}
+	
+	public void resetCounters()
+	{
+		issued = 0;
+		skipped = 0;
+	}
+	
+	public ShaderProgram getProgram()
+	{
+		return program;
+	}
+	
+	public void useProgram(ShaderProgram newProgram)
+	{
+		if (program == newProgram)
+		{
+			skipped++;
+			return;
+		}
+		
+		Program state = programs.get(newProgram);
+		if (state == null)
+		{
+			newProgram.begin();
+			
+			ints.clear();
+			gl.glGetIntegerv(GL20.GL_CURRENT_PROGRAM, ints);
+			state = new Program(ints.get(0));
+			programs.put(newProgram, state);
+		}
+		else
+		{
+			gl.glUseProgram(state.handle);
+		}
+		issued++;
+		
+		program = newProgram;
+		current = state;
+	}
+	
+	/**
+	 * Stop using the current program, if there is one
+	 */
+	public void endProgram()
+	{
+		if (program == null) return;
+		
+		gl.glUseProgram(0);
+		issued++;
+		
+		program = null;
+		current = null;
+	}
+	
+	public void bindTexture(int unit, Texture texture)
+	{
+		final int handle = texture.getTextureObjectHandle();
+		if (textures[unit] == handle)
+		{
+			skipped++;
+			return;
+		}
+		
+		if (activeUnit != unit)
+		{
+			gl.glActiveTexture(GL20.GL_TEXTURE0 + unit);
+			activeUnit = unit;
+			issued++;
+		}
+		
+		gl.glBindTexture(texture.glTarget, handle);
+		textures[unit] = handle;
+		issued++;
+	}
+	
+	public void setUniformi(String name, int value)
+	{
+		final Uniform uniform = getUniform(name);
+		if (uniform == null) return;
+		
+		bits[0] = value;
+		if (update(uniform, 1)) gl.glUniform1i(uniform.location, value);
+	}
+	
+	public void setUniformf(String name, float value)
+	{
+		final Uniform uniform = getUniform(name);
+		if (uniform == null) return;
+		
+		bits[0] = Float.floatToRawIntBits(value);
+		if (update(uniform, 1)) gl.glUniform1f(uniform.location, value);
+	}
+	
+	public void setUniformf(String name, float x, float y)
+	{
+		final Uniform uniform = getUniform(name);
+		if (uniform == null) return;
+		
+		bits[0] = Float.floatToRawIntBits(x);
+		bits[1] = Float.floatToRawIntBits(y);
+		if (update(uniform, 2)) gl.glUniform2f(uniform.location, x, y);
+	}
+	
+	public void setUniformf(String name, float x, float y, float z)
+	{
+		final Uniform uniform = getUniform(name);
+		if (uniform == null) return;
+		
+		bits[0] = Float.floatToRawIntBits(x);
+		bits[1] = Float.floatToRawIntBits(y);
+		bits[2] = Float.floatToRawIntBits(z);
+		if (update(uniform, 3)) gl.glUniform3f(uniform.location, x, y, z);
+	}
+	
+	public void setUniformf(String name, Vector3 value)
+	{
+		setUniformf(name, value.x, value.y, value.z);
+	}
+	
+	public void setUniformMatrix(String name, Matrix4 value)
+	{
+		final Uniform uniform = getUniform(name);
+		if (uniform == null) return;
+		
+		for (int i = 0; i < 16; i++) bits[i] = Float.floatToRawIntBits(value.val[i]);
+		if (update(uniform, 16))
+		{
+			matrix.clear();
+			matrix.put(value.val, 0, 16);
+			matrix.flip();
+			gl.glUniformMatrix4fv(uniform.location, 1, false, matrix);
+		}
+	}
+	
+	public void setUniformMatrix(String name, Matrix3 value)
+	{
+		final Uniform uniform = getUniform(name);
+		if (uniform == null) return;
+		
+		for (int i = 0; i < 9; i++) bits[i] = Float.floatToRawIntBits(value.val[i]);
+		if (update(uniform, 9))
+		{
+			matrix.clear();
+			matrix.put(value.val, 0, 9);
+			matrix.flip();
+			gl.glUniformMatrix3fv(uniform.location, 1, false, matrix);
+		}
+	}
+	
+	/**
+	 * Upload count vec4s from values, starting at the offset'th. Arrays are always uploaded, and the uniform is
+	 * forgotten so the next single value set is too
+	 */
+	public void setUniform4fv(String name, float[] values, int offset, int count)
+	{
+		final Uniform uniform = getUniform(name);
+		if (uniform == null) return;
+		
+		uniform.length = -1;
+		gl.glUniform4fv(uniform.location, count, getArray(values, offset*4, count*4));
+		issued++;
+	}
+	
+	/**
+	 * Upload count 4x4 matrices from values, starting at the offset'th, always (see
+	 * {@link #setUniform4fv(String, float[], int, int)})
+	 */
+	public void setUniformMatrix4fv(String name, float[] values, int offset, int count)
+	{
+		final Uniform uniform = getUniform(name);
+		if (uniform == null) return;
+		
+		uniform.length = -1;
+		gl.glUniformMatrix4fv(uniform.location, count, false, getArray(values, offset*16, count*16));
+		issued++;
+	}
+	
+	private FloatBuffer getArray(float[] values, int offset, int length)
+	{
+		if (array.capacity() < length) array = BufferUtils.newFloatBuffer(length);
+		
+		array.clear();
+		array.put(values, offset, length);
+		array.flip();
+		
+		return array;
+	}
+	
+	public void enable(int cap)
+	{
+		setCap(cap, ENABLED);
+	}
+	
+	public void disable(int cap)
+	{
+		setCap(cap, DISABLED);
+	}
+	
+	public void blendFunc(int src, int dst)
+	{
+		if (blendSrc == src && blendDst == dst)
+		{
+			skipped++;
+			return;
+		}
+		
+		gl.glBlendFunc(src, dst);
+		blendSrc = src;
+		blendDst = dst;
+		issued++;
+	}
+	
+	public void cullFace(int mode)
+	{
+		if (cullFace == mode)
+		{
+			skipped++;
+			return;
+		}
+		
+		gl.glCullFace(mode);
+		cullFace = mode;
+		issued++;
+	}
+	
+	public void depthMask(boolean flag)
+	{
+		final byte state = flag ? ENABLED : DISABLED;
+		if (depthMask == state)
+		{
+			skipped++;
+			return;
+		}
+		
+		gl.glDepthMask(flag);
+		depthMask = state;
+		issued++;
+	}
+	
+	private void setCap(int cap, byte state)
+	{
+		int index = -1;
+		for (int i = 0; i < CAPS.length; i++)
+		{
+			if (CAPS[i] == cap)
+			{
+				index = i;
+				break;
+			}
+		}
+		
+		if (index != -1)
+		{
+			if (caps[index] == state)
+			{
+				skipped++;
+				return;
+			}
+			caps[index] = state;
+		}
+		
+		if (state == ENABLED) gl.glEnable(cap);
+		else gl.glDisable(cap);
+		issued++;
+	}
+	
+	/**
+	 * @return the uniform of the current program with this name, or null if the program does not have it (as
+	 * ShaderProgram does, this throws instead if ShaderProgram.pedantic is set)
+	 */
+	private Uniform getUniform(String name)
+	{
+		Uniform uniform = current.uniforms.get(name);
+		if (uniform == null)
+		{
+			final int location = gl.glGetUniformLocation(current.handle, name);
+			if (location == -1 && ShaderProgram.pedantic) throw new IllegalArgumentException("no uniform with name '"+name+"' in shader");
+			
+			uniform = new Uniform(location);
+			current.uniforms.put(name, uniform);
+		}
+		
+		return (uniform.location == -1) ? null : uniform;
+	}
+	
+	/**
+	 * Compare the first length values in bits to the uniform's, and remember them if they differ
+	 * @return true if the uniform needs to be uploaded
+	 */
+	private boolean update(Uniform uniform, int length)
+	{
+		boolean changed = uniform.length != length;
+		for (int i = 0; i < length; i++)
+		{
+			if (uniform.value[i] != bits[i])
+			{
+				uniform.value[i] = bits[i];
+				changed = true;
+			}
+		}
+		uniform.length = length;
+		
+		if (changed) issued++;
+		else skipped++;
+		
+		return changed;
+	}
+	
+	/**
+	 * The GL handle of a program and what has been uploaded to its uniforms
+	 */
+	static class Program {
+		
+		final int handle;
+		final HashMap<String, Uniform> uniforms = new HashMap<String, Uniform>();
+		
+		Program(int handle)
+		{
+			this.handle = handle;
+		}
+	}
+	
+	/**
+	 * The last value uploaded to a uniform, as the bits of each float (or the int) it is made of
+	 */
+	static class Uniform {
+		
+		final int location;
+		final int[] value = new int[16];
+		int length = -1;
+		
+		Uniform(int location)
+		{
+			this.location = location;
+		}
+	}
+}
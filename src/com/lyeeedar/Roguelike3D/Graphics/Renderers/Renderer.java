@@ -10,27 +10,32 @@
  ******************************************************************************/
 package com.lyeeedar.Roguelike3D.Graphics.Renderers;
 
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.WeakHashMap;
 
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
-import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.Pool;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager;
 import com.lyeeedar.Roguelike3D.Graphics.Materials.Material;
 import com.lyeeedar.Roguelike3D.Graphics.Models.StillModel;
 import com.lyeeedar.Roguelike3D.Graphics.Models.StillModelAttributes;
 import com.lyeeedar.Roguelike3D.Graphics.Models.StillModelInstance;
 import com.lyeeedar.Roguelike3D.Graphics.Models.RiggedModels.RiggedSubMesh;
-import com.lyeeedar.Roguelike3D.Graphics.Renderers.Renderer.DrawableManager.Drawable;
 
 public abstract class Renderer {
 	
 	public Camera cam;
 	public boolean drawing;
+	/**
+	 * When set, draws that share a mesh, shader and texture are drawn together (see {@link InstanceBatcher}). Must be
+	 * set before createShader, which turns it off again if the shaders do not have the INSTANCED path
+	 */
+	public boolean instancing = false;
 	protected DrawableManager drawableManager = new DrawableManager();
+	public final RenderState renderState = new RenderState(Gdx.graphics.getGL20());
 	
 	public Renderer()
 	{
@@ -46,6 +51,13 @@ public abstract class Renderer {
 		drawableManager.add(model, attributes);
 	}
 	
+	/**
+	 * Draw without testing against the frustum, for models that have already been culled
+	 */
+	public void drawVisible (StillModel model, StillModelAttributes attributes) {
+		drawableManager.add(model, attributes);
+	}
+	
 	public void draw (RiggedSubMesh mesh, Matrix4 model_matrix, Material mat, float radius) {
 		if (cam != null) if (!cam.frustum.sphereInFrustum(Vector3.tmp3.set(0, 0, 0).mul(model_matrix), radius*2)) return;
 		drawableManager.add(mesh, model_matrix, mat);
@@ -62,102 +74,198 @@ public abstract class Renderer {
 	public void dispose()
 	{
 		disposeSuper();
+		renderState.invalidate();
 	}
 	protected abstract void disposeSuper();
 	public abstract void createShader(LightManager lights);
 	public abstract void updateResolution();
 	
 
+	/**
+	 * The draws of a frame, as a structure of arrays drawn in the order of a 64 bit key for each draw.
+	 * <p>
+	 * From the top bit down a key is the pass (4 bits), the shader (4), the texture (16), the material (16) and the
+	 * squared distance to the camera (24), so sorting the keys groups the draws by the state they need (changing the
+	 * most expensive state least often) and draws each group front to back. The distance is the top bits of the float,
+	 * which sort the same as the float does as it is never negative.
+	 * <p>
+	 * The keys are sorted with an LSD radix sort a byte at a time, carrying the index of each draw with its key, so
+	 * sorting is linear in the number of draws. A byte that is the same in every key (such as the pass) is skipped.
+	 * After {@link #sort()} the i'th draw is the one at order[i] in the other arrays.
+	 * <p>
+	 * When instancing, the colour of each draw is uploaded with it, so the mesh takes the material's place in the key to
+	 * put draws of the same mesh together.
+	 */
 	class DrawableManager {
-		Pool<Drawable> drawablePool = new Pool<Drawable>() {
-			@Override
-			protected Drawable newObject () {
-				return new Drawable();
-			}
-		};
-
-		Array<Drawable> drawables = new Array<Drawable>();
+		
+		public static final int PASS_SHIFT = 60;
+		public static final int SHADER_SHIFT = 56;
+		public static final int TEXTURE_SHIFT = 40;
+		public static final int MATERIAL_SHIFT = 24;
+		
+		public static final int PASS_OPAQUE = 0;
+		
+		public static final int RADIX_BITS = 8;
+		public static final int RADIX = 1 << RADIX_BITS;
+		public static final int RADIX_PASSES = 64 / RADIX_BITS;
+		
+		int size = 0;
+		
+		Mesh[] meshes = new Mesh[0];
+		Matrix4[] transforms = new Matrix4[0];
+		Material[] materials = new Material[0];
+		int[] primitiveTypes = new int[0];
+		
+		long[] keys = new long[0];
+		int[] order = new int[0];
+		private long[] tmpKeys = new long[0];
+		private int[] tmpOrder = new int[0];
+		
+		private final int[] counts = new int[RADIX*RADIX_PASSES];
+		
+		private final WeakHashMap<Mesh, Integer> meshIDs = new WeakHashMap<Mesh, Integer>();
+		private int nextMeshID = 1;
 
 		public void add (StillModel model, StillModelAttributes attributes) {
-			Drawable drawable = drawablePool.obtain();
-			drawable.set(model, attributes);
-
-			drawables.add(drawable);
+			final int i = next();
+			transforms[i].set(attributes.getTransform()).scale(attributes.scale, attributes.scale, attributes.scale).mul(attributes.rotation);
+			set(i, model.subMeshes[0].mesh, model.subMeshes[0].primitiveType, attributes.material);
 		}
 
 		public void add(RiggedSubMesh mesh, Matrix4 model_matrix, Material mat) {
-			Drawable drawable = drawablePool.obtain();
-			drawable.set(mesh, model_matrix, mat);
-
-			drawables.add(drawable);
+			final int i = next();
+			transforms[i].set(model_matrix);
+			set(i, mesh.getMesh(), mesh.primitiveType, mat);
 		}
-
-		public void clear () {
-			clear(drawables);
+		
+		private int next()
+		{
+			if (size == keys.length) grow(Math.max(64, size*2));
+			return size++;
 		}
-
-		private void clear (Array<Drawable> drawables) {
-			while (drawables.size > 0) {
-				final Drawable drawable = drawables.pop();
-				drawablePool.free(drawable);
+		
+		private void grow(int capacity)
+		{
+			meshes = Arrays.copyOf(meshes, capacity);
+			materials = Arrays.copyOf(materials, capacity);
+			primitiveTypes = Arrays.copyOf(primitiveTypes, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+			order = Arrays.copyOf(order, capacity);
+			tmpKeys = new long[capacity];
+			tmpOrder = new int[capacity];
+			
+			int old = transforms.length;
+			transforms = Arrays.copyOf(transforms, capacity);
+			for (int i = old; i < capacity; i++) transforms[i] = new Matrix4();
+		}
+		
+		private void set (int i, Mesh mesh, int primitiveType, Material material) {
+			
+			if (material == null) {
+				System.err.println("Error! Attributes has no Material!");
 			}
+			
+			meshes[i] = mesh;
+			materials[i] = material;
+			primitiveTypes[i] = primitiveType;
+			
+			// The model's origin, which is the translation of its matrix
+			final float[] val = transforms[i].val;
+			final float dx = val[Matrix4.M03] - cam.position.x;
+			final float dy = val[Matrix4.M13] - cam.position.y;
+			final float dz = val[Matrix4.M23] - cam.position.z;
+			
+			keys[i] = getKey(PASS_OPAQUE, mesh, material, dx*dx + dy*dy + dz*dz);
+			order[i] = i;
 		}
-
-		class Drawable implements Comparable<Drawable> {
-			private static final int PRIORITY_DISCRETE_STEPS = 256;
-			Mesh mesh;
-			final Matrix4 model_matrix = new Matrix4();
-			final Vector3 sortCenter = new Vector3();
-			Material material;
-
-			int distance;
-			int materialHash;
+		
+		public long getKey(int pass, Mesh mesh, Material material, float distance2)
+		{
+			final int id = instancing ? getMeshID(mesh) : material.getID();
 			
-			int primitiveType;
-
-			public void set (RiggedSubMesh mesh, Matrix4 model_matrix, Material mat)
+			return ((long) pass << PASS_SHIFT)
+					| ((long) (material.getShaderID() & 0xF) << SHADER_SHIFT)
+					| ((long) (material.getTextureID() & 0xFFFF) << TEXTURE_SHIFT)
+					| ((long) (id & 0xFFFF) << MATERIAL_SHIFT)
+					| (Float.floatToRawIntBits(distance2) >>> 8);
+		}
+		
+		/**
+		 * @return a small number for the mesh, given out the first time it is asked for and forgotten with the mesh
+		 */
+		public int getMeshID(Mesh mesh)
+		{
+			Integer id = meshIDs.get(mesh);
+			if (id == null)
 			{
-				setCommon(mesh.getMesh(), mesh.primitiveType, model_matrix, mat);
+				id = nextMeshID++;
+				meshIDs.put(mesh, id);
 			}
 			
-			public void set (StillModel model, StillModelAttributes attributes) {
-				model_matrix.set(attributes.getTransform()).scale(attributes.scale, attributes.scale, attributes.scale).mul(attributes.rotation);
-				setCommon(model.subMeshes[0].mesh, model.subMeshes[0].primitiveType, model_matrix, attributes.material);
-
+			return id;
+		}
+		
+		public void sort()
+		{
+			final int n = size;
+			final int[] counts = this.counts;
+			
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < n; i++)
+			{
+				final long key = keys[i];
+				for (int pass = 0; pass < RADIX_PASSES; pass++)
+				{
+					counts[(pass*RADIX) + (int) ((key >>> (pass*RADIX_BITS)) & (RADIX-1))]++;
+				}
 			}
-
-			private void setCommon (Mesh mesh, int primitiveType, Matrix4 model_matrix, Material mat) {
+			
+			long[] srcKeys = keys;
+			int[] srcOrder = order;
+			long[] dstKeys = tmpKeys;
+			int[] dstOrder = tmpOrder;
+			
+			for (int pass = 0; pass < RADIX_PASSES; pass++)
+			{
+				final int base = pass*RADIX;
+				final int shift = pass*RADIX_BITS;
 				
-				this.mesh = mesh;
-				this.model_matrix.set(model_matrix);
-				this.material = mat;
-				this.primitiveType = primitiveType;
+				if (n == 0 || counts[base + (int) ((srcKeys[0] >>> shift) & (RADIX-1))] == n) continue;
 				
-				sortCenter.set(0, 0, 0).mul(model_matrix);
+				int total = 0;
+				for (int j = base; j < base+RADIX; j++)
+				{
+					final int count = counts[j];
+					counts[j] = total;
+					total += count;
+				}
 				
-				distance = (int)(PRIORITY_DISCRETE_STEPS * sortCenter.dst(cam.position));
-				if (material != null) {
-				} else {
-					System.err.println("Error! Attributes has no Material!");
+				for (int i = 0; i < n; i++)
+				{
+					final long key = srcKeys[i];
+					final int dst = counts[base + (int) ((key >>> shift) & (RADIX-1))]++;
+					dstKeys[dst] = key;
+					dstOrder[dst] = srcOrder[i];
 				}
 				
-				materialHash = material.hashCode();
+				long[] swapKeys = srcKeys; srcKeys = dstKeys; dstKeys = swapKeys;
+				int[] swapOrder = srcOrder; srcOrder = dstOrder; dstOrder = swapOrder;
 			}
+			
+			keys = srcKeys;
+			order = srcOrder;
+			tmpKeys = dstKeys;
+			tmpOrder = dstOrder;
+		}
 
-			@Override
-			public int compareTo (Drawable other) {
-				return other.distance - this.distance;
+		public void clear () {
+			for (int i = 0; i < size; i++)
+			{
+				meshes[i] = null;
+				materials[i] = null;
 			}
+			size = 0;
 		}
 	}
 
-	public static final Comparator<Drawable> sorter = new Comparator<Drawable>() {
-
-		public int compare (Drawable a, Drawable b) {
-			if (a.materialHash != b.materialHash) return b.materialHash - a.materialHash;
-			return b.distance - a.distance;
-		}
-
-	};
-
 }
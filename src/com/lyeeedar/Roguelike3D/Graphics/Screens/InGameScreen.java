@@ -29,14 +29,15 @@ import com.lyeeedar.Graphics.ParticleEffects.ParticleEffect;
 import com.lyeeedar.Graphics.ParticleEffects.ParticleEmitter;
 import com.lyeeedar.Roguelike3D.Roguelike3DGame;
 import com.lyeeedar.Roguelike3D.Roguelike3DGame.GameScreen;
+import com.lyeeedar.Roguelike3D.Game.FixedTimestep;
 import com.lyeeedar.Roguelike3D.Game.GameData;
 import com.lyeeedar.Roguelike3D.Game.GameObject;
 import com.lyeeedar.Roguelike3D.Game.Actor.GameActor;
+import com.lyeeedar.Roguelike3D.Game.Actor.Player;
 import com.lyeeedar.Roguelike3D.Game.Level.LevelGraphics;
 import com.lyeeedar.Roguelike3D.Game.LevelObjects.LevelObject;
 import com.lyeeedar.Roguelike3D.Game.Spell.Spell;
 import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager.LightQuality;
-import com.lyeeedar.Roguelike3D.Graphics.Models.VisibleObject;
 import com.lyeeedar.Roguelike3D.Graphics.Renderers.DeferredRenderer;
 import com.lyeeedar.Roguelike3D.Graphics.Renderers.ForwardRenderer;
 
@@ -72,10 +73,8 @@ public class InGameScreen extends AbstractScreen {
 		
 		renderer.begin();
 
-		for (VisibleObject vo : GameData.levelGraphics.graphics)
-		{
-			vo.render(renderer);
-		}
+		GameData.level.getOcclusion().update(cam);
+		GameData.levelGraphics.render(renderer, cam, GameData.level.getOcclusion());
 		
 		GameData.level.render(renderer, cam, visibleEmitters);
 		
@@ -107,6 +106,8 @@ public class InGameScreen extends AbstractScreen {
 		{
 			System.out.println("Java Heap Size: "+Gdx.app.getJavaHeap()/1000000+"mb");
 			System.out.println("Visible Particles: "+particleNum);
+			if (GameData.levelGraphics.tree != null) System.out.println("Chunks Drawn: "+GameData.levelGraphics.tree.drawn+" Culled: "+GameData.levelGraphics.tree.culled+" Tested: "+GameData.levelGraphics.tree.tested);
+			System.out.println("Occlusion Drawn: "+GameData.level.getOcclusion().drawn+" Culled: "+GameData.level.getOcclusion().culled);
 			System.out.println("Frame Time: "+Gdx.graphics.getRawDeltaTime());
 			time = 1;
 			drawnParticleNum = particleNum;
@@ -207,25 +208,44 @@ public class InGameScreen extends AbstractScreen {
 	boolean cdMinus = false;
 	
 	float activateCD = 0;
-	@Override
-	public void update(float delta) {
-		activateCD -= delta;
-		if (!paused)
+	
+	final FixedTimestep timestep = new FixedTimestep();
+	final FixedTimestep.Simulation simulation = new FixedTimestep.Simulation() {
+		@Override
+		public void tick(float step)
 		{
-			GameData.level.update(delta, cam);
+			GameData.level.storeLastPositions();
+			GameData.level.update(step, cam);
 			
 			Iterator<Spell> spells = GameData.spells.iterator();
 			while (spells.hasNext())
 			{
 				Spell s = spells.next();
-				boolean dispose = s.update(delta, cam);
+				boolean dispose = s.update(step, cam);
 				
 				if (dispose) spells.remove();
 			}
+		}
+	};
+	
+	@Override
+	public void update(float delta) {
+		activateCD -= delta;
+		if (!paused)
+		{
+			timestep.advance(delta, simulation);
+			
+			float alpha = timestep.getAlpha();
+			GameData.level.interpolate(alpha);
 			
 			if (GameData.player == null) return;
-			cam.position.set(GameData.player.position).add(GameData.player.offsetPos);
-			cam.direction.set(GameData.player.rotation).add(GameData.player.offsetRot);
+			Player player = GameData.player;
+			cam.position.set(
+					player.lastX+((player.position.x-player.lastX)*alpha),
+					player.lastY+((player.position.y-player.lastY)*alpha),
+					player.lastZ+((player.position.z-player.lastZ)*alpha))
+					.add(player.offsetPos);
+			cam.direction.set(player.rotation).add(player.offsetRot);
 			cam.update();
 		}
 		
@@ -438,8 +458,8 @@ public class InGameScreen extends AbstractScreen {
 
 	@Override
 	public void resume() {
-		// TODO Auto-generated method stub
-		
+		// The context may have been lost, taking the programs with it
+		if (renderer != null) renderer.renderState.invalidate();
 	}
 
 	@Override
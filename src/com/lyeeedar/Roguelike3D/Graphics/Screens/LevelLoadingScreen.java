@@ -12,6 +12,12 @@ package com.lyeeedar.Roguelike3D.Graphics.Screens;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
@@ -32,6 +38,7 @@ import com.lyeeedar.Roguelike3D.Game.Actor.Player;
 import com.lyeeedar.Roguelike3D.Game.Item.Equipment_HAND;
 import com.lyeeedar.Roguelike3D.Game.Item.Equipment_HAND.WeaponType;
 import com.lyeeedar.Roguelike3D.Game.Level.Level;
+import com.lyeeedar.Roguelike3D.Game.Level.LevelContainer;
 import com.lyeeedar.Roguelike3D.Game.Level.LevelGraphics;
 import com.lyeeedar.Roguelike3D.Game.Level.XML.BiomeReader;
 import com.lyeeedar.Roguelike3D.Game.Level.XML.RoomReader;
@@ -41,8 +48,22 @@ import com.lyeeedar.Roguelike3D.Graphics.Lights.LightManager.LightQuality;
 import com.lyeeedar.Roguelike3D.Graphics.Models.SkyBox;
 import com.lyeeedar.Roguelike3D.Graphics.Renderers.ForwardRenderer;
 
+/**
+ * Loads the current level while showing a progress bar.
+ * <p>
+ * Only the stages that need GL run on the render thread. Generating the level (rooms, monsters and all) and building
+ * and lighting the tile meshes are handed to background workers as Futures, which loadingTask polls once a frame
+ * until they are done, then the meshes are uploaded. So the screen keeps drawing while the level loads.
+ * @author Philip
+ *
+ */
 public class LevelLoadingScreen extends AbstractScreen{
 	
+	/**
+	 * Run the stages that do not need GL, leaving a core for the render thread
+	 */
+	private static ExecutorService workers;
+	
 	Texture loading_bar;
 	
 	ArrayList<GameObject> objects = new ArrayList<GameObject>();
@@ -89,6 +110,13 @@ public class LevelLoadingScreen extends AbstractScreen{
 	
 	long time;
 	int loadingStage = 0;
+	
+	Future<Level> levelTask;
+	volatile int levelSteps;
+	ArrayList<Future<?>> tasks;
+	float stagePercent;
+	boolean bakeLights;
+	
 	public void loadingTask()
 	{
 		if (loadingStage == 0)
@@ -100,18 +128,44 @@ public class LevelLoadingScreen extends AbstractScreen{
 			
 			if (GameData.levelGraphics != null) GameData.levelGraphics.dispose();
 			
+			GameData.level = null;
+			
+			final LevelContainer lc = GameData.getCurrentLevelContainer();
+			final BiomeReader biome = this.biome;
+			final RoomReader rReader = this.rReader;
+			
+			levelSteps = 0;
+			levelTask = getWorkers().submit(new Callable<Level>() {
+				@Override
+				public Level call()
+				{
+					Level level = null;
+					while (level == null)
+					{
+						level = lc.getLevel(biome, rReader);
+						levelSteps++;
+					}
+					return level;
+				}
+			});
+			
+			stagePercent = percent;
 			loadingStage++;
 		}
 		else if (loadingStage == 1)
 		{
 			message = "Loading Level";
 			
-			level = GameData.getCurrentLevelContainer().getLevel(biome, rReader);
-			GameData.level = level;
+			percent = stagePercent + (levelSteps*taskSteps);
 			
-			percent += taskSteps;
-			
-			if (level != null) loadingStage++;
+			if (levelTask.isDone())
+			{
+				level = getResult(levelTask);
+				levelTask = null;
+				GameData.level = level;
+				
+				loadingStage++;
+			}
 		}
 		else if (loadingStage == 2)
 		{
@@ -153,6 +207,11 @@ public class LevelLoadingScreen extends AbstractScreen{
 			GameData.player = player;
 			
 			level.positionPlayer(player, GameData.prevLevel, GameData.currentLevel);
+			level.storeLastPositions();
+			
+			// The lights are needed before the tiles are built so they can be baked into them as they are
+			level.getLights(GameData.lightManager);
+			level.evaluateUniqueBehaviour(lightManager);
 			
 			percent += taskSteps;
 			loadingStage++;
@@ -169,44 +228,44 @@ public class LevelLoadingScreen extends AbstractScreen{
 			}
 			else GameData.skyBox = null;
 			
+			bakeLights = (GameData.lightQuality == LightQuality.FORWARD_VERTEX);
+			tasks = graphics.buildTiles(getWorkers());
+			
 			loadingStage++;
 			percent += taskSteps*5;
+			stagePercent = percent;
 		}
 		else if (loadingStage == 4)
 		{
 			message = "Forcing Matter Into Existence";
-			boolean done = graphics.createTileRow();
-			percent += taskSteps;
+			int done = pollTasks();
+			percent = stagePercent + (done*taskSteps);
 			
-			if (done) loadingStage++;
+			if (done == tasks.size())
+			{
+				tasks = graphics.buildChunks(getWorkers(), (bakeLights) ? GameData.lightManager : null);
+				
+				loadingStage++;
+				stagePercent = percent;
+			}
 		}
 		else if (loadingStage == 5)
 		{
-			message = "Coalescing Matter";
-			boolean done = graphics.createChunkRow();
-			percent += taskSteps;
-			
-			if (done) loadingStage++;
-		}
-		else if (loadingStage == 6)
-		{
-			message = "Baking Lights";
+			message = (bakeLights) ? "Baking Lights" : "Coalescing Matter";
+			int done = pollTasks();
+			percent = stagePercent + (done*taskSteps);
 			
-			level.getLights(GameData.lightManager);
-			level.evaluateUniqueBehaviour(lightManager);
-
-			if (GameData.lightQuality != LightQuality.FORWARD_VERTEX)
+			if (done == tasks.size())
 			{
+				tasks = null;
+				
+				graphics.uploadChunks();
+				if (bakeLights) level.bakeLights(GameData.lightManager);
+				
 				loadingStage++;
-				return;
 			}
-			
-			graphics.bakeLights(GameData.lightManager, true);
-			level.bakeLights(GameData.lightManager);
-			
-			loadingStage++;
 		}
-		else if (loadingStage == 7)
+		else if (loadingStage == 6)
 		{
 			System.out.println("Level loading done in "+((float)(System.nanoTime()-time)/1000000000f)+"seconds");
 			GameData.finishLoading(graphics, GameScreen.INGAME);
@@ -215,6 +274,55 @@ public class LevelLoadingScreen extends AbstractScreen{
 		
 		if (percent > 100) percent = 100;
 	}
+	
+	/**
+	 * @return how many of the tasks are done, throwing whatever one of them threw
+	 */
+	private int pollTasks()
+	{
+		int done = 0;
+		for (Future<?> task : tasks)
+		{
+			if (!task.isDone()) continue;
+			
+			getResult(task);
+			done++;
+		}
+		return done;
+	}
+	
+	private static <T> T getResult(Future<T> task)
+	{
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Level loading failed", e.getCause());
+		}
+	}
+	
+	private static synchronized ExecutorService getWorkers()
+	{
+		if (workers == null)
+		{
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+			workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				int count = 0;
+				
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "Level loader "+(count++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		return workers;
+	}
 
 	ArrayList<ParticleEmitter> emitters = new ArrayList<ParticleEmitter>();
 	@Override
@@ -299,6 +407,8 @@ public class LevelLoadingScreen extends AbstractScreen{
 
 	@Override
 	public void resume() {
+		// The context may have been lost, taking the programs with it
+		if (renderer != null) renderer.renderState.invalidate();
 	}
 
 	@Override
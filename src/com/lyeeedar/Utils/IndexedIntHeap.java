@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ *
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Utils;
+
+/**
+ * A binary min-heap of int ids in the range [0, capacity), ordered by an int key per id.
+ * Knows the heap position of every id, so keys can be decreased in place.
+ * Never allocates after construction.
+ * @author Philip
+ *
+ */
+public class IndexedIntHeap {
+
+	private final int[] heap;
+	private final int[] index;
+	private final int[] keys;
+	public int size = 0;
+
+	public IndexedIntHeap(int capacity)
+	{
+		heap = new int[capacity];
+		index = new int[capacity];
+		keys = new int[capacity];
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int getKey(int id)
+	{
+		return keys[id];
+	}
+
+	/**
+	 * Adds an id that is not currently in the heap
+	 */
+	public void add(int id, int key)
+	{
+		keys[id] = key;
+		heap[size] = id;
+		index[id] = size;
+		size++;
+		siftUp(size-1);
+	}
+
+	/**
+	 * Lowers the key of an id that is currently in the heap
+	 */
+	public void decreaseKey(int id, int key)
+	{
+		keys[id] = key;
+		siftUp(index[id]);
+	}
+
+	/**
+	 * Removes and returns the id with the lowest key
+	 */
+	public int pop()
+	{
+		int top = heap[0];
+		size--;
+
+		if (size > 0)
+		{
+			heap[0] = heap[size];
+			index[heap[0]] = 0;
+			siftDown(0);
+		}
+
+		return top;
+	}
+
+	private void siftUp(int i)
+	{
+		int id = heap[i];
+		int key = keys[id];
+
+		while (i > 0)
+		{
+			int p = (i-1) >> 1;
+			int pid = heap[p];
+			if (keys[pid] <= key) break;
+
+			heap[i] = pid;
+			index[pid] = i;
+			i = p;
+		}
+
+		heap[i] = id;
+		index[id] = i;
+	}
+
+	private void siftDown(int i)
+	{
+		int id = heap[i];
+		int key = keys[id];
+		int half = size >> 1;
+
+		while (i < half)
+		{
+			int child = (i << 1) + 1;
+			int right = child+1;
+			if (right < size && keys[heap[right]] < keys[heap[child]]) child = right;
+
+			int cid = heap[child];
+			if (key <= keys[cid]) break;
+
+			heap[i] = cid;
+			index[cid] = i;
+			i = child;
+		}
+
+		heap[i] = id;
+		index[id] = i;
+	}
+}
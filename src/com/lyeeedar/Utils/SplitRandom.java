@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Utils;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A seeded Random using the SplitMix64 generator, which can be split into independent child generators by name.
+ * <p>
+ * A split only depends on the seed this generator was made with and the name it is given, never on how many numbers
+ * have been drawn, so the same seed always gives the same tree of generators whatever order they are made or used in.
+ * The dungeon seed is split per level, each level per subsystem (generator, rooms, each monster evolver) and so on.
+ * <p>
+ * An instance is not thread safe (unlike Random it does no synchronisation). Parallel workers should each be given
+ * their own split rather than share one, and they will then give the same results whatever threads they run on.
+ * @author Philip
+ *
+ */
+public class SplitRandom extends Random {
+	
+	private static final long serialVersionUID = -3862195036404913547L;
+	
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	private static final AtomicLong seeder = new AtomicLong(mix(System.currentTimeMillis()) ^ mix(System.nanoTime()));
+	
+	/**
+	 * The seed this generator was made with, which everything split from it is derived from
+	 */
+	public final long seed;
+	
+	private long state;
+	
+	public SplitRandom(long seed)
+	{
+		super(seed);
+		this.seed = seed;
+		this.state = seed;
+	}
+	
+	/**
+	 * A generator with a seed from {@link #newSeed()}, for anything that does not need to be reproducible
+	 */
+	public SplitRandom()
+	{
+		this(newSeed());
+	}
+	
+	/**
+	 * @return a different seed each call, for when there is nothing to derive one from
+	 */
+	public static long newSeed()
+	{
+		return mix(seeder.addAndGet(GOLDEN_GAMMA));
+	}
+	
+	/**
+	 * The SplitMix64 finaliser, spreads every bit of z over the result
+	 */
+	public static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * @return the generator for the child with this name. Splitting with the same name twice gives two generators with
+	 * the same seed
+	 */
+	public SplitRandom split(String name)
+	{
+		// FNV-1a over the name, started from the seed
+		long hash = seed ^ 0xcbf29ce484222325L;
+		for (int i = 0; i < name.length(); i++)
+		{
+			hash ^= name.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return new SplitRandom(mix(hash + GOLDEN_GAMMA));
+	}
+	
+	/**
+	 * @return the generator for the child with this index, such as one per worker or per item
+	 */
+	public SplitRandom split(long index)
+	{
+		return new SplitRandom(mix(seed + ((index+1) * GOLDEN_GAMMA)));
+	}
+	
+	/**
+	 * Restart the stream from the given seed. Splits are still derived from the seed the generator was made with
+	 */
+	@Override
+	public void setSeed(long seed)
+	{
+		super.setSeed(seed);
+		state = seed;
+	}
+	
+	@Override
+	public long nextLong()
+	{
+		state += GOLDEN_GAMMA;
+		return mix(state);
+	}
+	
+	@Override
+	protected int next(int bits)
+	{
+		return (int) (nextLong() >>> (64-bits));
+	}
+}
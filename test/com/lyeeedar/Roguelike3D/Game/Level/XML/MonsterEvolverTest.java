@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Game.Level.XML;
+
+import java.io.File;
+
+import com.badlogic.gdx.Gdx;
+import com.lyeeedar.Roguelike3D.Game.HeadlessSimulation;
+
+/**
+ * Evolves the same monster from the same seeds with {@link MonsterEvolver#parallel} off and on, and checks both give
+ * the same creature for every difficulty, so a seed makes the same dungeon whatever machine it is run on.
+ * <p>
+ * Usage: MonsterEvolverTest assets_dir monster_type [depth]. Reads data/xml/monsters.data from the assets directory.
+ * Throws on the first check that fails.
+ * @author Philip
+ *
+ */
+public class MonsterEvolverTest {
+	
+	public static final long[] SEEDS = {1, 2, 3, 4, 5};
+	
+	public static void main(String[] args)
+	{
+		Gdx.files = new HeadlessSimulation.HeadlessFiles(new File(args[0]));
+		final String monster = args[1];
+		final int depth = (args.length > 2) ? Integer.parseInt(args[2]) : 2;
+		
+		final boolean parallel = MonsterEvolver.parallel;
+		try
+		{
+			for (long seed : SEEDS)
+			{
+				final String[] serial = evolve(monster, depth, seed, false);
+				final String[] threaded = evolve(monster, depth, seed, true);
+				
+				for (int i = 0; i < serial.length; i++)
+				{
+					check(serial[i].equals(threaded[i]), "seed "+seed+" evolves the same difficulty "+i+" creature serially and in parallel");
+				}
+				check(same(threaded, evolve(monster, depth, seed, true)), "seed "+seed+" evolves the same creatures every time");
+			}
+		}
+		finally
+		{
+			MonsterEvolver.parallel = parallel;
+		}
+		
+		System.out.println("MonsterEvolverTest passed");
+	}
+	
+	static String[] evolve(String monster, int depth, long seed, boolean parallel)
+	{
+		MonsterEvolver.parallel = parallel;
+		
+		final MonsterEvolver evolver = new MonsterEvolver(monster, depth, seed);
+		evolver.createMap();
+		evolver.Evolve_Creature();
+		
+		final String[] creatures = new String[evolver.EVOLVED_CREATURES.length];
+		for (int i = 0; i < creatures.length; i++) creatures[i] = String.valueOf(evolver.EVOLVED_CREATURES[i]);
+		return creatures;
+	}
+	
+	static boolean same(String[] a, String[] b)
+	{
+		for (int i = 0; i < a.length; i++)
+		{
+			if (!a[i].equals(b[i])) return false;
+		}
+		return true;
+	}
+	
+	static void check(boolean passed, String message)
+	{
+		if (!passed) throw new AssertionError(message);
+	}
+}
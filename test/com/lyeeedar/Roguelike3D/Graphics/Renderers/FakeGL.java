@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Graphics.Renderers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Graphics;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.graphics.TextureData.TextureDataType;
+
+/**
+ * A GL20 that draws nothing and records the name of every call made to it, so tests can count what reached the GL.
+ * {@link #install()} also puts it behind Gdx.gl, Gdx.gl20 and Gdx.graphics (with a stand in Gdx.app), so
+ * ShaderPrograms and Textures can be made without a context.
+ * <p>
+ * Every glCreate and glGen gives out a new handle, shaders always compile and link, the current program is tracked
+ * for glGetIntegerv and glGetUniformLocation gives each name a location of its own unless it is in missing. A
+ * program's active attributes are those in attributes when it is linked.
+ * @author Philip
+ *
+ */
+public class FakeGL implements InvocationHandler {
+	
+	public final ArrayList<String> calls = new ArrayList<String>();
+	public final ArrayList<String> missing = new ArrayList<String>();
+	public final ArrayList<String> attributes = new ArrayList<String>();
+	
+	public final GL20 gl;
+	
+	int nextHandle = 1;
+	int currentProgram = 0;
+	final HashMap<String, Integer> locations = new HashMap<String, Integer>();
+	
+	public FakeGL()
+	{
+		gl = (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[]{GL20.class}, this);
+	}
+	
+	public static FakeGL install()
+	{
+		final FakeGL fake = new FakeGL();
+		
+		Gdx.gl = fake.gl;
+		Gdx.gl20 = fake.gl;
+		Gdx.graphics = stub(Graphics.class, fake.gl);
+		Gdx.app = stub(Application.class, null);
+		
+		return fake;
+	}
+	
+	/**
+	 * A Texture with a new handle and no data
+	 */
+	public static Texture texture()
+	{
+		return new Texture(stub(TextureData.class, null));
+	}
+	
+	/**
+	 * @return how many calls with this name have been made since the last clear
+	 */
+	public int count(String name)
+	{
+		int count = 0;
+		for (String call : calls)
+		{
+			if (call.equals(name)) count++;
+		}
+		return count;
+	}
+	
+	public void clear()
+	{
+		calls.clear();
+	}
+	
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args)
+	{
+		final String name = method.getName();
+		if (method.getDeclaringClass() == Object.class) return object(proxy, method, args);
+		
+		calls.add(name);
+		
+		if (name.startsWith("glCreate")) return nextHandle++;
+		if (name.equals("glGenTextures") || name.equals("glGenBuffers"))
+		{
+			final IntBuffer buffer = (IntBuffer) args[1];
+			buffer.put(buffer.position(), nextHandle++);
+			return null;
+		}
+		if (name.equals("glUseProgram")) currentProgram = (Integer) args[0];
+		if (name.equals("glGetShaderiv") || name.equals("glGetProgramiv"))
+		{
+			final int pname = (Integer) args[1];
+			final IntBuffer buffer = (IntBuffer) args[2];
+			if (pname == GL20.GL_COMPILE_STATUS || pname == GL20.GL_LINK_STATUS) buffer.put(0, 1);
+			else if (pname == GL20.GL_ACTIVE_ATTRIBUTES) buffer.put(0, attributes.size());
+			else buffer.put(0, 0);
+			return null;
+		}
+		if (name.equals("glGetActiveAttrib")) return attributes.get((Integer) args[1]);
+		if (name.equals("glGetAttribLocation")) return attributes.indexOf(args[1]);
+		if (name.equals("glGetIntegerv"))
+		{
+			final IntBuffer buffer = (IntBuffer) args[1];
+			buffer.put(0, ((Integer) args[0] == GL20.GL_CURRENT_PROGRAM) ? currentProgram : 0);
+			return null;
+		}
+		if (name.equals("glGetUniformLocation"))
+		{
+			final String uniform = (String) args[1];
+			if (missing.contains(uniform)) return -1;
+			
+			Integer location = locations.get(uniform);
+			if (location == null)
+			{
+				location = locations.size();
+				locations.put(uniform, location);
+			}
+			return location;
+		}
+		
+		return empty(method.getReturnType());
+	}
+	
+	/**
+	 * An instance of type that answers everything with nothing, apart from what a Graphics (given a gl) and a
+	 * compressed TextureData need to answer
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T stub(Class<T> type, final GL20 gl)
+	{
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args)
+			{
+				if (method.getDeclaringClass() == Object.class) return object(proxy, method, args);
+				
+				final String name = method.getName();
+				if (name.equals("getGL20") || name.equals("getGLCommon")) return gl;
+				if (name.equals("isGL20Available")) return gl != null;
+				if (name.equals("getType")) return TextureDataType.Compressed;
+				if (name.equals("getFormat")) return Format.RGBA8888;
+				if (name.equals("isPrepared")) return true;
+				
+				return empty(method.getReturnType());
+			}
+		});
+	}
+	
+	static Object object(Object proxy, Method method, Object[] args)
+	{
+		if (method.getName().equals("equals")) return proxy == args[0];
+		if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+		return "Fake"+proxy.getClass().getInterfaces()[0].getSimpleName();
+	}
+	
+	static Object empty(Class<?> type)
+	{
+		if (type == boolean.class) return false;
+		if (type == int.class) return 0;
+		if (type == long.class) return 0L;
+		if (type == float.class) return 0f;
+		if (type == String.class) return "";
+		return null;
+	}
+}
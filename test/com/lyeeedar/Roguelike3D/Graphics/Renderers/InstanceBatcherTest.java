@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Graphics.Renderers;
+
+import java.lang.reflect.Field;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.lyeeedar.Roguelike3D.Graphics.Materials.Material;
+
+/**
+ * Checks how {@link InstanceBatcher} groups sorted draws and packs their matrices and colours, and that
+ * {@link InstanceBatcher#canInstance(ShaderProgram)} turns down shaders without the INSTANCED path. Nothing here needs
+ * a GL context apart from the shaders, which are made against a {@link FakeGL}.
+ * <p>
+ * Usage: InstanceBatcherTest. Throws on the first check that fails.
+ * @author Philip
+ *
+ */
+public class InstanceBatcherTest {
+	
+	public static void main(String[] args) throws Exception
+	{
+		grouping();
+		limit();
+		packing();
+		shaders();
+		
+		System.out.println("InstanceBatcherTest passed");
+	}
+	
+	static void grouping() throws Exception
+	{
+		final Mesh a = mesh();
+		final Mesh b = mesh();
+		
+		// Sorted keys, with the draws they belong to out of order. Draws 3, 0 and 4 only differ in distance, draw 5 has
+		// the key of draws 1 and 2 but another mesh, and draw 6 has the key and mesh of draw 5 but lines
+		final long[] keys = {key(1, 1, 10), key(1, 1, 20), key(1, 1, 30), key(1, 2, 5), key(1, 2, 6), key(1, 2, 7), key(1, 2, 8)};
+		final int[] order = {3, 0, 4, 1, 2, 5, 6};
+		final Mesh[] meshes = {a, a, a, a, a, b, b};
+		final int[] primitiveTypes = {GL20.GL_TRIANGLES, GL20.GL_TRIANGLES, GL20.GL_TRIANGLES, GL20.GL_TRIANGLES, GL20.GL_TRIANGLES, GL20.GL_TRIANGLES, GL20.GL_LINES};
+		
+		final InstanceBatcher batcher = new InstanceBatcher();
+		batcher.group(keys, order, meshes, primitiveTypes, keys.length);
+		
+		check(batcher.groupCount == 4, "draws split into groups by key, mesh and primitive type");
+		checkGroup(batcher, 0, 0, 3, "draws with the same key and mesh are grouped whatever their distance");
+		checkGroup(batcher, 1, 3, 2, "a new key starts a new group");
+		checkGroup(batcher, 2, 5, 1, "a different mesh under the same key starts a new group");
+		checkGroup(batcher, 3, 6, 1, "a different primitive type starts a new group");
+		
+		batcher.group(keys, order, meshes, primitiveTypes, 2);
+		check(batcher.groupCount == 1 && batcher.groupSizes[0] == 2, "only the first size draws are grouped");
+		
+		batcher.group(keys, order, meshes, primitiveTypes, 0);
+		check(batcher.groupCount == 0, "no draws make no groups");
+	}
+	
+	static void limit() throws Exception
+	{
+		final int size = (InstanceBatcher.MAX_INSTANCES*2)+3;
+		final Mesh mesh = mesh();
+		
+		final long[] keys = new long[size];
+		final int[] order = new int[size];
+		final Mesh[] meshes = new Mesh[size];
+		final int[] primitiveTypes = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			keys[i] = key(1, 1, i);
+			order[i] = i;
+			meshes[i] = mesh;
+			primitiveTypes[i] = GL20.GL_TRIANGLES;
+		}
+		
+		final InstanceBatcher batcher = new InstanceBatcher();
+		batcher.group(keys, order, meshes, primitiveTypes, size);
+		
+		check(batcher.groupCount == 3, "a run longer than MAX_INSTANCES is split");
+		checkGroup(batcher, 0, 0, InstanceBatcher.MAX_INSTANCES, "the first group is full");
+		checkGroup(batcher, 1, InstanceBatcher.MAX_INSTANCES, InstanceBatcher.MAX_INSTANCES, "the second group is full");
+		checkGroup(batcher, 2, InstanceBatcher.MAX_INSTANCES*2, 3, "the last group has what is left");
+	}
+	
+	static void packing() throws Exception
+	{
+		final Material red = new Material("red");
+		red.setColour(new Color(1, 0, 0, 0.5f));
+		final Material plain = new Material("plain");
+		
+		final Matrix4[] transforms = new Matrix4[4];
+		final Material[] materials = {red, plain, red, plain};
+		for (int i = 0; i < transforms.length; i++) transforms[i] = new Matrix4().setToTranslation(i, i*10, i*100);
+		
+		final Mesh mesh = mesh();
+		final long[] keys = {key(1, 1, 0), key(1, 2, 0), key(1, 2, 1), key(1, 2, 2)};
+		final int[] order = {1, 3, 0, 2};
+		final Mesh[] meshes = {mesh, mesh, mesh, mesh};
+		final int[] primitiveTypes = {GL20.GL_TRIANGLES, GL20.GL_TRIANGLES, GL20.GL_TRIANGLES, GL20.GL_TRIANGLES};
+		
+		final InstanceBatcher batcher = new InstanceBatcher();
+		batcher.group(keys, order, meshes, primitiveTypes, keys.length);
+		check(batcher.groupCount == 2, "the draws make two groups");
+		
+		batcher.pack(transforms, materials, order, 1);
+		for (int i = 0; i < 3; i++)
+		{
+			final int drawable = order[1+i];
+			check(batcher.matrices[(i*16)+Matrix4.M03] == drawable
+					&& batcher.matrices[(i*16)+Matrix4.M13] == drawable*10
+					&& batcher.matrices[(i*16)+Matrix4.M23] == drawable*100
+					&& batcher.matrices[(i*16)+Matrix4.M00] == 1
+					&& batcher.matrices[(i*16)+Matrix4.M33] == 1, "instance "+i+" has the matrix of its draw");
+					
+			final Color colour = (materials[drawable] == red) ? red.colourAttribute.color : Color.WHITE;
+			check(batcher.colours[(i*4)+0] == colour.r
+					&& batcher.colours[(i*4)+1] == colour.g
+					&& batcher.colours[(i*4)+2] == colour.b
+					&& batcher.colours[(i*4)+3] == colour.a, "instance "+i+" has the colour of its material, or white");
+		}
+		
+		batcher.pack(transforms, materials, order, 0);
+		check(batcher.matrices[Matrix4.M03] == 1 && batcher.colours[0] == 1 && batcher.colours[1] == 1, "packing a group starts at the first instance");
+	}
+	
+	static void shaders()
+	{
+		final FakeGL fake = FakeGL.install();
+		ShaderProgram.pedantic = false;
+		
+		fake.attributes.add(ShaderProgram.POSITION_ATTRIBUTE);
+		check(!InstanceBatcher.canInstance(new ShaderProgram("vertex", "fragment")), "a shader without a_instance cannot instance");
+		
+		fake.attributes.add(InstanceBatcher.INSTANCE);
+		check(InstanceBatcher.canInstance(new ShaderProgram("vertex", "fragment")), "a shader with the INSTANCED path can instance");
+		
+		fake.missing.add(InstanceBatcher.COLOURS);
+		check(!InstanceBatcher.canInstance(new ShaderProgram("vertex", "fragment")), "a shader without u_colours cannot instance");
+		
+		fake.missing.clear();
+		fake.missing.add(InstanceBatcher.MODEL_MATRICES);
+		check(!InstanceBatcher.canInstance(new ShaderProgram("vertex", "fragment")), "a shader without u_model_matrices cannot instance");
+	}
+	
+	/**
+	 * A key as DrawableManager makes them when instancing, with the mesh's id in the material's place
+	 */
+	static long key(int texture, int mesh, int distance)
+	{
+		return ((long) texture << Renderer.DrawableManager.TEXTURE_SHIFT)
+				| ((long) mesh << Renderer.DrawableManager.MATERIAL_SHIFT)
+				| distance;
+	}
+	
+	/**
+	 * A Mesh that is only ever compared, made without its constructor as that needs the gdx natives
+	 */
+	static Mesh mesh() throws Exception
+	{
+		final Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+		field.setAccessible(true);
+		final Object unsafe = field.get(null);
+		return (Mesh) unsafe.getClass().getMethod("allocateInstance", Class.class).invoke(unsafe, Mesh.class);
+	}
+	
+	static void checkGroup(InstanceBatcher batcher, int group, int start, int size, String message)
+	{
+		check(batcher.groupStarts[group] == start && batcher.groupSizes[group] == size, message);
+	}
+	
+	static void check(boolean passed, String message)
+	{
+		if (!passed) throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Philip Collin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Philip Collin - initial API and implementation
+ ******************************************************************************/
+package com.lyeeedar.Roguelike3D.Graphics.Renderers;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+
+/**
+ * Runs a {@link RenderState} against a {@link FakeGL} and checks that setting the program, textures, uniforms and
+ * caps to what they already are never reaches the GL, and that invalidating forgets the programs.
+ * <p>
+ * Usage: RenderStateTest. Throws on the first check that fails.
+ * @author Philip
+ *
+ */
+public class RenderStateTest {
+	
+	public static void main(String[] args)
+	{
+		final FakeGL fake = FakeGL.install();
+		
+		final ShaderProgram first = new ShaderProgram("vertex", "fragment");
+		final ShaderProgram second = new ShaderProgram("vertex", "fragment");
+		final Texture diffuse = FakeGL.texture();
+		final Texture normals = FakeGL.texture();
+		fake.missing.add("u_missing");
+		fake.missing.add("u_other_missing");
+		
+		final RenderState state = new RenderState(fake.gl);
+		
+		programs(fake, state, first, second);
+		uniforms(fake, state, first, second);
+		textures(fake, state, diffuse, normals);
+		caps(fake, state);
+		invalidate(fake, state, first);
+		
+		System.out.println("RenderStateTest passed");
+	}
+	
+	static void programs(FakeGL fake, RenderState state, ShaderProgram first, ShaderProgram second)
+	{
+		fake.clear();
+		state.useProgram(first);
+		state.useProgram(first);
+		check(fake.count("glUseProgram") == 1, "a program is only used once");
+		check(fake.count("glGetIntegerv") == 1, "the handle is asked for the first time a program is used");
+		
+		state.useProgram(second);
+		state.useProgram(first);
+		state.useProgram(first);
+		check(fake.count("glUseProgram") == 3, "switching program is issued, using it again is not");
+		check(fake.count("glGetIntegerv") == 2, "the handle is only asked for once for each program");
+		check(fake.currentProgram != 0, "the program in use has a handle");
+		
+		state.endProgram();
+		state.endProgram();
+		check(fake.count("glUseProgram") == 4 && fake.currentProgram == 0, "ending the program uses 0, once");
+	}
+	
+	static void uniforms(FakeGL fake, RenderState state, ShaderProgram first, ShaderProgram second)
+	{
+		state.useProgram(first);
+		fake.clear();
+		state.setUniformi("u_texture", 0);
+		state.setUniformi("u_texture", 0);
+		state.setUniformf("u_colour", 1, 0.5f, 0.25f);
+		state.setUniformf("u_colour", 1, 0.5f, 0.25f);
+		check(fake.count("glUniform1i") == 1 && fake.count("glUniform3f") == 1, "setting a uniform to its value is skipped");
+		check(fake.count("glGetUniformLocation") == 2, "locations are looked up once");
+		
+		state.setUniformf("u_colour", 1, 0.5f, 0.5f);
+		check(fake.count("glUniform3f") == 2, "a changed uniform is uploaded");
+		
+		state.useProgram(second);
+		state.setUniformf("u_colour", 1, 0.5f, 0.5f);
+		check(fake.count("glUniform3f") == 3, "each program has its own uniforms");
+		
+		state.useProgram(first);
+		state.setUniformf("u_colour", 1, 0.5f, 0.5f);
+		check(fake.count("glUniform3f") == 3, "a program's uniforms are kept while another is in use");
+		
+		// As ShaderFactory has it
+		ShaderProgram.pedantic = false;
+		state.setUniformf("u_missing", 1);
+		state.setUniformf("u_missing", 2);
+		check(fake.count("glUniform1f") == 0, "a uniform the program does not have is never set");
+		check(fake.count("glGetUniformLocation") == 4, "a missing uniform is only looked up once");
+		
+		ShaderProgram.pedantic = true;
+		boolean thrown = false;
+		try
+		{
+			state.setUniformf("u_other_missing", 1);
+		}
+		catch (IllegalArgumentException e)
+		{
+			thrown = true;
+		}
+		check(thrown, "a missing uniform throws when pedantic");
+		ShaderProgram.pedantic = false;
+	}
+	
+	static void textures(FakeGL fake, RenderState state, Texture diffuse, Texture normals)
+	{
+		state.reset();
+		fake.clear();
+		state.bindTexture(0, diffuse);
+		state.bindTexture(0, diffuse);
+		check(fake.count("glBindTexture") == 1 && fake.count("glActiveTexture") == 1, "binding a bound texture is skipped");
+		
+		state.bindTexture(1, normals);
+		state.bindTexture(0, diffuse);
+		state.bindTexture(1, normals);
+		check(fake.count("glBindTexture") == 2 && fake.count("glActiveTexture") == 2, "each unit remembers its texture");
+		
+		state.bindTexture(1, diffuse);
+		check(fake.count("glBindTexture") == 3 && fake.count("glActiveTexture") == 2, "the active unit is only set when it changes");
+	}
+	
+	static void caps(FakeGL fake, RenderState state)
+	{
+		fake.clear();
+		state.enable(GL20.GL_BLEND);
+		state.enable(GL20.GL_BLEND);
+		state.blendFunc(GL20.GL_ONE, GL20.GL_ONE);
+		state.blendFunc(GL20.GL_ONE, GL20.GL_ONE);
+		state.depthMask(false);
+		state.depthMask(false);
+		state.disable(GL20.GL_BLEND);
+		check(fake.count("glEnable") == 1 && fake.count("glDisable") == 1, "caps are only set when they change");
+		check(fake.count("glBlendFunc") == 1 && fake.count("glDepthMask") == 1, "blending and depth mask are only set when they change");
+		
+		state.reset();
+		state.disable(GL20.GL_BLEND);
+		check(fake.count("glDisable") == 2, "reset forgets the caps");
+	}
+	
+	static void invalidate(FakeGL fake, RenderState state, ShaderProgram first)
+	{
+		state.invalidate();
+		fake.clear();
+		state.useProgram(first);
+		state.setUniformf("u_colour", 1, 0.5f, 0.5f);
+		check(fake.count("glGetIntegerv") == 1, "an invalidated program's handle is asked for again");
+		check(fake.count("glGetUniformLocation") == 1 && fake.count("glUniform3f") == 1, "an invalidated program's uniforms are forgotten");
+	}
+	
+	static void check(boolean passed, String message)
+	{
+		if (!passed) throw new AssertionError(message);
+	}
+}